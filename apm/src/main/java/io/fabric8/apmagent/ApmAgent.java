@@ -17,6 +17,7 @@ package io.fabric8.apmagent;
 
 import io.fabric8.apmagent.metrics.ApmAgentContext;
 import io.fabric8.apmagent.metrics.ThreadMetrics;
+import io.fabric8.apmagent.strategy.sampling.CallTreeSamplingStrategy;
 import io.fabric8.apmagent.strategy.sampling.SamplingStrategy;
 import io.fabric8.apmagent.strategy.trace.TraceStrategy;
 import io.fabric8.apmagent.utils.PropertyUtils;
@@ -84,6 +85,18 @@ public class ApmAgent implements ApmAgentMBean, ApmConfigurationChangeListener {
         }
     }
 
+    public static void enterMethod(int methodId) {
+        if (INSTANCE.started.get()) {
+            INSTANCE.apmAgentContext.enterMethod(methodId);
+        }
+    }
+
+    public static void exitMethod(int methodId) {
+        if (INSTANCE.started.get()) {
+            INSTANCE.apmAgentContext.exitMethod(methodId);
+        }
+    }
+
     public static void enterMethod(String methodName) {
         if (INSTANCE.started.get()) {
             INSTANCE.apmAgentContext.enterMethod(Thread.currentThread(), methodName, false);
@@ -110,6 +123,22 @@ public class ApmAgent implements ApmAgentMBean, ApmConfigurationChangeListener {
         return Collections.EMPTY_LIST;
     }
 
+    public String getCallTree() {
+        return apmAgentContext.getCallTree().getFoldedStacks();
+    }
+
+    public long getCallTreeSampleCount() {
+        return apmAgentContext.getCallTree().getSampleCount();
+    }
+
+    public long getPendingOverflowCount() {
+        return apmAgentContext.getPendingOverflowCount();
+    }
+
+    public void resetCallTree() {
+        apmAgentContext.getCallTree().reset();
+    }
+
     public List<ThreadMetrics> getThreadMetrics() {
         if (isInitialized()) {
             return apmAgentContext.getThreadMetrics();
@@ -143,6 +172,10 @@ public class ApmAgent implements ApmAgentMBean, ApmConfigurationChangeListener {
                     this.strategy = new TraceStrategy(apmAgentContext, instrumentation);
                     LOG.info("Using Trace strategy");
                     break;
+                case CALLTREE:
+                    this.strategy = new CallTreeSamplingStrategy(apmAgentContext);
+                    LOG.info("Using Call Tree Sampling strategy");
+                    break;
                 default:
                     this.strategy = new SamplingStrategy(apmAgentContext);
                     LOG.info("Using Sampling strategy");
@@ -34,4 +34,18 @@ public interface ApmAgentMBean {
      * @return List of all <className>@<methodName>
      */
     List<String> getAllMethods();
+
+    /**
+     * @return the call tree sampled by the calltree strategy in the folded stack format of flame graph tools
+     */
+    String getCallTree();
+
+    long getCallTreeSampleCount();
+
+    /**
+     * @return the number of elapsed times recorded by the instrumented threads themselves as their queue was full
+     */
+    long getPendingOverflowCount();
+
+    void resetCallTree();
 }
@@ -31,7 +31,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class ApmConfiguration implements ApmConfigurationMBean {
     public enum STRATEGY {
         TRACE,
-        SAMPLE,;
+        SAMPLE,
+        CALLTREE,;
 
         static STRATEGY getStrategy(String name) {
             for (STRATEGY v : values()) {
@@ -58,6 +59,9 @@ public class ApmConfiguration implements ApmConfigurationMBean {
     private boolean threadMetricDepthChanged = false;
     private boolean strategyChanged = false;
     private int samplingInterval = 1;
+    private String samplingThreadNamePattern;
+    private String samplingThreadGroup;
+    private int samplingStackDepth = 64;
     private List<FilterItem> whiteFilterList = new ArrayList<>();
     private List<FilterItem> blackFilterList = new ArrayList<>();
     private List<ApmConfigurationChangeListener> changeListeners = new CopyOnWriteArrayList<>();
@@ -252,6 +256,42 @@ public class ApmConfiguration implements ApmConfigurationMBean {
         this.samplingInterval = samplingInterval;
     }
 
+    public String getSamplingThreadNamePattern() {
+        return samplingThreadNamePattern;
+    }
+
+    /**
+     * Sets the regular expression the names of the threads sampled by the call tree strategy must match
+     */
+    public void setSamplingThreadNamePattern(String samplingThreadNamePattern) {
+        this.samplingThreadNamePattern = samplingThreadNamePattern;
+        fireConfigurationChanged();
+    }
+
+    public String getSamplingThreadGroup() {
+        return samplingThreadGroup;
+    }
+
+    /**
+     * Sets the name of the thread group the threads sampled by the call tree strategy must belong to
+     */
+    public void setSamplingThreadGroup(String samplingThreadGroup) {
+        this.samplingThreadGroup = samplingThreadGroup;
+        fireConfigurationChanged();
+    }
+
+    public int getSamplingStackDepth() {
+        return samplingStackDepth;
+    }
+
+    /**
+     * Sets the maximum number of frames of each stack sampled by the call tree strategy
+     */
+    public void setSamplingStackDepth(int samplingStackDepth) {
+        this.samplingStackDepth = samplingStackDepth;
+        fireConfigurationChanged();
+    }
+
     public String getStrategy() {
         return strategy.name();
     }
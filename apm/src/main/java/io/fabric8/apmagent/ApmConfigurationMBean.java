@@ -48,6 +48,18 @@ public interface ApmConfigurationMBean {
 
     void setMethodMetricDepth(int methodMetricDepth);
 
+    String getSamplingThreadNamePattern();
+
+    void setSamplingThreadNamePattern(String samplingThreadNamePattern);
+
+    String getSamplingThreadGroup();
+
+    void setSamplingThreadGroup(String samplingThreadGroup);
+
+    int getSamplingStackDepth();
+
+    void setSamplingStackDepth(int samplingStackDepth);
+
     String getStrategy();
 
     void setStrategy(String strategy);
@@ -41,16 +41,25 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ApmAgentContext {
     private static final Logger LOG = LoggerFactory.getLogger(ApmAgent.class);
     private final String DEFAULT_DOMAIN = "io.fabric8.apmagent";
     private final long HOUSE_KEEPING_TIME = TimeUnit.SECONDS.toMillis(2);
+    private final long DRAIN_TIME = 100;
     private final ConcurrentMap<String, ClassInfo> allMethods = new ConcurrentHashMap<>();
     private AtomicBoolean initialized = new AtomicBoolean();
     private AtomicBoolean started = new AtomicBoolean();
     private ConcurrentMap<Thread, ThreadMetrics> threadMetricsMap = new ConcurrentHashMap<>();
     private ConcurrentMap<String, MethodMetrics> methodMetricsMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> methodIds = new ConcurrentHashMap<>();
+    private volatile String[] methodNames = new String[256];
+    private volatile MethodMetrics[] methodMetricsById = new MethodMetrics[256];
+    private final ThreadLocal<ThreadMetrics> currentThreadMetrics = new ThreadLocal<>();
+    private final AtomicLong retiredPendingOverflows = new AtomicLong();
+    private final CallTree callTree = new CallTree();
+    private volatile int epoch;
     private ConcurrentMap<Object, ObjectName> objectNameMap = new ConcurrentHashMap<>();
     private MBeanServer mBeanServer;
     private JolokiaServer jolokiaServer;
@@ -59,7 +68,6 @@ public class ApmAgentContext {
     private ObjectName configurationObjectName;
     private final ApmConfiguration configuration;
     private final MonitoredMethodMetrics monitoredMethodMetrics;
-    private AtomicBoolean doHouseKeeping = new AtomicBoolean();
     private Thread backgroundThread;
     private boolean monitorByDefault = true;
 
@@ -70,42 +78,122 @@ public class ApmAgentContext {
         this.monitoredMethodMetrics.setMonitorSize(configuration.getMethodMetricDepth());
     }
 
-    public void enterMethod(Thread currentThread, String fullMethodName, boolean alwaysActive) {
+    /**
+     * Enters a method on the current thread; called by the instrumented code
+     */
+    public void enterMethod(int methodId) {
         if (isInitialized()) {
-            ThreadMetrics threadMetrics = threadMetricsMap.get(currentThread);
-            if (threadMetrics == null) {
-                threadMetrics = new ThreadMetrics(this, currentThread);
-                threadMetricsMap.put(currentThread, threadMetrics);
+            ThreadMetrics threadMetrics = currentThreadMetrics.get();
+            if (threadMetrics == null || threadMetrics.getEpoch() != epoch) {
+                threadMetrics = getThreadMetrics(Thread.currentThread());
+                currentThreadMetrics.set(threadMetrics);
             }
-            threadMetrics.enter(fullMethodName, alwaysActive);
+            threadMetrics.enter(methodId, false);
+        }
+    }
 
-            MethodMetrics methodMetrics = methodMetricsMap.get(fullMethodName);
-            if (methodMetrics == null) {
-                methodMetrics = new MethodMetrics(fullMethodName);
-                methodMetrics.setActive(isMonitorByDefault());
-                methodMetricsMap.putIfAbsent(fullMethodName, methodMetrics);
+    /**
+     * Exits a method on the current thread; called by the instrumented code. The elapsed time
+     * is aggregated into the method metrics later on by the house keeping thread
+     */
+    public void exitMethod(int methodId) {
+        if (isInitialized()) {
+            ThreadMetrics threadMetrics = currentThreadMetrics.get();
+            if (threadMetrics != null && threadMetrics.getEpoch() == epoch) {
+                threadMetrics.exit(methodId, false);
             }
         }
+    }
 
+    public void enterMethod(Thread currentThread, String fullMethodName, boolean alwaysActive) {
+        if (isInitialized()) {
+            getThreadMetrics(currentThread).enter(fullMethodName, alwaysActive);
+        }
     }
 
     public void exitMethod(Thread currentThread, String methodName, boolean alwaysActive) {
         if (isInitialized()) {
             ThreadMetrics threadMetrics = threadMetricsMap.get(currentThread);
-
-            long elapsed = -1;
             if (threadMetrics != null) {
-                elapsed = threadMetrics.exit(methodName, alwaysActive);
+                threadMetrics.exit(methodName, alwaysActive);
             }
+        }
+    }
 
-            if (elapsed >= 0) {
-                MethodMetrics methodMetrics = methodMetricsMap.get(methodName);
-                if (methodMetrics != null) {
-                    methodMetrics.update(elapsed);
-                }
+    private ThreadMetrics getThreadMetrics(Thread thread) {
+        ThreadMetrics threadMetrics = threadMetricsMap.get(thread);
+        if (threadMetrics == null || threadMetrics.getEpoch() != epoch) {
+            threadMetrics = new ThreadMetrics(this, thread, epoch);
+            threadMetricsMap.put(thread, threadMetrics);
+        }
+        return threadMetrics;
+    }
+
+    /**
+     * Returns the id of the given method, assigning the next free id the first time the method is seen.
+     * The ids are baked into the instrumented code so they are kept for the life of the agent
+     */
+    public int getMethodId(String fullMethodName) {
+        Integer methodId = methodIds.get(fullMethodName);
+        return methodId != null ? methodId : assignMethodId(fullMethodName);
+    }
+
+    private synchronized int assignMethodId(String fullMethodName) {
+        Integer methodId = methodIds.get(fullMethodName);
+        if (methodId == null) {
+            methodId = methodIds.size();
+            String[] names = methodNames;
+            if (methodId >= names.length) {
+                String[] newNames = new String[names.length * 2];
+                System.arraycopy(names, 0, newNames, 0, names.length);
+                names = newNames;
             }
-            doHouseKeeping();
+            names[methodId] = fullMethodName;
+            methodNames = names;
+            methodIds.put(fullMethodName, methodId);
+        }
+        return methodId;
+    }
+
+    public String getMethodName(int methodId) {
+        String[] names = methodNames;
+        return methodId < names.length ? names[methodId] : null;
+    }
+
+    /**
+     * Returns the shared metrics of the given method, or null if they have not been created or were removed
+     */
+    MethodMetrics findMethodMetrics(int methodId) {
+        MethodMetrics[] array = methodMetricsById;
+        return methodId < array.length ? array[methodId] : null;
+    }
+
+    /**
+     * Returns the shared metrics of the given method, creating them if required
+     */
+    MethodMetrics getMethodMetrics(int methodId) {
+        MethodMetrics[] array = methodMetricsById;
+        MethodMetrics result = methodId < array.length ? array[methodId] : null;
+        return result != null ? result : createMethodMetrics(methodId);
+    }
+
+    private synchronized MethodMetrics createMethodMetrics(int methodId) {
+        MethodMetrics[] array = methodMetricsById;
+        if (methodId < array.length && array[methodId] != null) {
+            return array[methodId];
+        }
+        String fullMethodName = getMethodName(methodId);
+        if (fullMethodName == null) {
+            return null;
         }
+        MethodMetrics[] newArray = new MethodMetrics[Math.max(array.length, methodNames.length)];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        MethodMetrics methodMetrics = new MethodMetrics(fullMethodName);
+        methodMetrics.setActive(isMonitorByDefault());
+        newArray[methodId] = methodMetrics;
+        methodMetricsMap.put(fullMethodName, methodMetrics);
+        methodMetricsById = newArray;
+        return methodMetrics;
     }
 
     public void initialize() {
@@ -127,40 +215,52 @@ public class ApmAgentContext {
                 backgroundThread = new Thread(new Runnable() {
                     @Override
                     public void run() {
+                        long lastHouseKeeping = System.currentTimeMillis();
                         while (started.get()) {
                             try {
-                                Thread.sleep(HOUSE_KEEPING_TIME);
-                                doHouseKeeping.set(true);
+                                Thread.sleep(DRAIN_TIME);
+                                drain();
+                                long now = System.currentTimeMillis();
+                                if (now - lastHouseKeeping >= HOUSE_KEEPING_TIME) {
+                                    lastHouseKeeping = now;
+                                    doHouseKeeping();
+                                }
                             } catch (Throwable e) {
                             }
                         }
                     }
-                });
+                }, "ApmAgent-HouseKeeping");
                 backgroundThread.setDaemon(true);
                 backgroundThread.start();
             }
         }
     }
 
+    /**
+     * Aggregates the elapsed times queued by the instrumented threads into the method metrics
+     */
+    void drain() {
+        for (ThreadMetrics threadMetrics : threadMetricsMap.values()) {
+            threadMetrics.drain();
+        }
+    }
+
     void doHouseKeeping() {
-        //the time is going to be the elapsed time from the latest method call
-        //its not going to be terribly accurate - but then it doesn't really need to be
-        if (doHouseKeeping.compareAndSet(true, false)) {
-            try {
-                List<ThreadMetrics> threadMetricsList = getThreadMetrics();
-                for (ThreadMetrics tm : threadMetricsList) {
-                    if (tm.isDead()) {
-                        tm.destroy();
-                        threadMetricsMap.remove(tm.getThread());
-                    }
-                }
-                monitoredMethodMetrics.calculateMethodMetrics(getMethodMetrics());
-                for (ThreadMetrics threadMetrics : threadMetricsList) {
-                    threadMetrics.calculateMethodMetrics();
+        try {
+            List<ThreadMetrics> threadMetricsList = getThreadMetrics();
+            for (ThreadMetrics tm : threadMetricsList) {
+                if (tm.isDead()) {
+                    retiredPendingOverflows.addAndGet(tm.getPendingOverflowCount());
+                    tm.destroy();
+                    threadMetricsMap.remove(tm.getThread());
                 }
-            } catch (Throwable e) {
-                e.printStackTrace();
             }
+            monitoredMethodMetrics.calculateMethodMetrics(getMethodMetrics());
+            for (ThreadMetrics threadMetrics : threadMetricsList) {
+                threadMetrics.calculateMethodMetrics();
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
         }
     }
 
@@ -170,7 +270,11 @@ public class ApmAgentContext {
                 unregisterMBean(objectName);
             }
             objectNameMap.clear();
-            methodMetricsMap.clear();
+            synchronized (this) {
+                epoch++;
+                methodMetricsById = new MethodMetrics[methodMetricsById.length];
+                methodMetricsMap.clear();
+            }
             threadMetricsMap.clear();
         }
     }
@@ -236,10 +340,28 @@ public class ApmAgentContext {
         return result;
     }
 
+    /**
+     * @return the number of elapsed times the instrumented threads recorded themselves as their queue was full
+     */
+    public long getPendingOverflowCount() {
+        long result = retiredPendingOverflows.get();
+        for (ThreadMetrics threadMetrics : threadMetricsMap.values()) {
+            result += threadMetrics.getPendingOverflowCount();
+        }
+        return result;
+    }
+
     public List<? extends MethodMetrics> getMethodMetrics() {
         return MethodMetrics.sortedMetrics(methodMetricsMap.values());
     }
 
+    /**
+     * @return the call tree of the samples taken by the call tree sampling strategy
+     */
+    public CallTree getCallTree() {
+        return callTree;
+    }
+
     public boolean isInitialized() {
         return initialized.get();
     }
@@ -341,7 +463,15 @@ public class ApmAgentContext {
     }
 
     private void remove(MethodDescription methodDescription) {
-        MethodMetrics methodMetrics = this.methodMetricsMap.remove(methodDescription.getFullMethodName());
+        synchronized (this) {
+            MethodMetrics methodMetrics = this.methodMetricsMap.remove(methodDescription.getFullMethodName());
+            Integer methodId = methodIds.get(methodDescription.getFullMethodName());
+            if (methodMetrics != null && methodId != null && methodId < methodMetricsById.length) {
+                MethodMetrics[] array = methodMetricsById.clone();
+                array[methodId] = null;
+                methodMetricsById = array;
+            }
+        }
         for (ThreadMetrics threadMetrics : threadMetricsMap.values()) {
             threadMetrics.remove(methodDescription.getFullMethodName());
         }
@@ -0,0 +1,154 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aggregates sampled stack traces into a tree of calls where each node counts the samples
+ * whose innermost frame was that node.
+ * <p/>
+ * The number of nodes is bounded; once the tree is full, samples for new call paths are counted
+ * against the deepest frame already in the tree. Adding a sample for a known call path does not allocate.
+ */
+public class CallTree {
+    public static final int DEFAULT_MAX_NODES = 100000;
+
+    private final int maxNodes;
+    private Node root = new Node("", "");
+    private int nodeCount;
+    private long sampleCount;
+
+    public CallTree() {
+        this(DEFAULT_MAX_NODES);
+    }
+
+    public CallTree(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Adds a stack trace sample, ordered with the most recent call first as returned by
+     * {@link Thread#getStackTrace()}
+     */
+    public synchronized void addSample(StackTraceElement[] stackTrace) {
+        Node node = root;
+        for (int i = stackTrace.length - 1; i >= 0; i--) {
+            StackTraceElement element = stackTrace[i];
+            Node child = node.getChild(element.getClassName(), element.getMethodName());
+            if (child == null) {
+                if (nodeCount >= maxNodes) {
+                    break;
+                }
+                child = node.addChild(element.getClassName(), element.getMethodName());
+                nodeCount++;
+            }
+            node = child;
+        }
+        node.self++;
+        sampleCount++;
+    }
+
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized int getNodeCount() {
+        return nodeCount;
+    }
+
+    public synchronized void reset() {
+        root = new Node("", "");
+        nodeCount = 0;
+        sampleCount = 0;
+    }
+
+    /**
+     * Returns the tree in the folded stack format used by flame graph tools: one line per call path
+     * with the frames from the outermost call separated by semicolons followed by a space and the
+     * number of samples in the innermost frame
+     */
+    public synchronized String getFoldedStacks() {
+        StringBuilder builder = new StringBuilder();
+        List<Node> path = new ArrayList<>();
+        for (Node child : root.children()) {
+            appendFolded(builder, path, child);
+        }
+        return builder.toString();
+    }
+
+    private static void appendFolded(StringBuilder builder, List<Node> path, Node node) {
+        path.add(node);
+        if (node.self > 0) {
+            for (int i = 0; i < path.size(); i++) {
+                if (i > 0) {
+                    builder.append(';');
+                }
+                Node frame = path.get(i);
+                builder.append(frame.className).append('.').append(frame.methodName);
+            }
+            builder.append(' ').append(node.self).append('\n');
+        }
+        for (Node child : node.children()) {
+            appendFolded(builder, path, child);
+        }
+        path.remove(path.size() - 1);
+    }
+
+    private static class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private final String className;
+        private final String methodName;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+        private long self;
+
+        Node(String className, String methodName) {
+            this.className = className;
+            this.methodName = methodName;
+        }
+
+        Node getChild(String className, String methodName) {
+            for (int i = 0; i < childCount; i++) {
+                Node child = children[i];
+                if (child.methodName.equals(methodName) && child.className.equals(className)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        Node addChild(String className, String methodName) {
+            if (childCount == children.length) {
+                Node[] newChildren = new Node[Math.max(2, childCount * 2)];
+                System.arraycopy(children, 0, newChildren, 0, childCount);
+                children = newChildren;
+            }
+            Node child = new Node(className, methodName);
+            children[childCount++] = child;
+            return child;
+        }
+
+        List<Node> children() {
+            List<Node> result = new ArrayList<>(childCount);
+            for (int i = 0; i < childCount; i++) {
+                result.add(children[i]);
+            }
+            return result;
+        }
+    }
+}
@@ -15,19 +15,14 @@
  */
 package io.fabric8.apmagent.metrics;
 
-import com.codahale.metrics.Timer;
-
-import java.util.concurrent.atomic.AtomicReference;
-
 public class ThreadContextMethodMetrics extends MethodMetrics {
     private final Thread thread;
-    private final AtomicReference<ThreadContextMethodMetricsStack> stackRef;
-    private Timer.Context timerContext;
+    private final int methodId;
 
-    public ThreadContextMethodMetrics(Thread thread, AtomicReference<ThreadContextMethodMetricsStack> stackRef, String name) {
+    public ThreadContextMethodMetrics(Thread thread, int methodId, String name) {
         super(name);
         this.thread = thread;
-        this.stackRef = stackRef;
+        this.methodId = methodId;
     }
 
     public String getThreadName() {
@@ -38,28 +33,8 @@ public class ThreadContextMethodMetrics extends MethodMetrics {
         return thread.getId();
     }
 
-    public void onEnter() {
-        timerContext = timer.time();
-        stackRef.get().push(this);
-    }
-
-    public long onExit() {
-        long result = -1;
-        ThreadContextMethodMetrics last = stackRef.get().pop();
-        if (last == this) {
-            result = timerContext.stop();
-        } else {
-            //the exit could have jumped a few methods if its
-            //caused by an exception
-            while (last != null && last != this) {
-                result = last.timerContext.stop();
-                last = stackRef.get().pop();
-            }
-            if (last == this) {
-                result = timerContext.stop();
-            }
-        }
-        return result;
+    public int getMethodId() {
+        return methodId;
     }
 
     public String toString() {
@@ -15,33 +15,82 @@
  */
 package io.fabric8.apmagent.metrics;
 
+/**
+ * The methods the owning thread is currently in along with the time each of them was entered.
+ * Only ever used by the owning thread.
+ */
 class ThreadContextMethodMetricsStack {
 
     private ThreadContextMethodMetrics[] stack;
+    private long[] startTimes;
     private int pointer;
 
     ThreadContextMethodMetricsStack() {
         stack = new ThreadContextMethodMetrics[2];
+        startTimes = new long[2];
     }
 
-    ThreadContextMethodMetrics push(ThreadContextMethodMetrics value) {
+    ThreadContextMethodMetrics push(ThreadContextMethodMetrics value, long startTime) {
         if (pointer + 1 >= stack.length) {
             resizeStack(stack.length * 2);
         }
+        startTimes[pointer] = startTime;
         stack[pointer++] = value;
         return value;
     }
 
+    /**
+     * @return the method on the top of the stack or null if the stack is empty
+     */
+    ThreadContextMethodMetrics peek() {
+        return pointer > 0 ? stack[pointer - 1] : null;
+    }
+
+    /**
+     * @return the time the method on the top of the stack was entered
+     */
+    long peekStartTime() {
+        return startTimes[pointer - 1];
+    }
+
+    /**
+     * @return the method removed from the top of the stack or null if the stack is empty
+     */
     ThreadContextMethodMetrics pop() {
+        if (pointer == 0) {
+            return null;
+        }
         final ThreadContextMethodMetrics result = stack[--pointer];
         stack[pointer] = null;
         return result;
     }
 
+    boolean contains(ThreadContextMethodMetrics value) {
+        for (int i = pointer - 1; i >= 0; i--) {
+            if (stack[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return pointer;
+    }
+
+    void clear() {
+        while (pointer > 0) {
+            stack[--pointer] = null;
+        }
+    }
+
     private void resizeStack(int newCapacity) {
         ThreadContextMethodMetrics[] newStack = new ThreadContextMethodMetrics[newCapacity];
+        long[] newStartTimes = new long[newCapacity];
         System.arraycopy(stack, 0, newStack, 0, Math.min(pointer, newCapacity));
+        System.arraycopy(startTimes, 0, newStartTimes, 0, Math.min(pointer, newCapacity));
         stack = newStack;
+        startTimes = newStartTimes;
     }
 
     public String toString() {
@@ -23,23 +23,46 @@ import java.lang.management.ThreadMXBean;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The method metrics of a single thread, indexed by the method id assigned by the {@link ApmAgentContext}.
+ * <p/>
+ * Only the owning thread enters and exits methods; the elapsed times it measures are put in a
+ * single producer, single consumer queue which the house keeping thread drains into the
+ * per thread and the shared {@link MethodMetrics} - so the instrumented code never touches
+ * a shared {@link com.codahale.metrics.Timer}. If the queue is full the owning thread updates
+ * the timers itself, which is counted by {@link #getPendingOverflowCount()}.
+ */
 public class ThreadMetrics {
-    private final AtomicReference<ThreadContextMethodMetricsStack> methodStackRef;
+    private static final int PENDING_SIZE = 4096;
+    private static final int PENDING_MASK = PENDING_SIZE - 1;
+
+    private final ThreadContextMethodMetricsStack methodStack = new ThreadContextMethodMetricsStack();
     private final ApmAgentContext apmAgentContext;
     private final ThreadInfo threadInfo;
     private final Thread thread;
     private final ThreadMXBean threadMXBean;
     private final ConcurrentMap<String, ThreadContextMethodMetrics> methods = new ConcurrentHashMap<>();
+    private volatile ThreadContextMethodMetrics[] methodsById = new ThreadContextMethodMetrics[64];
     private final MonitoredThreadMethodMetrics monitoredThreadMethodMetrics;
+    private final int[] pendingIds = new int[PENDING_SIZE];
+    private final long[] pendingElapsed = new long[PENDING_SIZE];
+    private final AtomicLong pendingHead = new AtomicLong();
+    private volatile long pendingTail;
+    private volatile long pendingOverflows;
+    private final int epoch;
 
     public ThreadMetrics(ApmAgentContext apmAgentContext, Thread thread) {
-        this.methodStackRef = new AtomicReference<>(new ThreadContextMethodMetricsStack());
+        this(apmAgentContext, thread, 0);
+    }
+
+    ThreadMetrics(ApmAgentContext apmAgentContext, Thread thread, int epoch) {
         this.apmAgentContext = apmAgentContext;
         this.threadMXBean = ManagementFactory.getThreadMXBean();
         this.threadInfo = threadMXBean.getThreadInfo(thread.getId());
         this.thread = thread;
+        this.epoch = epoch;
         ApmConfiguration configuration = apmAgentContext.getConfiguration();
         this.monitoredThreadMethodMetrics = new MonitoredThreadMethodMetrics(thread, apmAgentContext);
         this.monitoredThreadMethodMetrics.setMonitorSize(configuration.getThreadMetricDepth());
@@ -53,6 +76,10 @@ public class ThreadMetrics {
         return thread;
     }
 
+    int getEpoch() {
+        return epoch;
+    }
+
     public boolean isDead() {
         return !thread.isAlive();
     }
@@ -74,32 +101,155 @@ public class ThreadMetrics {
     }
 
     public void enter(String methodName, boolean alwaysActive) {
-        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodName);
-        if (threadContextMethodMetrics == null) {
-            threadContextMethodMetrics = new ThreadContextMethodMetrics(thread, this.methodStackRef, methodName);
-            threadContextMethodMetrics.setActive(apmAgentContext.isMonitorByDefault());
-            methods.putIfAbsent(methodName, threadContextMethodMetrics);
-        }
+        enter(apmAgentContext.getMethodId(methodName), alwaysActive);
+    }
+
+    public void enter(int methodId, boolean alwaysActive) {
+        ThreadContextMethodMetrics threadContextMethodMetrics = getOrCreate(methodId);
         if (alwaysActive || threadContextMethodMetrics.isActive()) {
-            threadContextMethodMetrics.onEnter();
+            methodStack.push(threadContextMethodMetrics, System.nanoTime());
         }
     }
 
+    /**
+     * Exits a method on behalf of a thread other than the owning thread (such as the sampling
+     * thread) so the timers are updated straight away rather than queued
+     */
     public long exit(String methodName, boolean alwaysActive) {
+        return exit(apmAgentContext.getMethodId(methodName), alwaysActive, false);
+    }
+
+    /**
+     * Exits a method on the owning thread, queueing the elapsed times for the house keeping thread
+     */
+    public long exit(int methodId, boolean alwaysActive) {
+        return exit(methodId, alwaysActive, true);
+    }
+
+    private long exit(int methodId, boolean alwaysActive, boolean queue) {
         long result = -1;
-        ThreadContextMethodMetrics threadContextMethodMetrics = methods.get(methodName);
+        ThreadContextMethodMetrics[] array = methodsById;
+        ThreadContextMethodMetrics threadContextMethodMetrics = methodId < array.length ? array[methodId] : null;
         if (threadContextMethodMetrics != null) {
-            if (alwaysActive || threadContextMethodMetrics.isActive()) {
-                result = threadContextMethodMetrics.onExit();
+            if ((alwaysActive || threadContextMethodMetrics.isActive()) && methodStack.contains(threadContextMethodMetrics)) {
+                long now = System.nanoTime();
+                //the exit could have jumped a few methods if its
+                //caused by an exception
+                ThreadContextMethodMetrics last;
+                do {
+                    last = methodStack.peek();
+                    result = now - methodStack.peekStartTime();
+                    methodStack.pop();
+                    record(last, result, queue);
+                } while (last != threadContextMethodMetrics);
             }
         } else {
             //something weird happended reset the stack
-            methodStackRef.set(new ThreadContextMethodMetricsStack());
+            methodStack.clear();
+        }
+        return result;
+    }
+
+    private void record(ThreadContextMethodMetrics threadContextMethodMetrics, long elapsed, boolean queue) {
+        int methodId = threadContextMethodMetrics.getMethodId();
+        if (!queue || !offer(methodId, elapsed)) {
+            threadContextMethodMetrics.update(elapsed);
+            MethodMetrics methodMetrics = apmAgentContext.findMethodMetrics(methodId);
+            if (methodMetrics != null) {
+                methodMetrics.update(elapsed);
+            }
+        }
+    }
+
+    private boolean offer(int methodId, long elapsed) {
+        long head = pendingHead.get();
+        if (head - pendingTail >= PENDING_SIZE) {
+            // only ever written by the owning thread
+            pendingOverflows++;
+            return false;
+        }
+        int index = (int) head & PENDING_MASK;
+        pendingIds[index] = methodId;
+        pendingElapsed[index] = elapsed;
+        pendingHead.lazySet(head + 1);
+        return true;
+    }
 
+    /**
+     * Applies the queued elapsed times to the timers; must only be called by the house keeping thread
+     */
+    void drain() {
+        long tail = pendingTail;
+        long head = pendingHead.get();
+        ThreadContextMethodMetrics[] array = methodsById;
+        while (tail < head) {
+            int index = (int) tail & PENDING_MASK;
+            int methodId = pendingIds[index];
+            long elapsed = pendingElapsed[index];
+            ThreadContextMethodMetrics threadContextMethodMetrics = methodId < array.length ? array[methodId] : null;
+            // skip the methods removed since the elapsed time was queued
+            if (threadContextMethodMetrics != null) {
+                threadContextMethodMetrics.update(elapsed);
+                MethodMetrics methodMetrics = apmAgentContext.findMethodMetrics(methodId);
+                if (methodMetrics != null) {
+                    methodMetrics.update(elapsed);
+                }
+            }
+            tail++;
+        }
+        pendingTail = tail;
+    }
+
+    private ThreadContextMethodMetrics getOrCreate(int methodId) {
+        ThreadContextMethodMetrics[] array = methodsById;
+        ThreadContextMethodMetrics result = methodId < array.length ? array[methodId] : null;
+        if (result == null) {
+            result = create(methodId);
         }
         return result;
     }
 
+    private synchronized ThreadContextMethodMetrics create(int methodId) {
+        ThreadContextMethodMetrics[] array = methodsById;
+        if (methodId >= array.length) {
+            ThreadContextMethodMetrics[] newArray = new ThreadContextMethodMetrics[Math.max(array.length * 2, methodId + 1)];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            array = newArray;
+        } else if (array[methodId] != null) {
+            return array[methodId];
+        } else {
+            array = array.clone();
+        }
+        String methodName = apmAgentContext.getMethodName(methodId);
+        ThreadContextMethodMetrics result = new ThreadContextMethodMetrics(thread, methodId, methodName);
+        result.setActive(apmAgentContext.isMonitorByDefault());
+        // the shared metrics are only created on entering a method, never when recording its elapsed time
+        apmAgentContext.getMethodMetrics(methodId);
+        array[methodId] = result;
+        methods.put(methodName, result);
+        methodsById = array;
+        return result;
+    }
+
+    /**
+     * @return the number of elapsed times the owning thread could not queue because the queue was full
+     */
+    public long getPendingOverflowCount() {
+        return pendingOverflows;
+    }
+
+    /**
+     * @return the number of methods the owning thread is in
+     */
+    int getStackDepth() {
+        return methodStack.size();
+    }
+
+    ThreadContextMethodMetrics getThreadContextMethodMetrics(int methodId) {
+        ThreadContextMethodMetrics[] array = methodsById;
+        return methodId < array.length ? array[methodId] : null;
+    }
+
     public String toString() {
         return "ThreadMetrics:" + getName();
     }
@@ -108,8 +258,13 @@ public class ThreadMetrics {
         monitoredThreadMethodMetrics.destroy();
     }
 
-    public ThreadContextMethodMetrics remove(String fullMethodName) {
+    public synchronized ThreadContextMethodMetrics remove(String fullMethodName) {
         ThreadContextMethodMetrics result = methods.remove(fullMethodName);
+        if (result != null) {
+            ThreadContextMethodMetrics[] array = methodsById.clone();
+            array[result.getMethodId()] = null;
+            methodsById = array;
+        }
         return result;
     }
 
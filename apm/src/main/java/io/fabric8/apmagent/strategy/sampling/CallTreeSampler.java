@@ -0,0 +1,163 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import io.fabric8.apmagent.metrics.CallTree;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.regex.Pattern;
+
+/**
+ * Samples the stacks of a filtered set of threads into a {@link CallTree}.
+ * <p/>
+ * Unlike {@link Thread#getAllStackTraces()} only the threads whose name matches the pattern and which
+ * belong to the thread group (or one of its sub groups) are sampled, with a single bounded depth
+ * {@link ThreadMXBean#getThreadInfo(long[], int)} call per sample. The threads are found by walking
+ * the thread groups, which does not stop the JVM, so {@link #refreshThreads()} only needs calling
+ * now and then to pick up new threads. Only runnable threads are added to the call tree.
+ */
+public class CallTreeSampler {
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final Pattern threadNamePattern;
+    private final String threadGroupName;
+    private final int maxDepth;
+    private long[] threadIds = new long[0];
+
+    /**
+     * @param threadNamePattern the regular expression the thread names must match or null for all threads
+     * @param threadGroupName   the name of the thread group the threads must belong to or null for all groups
+     * @param maxDepth          the maximum number of frames of each stack to sample
+     */
+    public CallTreeSampler(String threadNamePattern, String threadGroupName, int maxDepth) {
+        this(compile(threadNamePattern), threadGroupName, maxDepth);
+    }
+
+    /**
+     * @param threadNamePattern the compiled pattern the thread names must match or null for all threads
+     * @param threadGroupName   the name of the thread group the threads must belong to or null for all groups
+     * @param maxDepth          the maximum number of frames of each stack to sample
+     */
+    public CallTreeSampler(Pattern threadNamePattern, String threadGroupName, int maxDepth) {
+        this.threadNamePattern = threadNamePattern;
+        this.threadGroupName = threadGroupName != null && !threadGroupName.isEmpty() ? threadGroupName : null;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Compiles a thread name pattern, returning null for a null or empty pattern
+     *
+     * @throws java.util.regex.PatternSyntaxException if the pattern is invalid
+     */
+    public static Pattern compile(String threadNamePattern) {
+        return threadNamePattern != null && !threadNamePattern.isEmpty() ? Pattern.compile(threadNamePattern) : null;
+    }
+
+    /**
+     * Finds the threads to sample
+     */
+    public void refreshThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] threads;
+        int count;
+        do {
+            threads = new Thread[root.activeCount() * 2 + 16];
+            count = root.enumerate(threads, true);
+        } while (count == threads.length);
+
+        long[] ids = new long[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            Thread thread = threads[i];
+            if (thread != Thread.currentThread() && matches(thread)) {
+                ids[size++] = thread.getId();
+            }
+        }
+        long[] result = new long[size];
+        System.arraycopy(ids, 0, result, 0, size);
+        threadIds = result;
+    }
+
+    /**
+     * Samples the threads found by the last {@link #refreshThreads()} into the call tree
+     *
+     * @return the number of stacks added to the call tree
+     */
+    public int sample(CallTree callTree) {
+        long[] ids = threadIds;
+        if (ids.length == 0) {
+            return 0;
+        }
+        int result = 0;
+        for (ThreadInfo threadInfo : threadMXBean.getThreadInfo(ids, maxDepth)) {
+            if (threadInfo != null && threadInfo.getThreadState() == Thread.State.RUNNABLE) {
+                StackTraceElement[] stackTrace = threadInfo.getStackTrace();
+                if (stackTrace.length > 0) {
+                    callTree.addSample(stackTrace);
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+    public int getThreadCount() {
+        return threadIds.length;
+    }
+
+    public Pattern getThreadNamePattern() {
+        return threadNamePattern;
+    }
+
+    /**
+     * Whether this sampler already uses the given settings, so it can be kept when the configuration changes
+     */
+    public boolean hasSettings(String threadNamePattern, String threadGroupName, int maxDepth) {
+        String groupName = threadGroupName != null && !threadGroupName.isEmpty() ? threadGroupName : null;
+        return hasThreadNamePattern(threadNamePattern) && equals(this.threadGroupName, groupName) && this.maxDepth == maxDepth;
+    }
+
+    /**
+     * Whether this sampler was created with the given thread name pattern, so it needs no compiling again
+     */
+    public boolean hasThreadNamePattern(String threadNamePattern) {
+        String pattern = this.threadNamePattern != null ? this.threadNamePattern.pattern() : null;
+        return equals(pattern, threadNamePattern != null && !threadNamePattern.isEmpty() ? threadNamePattern : null);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    boolean matches(Thread thread) {
+        if (threadNamePattern != null && !threadNamePattern.matcher(thread.getName()).matches()) {
+            return false;
+        }
+        if (threadGroupName != null) {
+            for (ThreadGroup group = thread.getThreadGroup(); group != null; group = group.getParent()) {
+                if (threadGroupName.equals(group.getName())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+}
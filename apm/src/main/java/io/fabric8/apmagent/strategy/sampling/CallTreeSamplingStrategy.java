@@ -0,0 +1,135 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import io.fabric8.apmagent.ApmConfiguration;
+import io.fabric8.apmagent.Strategy;
+import io.fabric8.apmagent.metrics.ApmAgentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A low overhead alternative to the {@link SamplingStrategy} which samples only the threads selected by
+ * the sampling thread name pattern and thread group of the {@link ApmConfiguration}, to a bounded stack
+ * depth, into the call tree of the {@link ApmAgentContext}.
+ */
+public class CallTreeSamplingStrategy implements Strategy, Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(CallTreeSamplingStrategy.class);
+    private static final long REFRESH_INTERVAL = 1000;
+    private ApmAgentContext context;
+    private ApmConfiguration configuration;
+    private AtomicBoolean initialized = new AtomicBoolean();
+    private AtomicBoolean started = new AtomicBoolean();
+    private Thread samplingThread;
+    private volatile CallTreeSampler sampler;
+
+    public CallTreeSamplingStrategy(ApmAgentContext context) {
+        this.context = context;
+        this.configuration = context.getConfiguration();
+    }
+
+    @Override
+    public void initialize() throws Exception {
+        if (initialized.compareAndSet(false, true)) {
+            sampler = createSampler();
+            samplingThread = new Thread(this, "CallTreeSamplingStrategy");
+            samplingThread.setDaemon(true);
+            configuration.addChangeListener(this);
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (started.compareAndSet(false, true)) {
+            initialize();
+            samplingThread.start();
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        started.set(false);
+    }
+
+    @Override
+    public void shutDown() throws Exception {
+        if (initialized.compareAndSet(true, false)) {
+            configuration.removeChangeListener(this);
+            samplingThread = null;
+        }
+    }
+
+    /**
+     * Replaces the sampler only if its settings changed. An invalid thread name pattern is logged and
+     * the previous pattern is kept.
+     */
+    @Override
+    public void configurationChanged() {
+        CallTreeSampler current = sampler;
+        String threadNamePattern = configuration.getSamplingThreadNamePattern();
+        String threadGroup = configuration.getSamplingThreadGroup();
+        int stackDepth = configuration.getSamplingStackDepth();
+        if (current != null && !current.hasSettings(threadNamePattern, threadGroup, stackDepth)) {
+            Pattern pattern = current.getThreadNamePattern();
+            if (!current.hasThreadNamePattern(threadNamePattern)) {
+                try {
+                    pattern = CallTreeSampler.compile(threadNamePattern);
+                } catch (PatternSyntaxException e) {
+                    LOG.warn("Invalid sampling thread name pattern " + threadNamePattern + ", keeping "
+                        + pattern + ": " + e.getDescription());
+                }
+            }
+            sampler = new CallTreeSampler(pattern, threadGroup, stackDepth);
+        }
+    }
+
+    CallTreeSampler getSampler() {
+        return sampler;
+    }
+
+    @Override
+    public void run() {
+        long lastRefresh = 0;
+        CallTreeSampler current = null;
+        while (started.get()) {
+            try {
+                long currentTime = System.currentTimeMillis();
+                if (current != sampler || (currentTime - lastRefresh) > REFRESH_INTERVAL) {
+                    current = sampler;
+                    current.refreshThreads();
+                    lastRefresh = currentTime;
+                }
+                current.sample(context.getCallTree());
+                Thread.sleep(configuration.getSamplingInterval());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Throwable e) {
+                LOG.warn("Failed to sample threads", e);
+            }
+        }
+    }
+
+    private CallTreeSampler createSampler() {
+        return new CallTreeSampler(configuration.getSamplingThreadNamePattern(),
+                                   configuration.getSamplingThreadGroup(),
+                                   configuration.getSamplingStackDepth());
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CallTreeTest {
+
+    @Test
+    public void testFoldedStacks() {
+        CallTree callTree = new CallTree();
+        callTree.addSample(stack("a.B.run", "a.B.work", "a.C.read"));
+        callTree.addSample(stack("a.B.run", "a.B.work", "a.C.read"));
+        callTree.addSample(stack("a.B.run", "a.B.work"));
+        callTree.addSample(stack("a.B.run", "a.D.write"));
+
+        assertEquals(4, callTree.getSampleCount());
+        assertEquals(4, callTree.getNodeCount());
+        assertEquals("a.B.run;a.B.work 1\n"
+                + "a.B.run;a.B.work;a.C.read 2\n"
+                + "a.B.run;a.D.write 1\n", callTree.getFoldedStacks());
+
+        callTree.reset();
+        assertEquals(0, callTree.getSampleCount());
+        assertEquals(0, callTree.getNodeCount());
+        assertEquals("", callTree.getFoldedStacks());
+    }
+
+    @Test
+    public void testMaxNodes() {
+        CallTree callTree = new CallTree(3);
+        callTree.addSample(stack("a.B.run", "a.B.work", "a.C.read", "a.C.fill"));
+        assertEquals(3, callTree.getNodeCount());
+
+        // once full, samples are counted in their deepest known frame
+        callTree.addSample(stack("a.B.run", "a.D.write"));
+        callTree.addSample(stack("a.B.run", "a.B.work", "a.C.read"));
+        assertEquals(3, callTree.getNodeCount());
+        assertEquals(3, callTree.getSampleCount());
+        assertEquals("a.B.run 1\n"
+                + "a.B.run;a.B.work;a.C.read 2\n", callTree.getFoldedStacks());
+    }
+
+    /**
+     * Creates a stack trace from the outermost to the innermost call, returned innermost first like
+     * {@link Thread#getStackTrace()}
+     */
+    private static StackTraceElement[] stack(String... calls) {
+        StackTraceElement[] result = new StackTraceElement[calls.length];
+        for (int i = 0; i < calls.length; i++) {
+            String call = calls[i];
+            int index = call.lastIndexOf('.');
+            result[calls.length - 1 - i] = new StackTraceElement(call.substring(0, index), call.substring(index + 1), null, -1);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.metrics;
+
+import io.fabric8.apmagent.ApmAgent;
+import io.fabric8.apmagent.ClassInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadMetricsTest {
+    private ApmAgentContext context;
+    private ThreadMetrics threadMetrics;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new ApmAgentContext(ApmAgent.INSTANCE);
+        threadMetrics = new ThreadMetrics(context, Thread.currentThread());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        threadMetrics.destroy();
+    }
+
+    @Test
+    public void testMethodIds() {
+        int first = context.getMethodId("test.Foo@first()V");
+        int second = context.getMethodId("test.Foo@second()V");
+        assertTrue(first != second);
+        assertEquals(first, context.getMethodId("test.Foo@first()V"));
+        assertEquals("test.Foo@second()V", context.getMethodName(second));
+
+        // more methods than the initial arrays hold
+        int last = -1;
+        for (int i = 0; i < 1000; i++) {
+            last = context.getMethodId("test.Bar@method" + i + "()V");
+        }
+        assertEquals(last, context.getMethodId("test.Bar@method999()V"));
+        assertEquals("test.Bar@method999()V", context.getMethodName(last));
+        assertNull(context.getMethodName(last + 1));
+
+        threadMetrics.enter(last, false);
+        threadMetrics.exit(last, false);
+        threadMetrics.drain();
+        assertEquals(1, threadMetrics.getThreadContextMethodMetrics(last).getCount());
+        assertEquals(1, context.findMethodMetrics(last).getCount());
+    }
+
+    @Test
+    public void testDrainAggregates() {
+        int methodId = context.getMethodId("test.Foo@run()V");
+        for (int i = 0; i < 3; i++) {
+            threadMetrics.enter(methodId, false);
+            threadMetrics.exit(methodId, false);
+        }
+        ThreadContextMethodMetrics threadContextMethodMetrics = threadMetrics.getThreadContextMethodMetrics(methodId);
+        MethodMetrics methodMetrics = context.findMethodMetrics(methodId);
+        assertEquals(0, threadContextMethodMetrics.getCount());
+        assertEquals(0, methodMetrics.getCount());
+
+        threadMetrics.drain();
+        assertEquals(3, threadContextMethodMetrics.getCount());
+        assertEquals(3, methodMetrics.getCount());
+        assertSame(methodMetrics, context.getMethodMetrics().get(0));
+
+        // draining again does not count the same elapsed times twice
+        threadMetrics.drain();
+        assertEquals(3, methodMetrics.getCount());
+    }
+
+    @Test
+    public void testFullQueueAndWraparound() {
+        int methodId = context.getMethodId("test.Foo@run()V");
+        for (int i = 0; i < 4096 + 10; i++) {
+            threadMetrics.enter(methodId, false);
+            threadMetrics.exit(methodId, false);
+        }
+        // the elapsed times which did not fit were recorded straight away
+        assertEquals(10, threadMetrics.getPendingOverflowCount());
+        assertEquals(10, threadMetrics.getThreadContextMethodMetrics(methodId).getCount());
+        threadMetrics.drain();
+        assertEquals(4106, threadMetrics.getThreadContextMethodMetrics(methodId).getCount());
+
+        for (int i = 0; i < 10000; i++) {
+            threadMetrics.enter(methodId, false);
+            threadMetrics.exit(methodId, false);
+            if (i % 1000 == 999) {
+                threadMetrics.drain();
+            }
+        }
+        assertEquals(10, threadMetrics.getPendingOverflowCount());
+        assertEquals(14106, threadMetrics.getThreadContextMethodMetrics(methodId).getCount());
+        assertEquals(14106, context.findMethodMetrics(methodId).getCount());
+    }
+
+    @Test
+    public void testRecursionAndExceptionsKeepTheStackBalanced() {
+        int outer = context.getMethodId("test.Foo@outer()V");
+        int middle = context.getMethodId("test.Foo@middle()V");
+        int inner = context.getMethodId("test.Foo@inner()V");
+
+        threadMetrics.enter(outer, false);
+        threadMetrics.enter(outer, false);
+        assertEquals(2, threadMetrics.getStackDepth());
+        threadMetrics.exit(outer, false);
+        assertEquals(1, threadMetrics.getStackDepth());
+        threadMetrics.exit(outer, false);
+        assertEquals(0, threadMetrics.getStackDepth());
+
+        // inner and middle threw, so only outer exits
+        threadMetrics.enter(outer, false);
+        threadMetrics.enter(middle, false);
+        threadMetrics.enter(inner, false);
+        assertEquals(3, threadMetrics.getStackDepth());
+        threadMetrics.exit(outer, false);
+        assertEquals(0, threadMetrics.getStackDepth());
+
+        // exiting a method the thread is not in leaves the stack alone
+        threadMetrics.enter(outer, false);
+        threadMetrics.exit(inner, false);
+        assertEquals(1, threadMetrics.getStackDepth());
+        threadMetrics.exit(outer, false);
+        assertEquals(0, threadMetrics.getStackDepth());
+
+        threadMetrics.drain();
+        assertEquals(4, threadMetrics.getThreadContextMethodMetrics(outer).getCount());
+        assertEquals(1, threadMetrics.getThreadContextMethodMetrics(middle).getCount());
+        assertEquals(1, threadMetrics.getThreadContextMethodMetrics(inner).getCount());
+    }
+
+    @Test
+    public void testDrainSkipsRemovedMethods() {
+        ClassInfo classInfo = context.getClassInfo("test/Foo");
+        classInfo.addMethod("run", "()V");
+        classInfo.addTransformedMethod("run", "()V");
+        int methodId = context.getMethodId("test.Foo@run()V");
+        threadMetrics.enter(methodId, false);
+        threadMetrics.exit(methodId, false);
+
+        context.resetAll(classInfo);
+        threadMetrics.drain();
+        assertNull(context.findMethodMetrics(methodId));
+        assertEquals(0, context.getMethodMetrics().size());
+
+        threadMetrics.enter(methodId, false);
+        threadMetrics.exit(methodId, false);
+        threadMetrics.remove("test.Foo@run()V");
+        threadMetrics.drain();
+        assertNull(threadMetrics.getThreadContextMethodMetrics(methodId));
+        assertNull(context.findMethodMetrics(methodId));
+    }
+}
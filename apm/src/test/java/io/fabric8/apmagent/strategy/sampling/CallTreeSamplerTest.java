@@ -0,0 +1,115 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import io.fabric8.apmagent.metrics.CallTree;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CallTreeSamplerTest {
+
+    @Test
+    public void testMatchesThreadName() {
+        CallTreeSampler sampler = new CallTreeSampler("worker-\\d+", null, 16);
+        assertTrue(sampler.matches(new Thread("worker-12")));
+        assertFalse(sampler.matches(new Thread("worker-x")));
+        assertFalse(sampler.matches(new Thread("my-worker-12")));
+    }
+
+    @Test
+    public void testMatchesThreadGroup() {
+        ThreadGroup group = new ThreadGroup("workers");
+        ThreadGroup subGroup = new ThreadGroup(group, "io");
+        CallTreeSampler sampler = new CallTreeSampler("", "workers", 16);
+        assertTrue(sampler.matches(new Thread(group, "a")));
+        assertTrue(sampler.matches(new Thread(subGroup, "b")));
+        assertFalse(sampler.matches(new Thread("c")));
+
+        sampler = new CallTreeSampler("b", "workers", 16);
+        assertFalse(sampler.matches(new Thread(group, "a")));
+        assertTrue(sampler.matches(new Thread(subGroup, "b")));
+    }
+
+    @Test
+    public void testMatchesAllThreads() {
+        CallTreeSampler sampler = new CallTreeSampler((String) null, null, 16);
+        assertTrue(sampler.matches(new Thread("any")));
+        assertTrue(sampler.matches(new Thread(new ThreadGroup("group"), "other")));
+    }
+
+    @Test
+    public void testHasSettings() {
+        CallTreeSampler sampler = new CallTreeSampler("worker-.*", "", 16);
+        assertTrue(sampler.hasSettings("worker-.*", null, 16));
+        assertFalse(sampler.hasSettings("worker-.*", null, 8));
+        assertFalse(sampler.hasSettings("worker-.*", "workers", 16));
+        assertFalse(sampler.hasSettings("other-.*", null, 16));
+        assertTrue(new CallTreeSampler((String) null, null, 16).hasSettings("", "", 16));
+    }
+
+    @Test
+    public void testSampleMatchingThreads() throws Exception {
+        final CountDownLatch stop = new CountDownLatch(1);
+        Thread busy = new Thread("CallTreeSamplerTest-busy") {
+            @Override
+            public void run() {
+                while (stop.getCount() > 0) {
+                    spin();
+                }
+            }
+        };
+        Thread idle = new Thread("CallTreeSamplerTest-idle") {
+            @Override
+            public void run() {
+                try {
+                    stop.await();
+                } catch (InterruptedException e) {
+                    // done
+                }
+            }
+        };
+        busy.start();
+        idle.start();
+        try {
+            CallTreeSampler sampler = new CallTreeSampler("CallTreeSamplerTest-.*", null, 16);
+            sampler.refreshThreads();
+            assertEquals(2, sampler.getThreadCount());
+
+            // only the runnable thread is sampled
+            CallTree callTree = new CallTree();
+            int samples = 0;
+            for (int i = 0; i < 100 && samples == 0; i++) {
+                samples = sampler.sample(callTree);
+                Thread.sleep(10);
+            }
+            assertEquals(1, samples);
+            assertTrue(callTree.getFoldedStacks().contains(getClass().getName()));
+        } finally {
+            stop.countDown();
+            busy.join();
+            idle.join();
+        }
+    }
+
+    private static void spin() {
+        Thread.yield();
+    }
+}
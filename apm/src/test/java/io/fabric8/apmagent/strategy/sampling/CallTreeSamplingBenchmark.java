@@ -0,0 +1,150 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import io.fabric8.apmagent.metrics.CallTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the pauses the samplers cause in application threads by sampling the latency of a small,
+ * fixed piece of work while a sampler runs every 1, 10 or 100 ms. The JVM also has a couple of hundred
+ * idle threads, as a container would, which {@link Thread#getAllStackTraces()} has to walk but the
+ * {@link CallTreeSampler} filters out. Compare the high percentiles against the <code>none</code> runs.
+ * <p/>
+ * Run from the IDE or via the main method with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(4)
+@Fork(1)
+public class CallTreeSamplingBenchmark {
+    private static final int IDLE_THREADS = 200;
+
+    @Param({"none", "allStackTraces", "callTree"})
+    String sampler;
+
+    @Param({"1", "10", "100"})
+    int intervalMillis;
+
+    private final List<Thread> idleThreads = new ArrayList<>();
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
+    private volatile boolean running;
+    private Thread samplerThread;
+    private long[] data;
+
+    @Setup
+    public void setup() {
+        data = new long[1024];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i * 31L;
+        }
+        for (int i = 0; i < IDLE_THREADS; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        stopLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, "idle-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            idleThreads.add(thread);
+        }
+        if (!"none".equals(sampler)) {
+            running = true;
+            samplerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    sample();
+                }
+            }, "sampler");
+            samplerThread.setDaemon(true);
+            samplerThread.start();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        running = false;
+        if (samplerThread != null) {
+            samplerThread.join();
+        }
+        stopLatch.countDown();
+        for (Thread thread : idleThreads) {
+            thread.join();
+        }
+    }
+
+    private void sample() {
+        CallTree callTree = new CallTree();
+        CallTreeSampler callTreeSampler = new CallTreeSampler(".*jmh-worker.*", null, 64);
+        callTreeSampler.refreshThreads();
+        while (running) {
+            if ("allStackTraces".equals(sampler)) {
+                for (StackTraceElement[] stackTrace : Thread.getAllStackTraces().values()) {
+                    if (stackTrace.length > 0) {
+                        callTree.addSample(stackTrace);
+                    }
+                }
+            } else {
+                callTreeSampler.sample(callTree);
+            }
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    @Benchmark
+    public long work() {
+        long result = 0;
+        for (long value : data) {
+            result = result * 31 + (value ^ (result >>> 7));
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(CallTreeSamplingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
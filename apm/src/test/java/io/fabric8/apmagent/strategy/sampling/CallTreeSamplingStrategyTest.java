@@ -0,0 +1,67 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.apmagent.strategy.sampling;
+
+import io.fabric8.apmagent.ApmAgent;
+import io.fabric8.apmagent.ApmConfiguration;
+import io.fabric8.apmagent.metrics.ApmAgentContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class CallTreeSamplingStrategyTest {
+    private ApmConfiguration configuration;
+    private CallTreeSamplingStrategy strategy;
+
+    @Before
+    public void setUp() throws Exception {
+        configuration = ApmAgent.INSTANCE.getConfiguration();
+        configuration.setSamplingThreadNamePattern("worker-.*");
+        strategy = new CallTreeSamplingStrategy(new ApmAgentContext(ApmAgent.INSTANCE));
+        strategy.initialize();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        strategy.shutDown();
+        configuration.setSamplingThreadNamePattern(null);
+    }
+
+    @Test
+    public void testUnchangedSettingsKeepTheSampler() {
+        CallTreeSampler sampler = strategy.getSampler();
+        configuration.setSamplingThreadNamePattern("worker-.*");
+        assertSame(sampler, strategy.getSampler());
+
+        configuration.setSamplingStackDepth(configuration.getSamplingStackDepth() + 1);
+        assertNotSame(sampler, strategy.getSampler());
+        assertSame(sampler.getThreadNamePattern(), strategy.getSampler().getThreadNamePattern());
+        configuration.setSamplingStackDepth(configuration.getSamplingStackDepth() - 1);
+    }
+
+    @Test
+    public void testInvalidPatternKeepsThePreviousPattern() {
+        configuration.setSamplingThreadNamePattern("worker-[");
+        assertEquals("worker-.*", strategy.getSampler().getThreadNamePattern().pattern());
+
+        configuration.setSamplingThreadNamePattern("io-.*");
+        assertEquals("io-.*", strategy.getSampler().getThreadNamePattern().pattern());
+    }
+}
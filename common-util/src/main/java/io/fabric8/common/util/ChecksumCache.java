@@ -0,0 +1,240 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.common.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the CRC32 checksums computed by {@link ChecksumUtils} so that unchanged files are not read again.
+ * A cached checksum is used as long as the size, the last modification time and the file key (the inode on
+ * unix) of the file are the same. The cache can be persisted in a properties file, in the same way as the
+ * {@link ChecksumUtils#FOLDER_CHECKSUM_CACHE} files.
+ */
+public class ChecksumCache {
+
+    /**
+     * Files bigger than this are hashed through a memory mapping by default
+     */
+    public static final long DEFAULT_MAPPED_THRESHOLD = 16 * 1024 * 1024;
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(ChecksumCache.class);
+
+    private static final int MAPPED_WINDOW = 64 * 1024 * 1024;
+
+    private final File cacheFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+    private volatile long mappedThreshold = DEFAULT_MAPPED_THRESHOLD;
+
+    /**
+     * Creates a cache which is only kept in memory
+     */
+    public ChecksumCache() {
+        this(null);
+    }
+
+    /**
+     * Creates a cache persisted in the given file, loading its current content if it exists
+     */
+    public ChecksumCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+        load();
+    }
+
+    /**
+     * Sets the size above which files are hashed through a memory mapping, a negative value disables it
+     */
+    public void setMappedThreshold(long mappedThreshold) {
+        this.mappedThreshold = mappedThreshold;
+    }
+
+    /**
+     * Returns the checksum of the given file, reading the file only if it changed since it was last hashed
+     */
+    public long checksum(File file) throws IOException {
+        File canonical = file.getCanonicalFile();
+        String path = canonical.getPath();
+        Entry stat = stat(canonical);
+        Entry cached = entries.get(path);
+        if (cached != null && cached.matches(stat)) {
+            return cached.checksum;
+        }
+        long checksum = compute(canonical, stat.size);
+        // only trust the result if the file did not change while being read
+        if (stat.matches(stat(canonical))) {
+            entries.put(path, new Entry(stat.size, stat.lastModified, stat.key, checksum));
+            dirty = true;
+        }
+        return checksum;
+    }
+
+    /**
+     * Forgets the checksum of the given file
+     */
+    public void invalidate(File file) throws IOException {
+        if (entries.remove(file.getCanonicalPath()) != null) {
+            dirty = true;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Saves the cache if it has a file and changed since it was loaded or saved. Entries of files which
+     * no longer exist are dropped.
+     */
+    public synchronized void save() throws IOException {
+        if (cacheFile == null || !dirty) {
+            return;
+        }
+        dirty = false;
+        Properties properties = new Properties();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (new File(entry.getKey()).isFile()) {
+                properties.put(entry.getKey(), entry.getValue().toString());
+            } else {
+                entries.remove(entry.getKey());
+            }
+        }
+        File dir = cacheFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        try (OutputStream os = new FileOutputStream(tmp)) {
+            properties.store(os, "Updated on " + new Date());
+        }
+        if (!tmp.renameTo(cacheFile)) {
+            cacheFile.delete();
+            if (!tmp.renameTo(cacheFile)) {
+                throw new IOException("Unable to rename " + tmp + " to " + cacheFile);
+            }
+        }
+    }
+
+    private void load() {
+        if (cacheFile == null || !cacheFile.isFile()) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream is = new FileInputStream(cacheFile)) {
+            properties.load(is);
+        } catch (IOException e) {
+            LOG.warn("Failed to load checksum cache file " + cacheFile + ". " + e, e);
+            return;
+        }
+        for (String path : properties.stringPropertyNames()) {
+            Entry entry = Entry.parse(properties.getProperty(path));
+            if (entry != null) {
+                entries.put(path, entry);
+            } else {
+                LOG.debug("Ignoring invalid checksum cache entry for {} in {}", path, cacheFile);
+            }
+        }
+    }
+
+    private long compute(File file, long size) throws IOException {
+        long threshold = mappedThreshold;
+        if (threshold >= 0 && size > threshold) {
+            return checksumMapped(file, size);
+        }
+        return ChecksumUtils.checksumFile(file);
+    }
+
+    static long checksumMapped(File file, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[65536];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(MAPPED_WINDOW, size - position);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                while (mapped.hasRemaining()) {
+                    int l = Math.min(buffer.length, mapped.remaining());
+                    mapped.get(buffer, 0, l);
+                    crc.update(buffer, 0, l);
+                }
+                position += length;
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static Entry stat(File file) throws IOException {
+        BasicFileAttributes attributes = java.nio.file.Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        if (!attributes.isRegularFile()) {
+            throw new IOException("Not a file: " + file);
+        }
+        Object fileKey = attributes.fileKey();
+        return new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                fileKey != null ? fileKey.toString() : "", 0L);
+    }
+
+    private static final class Entry {
+        final long size;
+        final long lastModified;
+        final String key;
+        final long checksum;
+
+        Entry(long size, long lastModified, String key, long checksum) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.key = key;
+            this.checksum = checksum;
+        }
+
+        boolean matches(Entry stat) {
+            return size == stat.size && lastModified == stat.lastModified && key.equals(stat.key);
+        }
+
+        static Entry parse(String value) {
+            // the file key goes last as it may contain the separator
+            String[] parts = value.split(",", 4);
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                return new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3], Long.parseLong(parts[0]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return checksum + "," + size + "," + lastModified + "," + key;
+        }
+    }
+}
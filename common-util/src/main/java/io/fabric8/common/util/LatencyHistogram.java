@@ -0,0 +1,173 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.common.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock free histogram of latencies using log linear buckets in the style of an HDR histogram.
+ * <p/>
+ * Values below 64 are counted exactly; larger values are counted in one of 32 linear sub buckets
+ * per power of two so any recorded value is reported with a relative error of at most about 3%.
+ * Recording a value is a few atomic increments, cheap enough for event loops and route threads.
+ * <p/>
+ * The buckets start as a single array of about 15 KB. Once two threads collide on a bucket, the colliding
+ * threads move to one of at most 4 extra arrays picked from their thread id, each allocated by the first
+ * contended record which needs it, so only the histograms which are actually hot pay for the extra arrays.
+ * Reading the histogram sums the arrays.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF_COUNT << 1;
+    private static final int BUCKET_COUNT = 64 - SUB_BUCKET_BITS - 1;
+    private static final int LENGTH = SUB_BUCKET_COUNT + (BUCKET_COUNT - 1) * SUB_BUCKET_HALF_COUNT;
+    private static final int MAX_STRIPES = Math.min(StripedCounter.STRIPES, 4);
+
+    private final AtomicLongArray counts = new AtomicLongArray(LENGTH);
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<AtomicLongArray>(MAX_STRIPES);
+    private final StripedCounter count = new StripedCounter();
+    private final StripedCounter total = new StripedCounter();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the given value; negative values are recorded as zero
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        increment(indexOf(value));
+        count.increment();
+        total.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    private void increment(int index) {
+        int stripe = StripedCounter.stripe(MAX_STRIPES);
+        AtomicLongArray cells = stripes.get(stripe);
+        if (cells != null) {
+            cells.incrementAndGet(index);
+            return;
+        }
+        long current = counts.get(index);
+        if (!counts.compareAndSet(index, current, current + 1)) {
+            // contended, use a stripe of our own from now on
+            cells = stripes.get(stripe);
+            if (cells == null) {
+                stripes.compareAndSet(stripe, null, new AtomicLongArray(LENGTH));
+                cells = stripes.get(stripe);
+            }
+            cells.incrementAndGet(index);
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n > 0 ? (double) total.get() / n : 0;
+    }
+
+    /**
+     * Returns the highest value which is equivalent (within the precision of the histogram)
+     * to the value below which the given percentage of the recorded values fall, or zero if nothing
+     * has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[LENGTH];
+        long n = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        for (int s = 0; s < MAX_STRIPES; s++) {
+            AtomicLongArray cells = stripes.get(s);
+            if (cells != null) {
+                for (int i = 0; i < LENGTH; i++) {
+                    snapshot[i] += cells.get(i);
+                }
+            }
+        }
+        for (int i = 0; i < LENGTH; i++) {
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all the recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < LENGTH; i++) {
+            counts.set(i, 0);
+        }
+        for (int s = 0; s < MAX_STRIPES; s++) {
+            AtomicLongArray cells = stripes.get(s);
+            if (cells != null) {
+                for (int i = 0; i < LENGTH; i++) {
+                    cells.set(i, 0);
+                }
+            }
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int bucket = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> bucket);
+        return SUB_BUCKET_COUNT + (bucket - 1) * SUB_BUCKET_HALF_COUNT + (subBucket - SUB_BUCKET_HALF_COUNT);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int bucket = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return (subBucket << bucket) + (1L << bucket) - 1;
+    }
+}
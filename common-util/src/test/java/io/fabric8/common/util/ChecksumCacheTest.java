@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.common.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChecksumCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = new File("target/checksum-cache-test");
+        Files.recursiveDelete(dir);
+        dir.mkdirs();
+    }
+
+    @Test
+    public void testCachedChecksum() throws IOException {
+        File file = new File(dir, "fox.txt");
+        write(file, "The quick brown fox jumps over the lazy dog");
+        File cacheFile = new File(dir, "checksums.properties");
+
+        ChecksumCache cache = new ChecksumCache(cacheFile);
+        Assert.assertEquals(0x414fa339, cache.checksum(file));
+        Assert.assertEquals(1, cache.size());
+        cache.save();
+        Assert.assertTrue(cacheFile.isFile());
+
+        // a reloaded cache trusts the persisted checksum of an unchanged file
+        ChecksumCache reloaded = new ChecksumCache(cacheFile);
+        Assert.assertEquals(1, reloaded.size());
+        Assert.assertEquals(0x414fa339, reloaded.checksum(file));
+
+        // but not the one of a modified file
+        write(file, "");
+        file.setLastModified(file.lastModified() + 2000);
+        Assert.assertEquals(0x0, reloaded.checksum(file));
+
+        // entries of deleted files are dropped when saving
+        file.delete();
+        reloaded.save();
+        Assert.assertEquals(0, new ChecksumCache(cacheFile).size());
+    }
+
+    @Test
+    public void testMappedChecksum() throws IOException {
+        File file = new File(dir, "big.bin");
+        byte[] data = new byte[200000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+        ChecksumCache cache = new ChecksumCache();
+        cache.setMappedThreshold(1024);
+        Assert.assertEquals(ChecksumUtils.checksumFile(file), cache.checksum(file));
+        Assert.assertEquals(ChecksumUtils.checksumFile(file), ChecksumCache.checksumMapped(file, file.length()));
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(content.getBytes("UTF-8"));
+        }
+    }
+}
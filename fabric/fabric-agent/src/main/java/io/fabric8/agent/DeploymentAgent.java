@@ -16,18 +16,20 @@
 package io.fabric8.agent;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,6 +42,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import io.fabric8.agent.download.DownloadCallback;
 import io.fabric8.agent.download.DownloadManager;
 import io.fabric8.agent.download.DownloadManagers;
@@ -54,7 +59,7 @@ import io.fabric8.api.Container;
 import io.fabric8.api.CuratorComplete;
 import io.fabric8.api.FabricService;
 import io.fabric8.api.Profile;
-import io.fabric8.common.util.ChecksumUtils;
+import io.fabric8.common.util.ChecksumCache;
 import io.fabric8.common.util.Files;
 import io.fabric8.maven.MavenResolver;
 import io.fabric8.maven.MavenResolvers;
@@ -90,7 +95,7 @@ import static io.fabric8.agent.service.Constants.DEFAULT_UPDATE_SNAPSHOTS;
 import static io.fabric8.agent.utils.AgentUtils.addMavenProxies;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.exists;
 
-public class DeploymentAgent implements ManagedService {
+public class DeploymentAgent implements ManagedService, DeploymentAgentMXBean {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DeploymentAgent.class);
 
@@ -110,6 +115,8 @@ public class DeploymentAgent implements ManagedService {
 
     private static final String STATE_FILE = "state.json";
 
+    private static final String OBJECT_NAME = "io.fabric8:type=DeploymentAgent";
+
     private ServiceTracker<FabricService, FabricService> fabricService;
     private ServiceTracker<CuratorComplete, CuratorComplete> curatorCompleteService;
 
@@ -129,9 +136,12 @@ public class DeploymentAgent implements ManagedService {
     private final Properties managedSysProps;
     private final Properties managedConfigProps;
     private final Properties managedEtcs;
+    private final ChecksumCache checksumCache;
     private volatile String provisioningStatus;
     private volatile Throwable provisioningError;
     private volatile Collection<Resource> provisionList;
+    private volatile Map<String, Long> lastDeploymentTimings = Collections.emptyMap();
+    private volatile int deploymentThreads = Constants.DEPLOYMENT_THREADS;
     private volatile boolean requiresRestart = false;
     private volatile boolean fabricNotAvailableLogged;
 
@@ -160,6 +170,7 @@ public class DeploymentAgent implements ManagedService {
         this.managedEndorsedLibs  = new Properties(bundleContext.getDataFile("endorsed.properties"));
         this.managedExtensionLibs  = new Properties(bundleContext.getDataFile("extension.properties"));
         this.managedEtcs = new Properties(bundleContext.getDataFile("etc.properties"));
+        this.checksumCache = new ChecksumCache(bundleContext.getDataFile("file-checksums.properties"));
         String revision = bundleContext.getBundle().adapt(BundleRevision.class).toString();
         deploymentAgentId = String.format("fabric-agent-%s.%s", revision, agentCounter++);
         this.executor = Executors.newSingleThreadExecutor(new NamedThreadFactory(deploymentAgentId));
@@ -231,6 +242,7 @@ public class DeploymentAgent implements ManagedService {
         loadLibChecksums(LIB_ENDORSED_PATH, endorsedChecksums);
         loadLibChecksums(LIB_EXT_PATH, extensionChecksums);
         loadLibChecksums(KARAF_ETC, etcChecksums);
+        saveChecksumCache();
 
         executor.execute(new Runnable() {
             @Override
@@ -238,6 +250,7 @@ public class DeploymentAgent implements ManagedService {
                 LOGGER.info("DeploymentAgent ready to accept configadmin tasks");
             }
         });
+        registerMBean();
     }
 
     public void stop() throws InterruptedException {
@@ -256,6 +269,48 @@ public class DeploymentAgent implements ManagedService {
         downloadExecutor.shutdown();
         fabricService.close();
         curatorCompleteService.close();
+        unregisterMBean();
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // a previous agent may still be registered if it was updated without being stopped cleanly
+            if (mbeanServer.isRegistered(name)) {
+                mbeanServer.unregisterMBean(name);
+            }
+            mbeanServer.registerMBean(this, name);
+        } catch (Exception e) {
+            LOGGER.warn("Unable to register the DeploymentAgent MBean", e);
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (mbeanServer.isRegistered(name)) {
+                mbeanServer.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Unable to unregister the DeploymentAgent MBean", e);
+        }
+    }
+
+    @Override
+    public String getProvisioningStatus() {
+        return provisioningStatus;
+    }
+
+    @Override
+    public int getDeploymentThreads() {
+        return deploymentThreads;
+    }
+
+    @Override
+    public Map<String, Long> getLastDeploymentTimings() {
+        return lastDeploymentTimings;
     }
 
     private void loadLibChecksums(String path, Properties props) throws IOException {
@@ -267,12 +322,20 @@ public class DeploymentAgent implements ManagedService {
         for (String lib : dir.list()) {
             File f = new File(path, lib);
             if (f.exists() && f.isFile()) {
-                props.put(lib, Long.toString(ChecksumUtils.checksum(new FileInputStream(f))));
+                props.put(lib, Long.toString(checksumCache.checksum(f)));
             }
         }
         props.save();
     }
 
+    private void saveChecksumCache() {
+        try {
+            checksumCache.save();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to save the file checksum cache", e);
+        }
+    }
+
     public void updated(final Dictionary<String, ?> props) throws ConfigurationException {
         LOGGER.info("DeploymentAgent {} updated with {}", deploymentAgentId, props);
         synchronized (executor) {
@@ -494,7 +557,7 @@ public class DeploymentAgent implements ManagedService {
                     public void downloaded(StreamProvider provider) throws Exception {
                         File libFile = provider.getFile();
                         String libName = libFile.getName();
-                        Long checksum = ChecksumUtils.checksum(libFile);
+                        Long checksum = checksumCache.checksum(libFile);
                         boolean update;
                         synchronized (lock) {
                             managedLibs.put(libName, "true");
@@ -514,7 +577,7 @@ public class DeploymentAgent implements ManagedService {
                     public void downloaded(StreamProvider provider) throws Exception {
                         File libFile = provider.getFile();
                         String libName = libFile.getName();
-                        Long checksum = ChecksumUtils.checksum(new FileInputStream(libFile));
+                        Long checksum = checksumCache.checksum(libFile);
                         boolean update;
                         synchronized (lock) {
                             managedEndorsedLibs.put(libName, "true");
@@ -534,7 +597,7 @@ public class DeploymentAgent implements ManagedService {
                     public void downloaded(StreamProvider provider) throws Exception {
                         File libFile = provider.getFile();
                         String libName = libFile.getName();
-                        Long checksum = ChecksumUtils.checksum(libFile);
+                        Long checksum = checksumCache.checksum(libFile);
                         boolean update;
                         synchronized (lock) {
                             managedExtensionLibs.put(libName, "true");
@@ -554,7 +617,7 @@ public class DeploymentAgent implements ManagedService {
                     public void downloaded(StreamProvider provider) throws Exception {
                         File etcFile = provider.getFile();
                         String etcName = etcFile.getName();
-                        Long checksum = ChecksumUtils.checksum(new FileInputStream(etcFile));
+                        Long checksum = checksumCache.checksum(etcFile);
                         boolean update;
                         synchronized (lock) {
                             managedEtcs.put(etcName, "true");
@@ -569,6 +632,7 @@ public class DeploymentAgent implements ManagedService {
             }
         }
         downloader.await();
+        saveChecksumCache();
         //Remove unused libs, system & config properties
         for (String sysProp : sysPropsToRemove) {
             systemProps.remove(sysProp);
@@ -650,6 +714,15 @@ public class DeploymentAgent implements ManagedService {
         }catch(Exception e){
             LOGGER.warn("Failed to set {} value: [{}], applying default value: {}", Constants.BUNDLE_START_TIMEOUT_PID_KEY, overriddenTimeout, Constants.BUNDLE_START_TIMEOUT);
         }
+        int threads = Constants.DEPLOYMENT_THREADS;
+        String overriddenThreads = properties.get(Constants.DEPLOYMENT_THREADS_PID_KEY);
+        try {
+            if (overriddenThreads != null)
+                threads = Math.max(1, Integer.parseInt(overriddenThreads));
+        } catch (Exception e) {
+            LOGGER.warn("Failed to set {} value: [{}], applying default value: {}", Constants.DEPLOYMENT_THREADS_PID_KEY, overriddenThreads, Constants.DEPLOYMENT_THREADS);
+        }
+        deploymentThreads = threads;
         Agent agent = new Agent(
                 bundleContext.getBundle(),
                 systemBundleContext,
@@ -683,6 +756,11 @@ public class DeploymentAgent implements ManagedService {
                 DeploymentAgent.this.provisionList = resources;
             }
 
+            @Override
+            protected void phaseTimings(Map<String, Long> timings) {
+                DeploymentAgent.this.lastDeploymentTimings = Collections.unmodifiableMap(new LinkedHashMap<>(timings));
+            }
+
             @Override
             protected boolean done(boolean agentStarted, List<String> urls) {
                 if (agentStarted) {
@@ -733,15 +811,21 @@ public class DeploymentAgent implements ManagedService {
             }
         };
         agent.setDeploymentAgentId(deploymentAgentId);
-        agent.provision(
-                getPrefixedProperties(properties, "repository."),
-                getPrefixedProperties(properties, "feature."),
-                getPrefixedProperties(properties, "bundle."),
-                getPrefixedProperties(properties, "req."),
-                getPrefixedProperties(properties, "override."),
-                getPrefixedProperties(properties, "optional."),
-                getMetadata(properties, "metadata#")
-        );
+        agent.setDeploymentThreads(deploymentThreads);
+        agent.setChecksumCache(checksumCache);
+        try {
+            agent.provision(
+                    getPrefixedProperties(properties, "repository."),
+                    getPrefixedProperties(properties, "feature."),
+                    getPrefixedProperties(properties, "bundle."),
+                    getPrefixedProperties(properties, "req."),
+                    getPrefixedProperties(properties, "override."),
+                    getPrefixedProperties(properties, "optional."),
+                    getMetadata(properties, "metadata#")
+            );
+        } finally {
+            saveChecksumCache();
+        }
         if (restart.get()) {
             // prevent updating status to "success"
             return false;
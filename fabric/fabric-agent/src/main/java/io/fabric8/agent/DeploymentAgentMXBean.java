@@ -0,0 +1,34 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent;
+
+import java.util.Map;
+
+/**
+ * An MXBean to follow the provisioning done by the deployment agent
+ */
+public interface DeploymentAgentMXBean {
+
+    String getProvisioningStatus();
+
+    int getDeploymentThreads();
+
+    /**
+     * Returns the time in milliseconds spent in each phase of the last deployment
+     */
+    Map<String, Long> getLastDeploymentTimings();
+
+}
@@ -73,6 +73,7 @@ public class SubsystemResolver {
     private RegionDigraph digraph;
     private Subsystem root;
     private Map<Resource, List<Wire>> wiring;
+    private long downloadTime;
 
     // Cached computed results
     private ResourceImpl environmentResource;
@@ -179,7 +180,9 @@ public class SubsystemResolver {
         }
 
         // Download bundles
+        long start = System.currentTimeMillis();
         root.downloadBundles(manager, builder, overrides, featureResolutionRange);
+        downloadTime = System.currentTimeMillis() - start;
 
         // Populate digraph and resolve
         digraph = new StandardRegionDigraph(null, null);
@@ -188,7 +191,9 @@ public class SubsystemResolver {
         Resolver resolver = new ResolverImpl(new Slf4jResolverLog(LOGGER));
         Downloader downloader = manager.createDownloader();
         wiring = resolver.resolve(new SubsystemResolveContext(root, digraph, globalRepository, downloader));
+        start = System.currentTimeMillis();
         downloader.await();
+        downloadTime += System.currentTimeMillis() - start;
 
         // Remove wiring to the fake environment resource
         if (environmentResource != null) {
@@ -208,6 +213,13 @@ public class SubsystemResolver {
         return wiring;
     }
 
+    /**
+     * Returns the time in milliseconds spent waiting for downloads during the resolution
+     */
+    public long getDownloadTime() {
+        return downloadTime;
+    }
+
     public Map<String, Map<String, BundleInfo>> getBundleInfos() {
         if (bundleInfos == null) {
             bundleInfos = new HashMap<>();
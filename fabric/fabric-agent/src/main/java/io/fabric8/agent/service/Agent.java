@@ -47,7 +47,7 @@ import io.fabric8.agent.model.Repository;
 import io.fabric8.agent.repository.StaticRepository;
 import io.fabric8.agent.resolver.ResourceBuilder;
 import io.fabric8.api.gravia.ServiceLocator;
-import io.fabric8.common.util.ChecksumUtils;
+import io.fabric8.common.util.ChecksumCache;
 import io.fabric8.common.util.MultiException;
 import org.apache.felix.utils.version.VersionRange;
 import org.apache.karaf.util.bundles.BundleUtils;
@@ -94,6 +94,8 @@ public class Agent {
     private final FeatureConfigInstaller configInstaller;
     private final RegionDigraph digraph;
     private final int bundleStartTimeout;
+    private int deploymentThreads = 1;
+    private ChecksumCache checksumCache = new ChecksumCache();
 
     /**
      * Range to use when a version is specified on a feature dependency.
@@ -234,6 +236,7 @@ public class Agent {
         request.options = options;
         request.metadata = metadata;
         request.bundleStartTimeout = bundleStartTimeout;
+        request.deploymentThreads = deploymentThreads;
 
         Deployer.DeploymentState dstate = new Deployer.DeploymentState();
         // Service bundle
@@ -308,7 +311,7 @@ public class Agent {
                     if (jarUrl.startsWith("jar:")) {
                         String jar = jarUrl.substring("jar:".length(), jarUrl.indexOf("!/"));
                         jar = new URL(jar).getFile();
-                        long checksum = ChecksumUtils.checksumFile(new File(jar));
+                        long checksum = checksumCache.checksum(new File(jar));
                         state.bundleChecksums.put(id, checksum);
                     }
                 } catch (Throwable t) {
@@ -340,6 +343,11 @@ public class Agent {
                         Agent.this.provisionList(resources);
                     }
 
+                    @Override
+                    public void phaseTimings(Map<String, Long> timings) {
+                        Agent.this.phaseTimings(timings);
+                    }
+
                     @Override
                     public void restoreConfigAdminIfNeeded() {
                         if (configInstaller != null) {
@@ -362,6 +370,7 @@ public class Agent {
 //                LOGGER.debug("Waiting for ProfileUrlHandler finished");
 
                 Deployer deployer = new Deployer(manager, callback);
+                deployer.setChecksumCache(checksumCache);
                 deployer.setDeploymentAgentId(deploymentAgentId);
                 deployer.deploy(dstate, request);
                 break;
@@ -391,6 +400,9 @@ public class Agent {
     protected void provisionList(Set<Resource> resources) {
     }
 
+    protected void phaseTimings(Map<String, Long> timings) {
+    }
+
     protected boolean done(boolean agentStarted, List<String> urls) {
         return true;
     }
@@ -407,6 +419,20 @@ public class Agent {
         this.deploymentAgentId = deploymentAgentId;
     }
 
+    /**
+     * Sets the number of threads used to install and start bundles, bundles are handled one at a time with 1
+     */
+    public void setDeploymentThreads(int deploymentThreads) {
+        this.deploymentThreads = deploymentThreads;
+    }
+
+    /**
+     * Sets the cache used to avoid reading unchanged bundle files again when computing their checksums
+     */
+    public void setChecksumCache(ChecksumCache checksumCache) {
+        this.checksumCache = checksumCache;
+    }
+
     abstract class BaseDeployCallback implements Deployer.DeployCallback {
 
         public void print(String message, int display) {
@@ -50,4 +50,7 @@ public interface Constants {
     int BUNDLE_START_TIMEOUT = 60;
     String BUNDLE_START_TIMEOUT_PID_KEY = "io.fabric8.agent.bundle.start.timeout";
 
+    int DEPLOYMENT_THREADS = 1;
+    String DEPLOYMENT_THREADS_PID_KEY = "io.fabric8.agent.deployment.threads";
+
 }
@@ -20,8 +20,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.zip.ZipEntry;
@@ -35,15 +39,21 @@ import io.fabric8.agent.internal.MapUtils;
 import io.fabric8.agent.model.BundleInfo;
 import io.fabric8.agent.model.ConfigFile;
 import io.fabric8.agent.model.Feature;
+import io.fabric8.agent.model.Features;
+import io.fabric8.agent.model.JaxbUtil;
 import io.fabric8.agent.region.SubsystemResolver;
+import io.fabric8.agent.repository.BaseRepository;
 import io.fabric8.agent.resolver.FeatureResource;
+import io.fabric8.agent.resolver.ResourceBuilder;
 import io.fabric8.agent.utils.AgentUtils;
 import io.fabric8.agent.utils.OsgiUtils;
+import io.fabric8.common.util.ChecksumCache;
 import io.fabric8.common.util.ChecksumUtils;
 import io.fabric8.common.util.MultiException;
 import io.fabric8.common.util.Zips;
 import io.fabric8.maven.util.Parser;
 import io.fabric8.utils.NamedThreadFactory;
+import org.apache.felix.utils.collections.DictionaryAsMap;
 import org.apache.felix.utils.version.VersionRange;
 import org.apache.felix.utils.version.VersionTable;
 import org.eclipse.equinox.region.Region;
@@ -120,6 +130,12 @@ public class Deployer {
 
         void provisionList(Set<Resource> resources);
 
+        /**
+         * Called at the end of a deployment with the time in milliseconds spent in each of its phases
+         * (resolve, download, install, refresh and start)
+         */
+        void phaseTimings(Map<String, Long> timings);
+
         void restoreConfigAdminIfNeeded();
 
         /**
@@ -167,6 +183,7 @@ public class Deployer {
         Map<String, Map<String, Constants.RequestedState>> stateChanges;
         EnumSet<Constants.Option> options;
         int bundleStartTimeout;
+        int deploymentThreads;
     }
 
     static class Deployment {
@@ -187,6 +204,7 @@ public class Deployer {
     private final DeployCallback callback;
 
     private String deploymentAgentId;
+    private ChecksumCache checksumCache;
 
     public Deployer(DownloadManager manager, DeployCallback callback) {
         this.manager = manager;
@@ -197,6 +215,13 @@ public class Deployer {
         this.deploymentAgentId = deploymentAgentId;
     }
 
+    /**
+     * Sets the cache used when computing the checksums of downloaded snapshot bundles
+     */
+    public void setChecksumCache(ChecksumCache checksumCache) {
+        this.checksumCache = checksumCache;
+    }
+
     /**
      *
      * @param dstate  deployment state
@@ -206,7 +231,13 @@ public class Deployer {
     public void deploy(DeploymentState dstate, final DeploymentRequest request) throws Exception {
 
         String threadFactoryName = deploymentAgentId != null ? String.format("%s-deployer", deploymentAgentId) : "deployer";
-        ExecutorService deploymentsExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory(threadFactoryName));
+        final int deploymentThreads = Math.max(1, request.deploymentThreads);
+        ThreadPoolExecutor deploymentsExecutor = new ThreadPoolExecutor(deploymentThreads, deploymentThreads,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(threadFactoryName));
+        deploymentsExecutor.allowCoreThreadTimeOut(true);
+        ExecutorService checksumExecutor = deploymentThreads > 1 ? deploymentsExecutor : null;
+        Map<String, Long> timings = new LinkedHashMap<>();
+        long phaseStart = System.currentTimeMillis();
 
         boolean noRefreshUnmanaged = request.options.contains(Constants.Option.NoAutoRefreshUnmanagedBundles);
         boolean noRefreshManaged = request.options.contains(Constants.Option.NoAutoRefreshManagedBundles);
@@ -226,6 +257,20 @@ public class Deployer {
         Map<String, Set<Bundle>> unmanagedBundles = apply(diff(dstate.bundlesPerRegion, dstate.state.managedBundles),
                 map(dstate.bundles));
 
+        // Nothing to do if neither the request nor the bundles changed since the last deployment
+        String resolutionDigest = simulate ? null : computeResolutionDigest(dstate, request);
+        Set<Resource> provisioned = resolutionDigest != null && isResolutionCurrent(dstate, request, resolutionDigest)
+                ? getProvisionList(dstate) : null;
+        if (provisioned != null) {
+            deploymentsExecutor.shutdown();
+            print("No change since the last deployment, skipping resolution.", display);
+            timings.put("resolve", System.currentTimeMillis() - phaseStart);
+            callback.phaseTimings(timings);
+            callback.provisionList(provisioned);
+            finishDeployment(dstate, false, display);
+            return;
+        }
+
         // Resolve
         SubsystemResolver resolver = new SubsystemResolver(manager);
         resolver.prepare(
@@ -273,6 +318,8 @@ public class Deployer {
             }
             newRequest.stateChanges = Collections.emptyMap();
             newRequest.updateSnaphots = request.updateSnaphots;
+            newRequest.deploymentThreads = request.deploymentThreads;
+            deploymentsExecutor.shutdown();
             deploy(dstate, newRequest);
             throw new PartialDeploymentException(prereqs);
         }
@@ -333,7 +380,9 @@ public class Deployer {
         //
         // Compute deployment
         //
-        Deployer.Deployment deployment = computeDeployment(dstate, request, resolver);
+        Deployer.Deployment deployment = computeDeployment(dstate, request, resolver, checksumExecutor);
+        timings.put("resolve", System.currentTimeMillis() - phaseStart - resolver.getDownloadTime());
+        timings.put("download", resolver.getDownloadTime());
 
         //
         // Compute the set of bundles to refresh
@@ -580,10 +629,12 @@ public class Deployer {
             }
         }
         if (simulate) {
+            deploymentsExecutor.shutdown();
             return;
         }
 
         callback.phase("installing");
+        phaseStart = System.currentTimeMillis();
 
         //
         // Execute deployment
@@ -652,6 +703,7 @@ public class Deployer {
             }
             callback.refreshPackages(toRefresh.keySet());
             callback.startBundle(dstate.serviceBundle);
+            deploymentsExecutor.shutdown();
             return;
         }
 
@@ -833,60 +885,46 @@ public class Deployer {
         if (hasToInstall) {
             callback.phase("updating (installing bundles)");
             print("Installing bundles:", display);
+            List<BundleInstallation> installations = new ArrayList<>();
             for (Map.Entry<String, RegionDeployment> entry : deployment.regions.entrySet()) {
-                String name = entry.getKey();
-                Deployer.RegionDeployment regionDeployment = entry.getValue();
-                for (Resource resource : regionDeployment.toInstall) {
-                    String uri = getUri(resource);
-                    print("  " + uri, display);
-                    Bundle bundle;
-                    long crc;
-                    try (
-                            ChecksumUtils.CRCInputStream is = new ChecksumUtils.CRCInputStream(getBundleInputStream(resource, providers))
-                    ) {
-                        bundle = callback.installBundle(name, uri, is);
-                        // calculate CRC normally
-                        crc = is.getCRC();
-                        try {
-                            URI resourceURI = new URI(uri);
-                            if ("blueprint".equals(resourceURI.getScheme())) {
-                                // ENTESB-6957 calculate proper blueprint file CRC during installation
-                                InputStream bis = getBlueprintInputStream(getBundleInputStream(resource, providers));
-                                // original stream is closed in either case
-                                if (bis != null) {
-                                    crc = ChecksumUtils.checksum(bis);
-                                }
-                            }
-                        } catch (URISyntaxException ignored) {
-                        }
-                    }
-                    addToMapSet(managedBundles, name, bundle.getBundleId());
-                    deployment.resToBnd.put(resource, bundle);
-                    // save a checksum of installed snapshot bundle
-                    if (Constants.UPDATE_SNAPSHOTS_CRC.equals(request.updateSnaphots)
-                            && isUpdateable(resource) && !deployment.bundleChecksums.containsKey(bundle.getBundleId())) {
-                        deployment.bundleChecksums.put(bundle.getBundleId(), crc);
-                    }
-                    if (startLevels.containsKey(resource)) {
-                        int startLevel = startLevels.get(resource);
-                        if (startLevel != dstate.initialBundleStartLevel) {
-                            callback.setBundleStartLevel(bundle, startLevel);
-                        }
-                    }
-                    Constants.RequestedState reqState = states.get(resource);
-                    if (reqState == null) {
-                        reqState = Constants.RequestedState.Started;
-                    }
-                    switch (reqState) {
-                    case Started:
-                        toResolve.add(bundle);
-                        toStart.add(bundle);
-                        break;
-                    case Resolved:
-                        toResolve.add(bundle);
-                        break;
+                for (Resource resource : entry.getValue().toInstall) {
+                    print("  " + getUri(resource), display);
+                    installations.add(new BundleInstallation(entry.getKey(), resource, providers));
+                }
+            }
+            // Bundles are installed concurrently when allowed, their state is then updated in order
+            runAll(installations, deploymentThreads > 1 ? deploymentsExecutor : null, "Error installing bundles");
+            for (BundleInstallation installation : installations) {
+                String name = installation.region;
+                Resource resource = installation.resource;
+                Bundle bundle = installation.bundle;
+                long crc = installation.crc;
+                addToMapSet(managedBundles, name, bundle.getBundleId());
+                deployment.resToBnd.put(resource, bundle);
+                // save a checksum of installed snapshot bundle
+                if (Constants.UPDATE_SNAPSHOTS_CRC.equals(request.updateSnaphots)
+                        && isUpdateable(resource) && !deployment.bundleChecksums.containsKey(bundle.getBundleId())) {
+                    deployment.bundleChecksums.put(bundle.getBundleId(), crc);
+                }
+                if (startLevels.containsKey(resource)) {
+                    int startLevel = startLevels.get(resource);
+                    if (startLevel != dstate.initialBundleStartLevel) {
+                        callback.setBundleStartLevel(bundle, startLevel);
                     }
                 }
+                Constants.RequestedState reqState = states.get(resource);
+                if (reqState == null) {
+                    reqState = Constants.RequestedState.Started;
+                }
+                switch (reqState) {
+                case Started:
+                    toResolve.add(bundle);
+                    toStart.add(bundle);
+                    break;
+                case Resolved:
+                    toResolve.add(bundle);
+                    break;
+                }
             }
         }
 
@@ -916,6 +954,8 @@ public class Deployer {
         }
 
         callback.phase("finalizing");
+        timings.put("install", System.currentTimeMillis() - phaseStart);
+        phaseStart = System.currentTimeMillis();
 
         if (!noRefresh) {
             toStop = new HashSet<>();
@@ -984,65 +1024,81 @@ public class Deployer {
         toResolve.addAll(toRefresh.keySet());
         removeBundlesInState(toResolve, UNINSTALLED);
         callback.resolveBundles(toResolve, resolver.getWiring(), deployment.resToBnd);
+        timings.put("refresh", System.currentTimeMillis() - phaseStart);
+        phaseStart = System.currentTimeMillis();
 
         final boolean[] agentStarted = new boolean[] { false };
 
         // Compute bundles to start
         removeFragmentsAndBundlesInState(toStart, UNINSTALLED | ACTIVE | STARTING);
+        final List<Throwable> exceptions = Collections.synchronizedList(new ArrayList<Throwable>());
         if (!toStart.isEmpty()) {
             // Compute correct start order
-            final List<Throwable> exceptions = new ArrayList<>();
             callback.phase("finalizing (starting bundles)");
             print("Starting bundles:", display);
 
             while (!toStart.isEmpty()) {
                 List<Bundle> bs = getBundlesToStart(toStart, dstate.serviceBundle);
 
-                for (final Bundle bundle : bs) {
-                    print("  " + bundle.getSymbolicName() + " / " + bundle.getVersion(), display);
+                for (List<Bundle> wave : getStartWaves(bs, deploymentThreads)) {
+                    List<Callable<Void>> tasks = new ArrayList<>();
+                    for (final Bundle bundle : wave) {
+                        print("  " + bundle.getSymbolicName() + " / " + bundle.getVersion(), display);
 
-                    if ("io.fabric8.fabric-agent".equals(bundle.getSymbolicName())) {
-                        agentStarted[0] = true;
-                    }
-                    List<Future<Void>> futures = deploymentsExecutor.invokeAll(
-                            Arrays.asList(
-                                    new Callable<Void>() {
-                                        @Override
-                                        public Void call() throws Exception {
-                                            try {
-                                                LOGGER.info("Scheduled start for bundle:" + bundle.getSymbolicName() + " with a timeout limit of " + request.bundleStartTimeout + " seconds");
-                                                callback.startBundle(bundle);
+                        if ("io.fabric8.fabric-agent".equals(bundle.getSymbolicName())) {
+                            agentStarted[0] = true;
+                        }
+                        tasks.add(new Callable<Void>() {
+                            @Override
+                            public Void call() throws Exception {
+                                try {
+                                    LOGGER.info("Scheduled start for bundle:" + bundle.getSymbolicName() + " with a timeout limit of " + request.bundleStartTimeout + " seconds");
+                                    callback.startBundle(bundle);
 
-                                            } catch (BundleException e) {
-                                                exceptions.add(e);
-                                            }
-                                            return null;
-                                        }
-                                    }
-                            ), request.bundleStartTimeout, TimeUnit.SECONDS);
+                                } catch (BundleException e) {
+                                    exceptions.add(e);
+                                }
+                                return null;
+                            }
+                        });
+                    }
+                    // each bundle of the wave gets the full timeout, even when queued behind others
+                    int rounds = (wave.size() + deploymentThreads - 1) / deploymentThreads;
+                    List<Future<Void>> futures = deploymentsExecutor.invokeAll(tasks, (long) request.bundleStartTimeout * rounds, TimeUnit.SECONDS);
                     // synch on Future's output, limited by the TimeUnit above
-                    for (Future<Void> f : futures) {
+                    for (int i = 0; i < futures.size(); i++) {
                         try {
-                            f.get();
+                            futures.get(i).get();
                         } catch (CancellationException e) {
-                            exceptions.add(new BundleException("Unable to start bundle [" + bundle.getSymbolicName() + "] within " + request.bundleStartTimeout + " seconds"));
+                            exceptions.add(new BundleException("Unable to start bundle [" + wave.get(i).getSymbolicName() + "] within " + request.bundleStartTimeout + " seconds"));
                         }
                     }
 
-                    toStart.remove(bundle);
+                    toStart.removeAll(wave);
                 }
 
             }
-            deploymentsExecutor.shutdown();
+        }
+        deploymentsExecutor.shutdown();
+        timings.put("start", System.currentTimeMillis() - phaseStart);
+        LOGGER.info("Deployment timings (ms): {}", timings);
+        callback.phaseTimings(timings);
 
-            if (!exceptions.isEmpty()) {
-                throw new MultiException("Error restarting bundles", exceptions);
-            }
+        if (!exceptions.isEmpty()) {
+            throw new MultiException("Error restarting bundles", exceptions);
+        }
+
+        if (resolutionDigest != null) {
+            saveResolution(newState, resolutionDigest, dstate, deployment, states);
         }
 
         // Info about final list of deployed bundles
         callback.provisionList(deployment.resToBnd.keySet());
 
+        finishDeployment(dstate, agentStarted[0], display);
+    }
+
+    private void finishDeployment(DeploymentState dstate, boolean agentStarted, int display) {
         // list of bundles in special "fabric-startup" feature
         List<String> urls = new LinkedList<>();
         for (Feature ft : dstate.features.values()) {
@@ -1068,11 +1124,178 @@ public class Deployer {
             LOGGER.warn(e.getMessage(), e);
         }
 
-        if (callback.done(agentStarted[0], urls)) {
+        if (callback.done(agentStarted, urls)) {
             print("Done.", display);
         }
     }
 
+    /**
+     * Computes a digest of everything the resolution depends on: the requirements, overrides, ranges and options
+     * of the request, the available features and the resources of the global repository.
+     *
+     * @return the digest or <code>null</code> if it can't be computed
+     */
+    protected String computeResolutionDigest(DeploymentState dstate, DeploymentRequest request) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            updateDigest(md, request.requirements);
+            updateDigest(md, request.overrides);
+            updateDigest(md, request.featureResolutionRange);
+            updateDigest(md, request.bundleUpdateRange);
+            updateDigest(md, request.updateSnaphots);
+            updateDigest(md, request.options);
+            updateDigest(md, request.metadata);
+            updateDigest(md, request.stateChanges);
+            updateDigest(md, dstate.initialBundleStartLevel);
+            if (request.globalRepository != null) {
+                if (!(request.globalRepository instanceof BaseRepository)) {
+                    return null;
+                }
+                Set<String> uris = new TreeSet<>();
+                for (Resource resource : ((BaseRepository) request.globalRepository).getResources()) {
+                    uris.add(getUri(resource));
+                }
+                updateDigest(md, uris);
+            }
+            Features features = new Features();
+            features.getFeature().addAll(new TreeMap<>(dstate.features).values());
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            JaxbUtil.marshal(features, baos);
+            md.update(baos.toByteArray());
+            return String.format("%064x", new BigInteger(1, md.digest()));
+        } catch (Exception e) {
+            LOGGER.debug("Unable to compute the digest of the deployment request", e);
+            return null;
+        }
+    }
+
+    private static void updateDigest(MessageDigest md, Object value) {
+        md.update(String.valueOf(canonical(value)).getBytes(StandardCharsets.UTF_8));
+        md.update((byte) '\n');
+    }
+
+    private static Object canonical(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), canonical(entry.getValue()));
+            }
+            return map;
+        } else if (value instanceof Collection) {
+            Set<String> set = new TreeSet<>();
+            for (Object o : (Collection<?>) value) {
+                set.add(String.valueOf(canonical(o)));
+            }
+            return set;
+        }
+        return value;
+    }
+
+    /**
+     * Checks whether the last deployment was done for a request with the given digest and whether the bundles
+     * are still the ones it left, in the state it requested, in which case a new deployment would not change anything.
+     */
+    protected boolean isResolutionCurrent(DeploymentState dstate, DeploymentRequest request, String digest) {
+        State state = dstate.state;
+        if (!digest.equals(state.resolutionDigest.get())) {
+            return false;
+        }
+        // updateable bundles may have new content behind the same location
+        boolean checkSnapshots = !Constants.UPDATE_SNAPSHOTS_NONE.equalsIgnoreCase(request.updateSnaphots);
+        Set<Long> managed = flatten(state.managedBundles);
+        int count = 0;
+        for (Bundle bundle : dstate.bundles.values()) {
+            long id = bundle.getBundleId();
+            if (id == 0) {
+                continue;
+            }
+            Long lastModified = state.resolvedBundles.get(id);
+            if (lastModified == null || lastModified != bundle.getLastModified()) {
+                return false;
+            }
+            if (checkSnapshots && managed.contains(id) && isUpdateable(bundle.getLocation())) {
+                return false;
+            }
+            if (!isInRequestedState(bundle, state.resolvedStates.get(id))) {
+                return false;
+            }
+            count++;
+        }
+        return count == state.resolvedBundles.size();
+    }
+
+    /**
+     * Checks whether the bundle is in the state the deployment would leave it in, stopped or failed bundles
+     * needing a full deployment to be started again.
+     */
+    static boolean isInRequestedState(Bundle bundle, String requestedState) {
+        if (requestedState == null
+                || bundle.getHeaders().get(org.osgi.framework.Constants.FRAGMENT_HOST) != null) {
+            return true;
+        }
+        switch (Constants.RequestedState.valueOf(requestedState)) {
+        case Started:
+            return (bundle.getState() & (ACTIVE | STARTING)) != 0;
+        case Resolved:
+            return (bundle.getState() & (ACTIVE | STARTING)) == 0;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Rebuilds the resources provisioned by the last deployment from its bundles.
+     *
+     * @return the resources or <code>null</code> if they can't be rebuilt
+     */
+    private Set<Resource> getProvisionList(DeploymentState dstate) {
+        Set<Resource> resources = new HashSet<>();
+        for (Map.Entry<Long, String> entry : dstate.state.provisionedBundles.entrySet()) {
+            Bundle bundle = dstate.bundles.get(entry.getKey());
+            if (bundle == null) {
+                return null;
+            }
+            try {
+                resources.add(ResourceBuilder.build(entry.getValue(), new DictionaryAsMap<>(bundle.getHeaders())));
+            } catch (BundleException e) {
+                LOGGER.debug("Unable to build the resource of bundle " + bundle.getBundleId(), e);
+                return null;
+            }
+        }
+        return resources;
+    }
+
+    private void saveResolution(State newState, String digest, DeploymentState dstate, Deployment deployment,
+                                Map<Resource, Constants.RequestedState> states) {
+        try {
+            Set<Bundle> bundles = new HashSet<>(dstate.bundles.values());
+            bundles.addAll(deployment.resToBnd.values());
+            State state = newState.copy();
+            state.resolutionDigest.set(digest);
+            for (Bundle bundle : bundles) {
+                if (bundle.getBundleId() != 0 && bundle.getState() != UNINSTALLED) {
+                    state.resolvedBundles.put(bundle.getBundleId(), bundle.getLastModified());
+                }
+            }
+            for (Map.Entry<Resource, Bundle> entry : deployment.resToBnd.entrySet()) {
+                long id = entry.getValue().getBundleId();
+                String uri = getUri(entry.getKey());
+                if (uri == null) {
+                    // without the full provision list the next deployment can't be skipped
+                    return;
+                }
+                state.provisionedBundles.put(id, uri);
+                Constants.RequestedState requested = states.get(entry.getKey());
+                if (requested != null) {
+                    state.resolvedStates.put(id, requested.name());
+                }
+            }
+            callback.saveState(state);
+        } catch (Exception e) {
+            LOGGER.warn("Unable to save the resolution of the deployment", e);
+        }
+    }
+
     private void propagateState(Map<Resource, Constants.RequestedState> states, Resource resource, Constants.RequestedState state, SubsystemResolver resolver) {
         if (!isSubsystem(resource)) {
             Constants.RequestedState reqState = mergeStates(state, states.get(resource));
@@ -1282,7 +1505,8 @@ public class Deployer {
     protected Deployment computeDeployment(
                     DeploymentState dstate,
                     DeploymentRequest request,
-                    SubsystemResolver resolver) throws IOException {
+                    SubsystemResolver resolver,
+                    ExecutorService checksumExecutor) throws IOException {
 
         Deployment result = new Deployment();
 
@@ -1310,6 +1534,7 @@ public class Deployer {
 
             // First pass: go through all installed bundles and mark them
             // as either to ignore or delete
+            Map<Bundle, Resource> snapshots = new LinkedHashMap<>();
             for (long bundleId : managed) {
                 // Look for the installed bundle
                 Bundle bundle = dstate.bundles.get(bundleId);
@@ -1335,43 +1560,8 @@ public class Deployer {
                                 LOGGER.debug("Update snapshot for " + bundle.getLocation());
                                 deployment.toUpdate.put(bundle, resource);
                             } else if (Constants.UPDATE_SNAPSHOTS_CRC.equalsIgnoreCase(request.updateSnaphots)) {
-                                // if the checksum are different
-                                InputStream is = null;
-                                try {
-                                    is = getBundleInputStream(resource, resolver.getProviders());
-                                    Long bpNewCrc = null;
-                                    try {
-                                        URI resourceURI = new URI(uri);
-                                        if ("blueprint".equals(resourceURI.getScheme())) {
-                                            InputStream bis = getBlueprintInputStream(is);
-                                            // original stream is closed in either case
-                                            if (bis != null) {
-                                                bpNewCrc = ChecksumUtils.checksum(bis);
-                                                is = bis;
-                                            } else {
-                                                // rewind FileInputStream, because we failed to read blueprint
-                                                // descriptor
-                                                is = getBundleInputStream(resource, resolver.getProviders());
-                                            }
-                                        }
-                                    } catch (URISyntaxException ignored) {
-                                    }
-                                    long newCrc = bpNewCrc != null ? bpNewCrc : ChecksumUtils.checksum(is);
-                                    long oldCrc = dstate.state.bundleChecksums.containsKey(bundle.getBundleId())
-                                                    ? dstate.state.bundleChecksums.get(bundle.getBundleId()) : 0L;
-                                    if (newCrc != oldCrc) {
-                                        LOGGER.debug("New snapshot available for " + bundle.getLocation());
-                                        deployment.toUpdate.put(bundle, resource);
-                                    }
-                                    result.bundleChecksums.put(bundle.getBundleId(), newCrc);
-                                } finally {
-                                    if (is != null) {
-                                        try {
-                                            is.close();
-                                        } catch (IOException ignored) {
-                                        }
-                                    }
-                                }
+                                // checksums are compared once all of them are computed
+                                snapshots.put(bundle, resource);
                             }
                         }
                         // We're done for this resource
@@ -1385,6 +1575,20 @@ public class Deployer {
                 }
             }
 
+            // Flag the snapshots as to update if the checksums are different
+            Map<Bundle, Long> checksums = computeChecksums(snapshots, resolver.getProviders(), checksumExecutor);
+            for (Map.Entry<Bundle, Long> entry : checksums.entrySet()) {
+                Bundle bundle = entry.getKey();
+                long newCrc = entry.getValue();
+                long oldCrc = dstate.state.bundleChecksums.containsKey(bundle.getBundleId())
+                                ? dstate.state.bundleChecksums.get(bundle.getBundleId()) : 0L;
+                if (newCrc != oldCrc) {
+                    LOGGER.debug("New snapshot available for " + bundle.getLocation());
+                    deployment.toUpdate.put(bundle, snapshots.get(bundle));
+                }
+                result.bundleChecksums.put(bundle.getBundleId(), newCrc);
+            }
+
             // Second pass on remaining resources
             for (Resource resource : toDeploy) {
                 TreeMap<Version, Bundle> matching = new TreeMap<>();
@@ -1416,6 +1620,194 @@ public class Deployer {
         return result;
     }
 
+    /**
+     * Computes the checksums of the given bundle resources, concurrently if an executor is given
+     */
+    private Map<Bundle, Long> computeChecksums(Map<Bundle, Resource> resources,
+                                               final Map<String, StreamProvider> providers,
+                                               ExecutorService executor) throws IOException {
+        Map<Bundle, Long> checksums = new LinkedHashMap<>();
+        if (executor == null) {
+            for (Map.Entry<Bundle, Resource> entry : resources.entrySet()) {
+                checksums.put(entry.getKey(), computeChecksum(entry.getValue(), providers));
+            }
+            return checksums;
+        }
+        Map<Bundle, Future<Long>> futures = new LinkedHashMap<>();
+        for (final Map.Entry<Bundle, Resource> entry : resources.entrySet()) {
+            futures.put(entry.getKey(), executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    return computeChecksum(entry.getValue(), providers);
+                }
+            }));
+        }
+        for (Map.Entry<Bundle, Future<Long>> entry : futures.entrySet()) {
+            try {
+                checksums.put(entry.getKey(), entry.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while computing checksums");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Unable to compute the checksum of " + entry.getKey().getLocation(), e.getCause());
+            }
+        }
+        return checksums;
+    }
+
+    private long computeChecksum(Resource resource, Map<String, StreamProvider> providers) throws IOException {
+        String uri = getUri(resource);
+        if (checksumCache != null && uri != null && !uri.startsWith("blueprint:") && providers.get(uri) != null) {
+            return checksumCache.checksum(providers.get(uri).getFile());
+        }
+        InputStream is = null;
+        try {
+            is = getBundleInputStream(resource, providers);
+            Long bpNewCrc = null;
+            try {
+                URI resourceURI = new URI(uri);
+                if ("blueprint".equals(resourceURI.getScheme())) {
+                    InputStream bis = getBlueprintInputStream(is);
+                    // original stream is closed in either case
+                    if (bis != null) {
+                        bpNewCrc = ChecksumUtils.checksum(bis);
+                        is = bis;
+                    } else {
+                        // rewind FileInputStream, because we failed to read blueprint
+                        // descriptor
+                        is = getBundleInputStream(resource, providers);
+                    }
+                }
+            } catch (URISyntaxException ignored) {
+            }
+            return bpNewCrc != null ? bpNewCrc : ChecksumUtils.checksum(is);
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Installs a bundle and computes the checksum of its content on the way
+     */
+    class BundleInstallation implements Callable<Void> {
+        final String region;
+        final Resource resource;
+        final Map<String, StreamProvider> providers;
+        Bundle bundle;
+        long crc;
+
+        BundleInstallation(String region, Resource resource, Map<String, StreamProvider> providers) {
+            this.region = region;
+            this.resource = resource;
+            this.providers = providers;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            String uri = getUri(resource);
+            try (
+                    ChecksumUtils.CRCInputStream is = new ChecksumUtils.CRCInputStream(getBundleInputStream(resource, providers))
+            ) {
+                bundle = callback.installBundle(region, uri, is);
+                // calculate CRC normally
+                crc = is.getCRC();
+                try {
+                    URI resourceURI = new URI(uri);
+                    if ("blueprint".equals(resourceURI.getScheme())) {
+                        // ENTESB-6957 calculate proper blueprint file CRC during installation
+                        InputStream bis = getBlueprintInputStream(getBundleInputStream(resource, providers));
+                        // original stream is closed in either case
+                        if (bis != null) {
+                            crc = ChecksumUtils.checksum(bis);
+                        }
+                    }
+                } catch (URISyntaxException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Runs the given tasks, concurrently if an executor is given, and waits for all of them
+     */
+    private void runAll(List<? extends Callable<Void>> tasks, ExecutorService executor, String message) throws Exception {
+        if (executor == null) {
+            for (Callable<Void> task : tasks) {
+                task.call();
+            }
+            return;
+        }
+        List<Future<Void>> futures = new ArrayList<>();
+        for (Callable<Void> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        List<Throwable> exceptions = new ArrayList<>();
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                exceptions.add(e.getCause());
+            }
+        }
+        if (exceptions.size() == 1 && exceptions.get(0) instanceof Exception) {
+            throw (Exception) exceptions.get(0);
+        } else if (!exceptions.isEmpty()) {
+            throw new MultiException(message, exceptions);
+        }
+    }
+
+    /**
+     * Splits bundles sorted in start order in waves of bundles which can be started concurrently: a bundle comes
+     * after all the bundles it is wired to. Without concurrency, each bundle is a wave of its own.
+     */
+    protected List<List<Bundle>> getStartWaves(List<Bundle> bundles, int threads) {
+        List<List<Bundle>> waves = new ArrayList<>();
+        if (threads <= 1) {
+            for (Bundle bundle : bundles) {
+                waves.add(Collections.singletonList(bundle));
+            }
+            return waves;
+        }
+        Set<Bundle> remaining = new LinkedHashSet<>(bundles);
+        while (!remaining.isEmpty()) {
+            List<Bundle> wave = new ArrayList<>();
+            for (Bundle bundle : remaining) {
+                if (!isWiredToAny(bundle, remaining)) {
+                    wave.add(bundle);
+                }
+            }
+            if (wave.isEmpty()) {
+                // wiring cycle, fall back to the requirement order
+                wave.add(remaining.iterator().next());
+            }
+            remaining.removeAll(wave);
+            waves.add(wave);
+        }
+        return waves;
+    }
+
+    private static boolean isWiredToAny(Bundle bundle, Set<Bundle> bundles) {
+        BundleWiring wiring = bundle.adapt(BundleWiring.class);
+        if (wiring != null) {
+            for (BundleWire wire : wiring.getRequiredWires(null)) {
+                Bundle provider = wire.getProviderWiring().getBundle();
+                if (provider != bundle && bundles.contains(provider)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     protected <T> MapUtils.Function<Bundle, T> adapt(final Class<T> clazz) {
         return new MapUtils.Function<Bundle, T>() {
             @Override
@@ -20,6 +20,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.fabric8.agent.internal.MapUtils;
 
@@ -32,6 +33,12 @@ public class State {
     public final Map<String, Map<String, String>> stateFeatures = new HashMap<>();
     public final Map<String, Set<Long>> managedBundles = new HashMap<>();
     public final Map<Long, Long> bundleChecksums = new HashMap<>();
+    // digest of the last deployment request which completed, and the last modification of every bundle afterwards
+    public final AtomicReference<String> resolutionDigest = new AtomicReference<>();
+    public final Map<Long, Long> resolvedBundles = new HashMap<>();
+    // requested state and uri of every bundle provisioned by that deployment
+    public final Map<Long, String> resolvedStates = new HashMap<>();
+    public final Map<Long, String> provisionedBundles = new HashMap<>();
 
     public State copy() {
         State state = new State();
@@ -51,6 +58,9 @@ public class State {
             to.stateFeatures.clear();
             to.managedBundles.clear();
             to.bundleChecksums.clear();
+            to.resolvedBundles.clear();
+            to.resolvedStates.clear();
+            to.provisionedBundles.clear();
         }
         to.bootDone.set(from.bootDone.get());
         MapUtils.copy(from.repositories, to.repositories);
@@ -59,6 +69,10 @@ public class State {
         MapUtils.copy(from.stateFeatures, to.stateFeatures);
         MapUtils.copy(from.managedBundles, to.managedBundles);
         MapUtils.copy(from.bundleChecksums, to.bundleChecksums);
+        to.resolutionDigest.set(from.resolutionDigest.get());
+        MapUtils.copy(from.resolvedBundles, to.resolvedBundles);
+        MapUtils.copy(from.resolvedStates, to.resolvedStates);
+        MapUtils.copy(from.provisionedBundles, to.provisionedBundles);
     }
 
 }
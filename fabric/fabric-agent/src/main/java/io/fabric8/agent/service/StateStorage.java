@@ -34,6 +34,10 @@ public abstract class StateStorage {
         state.requirements.clear();
         state.installedFeatures.clear();
         state.managedBundles.clear();
+        state.resolutionDigest.set(null);
+        state.resolvedBundles.clear();
+        state.resolvedStates.clear();
+        state.provisionedBundles.clear();
         try (
                 InputStream is = getInputStream()
         ) {
@@ -46,6 +50,12 @@ public abstract class StateStorage {
                 state.stateFeatures.putAll(toStringStringStringMapMap((Map) json.get("state")));
                 state.managedBundles.putAll(toStringLongSetMap((Map) json.get("managed")));
                 state.bundleChecksums.putAll(toLongLongMap((Map) json.get("checksums")));
+                if (json.containsKey("resolution") && json.containsKey("provisioned")) {
+                    state.resolutionDigest.set((String) json.get("resolution"));
+                    state.resolvedBundles.putAll(toLongLongMap((Map) json.get("resolved")));
+                    state.resolvedStates.putAll(toLongStringMap((Map) json.get("resolvedStates")));
+                    state.provisionedBundles.putAll(toLongStringMap((Map) json.get("provisioned")));
+                }
             }
         }
     }
@@ -63,6 +73,12 @@ public abstract class StateStorage {
                 json.put("state", state.stateFeatures);
                 json.put("managed", state.managedBundles);
                 json.put("checksums", toStringLongMap(state.bundleChecksums));
+                if (state.resolutionDigest.get() != null) {
+                    json.put("resolution", state.resolutionDigest.get());
+                    json.put("resolved", toStringLongMap(state.resolvedBundles));
+                    json.put("resolvedStates", toStringStringMap(state.resolvedStates));
+                    json.put("provisioned", toStringStringMap(state.provisionedBundles));
+                }
                 JsonWriter.write(os, json);
             }
         }
@@ -128,6 +144,14 @@ public abstract class StateStorage {
         return nm;
     }
 
+    static Map<Long, String> toLongStringMap(Map<?, ?> map) {
+        Map<Long, String> nm = new HashMap<>();
+        for (Map.Entry entry : map.entrySet()) {
+            nm.put(toLong(entry.getKey()), entry.getValue().toString());
+        }
+        return nm;
+    }
+
     static Map<String, Long> toStringLongMap(Map<?, ?> map) {
         Map<String, Long> nm = new HashMap<>();
         for (Map.Entry entry : map.entrySet()) {
@@ -0,0 +1,162 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import io.fabric8.agent.model.Feature;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.BundleWire;
+import org.osgi.framework.wiring.BundleWiring;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeployerTest {
+
+    @Test
+    public void testStartWaves() throws Exception {
+        Bundle a = createBundle();
+        Bundle b = createBundle(a);
+        Bundle c = createBundle();
+        Bundle d = createBundle(b, c);
+        List<Bundle> bundles = Arrays.asList(a, b, c, d);
+
+        Deployer deployer = new Deployer(null, null);
+
+        List<List<Bundle>> waves = deployer.getStartWaves(bundles, 4);
+        assertEquals(Arrays.asList(Arrays.asList(a, c), Collections.singletonList(b), Collections.singletonList(d)), waves);
+
+        // one bundle at a time without concurrency
+        waves = deployer.getStartWaves(bundles, 1);
+        assertEquals(4, waves.size());
+        assertEquals(Collections.singletonList(a), waves.get(0));
+        assertEquals(Collections.singletonList(d), waves.get(3));
+    }
+
+    @Test
+    public void testResolutionDigest() throws Exception {
+        Deployer deployer = new Deployer(null, null);
+        Deployer.DeploymentState dstate = createDeploymentState();
+
+        Deployer.DeploymentRequest request = createDeploymentRequest("feature:a", "feature:b");
+        String digest = deployer.computeResolutionDigest(dstate, request);
+        assertNotNull(digest);
+        // the order of the requirements does not matter
+        assertEquals(digest, deployer.computeResolutionDigest(dstate, createDeploymentRequest("feature:b", "feature:a")));
+        assertNotEquals(digest, deployer.computeResolutionDigest(dstate, createDeploymentRequest("feature:a")));
+
+        dstate.initialBundleStartLevel = 60;
+        assertNotEquals(digest, deployer.computeResolutionDigest(dstate, request));
+    }
+
+    @Test
+    public void testResolutionCurrent() throws Exception {
+        Deployer deployer = new Deployer(null, null);
+        Deployer.DeploymentRequest request = createDeploymentRequest("feature:a");
+        Deployer.DeploymentState dstate = createDeploymentState();
+        dstate.state.resolutionDigest.set("digest");
+        dstate.state.resolvedBundles.put(1L, 100L);
+        dstate.state.resolvedBundles.put(2L, 100L);
+        dstate.state.resolvedStates.put(1L, Constants.RequestedState.Started.name());
+        dstate.state.resolvedStates.put(2L, Constants.RequestedState.Resolved.name());
+        dstate.state.managedBundles.put("root", new TreeSet<>(Arrays.asList(1L, 2L)));
+
+        dstate.bundles.put(1L, createBundle(1, 100, Bundle.ACTIVE));
+        dstate.bundles.put(2L, createBundle(2, 100, Bundle.RESOLVED));
+        assertTrue(deployer.isResolutionCurrent(dstate, request, "digest"));
+        assertFalse(deployer.isResolutionCurrent(dstate, request, "other"));
+
+        // a bundle which was stopped or failed to start needs a full deployment
+        dstate.bundles.put(1L, createBundle(1, 100, Bundle.RESOLVED));
+        assertFalse(deployer.isResolutionCurrent(dstate, request, "digest"));
+        dstate.bundles.put(1L, createBundle(1, 100, Bundle.ACTIVE));
+        dstate.bundles.put(2L, createBundle(2, 100, Bundle.ACTIVE));
+        assertFalse(deployer.isResolutionCurrent(dstate, request, "digest"));
+        dstate.bundles.put(2L, createBundle(2, 100, Bundle.RESOLVED));
+
+        // updated and uninstalled bundles
+        dstate.bundles.put(2L, createBundle(2, 200, Bundle.RESOLVED));
+        assertFalse(deployer.isResolutionCurrent(dstate, request, "digest"));
+        dstate.bundles.remove(2L);
+        assertFalse(deployer.isResolutionCurrent(dstate, request, "digest"));
+    }
+
+    private Deployer.DeploymentState createDeploymentState() {
+        Deployer.DeploymentState dstate = new Deployer.DeploymentState();
+        dstate.state = new State();
+        dstate.bundles = new TreeMap<>();
+        dstate.features = new HashMap<String, Feature>();
+        dstate.initialBundleStartLevel = 80;
+        return dstate;
+    }
+
+    private Deployer.DeploymentRequest createDeploymentRequest(String... requirements) {
+        Deployer.DeploymentRequest request = new Deployer.DeploymentRequest();
+        request.requirements = Collections.<String, Set<String>>singletonMap("root", new LinkedHashSet<String>(Arrays.asList(requirements)));
+        request.overrides = Collections.emptySet();
+        request.featureResolutionRange = Constants.DEFAULT_FEATURE_RESOLUTION_RANGE;
+        request.bundleUpdateRange = Constants.DEFAULT_BUNDLE_UPDATE_RANGE;
+        request.updateSnaphots = Constants.UPDATE_SNAPSHOTS_NONE;
+        request.options = EnumSet.noneOf(Constants.Option.class);
+        return request;
+    }
+
+    private Bundle createBundle(long id, long lastModified, int state) {
+        Bundle bundle = createMock(Bundle.class);
+        expect(bundle.getBundleId()).andReturn(id).anyTimes();
+        expect(bundle.getLastModified()).andReturn(lastModified).anyTimes();
+        expect(bundle.getLocation()).andReturn("mvn:io.fabric8/bundle" + id + "/1.0").anyTimes();
+        expect(bundle.getState()).andReturn(state).anyTimes();
+        expect(bundle.getHeaders()).andReturn(new Hashtable<String, String>()).anyTimes();
+        replay(bundle);
+        return bundle;
+    }
+
+    private Bundle createBundle(Bundle... providers) {
+        Bundle bundle = createMock(Bundle.class);
+        BundleWiring wiring = createMock(BundleWiring.class);
+        BundleWire[] wires = new BundleWire[providers.length];
+        for (int i = 0; i < providers.length; i++) {
+            BundleWiring providerWiring = createMock(BundleWiring.class);
+            expect(providerWiring.getBundle()).andReturn(providers[i]).anyTimes();
+            wires[i] = createMock(BundleWire.class);
+            expect(wires[i].getProviderWiring()).andReturn(providerWiring).anyTimes();
+            replay(providerWiring, wires[i]);
+        }
+        expect(wiring.getRequiredWires(null)).andReturn(Arrays.asList(wires)).anyTimes();
+        expect(bundle.adapt(BundleWiring.class)).andReturn(wiring).anyTimes();
+        replay(bundle, wiring);
+        return bundle;
+    }
+}
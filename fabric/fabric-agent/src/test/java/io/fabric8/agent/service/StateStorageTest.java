@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.agent.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StateStorageTest {
+
+    private static class MemoryStateStorage extends StateStorage {
+        private ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        @Override
+        protected InputStream getInputStream() throws IOException {
+            return new ByteArrayInputStream(data.toByteArray());
+        }
+
+        @Override
+        protected OutputStream getOutputStream() throws IOException {
+            data = new ByteArrayOutputStream();
+            return data;
+        }
+    }
+
+    @Test
+    public void testResolutionIsPersisted() throws Exception {
+        State state = new State();
+        state.bundleChecksums.put(12L, 3456L);
+        state.resolutionDigest.set("abcdef");
+        state.resolvedBundles.put(12L, 1000L);
+        state.resolvedBundles.put(13L, 2000L);
+        state.resolvedStates.put(12L, "Started");
+        state.provisionedBundles.put(12L, "mvn:io.fabric8/test/1.0");
+
+        MemoryStateStorage storage = new MemoryStateStorage();
+        storage.save(state);
+        State loaded = new State();
+        storage.load(loaded);
+
+        assertEquals("abcdef", loaded.resolutionDigest.get());
+        assertEquals(state.resolvedBundles, loaded.resolvedBundles);
+        assertEquals(state.bundleChecksums, loaded.bundleChecksums);
+        assertEquals(state.resolvedBundles, loaded.copy().resolvedBundles);
+        assertEquals(state.resolvedStates, loaded.resolvedStates);
+        assertEquals(state.provisionedBundles, loaded.copy().provisionedBundles);
+    }
+
+    @Test
+    public void testStateWithoutResolution() throws Exception {
+        MemoryStateStorage storage = new MemoryStateStorage();
+        String json = "{\"bootDone\":true,\"repositories\":[],\"features\":{},\"installed\":{},\"state\":{},\"managed\":{},\"checksums\":{}}";
+        storage.getOutputStream().write(json.getBytes(StandardCharsets.UTF_8));
+
+        State state = new State();
+        state.resolutionDigest.set("stale");
+        storage.load(state);
+
+        assertNull(state.resolutionDigest.get());
+        assertTrue(state.resolvedBundles.isEmpty());
+    }
+}
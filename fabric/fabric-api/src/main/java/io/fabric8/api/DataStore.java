@@ -16,8 +16,10 @@
 package io.fabric8.api;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The Zookeeper based data store
@@ -38,6 +40,15 @@ public interface DataStore {
     void trackConfiguration(Runnable callback);
     void untrackConfiguration(Runnable callback);
 
+    /**
+     * A configuration callback which is told the registry paths whose changes it is notified of. Bursts of
+     * changes are notified at once, paths are missing for changes which do not come from the registry.
+     */
+    interface ChangeCallback extends Runnable {
+
+        void onChange(Set<String> paths);
+    }
+
     //
     // Container management
     //
@@ -105,6 +116,12 @@ public interface DataStore {
 
     void setContainerAttribute(String containerId, ContainerAttribute attribute, String value);
 
+    /**
+     * Gets a number of attributes of a number of containers at once, keyed by container id. Attributes which
+     * are not set are missing from the map of their container.
+     */
+    Map<String, Map<ContainerAttribute, String>> getContainerAttributes(Collection<String> containerIds, Collection<ContainerAttribute> attributes, boolean substituted);
+
     //
     // Default version
     //
@@ -0,0 +1,38 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.api.jmx;
+
+/**
+ * An MBean to retrieve how many data store change notifications were received and how many
+ * runs of the change callbacks they were coalesced into
+ */
+public interface DataStoreNotificationsMBean {
+
+    long getRawNotifications();
+
+    long getDeliveredNotifications();
+
+    /**
+     * The time in milliseconds without changes after which the callbacks are run, 0 to run them on every change
+     */
+    long getQuietPeriod();
+
+    /**
+     * The time in milliseconds after the first change of a burst within which the callbacks are run
+     */
+    long getMaxDelay();
+
+}
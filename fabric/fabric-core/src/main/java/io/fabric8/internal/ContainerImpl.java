@@ -39,12 +39,17 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
@@ -59,6 +64,27 @@ public class ContainerImpl implements Container {
 
     private static final String ENSEMBLE_PROFILE_PATTERN = "fabric-ensemble-[0-9]*-[0-9]*";
 
+    /**
+     * The attributes which are read ahead when containers are listed, split by whether they are substituted
+     */
+    private static final Set<DataStore.ContainerAttribute> PREFETCHED_ATTRIBUTES = EnumSet.of(
+            DataStore.ContainerAttribute.DebugPort, DataStore.ContainerAttribute.Location, DataStore.ContainerAttribute.GeoLocation,
+            DataStore.ContainerAttribute.PortMin, DataStore.ContainerAttribute.PortMax, DataStore.ContainerAttribute.Domains,
+            DataStore.ContainerAttribute.ProvisionStatus, DataStore.ContainerAttribute.ProvisionException,
+            DataStore.ContainerAttribute.ProvisionList, DataStore.ContainerAttribute.BlueprintStatus,
+            DataStore.ContainerAttribute.SpringStatus, DataStore.ContainerAttribute.ProcessId);
+    private static final Set<DataStore.ContainerAttribute> PREFETCHED_SUBSTITUTED_ATTRIBUTES = EnumSet.of(
+            DataStore.ContainerAttribute.SshUrl, DataStore.ContainerAttribute.JmxUrl, DataStore.ContainerAttribute.JolokiaUrl,
+            DataStore.ContainerAttribute.HttpUrl, DataStore.ContainerAttribute.Resolver, DataStore.ContainerAttribute.Ip,
+            DataStore.ContainerAttribute.LocalIp, DataStore.ContainerAttribute.LocalHostName, DataStore.ContainerAttribute.PublicIp,
+            DataStore.ContainerAttribute.PublicHostName, DataStore.ContainerAttribute.ManualIp);
+
+    /**
+     * How long attributes read ahead are used before they are read again, so containers which are
+     * kept around and polled still see changes
+     */
+    private static final long PREFETCH_EXPIRY = 1000L;
+
     protected transient Logger logger = LoggerFactory.getLogger(getClass());
 
     private final Container parent;
@@ -68,11 +94,51 @@ public class ContainerImpl implements Container {
 
     private CreateContainerMetadata<?> metadata;
 
+    private final Map<DataStore.ContainerAttribute, String> prefetched;
+    private final Set<DataStore.ContainerAttribute> prefetchedAttributes;
+    private final long prefetchedAt;
+
     public ContainerImpl(Container parent, String id, FabricService fabricService) {
+        this(parent, id, fabricService, null);
+    }
+
+    /**
+     * Creates a container with attributes read ahead by {@link #prefetchAttributes(DataStore, Collection)}
+     */
+    public ContainerImpl(Container parent, String id, FabricService fabricService, Map<DataStore.ContainerAttribute, String> prefetched) {
         this.parent = parent;
         this.id = id;
         this.fabricService = fabricService;
         this.dataStore = fabricService.adapt(DataStore.class);
+        if (prefetched != null) {
+            // attributes which are missing from the map have been read ahead too, they are not set
+            Set<DataStore.ContainerAttribute> attributes = EnumSet.copyOf(PREFETCHED_ATTRIBUTES);
+            attributes.addAll(PREFETCHED_SUBSTITUTED_ATTRIBUTES);
+            this.prefetched = new ConcurrentHashMap<>(prefetched);
+            this.prefetchedAttributes = Collections.synchronizedSet(attributes);
+        } else {
+            this.prefetched = null;
+            this.prefetchedAttributes = null;
+        }
+        this.prefetchedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Reads the attributes shown when containers are listed for all the given containers at once, keyed
+     * by container id.
+     */
+    public static Map<String, Map<DataStore.ContainerAttribute, String>> prefetchAttributes(DataStore dataStore, Collection<String> containerIds) {
+        Map<String, Map<DataStore.ContainerAttribute, String>> answer = new HashMap<>();
+        for (String containerId : containerIds) {
+            answer.put(containerId, new EnumMap<DataStore.ContainerAttribute, String>(DataStore.ContainerAttribute.class));
+        }
+        for (Map.Entry<String, Map<DataStore.ContainerAttribute, String>> entry : dataStore.getContainerAttributes(containerIds, PREFETCHED_ATTRIBUTES, false).entrySet()) {
+            answer.get(entry.getKey()).putAll(entry.getValue());
+        }
+        for (Map.Entry<String, Map<DataStore.ContainerAttribute, String>> entry : dataStore.getContainerAttributes(containerIds, PREFETCHED_SUBSTITUTED_ATTRIBUTES, true).entrySet()) {
+            answer.get(entry.getKey()).putAll(entry.getValue());
+        }
+        return answer;
     }
 
     public FabricService getFabricService() {
@@ -210,7 +276,7 @@ public class ContainerImpl implements Container {
         if (compareResult != 0) {
             if (requiresUpgrade(version) && isManaged()) {
                 String status = compareResult > 0 ? "upgrading" : "downgrading";
-                dataStore.setContainerAttribute(id, DataStore.ContainerAttribute.ProvisionStatus, status);
+                setAttribute(DataStore.ContainerAttribute.ProvisionStatus, status);
             }
             dataStore.setContainerVersion(id, version.getId());
         }
@@ -218,7 +284,7 @@ public class ContainerImpl implements Container {
 
     @Override
     public Long getProcessId() {
-        String pid = dataStore.getContainerAttribute(id, DataStore.ContainerAttribute.ProcessId, null, false, false);
+        String pid = getOptionalAttribute(DataStore.ContainerAttribute.ProcessId, null);
         if( pid == null )
             return null;
         return Long.valueOf(pid);
@@ -723,18 +789,37 @@ public class ContainerImpl implements Container {
     }
 
     private String getOptionalAttribute(DataStore.ContainerAttribute attribute, String def) {
+        if (PREFETCHED_ATTRIBUTES.contains(attribute) && isPrefetched(attribute)) {
+            String value = prefetched.get(attribute);
+            return value != null ? value : def;
+        }
         return dataStore.getContainerAttribute(id, attribute, def, false, false);
     }
 
     private String getNullableSubstitutedAttribute(DataStore.ContainerAttribute attribute) {
+        if (PREFETCHED_SUBSTITUTED_ATTRIBUTES.contains(attribute) && isPrefetched(attribute)) {
+            return prefetched.get(attribute);
+        }
         return dataStore.getContainerAttribute(id, attribute, null, false, true);
     }
 
     private String getMandatorySubstitutedAttribute(DataStore.ContainerAttribute attribute) {
+        // a missing substituted attribute is null whether it is mandatory or not
+        if (PREFETCHED_SUBSTITUTED_ATTRIBUTES.contains(attribute) && isPrefetched(attribute)) {
+            return prefetched.get(attribute);
+        }
         return dataStore.getContainerAttribute(id, attribute, null, true, true);
     }
 
+    private boolean isPrefetched(DataStore.ContainerAttribute attribute) {
+        return prefetchedAttributes != null && prefetchedAttributes.contains(attribute)
+                && System.currentTimeMillis() - prefetchedAt < PREFETCH_EXPIRY;
+    }
+
     private void setAttribute(DataStore.ContainerAttribute attribute, String value) {
+        if (prefetchedAttributes != null) {
+            prefetchedAttributes.remove(attribute);
+        }
         dataStore.setContainerAttribute(id, attribute, value);
     }
 
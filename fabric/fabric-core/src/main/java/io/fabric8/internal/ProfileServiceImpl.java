@@ -36,10 +36,14 @@ import io.fabric8.utils.DataStoreUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.fabric8.utils.FabricValidations;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
@@ -64,10 +68,60 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
     @Reference(referenceInterface = RuntimeProperties.class)
     private final ValidatingReference<RuntimeProperties> runtimeProperties = new ValidatingReference<>();
 
+    // Bounded, as versions and profiles removed through the data store by other containers are never evicted explicitly
+    static final int MAX_OVERLAY_CACHE_SIZE = 1000;
+    private final Cache<OverlayKey, OverlayEntry> overlayCache = CacheBuilder.newBuilder().maximumSize(MAX_OVERLAY_CACHE_SIZE).build();
+
     static class OverlayAudit {
         Map<String, Profile> overlayProfiles = new HashMap<String, Profile>();
     }
 
+    static final class OverlayKey {
+        private final String versionId;
+        private final String profileId;
+        private final String environment;
+
+        OverlayKey(String versionId, String profileId, String environment) {
+            this.versionId = versionId;
+            this.profileId = profileId;
+            this.environment = environment;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof OverlayKey)) return false;
+            OverlayKey other = (OverlayKey) obj;
+            return versionId.equals(other.versionId) && profileId.equals(other.profileId)
+                    && (environment != null ? environment.equals(other.environment) : other.environment == null);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = versionId.hashCode();
+            result = 31 * result + profileId.hashCode();
+            result = 31 * result + (environment != null ? environment.hashCode() : 0);
+            return result;
+        }
+    }
+
+    /**
+     * An overlay profile together with the profiles it was built from
+     */
+    static final class OverlayEntry {
+        private final String revision;
+        private final Profile self;
+        private final List<Profile> inherited;
+        private final Profile overlay;
+
+        OverlayEntry(String revision, Profile self, List<Profile> inherited, Profile overlay) {
+            this.revision = revision;
+            this.self = self;
+            this.inherited = inherited;
+            this.overlay = overlay;
+        }
+    }
+
     @Activate
     @VisibleForExternal
     public void activate() throws Exception {
@@ -176,48 +230,123 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
         assertValid();
         LOGGER.info("deleteVersion: {}", versionId);
         profileRegistry.get().deleteVersion(versionId);
+        evictOverlays(versionId, null);
     }
 
     @Override
     public Profile getOverlayProfile(Profile profile) {
         assertValid();
-        Profile overlayProfile;
-        synchronized (this) {
-            if (profile.isOverlay()) {
-                LOGGER.debug("getOverlayProfile, given profile is already an overlay: " + profile);
-                overlayProfile = profile;
-            } else {
-                String profileId = profile.getId();
-                String environment = runtimeProperties.get().getProperty(SystemProperties.FABRIC_ENVIRONMENT);
-                if (environment == null) {
-                    // lets default to the environment from the current active
-                    // set of profiles (e.g. docker or openshift)
-                    environment = System.getProperty(SystemProperties.FABRIC_PROFILE_ENVIRONMENT);
-                }
-                Version version = getRequiredVersion(profile.getVersion());
-                ProfileBuilder builder = ProfileBuilder.Factory.create(profile.getVersion(), profileId);
-                builder.addOptions(new OverlayOptionsProvider(version, profile, environment));
-                overlayProfile = builder.getProfile();
-
-                // Log the overlay profile difference
-                if (LOGGER.isDebugEnabled()) {
-                    OverlayAudit audit = getOverlayAudit();
-                    synchronized (audit) {
-                        Profile lastOverlay = audit.overlayProfiles.get(profileId);
-                        if (lastOverlay == null) {
-                            LOGGER.debug("Overlay" + Profiles.getProfileInfo(overlayProfile));
-                            audit.overlayProfiles.put(profileId, overlayProfile);
-                        } else if (!lastOverlay.equals(overlayProfile)) {
-                            LOGGER.debug("Overlay" + Profiles.getProfileDifference(lastOverlay, overlayProfile));
-                            audit.overlayProfiles.put(profileId, overlayProfile);
-                        }
-                    }
+        if (profile.isOverlay()) {
+            LOGGER.debug("getOverlayProfile, given profile is already an overlay: " + profile);
+            return profile;
+        }
+        String profileId = profile.getId();
+        String environment = runtimeProperties.get().getProperty(SystemProperties.FABRIC_ENVIRONMENT);
+        if (environment == null) {
+            // lets default to the environment from the current active
+            // set of profiles (e.g. docker or openshift)
+            environment = System.getProperty(SystemProperties.FABRIC_PROFILE_ENVIRONMENT);
+        }
+        String versionId = profile.getVersion();
+        Version version = getVersion(versionId);
+        if (version == null) {
+            // The version may have been removed through the data store by another container
+            evictOverlays(versionId, null);
+            version = getRequiredVersion(versionId);
+        }
+        OverlayKey key = new OverlayKey(versionId, profileId, environment);
+        boolean cacheable = version.hasProfile(profileId);
+        if (!cacheable) {
+            // Never cache overlays of deleted or not yet stored profiles
+            overlayCache.invalidate(key);
+        }
+
+        // Nothing changed in the version since the overlay was built
+        OverlayEntry entry = overlayCache.getIfPresent(key);
+        if (entry != null && entry.self == profile && entry.revision != null && entry.revision.equals(version.getRevision())) {
+            return entry.overlay;
+        }
+
+        // Reuse the overlay if none of the profiles it was built from changed
+        OverlayOptionsProvider provider = new OverlayOptionsProvider(version, profile, environment);
+        List<Profile> inherited = provider.getInheritedProfiles();
+        if (entry != null && sameProfile(entry.self, profile) && sameProfiles(entry.inherited, inherited)) {
+            overlayCache.put(key, new OverlayEntry(version.getRevision(), profile, inherited, entry.overlay));
+            return entry.overlay;
+        }
+
+        ProfileBuilder builder = ProfileBuilder.Factory.create(profile.getVersion(), profileId);
+        builder.addOptions(provider);
+        Profile overlayProfile = builder.getProfile();
+        if (cacheable) {
+            overlayCache.put(key, new OverlayEntry(version.getRevision(), profile, inherited, overlayProfile));
+        }
+
+        // Log the overlay profile difference
+        if (LOGGER.isDebugEnabled()) {
+            OverlayAudit audit = getOverlayAudit();
+            synchronized (audit) {
+                Profile lastOverlay = audit.overlayProfiles.get(profileId);
+                if (lastOverlay == null) {
+                    LOGGER.debug("Overlay" + Profiles.getProfileInfo(overlayProfile));
+                    audit.overlayProfiles.put(profileId, overlayProfile);
+                } else if (!lastOverlay.equals(overlayProfile)) {
+                    LOGGER.debug("Overlay" + Profiles.getProfileDifference(lastOverlay, overlayProfile));
+                    audit.overlayProfiles.put(profileId, overlayProfile);
                 }
             }
         }
         return overlayProfile;
     }
 
+    private static boolean sameProfiles(List<Profile> profiles, List<Profile> others) {
+        if (profiles.size() != others.size()) {
+            return false;
+        }
+        for (int i = 0; i < profiles.size(); i++) {
+            if (!sameProfile(profiles.get(i), others.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Profiles loaded again after an unrelated change are equal but not the same instances and their file
+     * configurations are byte arrays, so compare their content
+     */
+    private static boolean sameProfile(Profile profile, Profile other) {
+        if (profile == other) {
+            return true;
+        }
+        if (profile == null || other == null) {
+            return false;
+        }
+        if (!profile.getId().equals(other.getId()) || !profile.getParentIds().equals(other.getParentIds())) {
+            return false;
+        }
+        Map<String, byte[]> configs = profile.getFileConfigurations();
+        Map<String, byte[]> otherConfigs = other.getFileConfigurations();
+        if (!configs.keySet().equals(otherConfigs.keySet())) {
+            return false;
+        }
+        for (Map.Entry<String, byte[]> entry : configs.entrySet()) {
+            if (!Arrays.equals(entry.getValue(), otherConfigs.get(entry.getKey()))) {
+                return false;
+            }
+        }
+        return profile.getProfileHash().equals(other.getProfileHash());
+    }
+
+    private void evictOverlays(String versionId, String profileId) {
+        for (Iterator<OverlayKey> it = overlayCache.asMap().keySet().iterator(); it.hasNext(); ) {
+            OverlayKey key = it.next();
+            if (key.versionId.equals(versionId) && (profileId == null || key.profileId.equals(profileId))) {
+                it.remove();
+            }
+        }
+    }
+
     @Override
     public void deleteProfile(String versionId, String profileId, boolean force) {
         deleteProfile(null, versionId, profileId, force);
@@ -249,6 +378,7 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
             sb.append(". Use force option to also remove the profile from the containers.");
             throw new FabricException(sb.toString());
         }
+        evictOverlays(versionId, profileId);
 
         // lets remove any pending requirements on this profile
         FabricRequirements requirements = fabricService != null ? fabricService.getRequirements() : null;
@@ -266,6 +396,7 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
         private final Version version;
         private final Profile self;
         private final String environment;
+        private List<Profile> inheritedProfiles;
 
         private static class SupplementControl {
             byte[] data;
@@ -329,7 +460,10 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
             }
         }
 
-        private List<Profile> getInheritedProfiles() {
+        List<Profile> getInheritedProfiles() {
+            if (inheritedProfiles != null) {
+                return inheritedProfiles;
+            }
             List<Profile> profiles = new ArrayList<>();
             fillParentProfiles(self, profiles);
             // always prepend "default" as first profile
@@ -338,6 +472,7 @@ public final class ProfileServiceImpl extends AbstractProtectedComponent<Profile
                     profiles.add(0, version.getProfile("default"));
                 }
             }
+            inheritedProfiles = profiles;
             return profiles;
         }
 
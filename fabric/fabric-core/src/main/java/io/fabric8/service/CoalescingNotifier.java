@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.fabric8.api.jmx.DataStoreNotificationsMBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collapses bursts of change notifications into one delivery carrying the paths which changed. A delivery
+ * happens once no notification arrived for the quiet period, and at the latest the max delay after the first
+ * notification of the burst. With a quiet period of 0 every notification is delivered on its own. Deliveries
+ * run on the given executor, which should have a single thread so they never overlap.
+ */
+class CoalescingNotifier implements DataStoreNotificationsMBean {
+
+    private static final transient Logger LOGGER = LoggerFactory.getLogger(CoalescingNotifier.class);
+
+    interface Delivery {
+
+        void deliver(Set<String> paths);
+    }
+
+    private final ScheduledExecutorService executor;
+    private final long quietPeriod;
+    private final long maxDelay;
+    private final Delivery delivery;
+
+    private final AtomicLong rawNotifications = new AtomicLong();
+    private final AtomicLong deliveredNotifications = new AtomicLong();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // guarded by this
+    private Set<String> pending;
+    private long firstNotification;
+    private long lastNotification;
+    private boolean scheduled;
+
+    CoalescingNotifier(ScheduledExecutorService executor, long quietPeriod, long maxDelay, TimeUnit unit, Delivery delivery) {
+        this.executor = executor;
+        this.quietPeriod = unit.toNanos(quietPeriod);
+        this.maxDelay = unit.toNanos(Math.max(quietPeriod, maxDelay));
+        this.delivery = delivery;
+    }
+
+    /**
+     * Notifies a change of the given path, or of something else than a path if it is null
+     */
+    void changed(String path) {
+        rawNotifications.incrementAndGet();
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (pending == null) {
+                pending = new LinkedHashSet<>();
+                firstNotification = now;
+            }
+            if (path != null) {
+                pending.add(path);
+            }
+            lastNotification = now;
+            if (quietPeriod == 0) {
+                deliverNow();
+            } else if (!scheduled) {
+                schedule(quietPeriod);
+            }
+        }
+    }
+
+    @Override
+    public long getRawNotifications() {
+        return rawNotifications.get();
+    }
+
+    @Override
+    public long getDeliveredNotifications() {
+        return deliveredNotifications.get();
+    }
+
+    @Override
+    public long getQuietPeriod() {
+        return TimeUnit.NANOSECONDS.toMillis(quietPeriod);
+    }
+
+    @Override
+    public long getMaxDelay() {
+        return TimeUnit.NANOSECONDS.toMillis(maxDelay);
+    }
+
+    private void flush() {
+        Set<String> paths;
+        synchronized (this) {
+            scheduled = false;
+            if (pending == null) {
+                return;
+            }
+            long due = Math.min(lastNotification + quietPeriod, firstNotification + maxDelay);
+            long now = System.nanoTime();
+            if (now - due < 0) {
+                schedule(due - now);
+                return;
+            }
+            paths = pending;
+            pending = null;
+        }
+        deliver(paths);
+    }
+
+    /**
+     * Hands the pending paths over to a delivery of their own, guarded by this
+     */
+    private void deliverNow() {
+        final Set<String> paths = pending;
+        pending = null;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(paths);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the executor has been shut down, there is nobody left to notify
+        }
+    }
+
+    private void deliver(Set<String> paths) {
+        deliveredNotifications.incrementAndGet();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Delivering changes of " + paths.size() + " paths, " + deliveredNotifications.get() + " deliveries for "
+                    + rawNotifications.get() + " notifications so far");
+        }
+        delivery.deliver(Collections.unmodifiableSet(paths));
+    }
+
+    private void schedule(long delay) {
+        try {
+            executor.schedule(flushTask, delay, TimeUnit.NANOSECONDS);
+            scheduled = true;
+        } catch (RejectedExecutionException e) {
+            // the executor has been shut down, there is nobody left to notify
+            pending = null;
+        }
+    }
+}
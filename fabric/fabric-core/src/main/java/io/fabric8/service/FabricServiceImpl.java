@@ -279,20 +279,21 @@ public final class FabricServiceImpl extends AbstractComponent implements Fabric
         assertValid();
         Map<String, Container> containers = new HashMap<String, Container>();
         List<String> containerIds = dataStore.get().getContainers();
+        Map<String, Map<DataStore.ContainerAttribute, String>> attributes = ContainerImpl.prefetchAttributes(dataStore.get(), containerIds);
         for (String containerId : containerIds) {
             String parentId = dataStore.get().getContainerParent(containerId);
             if (parentId.isEmpty()) {
                 if (!containers.containsKey(containerId)) {
-                    Container container = new ContainerImpl(null, containerId, this);
+                    Container container = new ContainerImpl(null, containerId, this, attributes.get(containerId));
                     containers.put(containerId, container);
                 }
             } else {
                 Container parent = containers.get(parentId);
                 if (parent == null) {
-                    parent = new ContainerImpl(null, parentId, this);
+                    parent = new ContainerImpl(null, parentId, this, attributes.get(parentId));
                     containers.put(parentId, parent);
                 }
-                Container container = new ContainerImpl(parent, containerId, this);
+                Container container = new ContainerImpl(parent, containerId, this, attributes.get(containerId));
                 containers.put(containerId, container);
             }
         }
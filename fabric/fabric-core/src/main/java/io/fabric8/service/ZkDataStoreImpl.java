@@ -21,7 +21,6 @@ import static io.fabric8.zookeeper.utils.ZooKeeperUtils.exists;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getByteData;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getChildrenSafe;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getStringData;
-import static io.fabric8.zookeeper.utils.ZooKeeperUtils.getSubstitutedPath;
 import static io.fabric8.zookeeper.utils.ZooKeeperUtils.setData;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -39,6 +38,7 @@ import io.fabric8.api.ZkDefs;
 import io.fabric8.api.commands.JMXRequest;
 import io.fabric8.api.commands.JMXResult;
 import io.fabric8.api.jcip.ThreadSafe;
+import io.fabric8.api.jmx.DataStoreNotificationsMBean;
 import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.common.util.Closeables;
@@ -49,22 +49,29 @@ import io.fabric8.utils.Base64Encoder;
 import io.fabric8.utils.FabricVersionUtils;
 import io.fabric8.utils.NamedThreadFactory;
 import io.fabric8.zookeeper.ZkPath;
+import io.fabric8.zookeeper.utils.InterpolationHelper;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -73,17 +80,23 @@ import java.util.concurrent.TimeUnit;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.CuratorEventType;
 import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
 import org.apache.curator.framework.recipes.cache.TreeCacheExtended;
+import org.apache.curator.framework.recipes.cache.TreeData;
 import org.apache.curator.framework.recipes.queue.DistributedQueue;
 import org.apache.curator.framework.recipes.queue.PublicStringSerializer;
 import org.apache.curator.framework.recipes.queue.QueueBuilder;
 import org.apache.curator.framework.recipes.queue.QueueConsumer;
 import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
@@ -106,6 +119,13 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
 
     private static final String JVM_OPTIONS_PATH = "/fabric/configs/io.fabric8.containers.jvmOptions";
     private static final String REQUIREMENTS_JSON_PATH = "/fabric/configs/io.fabric8.requirements.json";
+    private static final long BACKGROUND_READ_TIMEOUT = 30000L;
+
+    static final String NOTIFICATION_QUIET_PERIOD = "fabric.datastore.notification.quietPeriod";
+    static final String NOTIFICATION_MAX_DELAY = "fabric.datastore.notification.maxDelay";
+    private static final String DEFAULT_NOTIFICATION_QUIET_PERIOD = "200";
+    private static final String DEFAULT_NOTIFICATION_MAX_DELAY = "2000";
+    private static final String NOTIFICATIONS_OBJECT_NAME = "io.fabric8:service=DataStoreNotifications";
 
     @Reference(referenceInterface = CuratorFramework.class)
     private final ValidatingReference<CuratorFramework> curator = new ValidatingReference<CuratorFramework>();
@@ -116,7 +136,8 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
 
     private final CopyOnWriteArrayList<Runnable> callbacks = new CopyOnWriteArrayList<Runnable>();
     private final ExecutorService cacheExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("zk-cache"));
-    private final ExecutorService callbacksExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("zk-datastore"));
+    private final ScheduledExecutorService callbacksExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("zk-datastore"));
+    private CoalescingNotifier changeNotifier;
 
     private TreeCacheExtended configCache;
     private TreeCacheExtended containerCache;
@@ -142,6 +163,16 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     }
 
     private void activateInternal() throws Exception {
+        long quietPeriod = Long.parseLong(runtimeProperties.get().getProperty(NOTIFICATION_QUIET_PERIOD, DEFAULT_NOTIFICATION_QUIET_PERIOD));
+        long maxDelay = Long.parseLong(runtimeProperties.get().getProperty(NOTIFICATION_MAX_DELAY, DEFAULT_NOTIFICATION_MAX_DELAY));
+        changeNotifier = new CoalescingNotifier(callbacksExecutor, quietPeriod, maxDelay, TimeUnit.MILLISECONDS, new CoalescingNotifier.Delivery() {
+            @Override
+            public void deliver(Set<String> paths) {
+                doRunCallbacks(paths);
+            }
+        });
+        registerNotificationsMBean();
+
         configCache = new TreeCacheExtended(curator.get(), ZkPath.CONFIGS.getPath(), true, false, true, cacheExecutor);
         configCache.start(TreeCacheExtended.StartMode.NORMAL);
         configCache.getListenable().addListener(this);
@@ -167,6 +198,8 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     }
 
     private void deactivateInternal() {
+        unregisterNotificationsMBean();
+
         configCache.getListenable().removeListener(this);
         Closeables.closeQuietly(configCache);
 
@@ -210,7 +243,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
                     if (shouldRunCallbacks(type, path) && !path.contains("password")) {
                         String s = data != null ? new String(data, "UTF-8") : "";
                         LOGGER.info("Event {} detected on {} with data {}. Sending notification.", type.name(), path, s);
-                        fireChangeNotifications();
+                        changeNotifier.changed(path);
                     }
                     break;
             }
@@ -237,26 +270,21 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
 
     @Override
     public void fireChangeNotifications() {
-        runCallbacks();
-    }
-
-    private void runCallbacks() {
-        callbacksExecutor.submit(new Runnable() {
-            @Override
-            public void run() {
-                doRunCallbacks();
-            }
-        });
+        changeNotifier.changed(null);
     }
 
-    private void doRunCallbacks() {
+    private void doRunCallbacks(Set<String> paths) {
         assertValid();
         for (Runnable callback : callbacks) {
             try {
                 if (LOGGER.isDebugEnabled()) {
                     LOGGER.debug("Running callback " + callback);
                 }
-                callback.run();
+                if (callback instanceof ChangeCallback) {
+                    ((ChangeCallback) callback).onChange(paths);
+                } else {
+                    callback.run();
+                }
             } catch (Throwable e) {
                 LOGGER.warn("Caught: " + e, e);
             }
@@ -300,11 +328,8 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
     public String getContainerParent(String containerId) {
         assertValid();
         try {
-            String parentName = getStringData(curator.get(), ZkPath.CONTAINER_PARENT.getPath(containerId));
+            String parentName = getRegistryData(ZkPath.CONTAINER_PARENT.getPath(containerId));
             return parentName != null ? parentName.trim() : "";
-        } catch (KeeperException.NoNodeException e) {
-            // Ignore
-            return "";
         } catch (Throwable e) {
             throw FabricException.launderThrowable(e);
         }
@@ -324,6 +349,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             }
             deleteSafe(curator.get(), ZkPath.CONFIG_CONTAINER.getPath(containerId));
             deleteSafe(curator.get(), ZkPath.CONTAINER.getPath(containerId));
+            syncContainerCache(ZkPath.CONTAINER.getPath(containerId));
             deleteSafe(curator.get(), ZkPath.CONTAINER_ALIVE.getPath(containerId));
             deleteSafe(curator.get(), ZkPath.CONTAINER_DOMAINS.getPath(containerId));
             deleteSafe(curator.get(), ZkPath.CONTAINER_PROVISION.getPath(containerId));
@@ -353,6 +379,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             setData(curator.get(), ZkPath.CONFIG_CONTAINER.getPath(containerId), versionId);
             setData(curator.get(), ZkPath.CONFIG_VERSIONS_CONTAINER.getPath(versionId, containerId), sb.toString());
             setData(curator.get(), ZkPath.CONTAINER_PARENT.getPath(containerId), parent);
+            syncContainerCache(ZkPath.CONTAINER_PARENT.getPath(containerId));
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -390,6 +417,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
                 String key = entry.getKey();
                 String value = entry.getValue();
                 setData(curator.get(), ZkPath.CONTAINER_ENTRY.getPath(metadata.getContainerName(), key), value);
+                syncContainerCache(ZkPath.CONTAINER_ENTRY.getPath(metadata.getContainerName(), key));
             }
 
             // If no resolver specified but a resolver is already present in the registry, use the registry value
@@ -408,6 +436,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             }
             // Set the resolver if not already set
             setData(curator.get(), ZkPath.CONTAINER_RESOLVER.getPath(containerId), resolver);
+            syncContainerCache(ZkPath.CONTAINER_RESOLVER.getPath(containerId));
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         }
@@ -559,22 +588,207 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             }
         } else {
             try {
+                String path = getAttributePath(containerId, attribute);
+                String value = getRegistryData(path);
                 if (substituted) {
-                    return getSubstitutedPath(curator.get(), getAttributePath(containerId, attribute));
-                } else {
-                    return getStringData(curator.get(), getAttributePath(containerId, attribute));
-                }
-            } catch (KeeperException.NoNodeException e) {
-                if (mandatory) {
-                    throw FabricException.launderThrowable(e);
+                    return getSubstitutedData(value);
+                } else if (value == null) {
+                    if (mandatory) {
+                        throw new KeeperException.NoNodeException(path);
+                    }
+                    return def;
                 }
-                return def;
+                return value;
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
             }
         }
     }
 
+    @Override
+    public Map<String, Map<ContainerAttribute, String>> getContainerAttributes(Collection<String> containerIds, Collection<ContainerAttribute> attributes, boolean substituted) {
+        assertValid();
+        try {
+            // the attributes of the container registry are served by the cache, the others are read with
+            // one pipelined round of requests
+            Map<String, Map<ContainerAttribute, String>> result = new HashMap<>();
+            List<String> dataPaths = new ArrayList<>();
+            List<String> childrenPaths = new ArrayList<>();
+            for (String containerId : containerIds) {
+                result.put(containerId, new EnumMap<ContainerAttribute, String>(ContainerAttribute.class));
+                for (ContainerAttribute attribute : attributes) {
+                    if (attribute == ContainerAttribute.Domains) {
+                        childrenPaths.add(ZkPath.CONTAINER_DOMAINS.getPath(containerId));
+                    } else {
+                        String path = getAttributePath(containerId, attribute);
+                        if (!isContainerCached(path)) {
+                            dataPaths.add(path);
+                        }
+                    }
+                }
+            }
+            Map<String, Object> remote = readInBackground(dataPaths, childrenPaths);
+            for (String containerId : containerIds) {
+                Map<ContainerAttribute, String> values = result.get(containerId);
+                for (ContainerAttribute attribute : attributes) {
+                    String value;
+                    if (attribute == ContainerAttribute.Domains) {
+                        List<?> domains = (List<?>) remote.get(ZkPath.CONTAINER_DOMAINS.getPath(containerId));
+                        value = domains != null ? joinDomains(domains) : "";
+                    } else {
+                        String path = getAttributePath(containerId, attribute);
+                        value = isContainerCached(path) ? getContainerCacheData(path) : (String) remote.get(path);
+                        if (substituted) {
+                            value = getSubstitutedData(value);
+                        }
+                    }
+                    if (value != null) {
+                        values.put(attribute, value);
+                    }
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            throw FabricException.launderThrowable(e);
+        }
+    }
+
+    /**
+     * Reads the data of the given paths and the children of the other given paths with asynchronous requests,
+     * so they share the network round trips. Paths which do not exist are missing from the result.
+     */
+    private Map<String, Object> readInBackground(List<String> dataPaths, List<String> childrenPaths) throws Exception {
+        final Map<String, Object> result = new ConcurrentHashMap<>();
+        final Map<String, KeeperException> errors = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(dataPaths.size() + childrenPaths.size());
+        BackgroundCallback callback = new BackgroundCallback() {
+            @Override
+            public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                try {
+                    KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                    if (code == KeeperException.Code.OK) {
+                        if (event.getType() == CuratorEventType.CHILDREN) {
+                            result.put(event.getPath(), event.getChildren());
+                        } else if (event.getData() != null) {
+                            result.put(event.getPath(), new String(event.getData(), "UTF-8"));
+                        }
+                    } else if (code != KeeperException.Code.NONODE) {
+                        errors.put(event.getPath(), KeeperException.create(code, event.getPath()));
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }
+        };
+        for (String path : dataPaths) {
+            curator.get().getData().inBackground(callback).forPath(path);
+        }
+        for (String path : childrenPaths) {
+            curator.get().getChildren().inBackground(callback).forPath(path);
+        }
+        if (!latch.await(BACKGROUND_READ_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Timed out reading " + latch.getCount() + " nodes from ZooKeeper");
+        }
+        if (!errors.isEmpty()) {
+            throw errors.values().iterator().next();
+        }
+        return result;
+    }
+
+    private static String joinDomains(List<?> domains) {
+        List<String> list = new ArrayList<>();
+        for (Object domain : domains) {
+            list.add(String.valueOf(domain));
+        }
+        Collections.sort(list);
+        StringBuilder sb = new StringBuilder();
+        for (String l : list) {
+            if (sb.length() > 0) {
+                sb.append("\n");
+            }
+            sb.append(l);
+        }
+        return sb.toString();
+    }
+
+    private boolean isContainerCached(String path) {
+        return path.startsWith(ZkPath.CONTAINERS.getPath() + "/");
+    }
+
+    /**
+     * Reads a node from the container cache. The children of the parent node are checked first, so a node
+     * which is not set does not cost a round trip.
+     */
+    private String getContainerCacheData(String path) throws Exception {
+        TreeData parent = containerCache.getCurrentData(ZKPaths.getPathAndNode(path).getPath());
+        if (parent == null || !parent.getChildren().contains(ZKPaths.getNodeFromPath(path))) {
+            return null;
+        }
+        return getStringData(containerCache, path);
+    }
+
+    /**
+     * Reads a node of the container registry, from the container cache when it holds the path. Returns null
+     * if the node does not exist.
+     */
+    private String getRegistryData(String path) throws Exception {
+        if (isContainerCached(path)) {
+            return getContainerCacheData(path);
+        }
+        try {
+            return getStringData(curator.get(), path);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Substitutes the zk: references in the given data like {@link io.fabric8.zookeeper.utils.ZooKeeperUtils#getSubstitutedData},
+     * reading plain references to the container registry from the container cache. Returns null for empty data.
+     */
+    private String getSubstitutedData(String data) throws Exception {
+        if (data == null || data.isEmpty()) {
+            return null;
+        }
+        if (!data.contains("${")) {
+            return data;
+        }
+        Map<String, String> props = new HashMap<>();
+        props.put("data", data);
+        InterpolationHelper.performSubstitution(props, new InterpolationHelper.SubstitutionCallback() {
+            @Override
+            public String getValue(String key) {
+                if (key.startsWith("zk:")) {
+                    try {
+                        URI uri = new URI(key);
+                        String path = uri.getSchemeSpecificPart().trim();
+                        if (!path.startsWith("/")) {
+                            path = ZkPath.CONTAINER.getPath(path);
+                        }
+                        if (uri.getFragment() == null && isContainerCached(path)) {
+                            return getContainerCacheData(path);
+                        }
+                        return new String(ZkPath.loadURL(curator.get(), key), "UTF-8");
+                    } catch (Exception e) {
+                        //ignore and just return null.
+                    }
+                }
+                return null;
+            }
+        });
+        return props.get("data");
+    }
+
+    /**
+     * Lets the next read of a container registry node written by this container see the write, even if the
+     * watch for it has not fired yet.
+     */
+    private void syncContainerCache(String path) {
+        if (isContainerCached(path)) {
+            containerCache.invalidate(path);
+        }
+    }
+
     @Override
     public void setContainerAttribute(String containerId, ContainerAttribute attribute, String value) {
         assertValid();
@@ -585,6 +799,8 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
             try {
                 setData(curator.get(), ZkPath.CONTAINER_IP.getPath(containerId), "${zk:" + containerId + "/" + value + "}");
                 setData(curator.get(), ZkPath.CONTAINER_RESOLVER.getPath(containerId), value);
+                syncContainerCache(ZkPath.CONTAINER_IP.getPath(containerId));
+                syncContainerCache(ZkPath.CONTAINER_RESOLVER.getPath(containerId));
             } catch (Exception e) {
                 throw FabricException.launderThrowable(e);
             }
@@ -614,6 +830,7 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
                 //                    deleteSafe(zk, getAttributePath(containerId, attribute));
                 //                } else {
                 setData(curator.get(), getAttributePath(containerId, attribute), value);
+                syncContainerCache(getAttributePath(containerId, attribute));
                 //                }
             } catch (KeeperException.NoNodeException e) {
                 // Ignore
@@ -927,6 +1144,30 @@ public class ZkDataStoreImpl extends AbstractComponent implements DataStore, Pat
         this.runtimeProperties.unbind(service);
     }
 
+    private void registerNotificationsMBean() {
+        try {
+            ObjectName name = new ObjectName(NOTIFICATIONS_OBJECT_NAME);
+            MBeanServer jmx = mbeanServer.get();
+            if (!jmx.isRegistered(name)) {
+                jmx.registerMBean(new StandardMBean(changeNotifier, DataStoreNotificationsMBean.class), name);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("An error occurred during mbean server registration: " + e, e);
+        }
+    }
+
+    private void unregisterNotificationsMBean() {
+        try {
+            ObjectName name = new ObjectName(NOTIFICATIONS_OBJECT_NAME);
+            MBeanServer jmx = mbeanServer.getOptional();
+            if (jmx != null && jmx.isRegistered(name)) {
+                jmx.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("An error occurred during mbean server unregistration: " + e, e);
+        }
+    }
+
     void bindMBeanServer(MBeanServer mbeanServer) {
         this.mbeanServer.bind(mbeanServer);
     }
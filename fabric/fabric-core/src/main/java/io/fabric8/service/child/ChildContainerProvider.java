@@ -40,6 +40,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.management.openmbean.CompositeDataSupport;
 import javax.management.openmbean.TabularData;
+import java.io.File;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -58,6 +59,11 @@ public final class ChildContainerProvider extends AbstractComponent implements C
 
     static final String SCHEME = "child";
 
+    /**
+     * System property configuring the shared artifact store of the maven resolvers, see fabric-maven
+     */
+    static final String SHARED_ARTIFACT_STORE = "org.ops4j.pax.url.mvn.sharedStore";
+
     @Reference(referenceInterface = FabricService.class)
     private final ValidatingReference<FabricService> fabricService = new ValidatingReference<>();
     // [TODO] #1916 Migrate process-manager to SCR
@@ -397,6 +403,11 @@ public final class ChildContainerProvider extends AbstractComponent implements C
             jvmOptsBuilder.append(" -D" + ZkDefs.MANUAL_IP + "=" + options.getManualIp());
         }
 
+        // let the children of this container share the artifacts they download, unless the option is given explicitly
+        if (options.getJvmOpts() == null || !options.getJvmOpts().contains("-D" + SHARED_ARTIFACT_STORE + "=")) {
+            jvmOptsBuilder.append(" -D" + SHARED_ARTIFACT_STORE + "=\"" + getSharedArtifactStore() + "\"");
+        }
+
         for (Map.Entry<String, String> dataStoreEntries : options.getDataStoreProperties().entrySet()) {
             String key = dataStoreEntries.getKey();
             String value = dataStoreEntries.getValue();
@@ -405,6 +416,18 @@ public final class ChildContainerProvider extends AbstractComponent implements C
         return jvmOptsBuilder;
     }
 
+    /**
+     * Returns the shared artifact store of this container if it has one, or a store in its data directory
+     */
+    private static String getSharedArtifactStore() {
+        String store = System.getProperty(SHARED_ARTIFACT_STORE);
+        if (store == null || store.trim().isEmpty()) {
+            String karafData = System.getProperty("karaf.data", System.getProperty("karaf.home", ".") + File.separator + "data");
+            store = new File(karafData, "shared-artifacts").getAbsolutePath();
+        }
+        return store.trim();
+    }
+
     /**
      * Returns the {@link ContainerTemplate} of the parent of the specified child {@link Container}.
      */
@@ -0,0 +1,132 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import io.fabric8.api.Profile;
+import io.fabric8.api.ProfileBuilder;
+import io.fabric8.api.ProfileRegistry;
+import io.fabric8.api.RuntimeProperties;
+import io.fabric8.api.Version;
+import io.fabric8.api.VersionBuilder;
+import io.fabric8.api.permit.PermitManager;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProfileServiceImplTest {
+
+    ProfileRegistry profileRegistry;
+    ProfileServiceImpl profileService;
+
+    @Before
+    public void setUp() throws Exception {
+        profileRegistry = mock(ProfileRegistry.class);
+        profileService = new ProfileServiceImpl();
+        profileService.bindPermitManager(mock(PermitManager.class));
+        profileService.bindProfileRegistry(profileRegistry);
+        profileService.bindRuntimeProperties(mock(RuntimeProperties.class));
+        profileService.activate();
+    }
+
+    @After
+    public void tearDown() {
+        profileService.deactivate();
+    }
+
+    @Test
+    public void testOverlayReusedWhileParentsUnchanged() {
+        Profile child = createProfile("child", "a", "default");
+        storeVersion("1", createProfile("default", "a", null), child);
+        Profile overlay = profileService.getOverlayProfile(child);
+        assertEquals("a", overlay.getConfiguration("pid").get("child"));
+        assertSame(overlay, profileService.getOverlayProfile(child));
+
+        // An unrelated change reloads equal profiles under a new revision
+        Profile reloaded = createProfile("child", "a", "default");
+        storeVersion("2", createProfile("default", "a", null), reloaded, createProfile("other", "a", null));
+        assertSame(overlay, profileService.getOverlayProfile(reloaded));
+    }
+
+    @Test
+    public void testOverlayRebuiltAfterParentEdit() {
+        Profile child = createProfile("child", "a", "default");
+        storeVersion("1", createProfile("default", "a", null), child);
+        Profile overlay = profileService.getOverlayProfile(child);
+        assertEquals("a", overlay.getConfiguration("pid").get("default"));
+
+        storeVersion("2", createProfile("default", "b", null), child);
+        Profile rebuilt = profileService.getOverlayProfile(child);
+        assertNotSame(overlay, rebuilt);
+        assertEquals("b", rebuilt.getConfiguration("pid").get("default"));
+        assertSame(rebuilt, profileService.getOverlayProfile(child));
+    }
+
+    @Test
+    public void testOverlayDroppedAfterDelete() {
+        Profile child = createProfile("child", "a", "default");
+        Profile parent = createProfile("default", "a", null);
+        storeVersion("1", parent, child);
+        Profile overlay = profileService.getOverlayProfile(child);
+
+        when(profileRegistry.getRequiredProfile("1.0", "child")).thenReturn(child);
+        profileService.deleteProfile("1.0", "child", false);
+        verify(profileRegistry).deleteProfile("1.0", "child");
+
+        // Stored again under the same revision, the overlay must not come from the cache
+        storeVersion("1", parent, child);
+        Profile rebuilt = profileService.getOverlayProfile(child);
+        assertNotSame(overlay, rebuilt);
+        assertSame(rebuilt, profileService.getOverlayProfile(child));
+    }
+
+    @Test
+    public void testOverlayDroppedAfterDeleteThroughDataStore() {
+        Profile child = createProfile("child", "a", "default");
+        Profile parent = createProfile("default", "a", null);
+        storeVersion("1", parent, child);
+        Profile overlay = profileService.getOverlayProfile(child);
+
+        // Removed by another container, only the registry knows
+        storeVersion("2", parent);
+        Profile detached = profileService.getOverlayProfile(child);
+        assertNotSame(overlay, detached);
+        assertNotSame(detached, profileService.getOverlayProfile(child));
+    }
+
+    private Profile createProfile(String profileId, String value, String parentId) {
+        ProfileBuilder builder = ProfileBuilder.Factory.create("1.0", profileId);
+        builder.addConfiguration("pid", profileId, value);
+        if (parentId != null) {
+            builder.addParent(parentId);
+        }
+        return builder.getProfile();
+    }
+
+    private void storeVersion(String revision, Profile... profiles) {
+        Version version = VersionBuilder.Factory.create("1.0").setRevision(revision).addProfiles(Arrays.asList(profiles)).getVersion();
+        when(profileRegistry.getVersion("1.0")).thenReturn(version);
+        when(profileRegistry.getRequiredVersion("1.0")).thenReturn(version);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.StandardMBean;
+
+import io.fabric8.api.jmx.DataStoreNotificationsMBean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoalescingNotifierTest {
+
+    private ScheduledExecutorService executor;
+    private LinkedBlockingQueue<Set<String>> deliveries;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        deliveries = new LinkedBlockingQueue<>();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private CoalescingNotifier createNotifier(long quietPeriod, long maxDelay) {
+        return new CoalescingNotifier(executor, quietPeriod, maxDelay, TimeUnit.MILLISECONDS, new CoalescingNotifier.Delivery() {
+            @Override
+            public void deliver(Set<String> paths) {
+                deliveries.add(paths);
+            }
+        });
+    }
+
+    @Test
+    public void testBurstIsDeliveredOnce() throws Exception {
+        CoalescingNotifier notifier = createNotifier(200, 5000);
+        for (int i = 0; i < 50; i++) {
+            notifier.changed("/fabric/registry/containers/config/c" + (i % 5) + "/ip");
+        }
+        notifier.changed(null);
+
+        Set<String> paths = deliveries.poll(5, TimeUnit.SECONDS);
+        assertEquals(5, paths.size());
+        assertTrue(paths.contains("/fabric/registry/containers/config/c0/ip"));
+        Thread.sleep(400);
+        assertTrue(deliveries.isEmpty());
+        assertEquals(51, notifier.getRawNotifications());
+        assertEquals(1, notifier.getDeliveredNotifications());
+
+        notifier.changed("/fabric/configs/ensemble/url");
+        assertEquals(new HashSet<>(Arrays.asList("/fabric/configs/ensemble/url")), deliveries.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, notifier.getDeliveredNotifications());
+    }
+
+    @Test
+    public void testMaxDelay() throws Exception {
+        CoalescingNotifier notifier = createNotifier(200, 500);
+        long start = System.currentTimeMillis();
+        // keep notifying more often than the quiet period for longer than the max delay
+        while (deliveries.isEmpty() && System.currentTimeMillis() - start < 5000) {
+            notifier.changed("/fabric/registry/containers/config/c1/ip");
+            Thread.sleep(50);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals(1, deliveries.size());
+        assertTrue("Delivered after " + elapsed + " ms", elapsed < 2000);
+    }
+
+    @Test
+    public void testZeroQuietPeriodDeliversEveryChange() throws Exception {
+        CoalescingNotifier notifier = createNotifier(0, 0);
+        notifier.changed("/fabric/configs/a");
+        notifier.changed("/fabric/configs/b");
+        notifier.changed(null);
+
+        assertEquals(Collections.singleton("/fabric/configs/a"), deliveries.poll(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singleton("/fabric/configs/b"), deliveries.poll(5, TimeUnit.SECONDS));
+        assertEquals(Collections.<String>emptySet(), deliveries.poll(5, TimeUnit.SECONDS));
+        assertEquals(3, notifier.getRawNotifications());
+        assertEquals(3, notifier.getDeliveredNotifications());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        CoalescingNotifier notifier = createNotifier(200, 2000);
+        notifier.changed("/fabric/configs/a");
+        deliveries.poll(5, TimeUnit.SECONDS);
+
+        StandardMBean mbean = new StandardMBean(notifier, DataStoreNotificationsMBean.class);
+        assertEquals(1L, mbean.getAttribute("RawNotifications"));
+        assertEquals(1L, mbean.getAttribute("DeliveredNotifications"));
+        assertEquals(200L, mbean.getAttribute("QuietPeriod"));
+        assertEquals(2000L, mbean.getAttribute("MaxDelay"));
+    }
+}
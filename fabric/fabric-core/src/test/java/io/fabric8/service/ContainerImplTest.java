@@ -24,6 +24,7 @@ import static org.easymock.classextension.EasyMock.replay;
 import static org.easymock.classextension.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import io.fabric8.api.Container;
 import io.fabric8.api.DataStore;
 import io.fabric8.api.FabricException;
@@ -36,6 +37,9 @@ import io.fabric8.api.ZkDefs;
 import io.fabric8.internal.ContainerImpl;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -293,6 +297,37 @@ public class ContainerImplTest {
         verify(dataStore);
     }
 
+    @Test
+    public void testPrefetchedAttributes() throws Exception {
+        expect(dataStore.getContainerAttributes(Arrays.asList(CONTAINER_ID), EnumSet.of(DataStore.ContainerAttribute.DebugPort,
+                DataStore.ContainerAttribute.Location, DataStore.ContainerAttribute.GeoLocation, DataStore.ContainerAttribute.PortMin,
+                DataStore.ContainerAttribute.PortMax, DataStore.ContainerAttribute.Domains, DataStore.ContainerAttribute.ProvisionStatus,
+                DataStore.ContainerAttribute.ProvisionException, DataStore.ContainerAttribute.ProvisionList,
+                DataStore.ContainerAttribute.BlueprintStatus, DataStore.ContainerAttribute.SpringStatus,
+                DataStore.ContainerAttribute.ProcessId), false))
+                .andReturn(Collections.singletonMap(CONTAINER_ID, Collections.singletonMap(DataStore.ContainerAttribute.ProvisionStatus, "success")));
+        expect(dataStore.getContainerAttributes(eq(Arrays.asList(CONTAINER_ID)), (Collection<DataStore.ContainerAttribute>) anyObject(), eq(true)))
+                .andReturn(Collections.singletonMap(CONTAINER_ID, Collections.singletonMap(DataStore.ContainerAttribute.SshUrl, "localhost:8101")));
+        dataStore.setContainerAttribute(CONTAINER_ID, DataStore.ContainerAttribute.Location, "here");
+        expect(dataStore.getContainerAttribute(CONTAINER_ID, DataStore.ContainerAttribute.Location, "", false, false)).andReturn("here");
+        replay(fabricService);
+        replay(dataStore);
+
+        Map<String, Map<DataStore.ContainerAttribute, String>> prefetched = ContainerImpl.prefetchAttributes(dataStore, Arrays.asList(CONTAINER_ID));
+        Container prefetchedContainer = new ContainerImpl(null, CONTAINER_ID, fabricService, prefetched.get(CONTAINER_ID));
+        assertEquals("localhost:8101", prefetchedContainer.getSshUrl());
+        assertEquals("success", prefetchedContainer.getProvisionStatus());
+        assertNull(prefetchedContainer.getProcessId());
+        assertNull(prefetchedContainer.getPublicIp());
+        assertEquals("", prefetchedContainer.getLocation());
+
+        // attributes written through the container are read again
+        prefetchedContainer.setLocation("here");
+        assertEquals("here", prefetchedContainer.getLocation());
+        verify(fabricService);
+        verify(dataStore);
+    }
+
     @Test(expected = FabricException.class)
     public void testInvalidResolver() throws KeeperException, InterruptedException {
         container.setResolver("invalidreolver");
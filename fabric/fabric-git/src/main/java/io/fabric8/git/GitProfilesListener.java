@@ -0,0 +1,30 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.git;
+
+import java.util.Set;
+
+/**
+ * A {@link GitListener} which is also told which profiles a pull has changed.
+ * It is called after the profile write lock has been released.
+ */
+public interface GitProfilesListener extends GitListener {
+
+    /**
+     * Called when a pull changed the given profiles of a version
+     */
+    void onProfilesChanged(String versionId, Set<String> profileIds);
+}
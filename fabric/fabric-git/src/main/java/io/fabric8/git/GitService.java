@@ -15,6 +15,8 @@
  */
 package io.fabric8.git;
 
+import java.util.Set;
+
 import org.eclipse.jgit.api.Git;
 
 /**
@@ -34,6 +36,11 @@ public interface GitService {
 
     void notifyReceivePacket();
 
+    /**
+     * A hook if a pull has changed profiles of a version, passed on to the {@link GitProfilesListener}s
+     */
+    void notifyProfilesChanged(String versionId, Set<String> profileIds);
+
     void addGitListener(GitListener listener);
 
     void removeGitListener(GitListener listener);
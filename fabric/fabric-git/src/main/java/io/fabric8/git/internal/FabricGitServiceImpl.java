@@ -21,12 +21,14 @@ import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.api.visibility.VisibleForTesting;
 import io.fabric8.git.GitListener;
+import io.fabric8.git.GitProfilesListener;
 import io.fabric8.git.GitService;
 import io.fabric8.zookeeper.bootstrap.BootstrapConfiguration;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.felix.scr.annotations.Activate;
@@ -118,6 +120,15 @@ public final class FabricGitServiceImpl extends AbstractComponent implements Git
         }
     }
 
+    @Override
+    public void notifyProfilesChanged(String versionId, Set<String> profileIds) {
+        for (GitListener listener : listeners) {
+            if (listener instanceof GitProfilesListener) {
+                ((GitProfilesListener) listener).onProfilesChanged(versionId, profileIds);
+            }
+        }
+    }
+
     @Override
     public void addGitListener(GitListener listener) {
         listeners.add(listener);
@@ -99,14 +99,24 @@ import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.internal.storage.file.LockFile;
 import org.eclipse.jgit.lib.BatchingProgressMonitor;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.gitective.core.RepositoryUtils;
 import io.fabric8.api.gravia.IllegalArgumentAssertion;
 import io.fabric8.api.gravia.IllegalStateAssertion;
@@ -177,6 +187,8 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     private ProxySelector defaultProxySelector;
     private PullPushPolicy pullPushPolicy;
     private boolean notificationRequired;
+    // profiles changed by pulls, reported to the listeners once the write lock is released
+    private final Map<String, Set<String>> pendingProfileChanges = new LinkedHashMap<>();
     private SharedCount counter;
     private String remoteUrl;
 
@@ -195,7 +207,8 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
     @Property(name = "gitRandomFetchDelay", label = "Fetch delay", description = "If greater than 0, container will wait up to given number of seconds before fetching from remote repository.", intValue = 0)
     private int gitRandomFetchDelay = 0;
 
-    private final LoadingCache<String, Version> versionCache = CacheBuilder.newBuilder().build(new VersionCacheLoader());
+    private final VersionCacheLoader versionCacheLoader = new VersionCacheLoader();
+    private final LoadingCache<String, Version> versionCache = CacheBuilder.newBuilder().build(versionCacheLoader);
     private final Set<String> versions = new HashSet<String>();
 
     // ENTESB-6336: This latch will be triggerred after versionCache contains some sane data
@@ -479,14 +492,27 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         return new LockHandle() {
             @Override
             public void unlock() {
-                if (notificationRequired && readWriteLock.getWriteHoldCount() == 1) {
-                    try {
-                        dataStore.get().fireChangeNotifications();
-                    } finally {
-                        notificationRequired = false;
+                Map<String, Set<String>> profileChanges = null;
+                try {
+                    if (readWriteLock.getWriteHoldCount() == 1) {
+                        if (!pendingProfileChanges.isEmpty()) {
+                            profileChanges = new LinkedHashMap<>(pendingProfileChanges);
+                            pendingProfileChanges.clear();
+                        }
+                        if (notificationRequired) {
+                            try {
+                                dataStore.get().fireChangeNotifications();
+                            } finally {
+                                notificationRequired = false;
+                            }
+                        }
                     }
+                } finally {
+                    writeLock.unlock();
+                }
+                if (profileChanges != null) {
+                    notifyProfilesChanged(profileChanges);
                 }
-                writeLock.unlock();
             }
         };
     }
@@ -586,7 +612,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
             LOGGER.warn("Waiting for initial versions failed");
         }
 
-        LockHandle writeLock = aquireWriteLock();
+        LockHandle readLock = aquireReadLock();
         try {
             assertValid();
             String branch = GitHelpers.getProfileBranch(versionId, profileId);
@@ -598,7 +624,7 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         } catch (Exception e) {
             throw FabricException.launderThrowable(e);
         } finally {
-            writeLock.unlock();
+            readLock.unlock();
         }
     }
 
@@ -1277,7 +1303,15 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
                     versionCache.invalidateAll();
                 } else {
                     for (String version : updatedVersions.keySet()) {
-                        versionCache.invalidate(version);
+                        Set<String> changedProfiles = refreshVersion(version);
+                        if (changedProfiles != null && !changedProfiles.isEmpty()) {
+                            Set<String> pending = pendingProfileChanges.get(version);
+                            if (pending == null) {
+                                pendingProfileChanges.put(version, changedProfiles);
+                            } else {
+                                pending.addAll(changedProfiles);
+                            }
+                        }
                     }
                 }
                 notificationRequired = true;
@@ -1299,6 +1333,36 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         return pullResult;
     }
 
+    /**
+     * Brings a cached version up to date with its branch by reloading only the profiles which changed,
+     * or evicts it if that is not possible. Returns the ids of the changed profiles, or null if the
+     * version was evicted.
+     */
+    Set<String> refreshVersion(String versionId) {
+        Version version = versionCache.getIfPresent(versionId);
+        if (version != null && version.getRevision() != null) {
+            try {
+                Set<String> changedProfiles = new HashSet<>();
+                versionCache.put(versionId, versionCacheLoader.refreshVersion(getGit(), version, changedProfiles));
+                return changedProfiles;
+            } catch (Exception e) {
+                LOGGER.debug("Cannot refresh version " + versionId + " due " + e.getMessage(), e);
+            }
+        }
+        versionCache.invalidate(versionId);
+        return null;
+    }
+
+    private void notifyProfilesChanged(Map<String, Set<String>> profileChanges) {
+        for (Map.Entry<String, Set<String>> entry : profileChanges.entrySet()) {
+            try {
+                gitService.get().notifyProfilesChanged(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to notify the profile changes of version " + entry.getKey() + " due " + e.getMessage(), e);
+            }
+        }
+    }
+
     private PushPolicyResult doPushInternal(GitContext context, CredentialsProvider credentialsProvider) {
         return pullPushPolicy.doPush(context, credentialsProvider);
     }
@@ -1431,6 +1495,13 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         }
     }
 
+    /**
+     * Drops all the cached versions, so they are loaded again on next access
+     */
+    void invalidateVersionCache() {
+        versionCache.invalidateAll();
+    }
+
     private void removeVersionFromCaches(String versionId) {
         versionCache.invalidate(versionId);
         versions.remove(versionId);
@@ -1924,11 +1995,15 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         }
     }
     
+    /**
+     * Loads the versions from the commits of their branches in the object database, without checking
+     * them out, so versions only need a read lock and can be loaded concurrently.
+     */
     class VersionCacheLoader extends CacheLoader<String, Version> {
-        
+
         @Override
         public Version load(final String versionId) {
-            assertWriteLock();
+            assertReadLock();
             GitOperation<Version> gitop = new GitOperation<Version>() {
                 public Version call(Git git, GitContext context) throws Exception {
                     String revision = git.getRepository().getRefDatabase().getRef(versionId).getObjectId().getName();
@@ -1942,91 +2017,159 @@ public final class GitDataStoreImpl extends AbstractComponent implements GitData
         private Version loadVersion(Git git, GitContext context, String versionId, String revision) throws Exception {
             VersionBuilder vbuilder = VersionBuilder.Factory.create(versionId).setRevision(revision);
             vbuilder.setAttributes(getVersionAttributes(git, context, versionId));
-            populateVersionBuilder(git, context, vbuilder, GitHelpers.MASTER_BRANCH, versionId);
-            populateVersionBuilder(git, context, vbuilder, versionId, versionId);
+            Repository repository = git.getRepository();
+            Map<String, Profile> profiles = new HashMap<>();
+            try (ObjectReader reader = repository.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+                TreeFilter filter = PathFilter.create(ProfilePath.PROFILES_PATH);
+                readProfiles(reader, revWalk, getBranchHead(repository, GitHelpers.MASTER_BRANCH), versionId, filter, null, profiles);
+                readProfiles(reader, revWalk, getBranchHead(repository, versionId), versionId, filter, null, profiles);
+            }
+            vbuilder.addProfiles(new ArrayList<>(profiles.values()));
             return vbuilder.getVersion();
         }
 
-        private void populateVersionBuilder(Git git, GitContext context, VersionBuilder builder, String branch, String versionId) throws GitAPIException, IOException {
-            checkoutRequiredProfileBranch(git, context, branch, null);
-            File profilesDir = GitHelpers.getProfilesDirectory(git);
-            if (profilesDir.exists()) {
-                String[] files = profilesDir.list();
-                if (files != null) {
-                    for (String childName : files) {
-                        Path childPath = profilesDir.toPath().resolve(childName);
-                        if (childPath.toFile().isDirectory()) {
-                            populateProfile(git, builder, branch, versionId, childPath.toFile(), "");
-
-                        }
-                    }
-                }
+        /**
+         * Rebuilds a cached version at the current head of its branch. Only the profiles which differ between
+         * the cached revision and the head are read again, the others are kept. The ids of the changed
+         * profiles are added to the given set.
+         */
+        Version refreshVersion(Git git, Version version, Set<String> changedProfiles) throws Exception {
+            String versionId = version.getId();
+            Repository repository = git.getRepository();
+            ObjectId head = getBranchHead(repository, versionId);
+            if (head.getName().equals(version.getRevision())) {
+                return version;
             }
-        }
-
-        private void populateProfile(Git git, VersionBuilder versionBuilder, String branch, String versionId, File profileFile, String prefix) throws IOException {
-            String profileName = profileFile.getName();
-            String profileId = profileName;
-            if (profileId.endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
-                profileId = prefix + profileId.substring(0, profileId.length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
-            } else {
-                // lets recurse all children
-                File[] files = profileFile.listFiles();
-                if (files != null) {
-                    for (File childFile : files) {
-                        if (childFile.isDirectory()) {
-                            populateProfile(git, versionBuilder, branch, versionId, childFile, prefix + profileFile.getName() + "-");
+            Map<String, Profile> profiles = new HashMap<>();
+            for (Profile profile : version.getProfiles()) {
+                profiles.put(profile.getId(), profile);
+            }
+            try (ObjectReader reader = repository.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+                Set<String> directories = new HashSet<>();
+                try (TreeWalk treeWalk = new TreeWalk(reader)) {
+                    treeWalk.addTree(revWalk.parseCommit(ObjectId.fromString(version.getRevision())).getTree());
+                    treeWalk.addTree(revWalk.parseCommit(head).getTree());
+                    treeWalk.setRecursive(true);
+                    treeWalk.setFilter(AndTreeFilter.create(PathFilter.create(ProfilePath.PROFILES_PATH), TreeFilter.ANY_DIFF));
+                    while (treeWalk.next()) {
+                        ProfilePath profilePath = ProfilePath.parse(treeWalk.getPathString());
+                        if (profilePath != null) {
+                            directories.add(profilePath.getDirectory());
+                            changedProfiles.add(profilePath.getProfileId());
                         }
                     }
                 }
-                return;
+                if (!changedProfiles.isEmpty()) {
+                    profiles.keySet().removeAll(changedProfiles);
+                    // a profile of the master branch is only replaced by the version branch if it has the same id,
+                    // which does not imply the same directory, so master is matched by id
+                    readProfiles(reader, revWalk, getBranchHead(repository, GitHelpers.MASTER_BRANCH), versionId,
+                            PathFilter.create(ProfilePath.PROFILES_PATH), changedProfiles, profiles);
+                    readProfiles(reader, revWalk, head, versionId,
+                            PathFilterGroup.createFromStrings(directories), null, profiles);
+                }
             }
-
-            Map<String, byte[]> fileConfigurations = doGetFileConfigurations(git, profileId);
-            
-            ProfileBuilder profileBuilder = ProfileBuilder.Factory.create(versionId, profileId);
-            profileBuilder.setFileConfigurations(fileConfigurations);
-            versionBuilder.addProfile(profileBuilder.getProfile());
+            VersionBuilder vbuilder = VersionBuilder.Factory.create(versionId).setRevision(head.getName());
+            vbuilder.setAttributes(getVersionAttributes(git, new GitContext(), versionId));
+            vbuilder.addProfiles(new ArrayList<>(profiles.values()));
+            return vbuilder.getVersion();
         }
 
-        private Map<String, byte[]> doGetFileConfigurations(Git git, String profileId) throws IOException {
-            Map<String, byte[]> configurations = new HashMap<String, byte[]>();
-            File profileDirectory = GitHelpers.getProfileDirectory(git, profileId);
-            populateFileConfigurations(configurations, profileDirectory, profileDirectory);
-            return configurations;
+        private ObjectId getBranchHead(Repository repository, String branch) throws IOException {
+            Ref ref = repository.exactRef("refs/heads/" + branch);
+            IllegalStateAssertion.assertNotNull(ref, "Cannot find profile branch: " + branch);
+            return ref.getObjectId();
         }
 
-        private void populateFileConfigurations(Map<String, byte[]> configurations, File profileDirectory, File directory) throws IOException {
-            File[] files = directory.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        String relativePath = getFilePattern(profileDirectory, file);
-                        configurations.put(relativePath, loadFileConfiguration(file));
-                    } else if (file.isDirectory()) {
-                        populateFileConfigurations(configurations, profileDirectory, file);
+        /**
+         * Reads the profiles of the given commit which match the filter and, when given, have one of the profile ids.
+         * The profiles read replace the ones with the same id in the given map.
+         */
+        private void readProfiles(ObjectReader reader, RevWalk revWalk, ObjectId commitId, String versionId, TreeFilter filter,
+                                  Set<String> profileIds, Map<String, Profile> result) throws IOException {
+            Map<String, Map<String, byte[]>> profiles = new HashMap<>();
+            try (TreeWalk treeWalk = new TreeWalk(reader)) {
+                RevCommit commit = revWalk.parseCommit(commitId);
+                treeWalk.addTree(commit.getTree());
+                treeWalk.setRecursive(true);
+                treeWalk.setFilter(filter);
+                while (treeWalk.next()) {
+                    if ((treeWalk.getRawMode(0) & FileMode.TYPE_MASK) != FileMode.TYPE_FILE) {
+                        continue;
+                    }
+                    ProfilePath profilePath = ProfilePath.parse(treeWalk.getPathString());
+                    if (profilePath == null || (profileIds != null && !profileIds.contains(profilePath.getProfileId()))) {
+                        continue;
                     }
+                    Map<String, byte[]> fileConfigurations = profiles.get(profilePath.getProfileId());
+                    if (fileConfigurations == null) {
+                        fileConfigurations = new HashMap<>();
+                        profiles.put(profilePath.getProfileId(), fileConfigurations);
+                    }
+                    fileConfigurations.put(profilePath.getFileName(), reader.open(treeWalk.getObjectId(0), org.eclipse.jgit.lib.Constants.OBJ_BLOB).getBytes());
                 }
             }
+            for (Map.Entry<String, Map<String, byte[]>> entry : profiles.entrySet()) {
+                ProfileBuilder profileBuilder = ProfileBuilder.Factory.create(versionId, entry.getKey());
+                profileBuilder.setFileConfigurations(entry.getValue());
+                result.put(entry.getKey(), profileBuilder.getProfile());
+            }
         }
+    }
 
-        private byte[] loadFileConfiguration(File file) throws IOException {
-            if (file.isDirectory()) {
-                // Not sure why we do this, but for directory pids, lets recurse...
-                StringBuilder buf = new StringBuilder();
-                File[] files = file.listFiles();
-                if (files != null) {
-                    for (File child : files) {
-                        String value = Files.toString(child);
-                        buf.append(String.format("%s = %s\n", child.getName(), value));
+    /**
+     * The location of a file within a profile, parsed from its path in the repository.
+     */
+    static final class ProfilePath {
+
+        static final String PROFILES_PATH = GitHelpers.CONFIGS + "/profiles";
+
+        private final String profileId;
+        private final String directory;
+        private final String fileName;
+
+        private ProfilePath(String profileId, String directory, String fileName) {
+            this.profileId = profileId;
+            this.directory = directory;
+            this.fileName = fileName;
+        }
+
+        /**
+         * Parses a path relative to the repository root, returns null if it is not a file within a profile.
+         */
+        static ProfilePath parse(String path) {
+            if (!path.startsWith(PROFILES_PATH + "/")) {
+                return null;
+            }
+            String[] segments = path.substring(PROFILES_PATH.length() + 1).split("/");
+            // the profile directory is the first one with the profile suffix, the directories above it
+            // make up the prefix of the profile id
+            int offset = PROFILES_PATH.length() + 1;
+            for (int i = 0; i < segments.length - 1; i++) {
+                offset += segments[i].length() + 1;
+                if (segments[i].endsWith(Profiles.PROFILE_FOLDER_SUFFIX)) {
+                    StringBuilder profileId = new StringBuilder();
+                    for (int j = 0; j < i; j++) {
+                        profileId.append(segments[j]).append("-");
                     }
+                    profileId.append(segments[i], 0, segments[i].length() - Profiles.PROFILE_FOLDER_SUFFIX.length());
+                    return new ProfilePath(profileId.toString(), path.substring(0, offset - 1), path.substring(offset));
                 }
-                return buf.toString().getBytes();
-            } else if (file.exists() && file.isFile()) {
-                return Files.readBytes(file);
             }
             return null;
         }
+
+        String getProfileId() {
+            return profileId;
+        }
+
+        String getDirectory() {
+            return directory;
+        }
+
+        String getFileName() {
+            return fileName;
+        }
     }
 
 }
@@ -17,6 +17,7 @@ package io.fabric8.git.internal;
 
 import io.fabric8.api.*;
 import io.fabric8.api.scr.AbstractRuntimeProperties;
+import io.fabric8.common.util.Files;
 import io.fabric8.service.ComponentConfigurer;
 import io.fabric8.service.ZkDataStoreImpl;
 import io.fabric8.zookeeper.bootstrap.BootstrapConfiguration;
@@ -28,6 +29,7 @@ import org.apache.zookeeper.server.NIOServerCnxnFactory;
 import org.apache.zookeeper.server.ServerConfig;
 import org.apache.zookeeper.server.ZooKeeperServer;
 import org.apache.zookeeper.server.persistence.FileTxnSnapLog;
+import org.eclipse.jgit.api.Git;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -36,10 +38,17 @@ import java.io.*;
 import java.net.*;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import static io.fabric8.common.util.Files.recursiveDelete;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class GitDataStoreImplBenchmark extends GitDataStoreImplTestSupport {
 
@@ -135,6 +144,107 @@ public class GitDataStoreImplBenchmark extends GitDataStoreImplTestSupport {
         t.join();
     }
 
+    @Test
+    public void testVersionLoad() throws Exception {
+        final int profileCount = 500;
+        final int versionCount = 10;
+
+        System.out.println("==============================================================");
+        System.out.println("Creating " + profileCount + " profiles x " + versionCount + " versions");
+        System.out.println("==============================================================");
+        final GitDataStoreImpl gitDataStore = createGitDataStore();
+        File profileDir = new File(projetDirectory(), "../fabric8-karaf/src/main/resources/distro/fabric/import");
+        gitDataStore.importFromFileSystem(profileDir.getCanonicalPath());
+        for (int i = 0; i < profileCount; i++) {
+            gitDataStore.createProfile(ProfileBuilder.Factory.create("1.0", "bench-" + i)
+                    .addParent("default")
+                    .addConfiguration("io.fabric8.bench", "index", "" + i)
+                    .addConfiguration("io.fabric8.agent", "feature.bench", "bench-" + i)
+                    .getProfile());
+        }
+        final List<String> versionIds = new ArrayList<>();
+        versionIds.add("1.0");
+        for (int i = 1; i < versionCount; i++) {
+            String id = "1." + i;
+            gitDataStore.createVersion("1.0", id, new HashMap<String, String>());
+            versionIds.add(id);
+        }
+
+        for (int round = 0; round < 5; round++) {
+            gitDataStore.invalidateVersionCache();
+            long start = System.currentTimeMillis();
+            for (String versionId : versionIds) {
+                gitDataStore.getVersion(versionId);
+            }
+            long sequential = System.currentTimeMillis() - start;
+
+            gitDataStore.invalidateVersionCache();
+            List<Thread> threads = new ArrayList<>();
+            start = System.currentTimeMillis();
+            for (final String versionId : versionIds) {
+                Thread thread = new Thread("Loading version " + versionId) {
+                    @Override
+                    public void run() {
+                        gitDataStore.getVersion(versionId);
+                    }
+                };
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long concurrent = System.currentTimeMillis() - start;
+
+            System.out.println("Loaded " + versionCount + " versions of " + gitDataStore.getVersion("1.0").getProfileIds().size()
+                    + " profiles, sequentially: " + sequential + " ms, concurrently: " + concurrent + " ms");
+        }
+    }
+
+    @Test
+    public void testVersionRefresh() throws Exception {
+        final int profileCount = 500;
+
+        final GitDataStoreImpl gitDataStore = createGitDataStore();
+        File profileDir = new File(projetDirectory(), "../fabric8-karaf/src/main/resources/distro/fabric/import");
+        gitDataStore.importFromFileSystem(profileDir.getCanonicalPath());
+        for (int i = 0; i < profileCount; i++) {
+            gitDataStore.createProfile(ProfileBuilder.Factory.create("1.0", "bench-" + i)
+                    .addParent("default")
+                    .addConfiguration("io.fabric8.bench", "index", "" + i)
+                    .getProfile());
+        }
+
+        Git git = gitDataStore.getGit();
+        for (int round = 0; round < 5; round++) {
+            Version version = gitDataStore.getVersion("1.0");
+
+            // commit a change to a single profile behind the back of the data store, like a pull does
+            git.checkout().setName("1.0").call();
+            File file = new File(GitHelpers.getProfileDirectory(git, "bench-" + round), "io.fabric8.bench.properties");
+            Files.writeToFile(file, ("index = " + round + "\nround = " + round + "\n").getBytes("UTF-8"));
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("Update bench-" + round).call();
+
+            long start = System.nanoTime();
+            Set<String> changedProfiles = gitDataStore.refreshVersion("1.0");
+            long refresh = System.nanoTime() - start;
+            assertEquals(Collections.singleton("bench-" + round), changedProfiles);
+            Version refreshed = gitDataStore.getVersion("1.0");
+            assertEquals("" + round, refreshed.getProfile("bench-" + round).getConfiguration("io.fabric8.bench").get("round"));
+            assertSame(version.getProfile("default"), refreshed.getProfile("default"));
+
+            gitDataStore.invalidateVersionCache();
+            start = System.nanoTime();
+            Version reloaded = gitDataStore.getVersion("1.0");
+            long reload = System.nanoTime() - start;
+            assertEquals(reloaded.getRevision(), refreshed.getRevision());
+            assertEquals(new HashSet<>(reloaded.getProfileIds()), new HashSet<>(refreshed.getProfileIds()));
+
+            System.out.println("Refreshed one of " + refreshed.getProfileIds().size() + " profiles in "
+                    + (refresh / 1000) + " us, full reload: " + (reload / 1000) + " us");
+        }
+    }
 
     private GitDataStoreImpl setup() throws Exception {
         System.out.println("==============================================================");
@@ -19,8 +19,12 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import io.fabric8.api.Constants;
 import io.fabric8.api.DataStore;
@@ -44,15 +48,26 @@ import org.eclipse.jgit.transport.PushResult;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
@@ -143,6 +158,76 @@ public class GitDataStoreImplProfilesIT {
         profileRegistry.updateProfile(builder.getProfile());
     }
 
+    @Test
+    public void refreshVersionReloadsOnlyChangedProfiles() throws Exception {
+        gdsi.importFromFileSystem("src/test/resources/distros/distro1/fabric/import");
+        profileRegistry.createProfile(ProfileBuilder.Factory.create("1.0", "other").getProfile());
+
+        Version version = profileRegistry.getVersion("1.0");
+        Profile defaultProfile = version.getProfile("default");
+        Profile otherProfile = version.getProfile("other");
+
+        commitSpecialPidChange("changed");
+        Set<String> changedProfiles = gdsi.refreshVersion("1.0");
+        assertEquals(Collections.singleton("default"), changedProfiles);
+
+        Version refreshed = profileRegistry.getVersion("1.0");
+        assertNotSame(version, refreshed);
+        assertSame(otherProfile, refreshed.getProfile("other"));
+        assertNotSame(defaultProfile, refreshed.getProfile("default"));
+        assertThat(refreshed.getProfile("default").getConfigurations().get("my.special.pid").get("property2"), equalTo("changed"));
+        assertThat(refreshed.getRevision(), equalTo(git.getRepository().exactRef("refs/heads/1.0").getObjectId().getName()));
+
+        // nothing changed since the last refresh
+        assertEquals(Collections.<String>emptySet(), gdsi.refreshVersion("1.0"));
+        assertSame(refreshed, profileRegistry.getVersion("1.0"));
+    }
+
+    @Test
+    public void profileListenersAreNotifiedAfterTheWriteLockIsReleased() throws Exception {
+        gdsi.importFromFileSystem("src/test/resources/distros/distro1/fabric/import");
+        assertNotNull(profileRegistry.getVersion("1.0"));
+
+        final ReentrantReadWriteLock readWriteLock = getField(gdsi, "readWriteLock", ReentrantReadWriteLock.class);
+        final PullPushPolicy.PullPolicyResult pullResult = mock(PullPushPolicy.PullPolicyResult.class);
+        when(pullResult.localUpdateVersions()).thenReturn(Collections.singletonMap("1.0", new PullPushPolicy.BranchChange("1.0")));
+        when(pullResult.getVersions()).thenReturn(Collections.<String>emptySet());
+        when(pullPushPolicy.doPull(any(GitContext.class), any(CredentialsProvider.class), anyBoolean(), anyBoolean())).thenAnswer(new Answer<PullPushPolicy.PullPolicyResult>() {
+            @Override
+            public PullPushPolicy.PullPolicyResult answer(InvocationOnMock invocation) throws Throwable {
+                commitSpecialPidChange("pulled");
+                return pullResult;
+            }
+        });
+        final Set<String> notified = new HashSet<String>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                assertFalse(readWriteLock.isWriteLockedByCurrentThread());
+                notified.addAll((Set<String>) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(gitService).notifyProfilesChanged(anyString(), anySetOf(String.class));
+
+        gdsi.gitSynchronize(false);
+
+        verify(gitService).notifyProfilesChanged(anyString(), anySetOf(String.class));
+        assertEquals(Collections.singleton("default"), notified);
+        assertThat(profileRegistry.getVersion("1.0").getProfile("default").getConfigurations().get("my.special.pid").get("property2"), equalTo("pulled"));
+    }
+
+    /**
+     * Commits a new value of property2 of the default profile directly to the 1.0 branch, as a pull would
+     */
+    private void commitSpecialPidChange(String value) throws IOException, GitAPIException {
+        git.checkout().setName("1.0").call();
+        File file = new File(git.getRepository().getWorkTree(), "fabric/profiles/default.profile/my.special.pid.properties");
+        FileUtils.writeStringToFile(file, "property2 = " + value + "\n");
+        git.add().addFilepattern("fabric/profiles/default.profile/my.special.pid.properties").call();
+        git.commit().setMessage("change my.special.pid").call();
+    }
+
     private Field findField(Object object, String name, Class clazz) {
         Field f = null;
         Class<?> clz = object.getClass();
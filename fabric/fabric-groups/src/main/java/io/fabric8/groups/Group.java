@@ -66,7 +66,7 @@ public interface Group<T extends NodeState> extends Closeable {
     void update(T state);
 
     /**
-     * Get the list of members connected to this group.
+     * Get the list of members connected to this group. The returned map is a read only snapshot.
      */
     Map<String, T> members();
 
@@ -81,7 +81,7 @@ public interface Group<T extends NodeState> extends Closeable {
     T master();
 
     /**
-     * Retrieve the list of slaves.
+     * Retrieve the list of slaves. The returned list is a read only snapshot.
      */
     List<T> slaves();
 
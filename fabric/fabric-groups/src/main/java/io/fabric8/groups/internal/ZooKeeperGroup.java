@@ -21,7 +21,6 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import io.fabric8.utils.NamedThreadFactory;
@@ -50,6 +49,7 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -57,6 +57,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>A utility that attempts to keep all data from all children of a ZK path locally cached. This class
@@ -80,7 +81,7 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
     private final EnsurePath ensurePath;
     private final BlockingQueue<Operation> operations = new LinkedBlockingQueue<Operation>();
     private final ListenerContainer<GroupListener<T>> listeners = new ListenerContainer<GroupListener<T>>();
-    protected final ConcurrentMap<String, ChildData<T>> currentData = Maps.newConcurrentMap();
+    protected final ConcurrentMap<String, ChildData<T>> currentData = new CurrentDataMap();
     private final AtomicBoolean started = new AtomicBoolean();
     private final AtomicBoolean connected = new AtomicBoolean();
     protected final SequenceComparator sequenceComparator = new SequenceComparator();
@@ -93,6 +94,9 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
     // this status means we may have (temporary - for the period of ZK session) duplication of nodes
     private final AtomicBoolean unstable = new AtomicBoolean();
     private volatile T state;
+    // bumped on every change of currentData, the membership snapshot is rebuilt when it no longer matches
+    private final AtomicLong modifications = new AtomicLong();
+    private volatile Membership<T> membership = new Membership<T>(-1, Collections.<ChildData<T>>emptyList());
 
     private final Watcher childrenWatcher = new Watcher() {
         @Override
@@ -323,41 +327,24 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
 
     @Override
     public Map<String, T> members() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        Map<String, T> members = new LinkedHashMap<String, T>();
-        for (ChildData<T> child : children) {
-            members.put(child.getPath(), child.getNode());
-        }
-        return members;
+        return getMembership().members;
     }
 
     @Override
     public boolean isMaster() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        return (!children.isEmpty() && children.get(0).getPath().equals(id));
+        ChildData<T> master = getMembership().master;
+        return master != null && master.getPath().equals(id);
     }
 
     @Override
     public T master() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        if (children.isEmpty()) {
-            return null;
-        }
-        return children.get(0).getNode();
+        ChildData<T> master = getMembership().master;
+        return master != null ? master.getNode() : null;
     }
 
     @Override
     public List<T> slaves() {
-        List<ChildData<T>> children = getActiveChildren();
-        Collections.sort(children, sequenceComparator);
-        List<T> slaves = new ArrayList<T>();
-        for (int i = 1; i < children.size(); i++) {
-            slaves.add(children.get(i).getNode());
-        }
-        return slaves;
+        return getMembership().slaves;
     }
 
     /**
@@ -366,6 +353,24 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
      * @return list of active children and data
      */
     protected List<ChildData<T>> getActiveChildren() {
+        return new ArrayList<>(getMembership().children);
+    }
+
+    /**
+     * Returns the active children sorted by sequence. The list is shared and must not be modified.
+     *
+     * @return sorted list of active children and data
+     */
+    protected List<ChildData<T>> getSortedActiveChildren() {
+        return getMembership().children;
+    }
+
+    private Membership<T> getMembership() {
+        Membership<T> current = membership;
+        long modification = modifications.get();
+        if (current.modification == modification) {
+            return current;
+        }
         Map<String, ChildData<T>> filtered = new HashMap<>();
         for (ChildData<T> child : currentData.values()) {
             T node = child.getNode();
@@ -374,7 +379,12 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
                 filtered.put(node.getContainer(), child);
             }
         }
-        return new ArrayList<>(filtered.values());
+        List<ChildData<T>> children = new ArrayList<>(filtered.values());
+        Collections.sort(children, sequenceComparator);
+        current = new Membership<T>(modification, children);
+        // a change made while building bumps the count past the snapshot's, so the next read rebuilds again
+        membership = current;
+        return current;
     }
 
     @Override
@@ -652,4 +662,110 @@ public class ZooKeeperGroup<T extends NodeState> implements Group<T> {
         return unstable.get();
     }
 
+    /**
+     * Immutable view of the active members sorted by sequence, built from a given state of the current data.
+     */
+    private static final class Membership<T> {
+        final long modification;
+        final List<ChildData<T>> children;
+        final Map<String, T> members;
+        final ChildData<T> master;
+        final List<T> slaves;
+
+        Membership(long modification, List<ChildData<T>> children) {
+            this.modification = modification;
+            this.children = Collections.unmodifiableList(children);
+            Map<String, T> members = new LinkedHashMap<String, T>();
+            List<T> slaves = new ArrayList<T>();
+            for (int i = 0; i < children.size(); i++) {
+                ChildData<T> child = children.get(i);
+                members.put(child.getPath(), child.getNode());
+                if (i > 0) {
+                    slaves.add(child.getNode());
+                }
+            }
+            this.members = Collections.unmodifiableMap(members);
+            this.master = children.isEmpty() ? null : children.get(0);
+            this.slaves = Collections.unmodifiableList(slaves);
+        }
+    }
+
+    /**
+     * Map of the current data which counts its modifications so the membership snapshot knows when to rebuild.
+     */
+    private final class CurrentDataMap extends ConcurrentHashMap<String, ChildData<T>> {
+
+        @Override
+        public ChildData<T> put(String key, ChildData<T> value) {
+            try {
+                return super.put(key, value);
+            } finally {
+                modifications.incrementAndGet();
+            }
+        }
+
+        @Override
+        public ChildData<T> putIfAbsent(String key, ChildData<T> value) {
+            try {
+                return super.putIfAbsent(key, value);
+            } finally {
+                modifications.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends ChildData<T>> m) {
+            try {
+                super.putAll(m);
+            } finally {
+                modifications.incrementAndGet();
+            }
+        }
+
+        @Override
+        public ChildData<T> replace(String key, ChildData<T> value) {
+            try {
+                return super.replace(key, value);
+            } finally {
+                modifications.incrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean replace(String key, ChildData<T> oldValue, ChildData<T> newValue) {
+            try {
+                return super.replace(key, oldValue, newValue);
+            } finally {
+                modifications.incrementAndGet();
+            }
+        }
+
+        @Override
+        public ChildData<T> remove(Object key) {
+            try {
+                return super.remove(key);
+            } finally {
+                modifications.incrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            try {
+                return super.remove(key, value);
+            } finally {
+                modifications.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void clear() {
+            try {
+                super.clear();
+            } finally {
+                modifications.incrementAndGet();
+            }
+        }
+    }
+
 }
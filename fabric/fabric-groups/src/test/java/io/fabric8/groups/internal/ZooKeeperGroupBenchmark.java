@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.groups.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.fabric8.groups.NodeState;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZooKeeperGroupBenchmark {
+
+    private static final String PATH = "/singletons/test/" + ZooKeeperGroupBenchmark.class.getSimpleName();
+    private static final int MEMBERS = 1000;
+    private static final int READS = 100000;
+
+    private CuratorFramework curator;
+    private ZooKeeperGroup<NodeState> group;
+
+    @Before
+    public void setUp() throws Exception {
+        curator = CuratorFrameworkFactory.builder()
+                .connectString("localhost:2181")
+                .retryPolicy(new RetryOneTime(1))
+                .build();
+        group = new ZooKeeperGroup<>(curator, PATH, NodeState.class);
+        for (int i = 0; i < MEMBERS; i++) {
+            put(String.format("%s/%010d", PATH, i), "container" + i);
+        }
+        group.setId(String.format("%s/%010d", PATH, 0));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        group.close();
+        curator.close();
+    }
+
+    private void put(String path, String container) {
+        group.currentData.put(path, new ChildData<>(path, new Stat(), new byte[0], new NodeState("test", container)));
+    }
+
+    @Test
+    public void testMembershipReads() throws Exception {
+        System.out.println("==============================================================");
+        System.out.println("Membership reads with " + MEMBERS + " members");
+        System.out.println("==============================================================");
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int masters = 0;
+            int slaves = 0;
+            for (int i = 0; i < READS; i++) {
+                if (group.isMaster()) {
+                    masters++;
+                }
+                slaves += group.slaves().size();
+                group.master();
+                group.members();
+            }
+            long elapsed = System.nanoTime() - start;
+            assertEquals(READS, masters);
+            assertEquals((long) READS * (MEMBERS - 1), slaves);
+            System.out.println("Round " + round + ": " + (elapsed / READS) + " ns per isMaster/master/slaves/members");
+        }
+
+        // every change rebuilds the snapshot once, on the next read
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            String path = String.format("%s/%010d", PATH, MEMBERS + i);
+            put(path, "container" + i);
+            assertTrue(group.members().containsKey(path));
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(MEMBERS, group.members().size());
+        System.out.println("Change and read: " + (elapsed / 1000 / 1000) + " us per change");
+    }
+}
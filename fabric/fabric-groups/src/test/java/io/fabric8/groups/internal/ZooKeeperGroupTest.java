@@ -17,6 +17,7 @@ package io.fabric8.groups.internal;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -229,4 +230,29 @@ public class ZooKeeperGroupTest {
         assertThat(slaves.get(1).getContainer(), equalTo("container3"));
     }
 
+    @Test
+    public void testMembershipSnapshot() throws Exception {
+        putChildData(group, PATH + "/001", "container1");
+        putChildData(group, PATH + "/002", "container2");
+
+        Map<String, NodeState> members = group.members();
+        assertThat(group.members(), sameInstance(members));
+        assertThat(group.slaves(), sameInstance(group.slaves()));
+
+        putChildData(group, PATH + "/003", "container1");
+        assertThat(group.members().size(), equalTo(2));
+        assertThat(group.master().getContainer(), equalTo("container2"));
+        assertThat(members.size(), equalTo(2));
+        assertThat(members.containsKey(PATH + "/001"), equalTo(true));
+
+        group.currentData.remove(PATH + "/002");
+        group.setId(PATH + "/003");
+        assertThat(group.isMaster(), equalTo(true));
+        assertThat(group.slaves().size(), equalTo(0));
+
+        group.clear();
+        assertThat(group.members().size(), equalTo(0));
+        assertThat(group.master(), equalTo(null));
+    }
+
 }
@@ -224,4 +224,12 @@ public interface ServiceConstants
      */
     String PROPERTY_UPDATE_RELEASES = "updateReleases";
 
+    /**
+     * <p>Directory of a content addressed artifact store shared by the containers of a host. Released artifacts
+     * are looked up in this store before going to the remote repositories, and are added to it once
+     * downloaded.</p>
+     * <p>Not set by default.</p>
+     */
+    String PROPERTY_SHARED_STORE = "sharedStore";
+
 }
@@ -96,6 +96,7 @@ import org.eclipse.aether.internal.impl.DefaultTransporterProvider;
 import org.eclipse.aether.internal.impl.EnhancedLocalRepositoryManagerFactory;
 import org.eclipse.aether.internal.impl.slf4j.Slf4jLoggerFactory;
 import org.eclipse.aether.repository.Authentication;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
 import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.MirrorSelector;
 import org.eclipse.aether.repository.Proxy;
@@ -160,11 +161,17 @@ public class AetherBasedResolver implements MavenResolver {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AetherBasedResolver.class);
 
+    /**
+     * How long to wait for another container downloading the same artifact before downloading it as well
+     */
+    private static final long SHARED_STORE_LOCK_TIMEOUT = TimeUnit.MINUTES.toMillis( 5 );
+
     final private RepositorySystem m_repoSystem;
     final private MavenConfiguration m_config;
     final private MirrorSelector m_mirrorSelector;
     final private ProxySelector m_proxySelector;
     final private CloseableHttpClient m_client;
+    final private SharedArtifactStore m_sharedStore;
     private Settings m_settings;
     private SettingsDecrypter decrypter;
 
@@ -213,6 +220,17 @@ public class AetherBasedResolver implements MavenResolver {
         decryptSettings();
         m_proxySelector = selectProxies();
         m_mirrorSelector = selectMirrors( mirror );
+        String sharedStore = m_config.getProperty( ServiceConstants.PROPERTY_SHARED_STORE, "", String.class );
+        SharedArtifactStore store = null;
+        if (sharedStore != null && !sharedStore.trim().isEmpty()) {
+            try {
+                store = SharedArtifactStore.getStore( new File( sharedStore.trim() ) );
+                LOG.info( "Using shared artifact store at " + store.getRoot() );
+            } catch (IOException e) {
+                LOG.warn( "Unable to use shared artifact store at " + sharedStore + ": " + e.getMessage(), e );
+            }
+        }
+        m_sharedStore = store;
     }
 
     private RepositorySystem newRepositorySystem() {
@@ -593,10 +611,13 @@ public class AetherBasedResolver implements MavenResolver {
             );
         }
 
+        boolean shareable = false;
         // Try with default repositories
         try {
             VersionConstraint vc = new GenericVersionScheme().parseVersionConstraint(artifact.getVersion());
             if (vc.getVersion() != null) {
+                shareable = !artifact.isSnapshot() && !VERSION_LATEST.equals(artifact.getVersion())
+                        && !"RELEASE".equals(artifact.getVersion());
                 for (LocalRepository repo : defaultRepos) {
                     if (vc.getVersion().toString().endsWith("SNAPSHOT") && !handlesSnapshot(repo)) {
                         continue;
@@ -619,6 +640,60 @@ public class AetherBasedResolver implements MavenResolver {
             // Should not happen
         }
 
+        if (m_sharedStore != null && shareable) {
+            return resolveShared( remoteRepos, artifact );
+        }
+        return resolveRemote( remoteRepos, artifact );
+    }
+
+    /**
+     * Resolves a released artifact from the shared artifact store, or from the remote repositories while
+     * holding the lock of the store for this artifact, so that co-located containers download it only once.
+     * Any failure of the store falls back to a plain resolution.
+     */
+    private File resolveShared( List<RemoteRepository> remoteRepos, Artifact artifact ) throws IOException {
+        DefaultRepositorySystemSession session = newSession(null);
+        try {
+            String path = session.getLocalRepositoryManager().getPathForLocalArtifact( artifact );
+            File target = new File( session.getLocalRepository().getBasedir(), path );
+            SharedArtifactStore.Lock lock;
+            try {
+                lock = m_sharedStore.lock( path, SHARED_STORE_LOCK_TIMEOUT, TimeUnit.MILLISECONDS );
+            } catch (IOException | RuntimeException e) {
+                LOG.warn( "Unable to lock shared artifact store " + m_sharedStore.getRoot() + ": " + e.getMessage(), e );
+                return resolveRemote( remoteRepos, artifact );
+            }
+            try {
+                try {
+                    if (m_sharedStore.get( path, target )) {
+                        session.getLocalRepositoryManager().add( session,
+                                new LocalArtifactRegistration( artifact.setFile( target ) ) );
+                        LOG.debug( "Resolved ({}) from shared artifact store as {}", artifact.toString(), target.getAbsolutePath() );
+                        return target;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn( "Unable to get " + artifact + " from shared artifact store " + m_sharedStore.getRoot() + ": " + e.getMessage(), e );
+                }
+                File resolved = resolveRemote( remoteRepos, artifact );
+                try {
+                    m_sharedStore.put( path, resolved );
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn( "Unable to add " + artifact + " to shared artifact store " + m_sharedStore.getRoot() + ": " + e.getMessage(), e );
+                }
+                return resolved;
+            } finally {
+                try {
+                    lock.close();
+                } catch (IOException e) {
+                    LOG.warn( "Unable to unlock shared artifact store " + m_sharedStore.getRoot() + ": " + e.getMessage(), e );
+                }
+            }
+        } finally {
+            releaseSession(session);
+        }
+    }
+
+    private File resolveRemote( List<RemoteRepository> remoteRepos, Artifact artifact ) throws IOException {
         DefaultRepositorySystemSession session = newSession(null);
         try {
             artifact = resolveLatestVersionRange( session, remoteRepos, artifact );
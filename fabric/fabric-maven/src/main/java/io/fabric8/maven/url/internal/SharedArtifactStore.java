@@ -0,0 +1,350 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.maven.url.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A content addressed store of artifacts which can be shared by the containers of a host. Artifact files are
+ * kept once under <code>objects/</code>, named after the SHA-256 of their content, and an index maps the path of
+ * an artifact in a maven repository to its content. Artifacts are copied into the store, made read only, and hard
+ * linked into the local repositories of the containers, or copied when the store and the repository are not on
+ * the same file system. As a linked file shares its content with the store, the content is checked against its
+ * SHA-256 before it is linked again, and an object which does not match is dropped.
+ * <p>
+ * Files are written to a temporary file and then renamed, so readers never need to lock. Writers which must not
+ * duplicate work, such as downloads of the same artifact by several containers, can serialize on
+ * {@link #lock(String, long, TimeUnit)} which holds both a lock local to the JVM and a file lock. The paths are
+ * spread over a fixed number of lock files, so unrelated paths only contend when they share one.
+ * <p>
+ * File locks are held on behalf of the whole JVM, so there is a single instance per store directory, obtained
+ * with {@link #getStore(File)}.
+ */
+public class SharedArtifactStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedArtifactStore.class);
+
+    private static final ConcurrentMap<String, SharedArtifactStore> STORES = new ConcurrentHashMap<>();
+
+    private static final long LOCK_POLL_INTERVAL = 100;
+
+    static final int LOCK_FILES = 256;
+
+    private final File root;
+    private final File objects;
+    private final File index;
+    private final File locks;
+    private final ReentrantLock[] localLocks = new ReentrantLock[LOCK_FILES];
+
+    private SharedArtifactStore(File root) {
+        this.root = root;
+        this.objects = new File(root, "objects");
+        this.index = new File(root, "index");
+        this.locks = new File(root, "locks");
+        for (int i = 0; i < LOCK_FILES; i++) {
+            localLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Returns the store of the given directory, shared by all the users of that directory in this JVM.
+     */
+    public static SharedArtifactStore getStore(File root) throws IOException {
+        File canonical = root.getCanonicalFile();
+        String key = canonical.getPath();
+        SharedArtifactStore store = STORES.get(key);
+        if (store == null) {
+            store = new SharedArtifactStore(canonical);
+            SharedArtifactStore existing = STORES.putIfAbsent(key, store);
+            if (existing != null) {
+                store = existing;
+            }
+        }
+        return store;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Links the artifact stored under the given repository path to the target file, if the store has it and the
+     * target does not exist yet
+     *
+     * @return <code>true</code> if the target has been created from the store
+     */
+    public boolean get(String path, File target) throws IOException {
+        if (target.exists()) {
+            return false;
+        }
+        File object = getObject(path);
+        if (object == null) {
+            return false;
+        }
+        File dir = target.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        File tmp = new File(dir, target.getName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            link(object, tmp);
+            move(tmp, target);
+        } finally {
+            tmp.delete();
+        }
+        LOG.debug("Linked {} from shared artifact store {}", target, root);
+        return true;
+    }
+
+    /**
+     * Adds the content of the given file to the store under the given repository path. Nothing is done if the
+     * store already has an artifact for this path.
+     */
+    public void put(String path, File source) throws IOException {
+        if (getObject(path) != null) {
+            return;
+        }
+        String sha = sha256(source);
+        File object = getObjectFile(sha);
+        if (!object.isFile()) {
+            File dir = object.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create directory " + dir);
+            }
+            File tmp = new File(dir, sha + "." + UUID.randomUUID() + ".tmp");
+            try {
+                // never link the source, the local repository it comes from could rewrite it
+                Files.copy(source.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                // the source may have been replaced in the meantime
+                if (!sha.equals(sha256(tmp))) {
+                    throw new IOException("Content of " + source + " changed while adding it to the shared artifact store");
+                }
+                // the object is linked into the local repositories, which must replace rather than rewrite it
+                tmp.setReadOnly();
+                move(tmp, object);
+            } finally {
+                tmp.delete();
+            }
+        }
+        File entry = getIndexFile(path);
+        File dir = entry.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        File tmp = new File(dir, entry.getName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.write(tmp.toPath(), sha.getBytes(StandardCharsets.UTF_8));
+            move(tmp, entry);
+        } finally {
+            tmp.delete();
+        }
+        LOG.debug("Added {} to shared artifact store {} as {}", path, root, sha);
+    }
+
+    /**
+     * Acquires an exclusive lock for the given repository path, shared with the other processes using the store.
+     * Only the paths sharing its lock file are affected, so the lock may be held while the artifact is downloaded.
+     *
+     * @throws IOException if the lock could not be acquired within the timeout
+     */
+    public Lock lock(String path, long timeout, TimeUnit unit) throws IOException {
+        getIndexFile(path);
+        int index = lockIndex(path);
+        ReentrantLock local = localLocks[index];
+        File lockFile = new File(locks, String.format("%02x.lock", index));
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (local.isHeldByCurrentThread()) {
+            throw new IOException("Lock of " + path + " is already held by this thread");
+        }
+        boolean locked = false;
+        RandomAccessFile file = null;
+        Lock result = null;
+        try {
+            locked = local.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (!locked) {
+                throw new IOException("Timed out waiting for the lock of " + path);
+            }
+            if (!locks.isDirectory() && !locks.mkdirs() && !locks.isDirectory()) {
+                throw new IOException("Unable to create directory " + locks);
+            }
+            file = new RandomAccessFile(lockFile, "rw");
+            FileChannel channel = file.getChannel();
+            while (true) {
+                FileLock lock = channel.tryLock();
+                if (lock != null) {
+                    result = new Lock(local, file, lock);
+                    return result;
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    throw new IOException("Timed out waiting for the file lock of " + path);
+                }
+                Thread.sleep(LOCK_POLL_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the lock of " + path, e);
+        } catch (OverlappingFileLockException e) {
+            throw new IOException("Lock of " + path + " is already held in this JVM", e);
+        } finally {
+            if (result == null) {
+                if (file != null) {
+                    try {
+                        file.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                if (locked) {
+                    local.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the lock file of the given path, the same in every JVM as {@link String#hashCode()} is specified
+     */
+    static int lockIndex(String path) {
+        int h = path.replace('\\', '/').hashCode();
+        h ^= (h >>> 16);
+        h ^= (h >>> 8);
+        return h & (LOCK_FILES - 1);
+    }
+
+    private File getObject(String path) throws IOException {
+        File entry = getIndexFile(path);
+        if (!entry.isFile()) {
+            return null;
+        }
+        String sha = new String(Files.readAllBytes(entry.toPath()), StandardCharsets.UTF_8).trim();
+        File object = getObjectFile(sha);
+        if (!object.isFile()) {
+            return null;
+        }
+        if (!sha.equals(sha256(object))) {
+            // rewritten in place through one of its links
+            LOG.warn("Removing corrupted object {} from shared artifact store {}", object, root);
+            object.setWritable(true);
+            Files.deleteIfExists(object.toPath());
+            return null;
+        }
+        return object;
+    }
+
+    private File getObjectFile(String sha) {
+        return new File(new File(objects, sha.substring(0, 2)), sha);
+    }
+
+    private File getIndexFile(String path) throws IOException {
+        File entry = new File(index, path.replace('\\', '/') + ".sha256");
+        if (!entry.getCanonicalPath().startsWith(index.getCanonicalPath() + File.separator)) {
+            throw new IOException("Invalid artifact path " + path);
+        }
+        return entry;
+    }
+
+    private static void link(File existing, File link) throws IOException {
+        try {
+            Files.createLink(link.toPath(), existing.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            // different file systems or no hard link support
+            Files.copy(existing.toPath(), link.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void move(File source, File target) throws IOException {
+        Path from = source.toPath();
+        Path to = target.toPath();
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException | FileAlreadyExistsException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream is = new FileInputStream(file)) {
+            byte[] buffer = new byte[65536];
+            int l;
+            while ((l = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, l);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * An exclusive lock on a part of the store, released by {@link #close()}
+     */
+    public static final class Lock implements Closeable {
+
+        private final ReentrantLock local;
+        private final RandomAccessFile file;
+        private final FileLock lock;
+
+        Lock(ReentrantLock local, RandomAccessFile file, FileLock lock) {
+            this.local = local;
+            this.file = file;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                lock.release();
+            } finally {
+                try {
+                    file.close();
+                } finally {
+                    local.unlock();
+                }
+            }
+        }
+    }
+}
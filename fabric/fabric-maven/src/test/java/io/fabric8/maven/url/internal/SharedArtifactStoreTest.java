@@ -0,0 +1,194 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.maven.url.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SharedArtifactStoreTest {
+
+    private static final String PATH = "io/fabric8/test/1.0/test-1.0.jar";
+
+    private File dir;
+    private SharedArtifactStore store;
+
+    @Before
+    public void init() throws IOException {
+        dir = new File("target/shared-artifact-store");
+        FileUtils.deleteDirectory(dir);
+        store = SharedArtifactStore.getStore(new File(dir, "store"));
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        File source = new File(dir, "repo1/" + PATH);
+        source.getParentFile().mkdirs();
+        Files.write(source.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+
+        File target = new File(dir, "repo2/" + PATH);
+        assertFalse(store.get(PATH, target));
+        assertFalse(target.exists());
+
+        store.put(PATH, source);
+        assertTrue(store.get(PATH, target));
+        assertEquals("content", new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+        // an existing file is left alone
+        assertFalse(store.get(PATH, target));
+
+        // identical content is stored once
+        File other = new File(dir, "repo1/io/fabric8/other/1.0/other-1.0.jar");
+        other.getParentFile().mkdirs();
+        Files.write(other.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+        store.put("io/fabric8/other/1.0/other-1.0.jar", other);
+        assertEquals(1, new File(dir, "store/objects").listFiles()[0].listFiles().length);
+    }
+
+    @Test
+    public void testObjectsAreCopies() throws IOException {
+        File source = new File(dir, "repo1/" + PATH);
+        source.getParentFile().mkdirs();
+        Files.write(source.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+        store.put(PATH, source);
+
+        // the local repository rewrites its own file in place
+        Files.write(source.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+        File target = new File(dir, "repo2/" + PATH);
+        assertTrue(store.get(PATH, target));
+        assertEquals("content", new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCorruptedObjectIsDropped() throws IOException {
+        File source = new File(dir, "repo1/" + PATH);
+        source.getParentFile().mkdirs();
+        Files.write(source.toPath(), "content".getBytes(StandardCharsets.UTF_8));
+        store.put(PATH, source);
+
+        File target = new File(dir, "repo2/" + PATH);
+        assertTrue(store.get(PATH, target));
+        // rewritten through the link regardless of its permissions
+        target.setWritable(true);
+        Files.write(target.toPath(), "corrupted".getBytes(StandardCharsets.UTF_8));
+
+        File other = new File(dir, "repo3/" + PATH);
+        assertFalse(store.get(PATH, other));
+        assertFalse(other.exists());
+        assertEquals(0, new File(dir, "store/objects").listFiles()[0].listFiles().length);
+
+        // downloaded again and put back
+        store.put(PATH, source);
+        assertTrue(store.get(PATH, other));
+        assertEquals("content", new String(Files.readAllBytes(other.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testInvalidPath() throws IOException {
+        try {
+            store.get("../../etc/passwd", new File(dir, "passwd"));
+            fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testLock() throws Exception {
+        // resolvers configured with different spellings of the same directory share the store
+        SharedArtifactStore other = SharedArtifactStore.getStore(new File(dir, "repo1/../store"));
+        assertSame(store, other);
+        final SharedArtifactStore[] stores = new SharedArtifactStore[] { store, other };
+        final AtomicBoolean held = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int i = 0; i < futures.length; i++) {
+                final SharedArtifactStore s = stores[i % stores.length];
+                futures[i] = executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try (SharedArtifactStore.Lock lock = s.lock(PATH, 10, TimeUnit.SECONDS)) {
+                            assertTrue(held.compareAndSet(false, true));
+                            Thread.sleep(20);
+                            held.set(false);
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLockFilesAreBounded() throws IOException {
+        for (int i = 0; i < 1000; i++) {
+            store.lock("io/fabric8/test" + i + "/1.0/test" + i + "-1.0.jar", 1, TimeUnit.SECONDS).close();
+        }
+        assertTrue(new File(dir, "store/locks").list().length <= SharedArtifactStore.LOCK_FILES);
+        assertTrue(SharedArtifactStore.lockIndex(PATH) != SharedArtifactStore.lockIndex("io/fabric8/other/1.0/other-1.0.jar"));
+    }
+
+    @Test
+    public void testLockIsPerPath() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (SharedArtifactStore.Lock lock = store.lock(PATH, 1, TimeUnit.SECONDS)) {
+            // another artifact is not blocked by a download in progress
+            Future<Boolean> otherPath = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    try (SharedArtifactStore.Lock other = store.lock("io/fabric8/other/1.0/other-1.0.jar", 1, TimeUnit.SECONDS)) {
+                        return true;
+                    }
+                }
+            });
+            assertTrue(otherPath.get(10, TimeUnit.SECONDS));
+
+            // the same artifact times out instead of waiting forever
+            Future<Boolean> samePath = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    try (SharedArtifactStore.Lock other = store.lock(PATH, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    } catch (IOException e) {
+                        return false;
+                    }
+                }
+            });
+            assertFalse(samePath.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        // and can be locked again once released
+        store.lock(PATH, 1, TimeUnit.SECONDS).close();
+    }
+}
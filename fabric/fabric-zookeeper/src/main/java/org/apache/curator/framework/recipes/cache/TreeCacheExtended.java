@@ -489,6 +489,30 @@ public class TreeCacheExtended implements Closeable
         return false;
     }
 
+    /**
+     * Marks the current data of a node and of its parent as stale, so the next read loads them again. This lets
+     * a client read its own writes before the watches for them have fired.
+     *
+     * @param fullPath the path of the node which has been written
+     */
+    public void invalidate(String fullPath)
+    {
+        TreeData data = currentData.getIfPresent(fullPath);
+        if ( data != null )
+        {
+            data.invalidate();
+        }
+        Optional<String> parent = getParentOf(fullPath);
+        if ( parent.isPresent() )
+        {
+            TreeData parentData = currentData.getIfPresent(parent.get());
+            if ( parentData != null )
+            {
+                parentData.invalidate();
+            }
+        }
+    }
+
     /**
      * Clear out current data and begin a new query on the path
      *
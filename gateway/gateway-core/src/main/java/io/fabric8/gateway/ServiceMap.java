@@ -18,7 +18,13 @@ package io.fabric8.gateway;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -31,12 +37,25 @@ import java.util.concurrent.ConcurrentMap;
 public class ServiceMap {
     private Logger LOG = LoggerFactory.getLogger(ServiceMap.class);
     private final ConcurrentMap<String, PathMap> map = new ConcurrentHashMap<>();
+    /**
+     * Map: service URL -> pre-parsed URI so routing does not have to parse URLs per connection
+     */
+    private final ConcurrentMap<String, URI> endpoints = new ConcurrentHashMap<>();
 
     /**
      * Returns a list of all the current services for the given path
      */
     public List<ServiceDetails> getServices(String path) {
-        return getPathMap(path).getServices();
+        PathMap pathMap = map.get(path);
+        return pathMap != null ? pathMap.getServices() : Collections.<ServiceDetails>emptyList();
+    }
+
+    /**
+     * Returns a list of the current services for the given path which expose a URL using one of the given schemes
+     */
+    public List<ServiceDetails> getServices(String path, String[] schemes) {
+        PathMap pathMap = map.get(path);
+        return pathMap != null ? pathMap.getServices(schemes) : Collections.<ServiceDetails>emptyList();
     }
 
     /**
@@ -46,12 +65,29 @@ public class ServiceMap {
         return new ArrayList<>(map.keySet());
     }
 
+    /**
+     * Returns the parsed URI of the given service URL or null if it is not a valid URI
+     */
+    public URI getEndpoint(String url) {
+        URI answer = endpoints.get(url);
+        if (answer == null) {
+            answer = parseEndpoint(url);
+            if (answer != null) {
+                endpoints.put(url, answer);
+            }
+        }
+        return answer;
+    }
+
     /**
      * When a service is added or updated
      */
     public void serviceUpdated(String path, ServiceDetails service) {
         // ignore services with empty services
         getPathMap(path).update(service);
+        for (String url : service.getServices()) {
+            getEndpoint(url);
+        }
         logCurrentConfiguration();
     }
 
@@ -60,6 +96,9 @@ public class ServiceMap {
      */
     public void serviceRemoved(String path, ServiceDetails service) {
         getPathMap(path).remove(service);
+        for (String url : service.getServices()) {
+            endpoints.remove(url);
+        }
         logCurrentConfiguration();
         // lets update any in progress proxy handlers using this service
     }
@@ -73,6 +112,18 @@ public class ServiceMap {
         return answer;
     }
 
+    protected URI parseEndpoint(String url) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        try {
+            return new URI(url);
+        } catch (URISyntaxException e) {
+            LOG.warn("Failed to parse URI: " + url + ". " + e, e);
+            return null;
+        }
+    }
+
     public void logCurrentConfiguration(){
         if(LOG.isTraceEnabled()){
             StringBuilder output = new StringBuilder();
@@ -102,15 +153,26 @@ public class ServiceMap {
             this.path = path;
         }
 
+        /**
+         * The immutable services (and the services per URL scheme) which is republished whenever
+         * the services change so that the routing of connections only needs a volatile read
+         */
+        private volatile Snapshot snapshot = Snapshot.EMPTY;
+
         public List<ServiceDetails> getServices() {
-            List<ServiceDetails> answer = new ArrayList<>();
-            for (Map<String, ServiceDetails> containerMap : pathMap.values()) {
-                answer.addAll(containerMap.values());
+            return snapshot.services;
+        }
+
+        public List<ServiceDetails> getServices(String[] schemes) {
+            Snapshot current = snapshot;
+            if (schemes.length == 1) {
+                List<ServiceDetails> answer = current.servicesByScheme.get(schemes[0]);
+                return answer != null ? answer : Collections.<ServiceDetails>emptyList();
             }
-            return answer;
+            return current.getServices(schemes);
         }
 
-        public void update(ServiceDetails service) {
+        public synchronized void update(ServiceDetails service) {
             Map<String, ServiceDetails> initial = new ConcurrentHashMap<>();
             Map<String, ServiceDetails> containerMap = pathMap.putIfAbsent(service.getId(), initial);
             if (containerMap == null) {
@@ -123,13 +185,15 @@ public class ServiceMap {
             } else {
                 containerMap.put(service.getContainer(), service);
             }
+            snapshot = new Snapshot(pathMap);
         }
 
-        public void remove(ServiceDetails service) {
+        public synchronized void remove(ServiceDetails service) {
             Map<String, ServiceDetails> containerMap = pathMap.get(service.getId());
             if (containerMap != null) {
                 containerMap.remove(service.getContainer());
             }
+            snapshot = new Snapshot(pathMap);
         }
 
 
@@ -139,4 +203,81 @@ public class ServiceMap {
             return getClass().getSimpleName() + ": " + pathMap.toString();
         }
     }
+
+    private static class Snapshot {
+        static final int MAX_SCHEME_SETS = 16;
+        static final Snapshot EMPTY = new Snapshot(Collections.<String, Map<String, ServiceDetails>>emptyMap());
+
+        private final List<ServiceDetails> services;
+        private final Map<String, List<ServiceDetails>> servicesByScheme;
+        private volatile SchemeSet[] schemeSets = new SchemeSet[0];
+
+        Snapshot(Map<String, Map<String, ServiceDetails>> pathMap) {
+            List<ServiceDetails> allServices = new ArrayList<>();
+            Map<String, List<ServiceDetails>> byScheme = new HashMap<>();
+            for (Map<String, ServiceDetails> containerMap : pathMap.values()) {
+                for (ServiceDetails service : containerMap.values()) {
+                    allServices.add(service);
+                    for (String url : service.getServices()) {
+                        int idx = url != null ? url.indexOf(':') : -1;
+                        if (idx > 0) {
+                            String scheme = url.substring(0, idx);
+                            List<ServiceDetails> list = byScheme.get(scheme);
+                            if (list == null) {
+                                list = new ArrayList<>();
+                                byScheme.put(scheme, list);
+                            }
+                            if (!list.contains(service)) {
+                                list.add(service);
+                            }
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, List<ServiceDetails>> entry : byScheme.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            }
+            this.services = Collections.unmodifiableList(allServices);
+            this.servicesByScheme = byScheme;
+        }
+
+        /**
+         * Returns the services for any of the given schemes. The merged lists are cached by the content of
+         * the scheme array, for at most {@link #MAX_SCHEME_SETS} scheme combinations per snapshot.
+         */
+        List<ServiceDetails> getServices(String[] schemes) {
+            SchemeSet[] sets = schemeSets;
+            for (SchemeSet set : sets) {
+                // the protocols pass constant arrays so the identity check usually hits
+                if (set.schemes == schemes || Arrays.equals(set.schemes, schemes)) {
+                    return set.services;
+                }
+            }
+            LinkedHashSet<ServiceDetails> merged = new LinkedHashSet<>();
+            for (String scheme : schemes) {
+                List<ServiceDetails> list = servicesByScheme.get(scheme);
+                if (list != null) {
+                    merged.addAll(list);
+                }
+            }
+            List<ServiceDetails> answer = Collections.unmodifiableList(new ArrayList<>(merged));
+            if (sets.length < MAX_SCHEME_SETS) {
+                // racing threads may compute the same entry twice which is harmless
+                SchemeSet[] newSets = Arrays.copyOf(sets, sets.length + 1);
+                newSets[sets.length] = new SchemeSet(schemes.clone(), answer);
+                schemeSets = newSets;
+            }
+            return answer;
+        }
+    }
+
+    private static class SchemeSet {
+        private final String[] schemes;
+        private final List<ServiceDetails> services;
+
+        SchemeSet(String[] schemes, List<ServiceDetails> services) {
+            this.schemes = schemes;
+            this.services = services;
+        }
+    }
 }
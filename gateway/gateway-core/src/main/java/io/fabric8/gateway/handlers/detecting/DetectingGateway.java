@@ -21,11 +21,14 @@ import io.fabric8.gateway.ServiceDetails;
 import io.fabric8.gateway.ServiceMap;
 import io.fabric8.gateway.SocketWrapper;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslConfig;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslEngineFactory;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslSocketWrapper;
 import io.fabric8.gateway.handlers.loadbalancer.ClientRequestFacadeFactory;
 import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
+import io.fabric8.gateway.metrics.GatewayMetrics;
+import io.fabric8.gateway.metrics.RouteMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vertx.java.core.AsyncResult;
@@ -38,7 +41,6 @@ import org.vertx.java.core.net.NetSocket;
 import org.vertx.java.core.streams.Pump;
 import org.vertx.java.core.streams.ReadStream;
 
-import javax.net.ssl.SSLContext;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -65,10 +67,14 @@ public class DetectingGateway implements DetectingGatewayMBean {
     final AtomicReference<InetSocketAddress> httpGateway = new AtomicReference<InetSocketAddress>();
     SslConfig sslConfig;
     long connectionTimeout = 5000;
+    int maxPooledClients = NetClientPool.DEFAULT_MAX_CLIENTS;
+    long pooledClientIdleTimeout = NetClientPool.DEFAULT_IDLE_TIMEOUT;
+    NetClientPool clientPool;
 
     final AtomicLong receivedConnectionAttempts = new AtomicLong();
     final AtomicLong successfulConnectionAttempts = new AtomicLong();
     final AtomicLong failedConnectionAttempts = new AtomicLong();
+    GatewayMetrics metrics = new GatewayMetrics();
     Set<SocketWrapper> socketsConnecting = Collections.synchronizedSet(new HashSet<SocketWrapper>());
     Set<ConnectedSocketInfo> socketsConnected = Collections.synchronizedSet(new HashSet<ConnectedSocketInfo>());
     private volatile ShutdownTracker shutdownTracker = new ShutdownTracker();
@@ -99,6 +105,9 @@ public class DetectingGateway implements DetectingGatewayMBean {
 
 
     public void init() {
+        clientPool = new NetClientPool(vertx);
+        clientPool.setMaxClients(maxPooledClients);
+        clientPool.setIdleTimeout(pooledClientIdleTimeout);
         connectHandler = new DetectingGatewayNetSocketHandler(this);
         server = vertx.createNetServer().connectHandler(connectHandler);
         if (host != null) {
@@ -117,6 +126,7 @@ public class DetectingGateway implements DetectingGatewayMBean {
             handleShutdown(socket);
         }
         server = null;
+        clientPool.close();
         connectHandler.setGateway(null);
         connectHandler = null;
     }
@@ -184,7 +194,7 @@ public class DetectingGateway implements DetectingGatewayMBean {
         return rc;
     }
 
-    SSLContext sslContext;
+    SslEngineFactory sslEngineFactory;
     SslSocketWrapper.ClientAuth clientAuth = SslSocketWrapper.ClientAuth.WANT;
 
     public void setShutdownTacker(ShutdownTracker shutdownTracker) {
@@ -197,13 +207,17 @@ public class DetectingGateway implements DetectingGatewayMBean {
         private final ConnectionParameters params;
         private final URI url;
         private final SocketWrapper from;
-        private final NetClient to;
+        private final NetSocket to;
+        private final NetClientPool.PooledClient client;
+        private final RouteMetrics.Exchange exchange;
 
-        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetClient to) {
+        public ConnectedSocketInfo(ConnectionParameters params, URI url, SocketWrapper from, NetSocket to, NetClientPool.PooledClient client, RouteMetrics.Exchange exchange) {
             this.params = params;
             this.url = url;
             this.from = from;
             this.to = to;
+            this.client = client;
+            this.exchange = exchange;
         }
     }
 
@@ -261,30 +275,18 @@ public class DetectingGateway implements DetectingGatewayMBean {
                         if ("ssl".equals(protocol.getProtocolName())) {
 
                             LOG.info(String.format("SSL Connection from '%s'", socket.remoteAddress()));
-                            String disabledCypherSuites=null;
-                            String enabledCipherSuites=null;
-                            if (sslConfig != null) {
-                                disabledCypherSuites = sslConfig.getDisabledCypherSuites();
-                                enabledCipherSuites = sslConfig.getEnabledCipherSuites();
-                            }
-                            if (sslContext == null) {
-                                try {
-                                    if (sslConfig != null) {
-                                        sslContext = SSLContext.getInstance(sslConfig.getProtocol());
-                                        sslContext.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
-                                    } else {
-                                        sslContext = SSLContext.getDefault();
-                                    }
-                                } catch (Exception e) {
-                                    handleConnectFailure(socket, "Could initialize SSL: " + e);
-                                    return;
-                                }
+                            SslEngineFactory engineFactory;
+                            try {
+                                engineFactory = getSslEngineFactory();
+                            } catch (Exception e) {
+                                handleConnectFailure(socket, "Could initialize SSL: " + e);
+                                return;
                             }
 
                             // lets wrap it up in a SslSocketWrapper.
                             SslSocketWrapper sslSocketWrapper = new SslSocketWrapper(socket);
                             sslSocketWrapper.putBackHeader(received);
-                            sslSocketWrapper.initServer(sslContext, clientAuth, disabledCypherSuites, enabledCipherSuites);
+                            sslSocketWrapper.initServer(engineFactory, clientAuth);
 
                             // Undo initial connection accounting since we will be redoing @ the SSL level.
                             boolean removed = socketsConnecting.remove(socket);
@@ -358,19 +360,9 @@ public class DetectingGateway implements DetectingGatewayMBean {
     public void route(final SocketWrapper socket, ConnectionParameters params, final Buffer received) {
         NetClient client = null;
 
-        if( params.protocolVirtualHost==null ) {
-            params.protocolVirtualHost = defaultVirtualHost;
-        }
-        HashSet<String> schemes = new HashSet<String>(Arrays.asList(params.protocolSchemes));
-        if(params.protocolVirtualHost!=null) {
-            List<ServiceDetails> services = serviceMap.getServices(params.protocolVirtualHost);
-
-            // Lets try again with the defaultVirtualHost
-            if( services.isEmpty() && !params.protocolVirtualHost.equals(defaultVirtualHost) ) {
-                params.protocolVirtualHost = defaultVirtualHost;
-                services = serviceMap.getServices(params.protocolVirtualHost);
-            }
-
+        String[] schemes = params.protocolSchemes;
+        List<ServiceDetails> services = findServices(params);
+        if(services != null) {
             LOG.debug(String.format("%d services match the virtual host", services.size()));
             if (!services.isEmpty()) {
                 ClientRequestFacade clientRequestFacade = clientRequestFacadeFactory.create(socket, params);
@@ -378,32 +370,35 @@ public class DetectingGateway implements DetectingGatewayMBean {
                 if (serviceDetails != null) {
                     List<String> urlStrings = serviceDetails.getServices();
                     LOG.debug("Selected service exposes the following URLS: {}", urlStrings);
+                    URI uri = null;
                     for (String urlString : urlStrings) {
                         if (Strings.notEmpty(urlString)) {
-                            // lets create a client for this request...
-                            try {
-                                URI uri = new URI(urlString);
-                                //URL url = new URL(urlString);
-                                String urlProtocol = uri.getScheme();
-                                if (schemes.contains(urlProtocol)) {
-                                    if( !socket.remoteAddress().toString().equals(clientRequestFacade.getClientRequestKey())  ) {
-                                        LOG.info(String.format("Connecting client from '%s' (with key '%s') requesting virtual host '%s' to '%s:%d' using the %s protocol",
-                                            socket.remoteAddress(), clientRequestFacade.getClientRequestKey(), params.protocolVirtualHost, uri.getHost(), uri.getPort(), params.protocol
-                                          ));
-                                    } else {
-                                        LOG.info(String.format("Connecting client from '%s' requesting virtual host '%s' to '%s:%d' using the %s protocol",
-                                            socket.remoteAddress(), params.protocolVirtualHost, uri.getHost(), uri.getPort(), params.protocol
-                                          ));
-                                    }
-
-                                    client = createClient(params, socket, uri, received);
+                            URI endpoint = serviceMap.getEndpoint(urlString);
+                            if (endpoint != null && containsScheme(schemes, endpoint.getScheme())) {
+                                // prefer endpoints which we have not recently failed to connect to
+                                if (clientPool.isHealthy(endpoint)) {
+                                    uri = endpoint;
                                     break;
+                                } else if (uri == null) {
+                                    uri = endpoint;
                                 }
-                            } catch (URISyntaxException e) {
-                                LOG.warn("Failed to parse URI: " + urlString + ". " + e, e);
                             }
                         }
                     }
+                    if (uri != null) {
+                        if( !socket.remoteAddress().toString().equals(clientRequestFacade.getClientRequestKey())  ) {
+                            LOG.info(String.format("Connecting client from '%s' (with key '%s') requesting virtual host '%s' to '%s:%d' using the %s protocol",
+                                socket.remoteAddress(), clientRequestFacade.getClientRequestKey(), params.protocolVirtualHost, uri.getHost(), uri.getPort(), params.protocol
+                              ));
+                        } else {
+                            LOG.info(String.format("Connecting client from '%s' requesting virtual host '%s' to '%s:%d' using the %s protocol",
+                                socket.remoteAddress(), params.protocolVirtualHost, uri.getHost(), uri.getPort(), params.protocol
+                              ));
+                        }
+
+                        // lets create a client for this request...
+                        client = createClient(params, socket, uri, received);
+                    }
                 }
             }
         }
@@ -415,17 +410,55 @@ public class DetectingGateway implements DetectingGatewayMBean {
     }
 
     /**
-     * Creates a new client for the given URL and handler
+     * Returns the services of the virtual host of the connection which expose a URL using one of its protocol
+     * schemes, trying the default virtual host if there are none. As services are filtered by scheme first,
+     * a virtual host whose services only use other schemes falls back to the default virtual host too.
+     * The virtual host of the parameters is updated to the one used, and null is returned if there is none.
+     */
+    public List<ServiceDetails> findServices(ConnectionParameters params) {
+        if( params.protocolVirtualHost==null ) {
+            params.protocolVirtualHost = defaultVirtualHost;
+        }
+        if (params.protocolVirtualHost == null) {
+            return null;
+        }
+        List<ServiceDetails> services = serviceMap.getServices(params.protocolVirtualHost, params.protocolSchemes);
+
+        // Lets try again with the defaultVirtualHost
+        if( services.isEmpty() && !params.protocolVirtualHost.equals(defaultVirtualHost) && defaultVirtualHost != null ) {
+            params.protocolVirtualHost = defaultVirtualHost;
+            services = serviceMap.getServices(params.protocolVirtualHost, params.protocolSchemes);
+        }
+        return services;
+    }
+
+    private static boolean containsScheme(String[] schemes, String scheme) {
+        for (String s : schemes) {
+            if (s.equals(scheme)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Connects the client socket to the given URL using a pooled client
      */
     private NetClient createClient(final ConnectionParameters params, final SocketWrapper socketFromClient, final URI url, final Buffer received) {
-        final NetClient netClient = vertx.createNetClient();
+        final NetClientPool.PooledClient pooledClient = clientPool.acquire(url);
+        final RouteMetrics.Exchange exchange = metrics.getRoute(params.protocolVirtualHost).start();
         socketFromClient.readStream().pause();
-        return netClient.connect(url.getPort(), url.getHost(), new Handler<AsyncResult<NetSocket>>() {
+        return pooledClient.getClient().connect(url.getPort(), url.getHost(), new Handler<AsyncResult<NetSocket>>() {
             public void handle(final AsyncResult<NetSocket> asyncSocket) {
 
                 if( !asyncSocket.succeeded() ) {
+                    clientPool.markUnhealthy(url);
+                    clientPool.release(pooledClient);
+                    exchange.fail();
                     handleConnectFailure(socketFromClient, String.format("Could not connect to '%s'", url));
                 } else {
+                    clientPool.markHealthy(url);
+                    exchange.connected();
                     socketFromClient.readStream().resume();
                     final NetSocket socketToServer = asyncSocket.result();
 
@@ -433,7 +466,7 @@ public class DetectingGateway implements DetectingGatewayMBean {
                     boolean removed = socketsConnecting.remove(socketFromClient);
                     assert removed;
 
-                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, netClient);
+                    final ConnectedSocketInfo connectedInfo = new ConnectedSocketInfo(params, url, socketFromClient, socketToServer, pooledClient, exchange);
                     boolean added = socketsConnected.add(connectedInfo);
                     assert added;
 
@@ -457,9 +490,10 @@ public class DetectingGateway implements DetectingGatewayMBean {
                     if(LOG.isTraceEnabled()){
                         LOG.trace("Sending out to destination socket: {}", received);
                     }
+                    exchange.bytesIn(received.length());
                     socketToServer.write(received);
-                    Pump.createPump(socketToServer, socketFromClient.writeStream()).start();
-                    Pump.createPump(socketFromClient.readStream(), socketToServer).start();
+                    Pump.createPump(socketToServer, new MeteredWriteStream(socketFromClient.writeStream(), exchange, true)).start();
+                    Pump.createPump(socketFromClient.readStream(), new MeteredWriteStream(socketToServer, exchange, false)).start();
                     LOG.debug("socketFromClient {} has been connected to socketToServer {}", socketFromClient.remoteAddress(), socketToServer.remoteAddress());
                 }
             }
@@ -471,6 +505,8 @@ public class DetectingGateway implements DetectingGatewayMBean {
             try {
                 connectedInfo.from.close();
                 connectedInfo.to.close();
+                clientPool.release(connectedInfo.client);
+                connectedInfo.exchange.complete();
             } finally {
                 shutdownTracker.release();
             }
@@ -496,6 +532,29 @@ public class DetectingGateway implements DetectingGatewayMBean {
         this.sslConfig = sslConfig;
     }
 
+    /**
+     * Returns the factory of the SSL engines which share the SSL context and its session cache,
+     * creating it from the SSL configuration on first use
+     */
+    public synchronized SslEngineFactory getSslEngineFactory() throws Exception {
+        if (sslEngineFactory == null) {
+            sslEngineFactory = SslEngineFactory.create(sslConfig);
+        }
+        return sslEngineFactory;
+    }
+
+    public synchronized void setSslEngineFactory(SslEngineFactory sslEngineFactory) {
+        this.sslEngineFactory = sslEngineFactory;
+    }
+
+    public synchronized long getSslFullHandshakes() {
+        return sslEngineFactory != null ? sslEngineFactory.getFullHandshakes() : 0;
+    }
+
+    public synchronized long getSslResumedHandshakes() {
+        return sslEngineFactory != null ? sslEngineFactory.getResumedHandshakes() : 0;
+    }
+
 
     public long getReceivedConnectionAttempts() {
         return receivedConnectionAttempts.get();
@@ -523,6 +582,54 @@ public class DetectingGateway implements DetectingGatewayMBean {
         return rc.toArray(new String[rc.size()]);
     }
 
+    public long getClientPoolHits() {
+        return clientPool != null ? clientPool.getHits() : 0;
+    }
+    public long getClientPoolMisses() {
+        return clientPool != null ? clientPool.getMisses() : 0;
+    }
+    public long getClientPoolEvictions() {
+        return clientPool != null ? clientPool.getEvictions() : 0;
+    }
+    public int getClientPoolSize() {
+        return clientPool != null ? clientPool.getSize() : 0;
+    }
+
+    /**
+     * Returns the latency and traffic metrics of each virtual host
+     */
+    public GatewayMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(GatewayMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Map<String, Map<String, Object>> getRouteMetrics() {
+        return metrics.getStatistics();
+    }
+
+    public void resetRouteMetrics() {
+        metrics.reset();
+    }
+
+    public int getMaxPooledClients() {
+        return maxPooledClients;
+    }
+
+    public void setMaxPooledClients(int maxPooledClients) {
+        this.maxPooledClients = maxPooledClients;
+    }
+
+    public long getPooledClientIdleTimeout() {
+        return pooledClientIdleTimeout;
+    }
+
+    public void setPooledClientIdleTimeout(long pooledClientIdleTimeout) {
+        this.pooledClientIdleTimeout = pooledClientIdleTimeout;
+    }
+
     public long getConnectionTimeout() {
         return connectionTimeout;
     }
@@ -18,6 +18,7 @@ package io.fabric8.gateway.handlers.detecting;
 import io.fabric8.gateway.SocketWrapper;
 
 import java.util.ArrayList;
+import java.util.Map;
 
 /**
  * This interface defines the attributes/operations that are exposed
@@ -32,6 +33,14 @@ public interface DetectingGatewayMBean {
     public long getFailedConnectionAttempts();
     public String[] getConnectingClients();
     public String[] getConnectedClients();
+    public long getClientPoolHits();
+    public long getClientPoolMisses();
+    public long getClientPoolEvictions();
+    public int getClientPoolSize();
+    public Map<String, Map<String, Object>> getRouteMetrics();
+    public long getSslFullHandshakes();
+    public long getSslResumedHandshakes();
+    public void resetRouteMetrics();
     public long getConnectionTimeout();
     public void setConnectionTimeout(long connectionTimeout);
 
@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import io.fabric8.gateway.metrics.RouteMetrics;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.streams.WriteStream;
+
+/**
+ * A {@link WriteStream} which counts the bytes pumped through it into the metrics of a route.
+ */
+class MeteredWriteStream implements WriteStream<MeteredWriteStream> {
+    private final WriteStream<?> next;
+    private final RouteMetrics.Exchange exchange;
+    private final boolean toClient;
+
+    /**
+     * @param toClient true if the stream writes to the client so the bytes are counted as
+     *                 bytes out and the first write is the first byte from the service
+     */
+    MeteredWriteStream(WriteStream<?> next, RouteMetrics.Exchange exchange, boolean toClient) {
+        this.next = next;
+        this.exchange = exchange;
+        this.toClient = toClient;
+    }
+
+    @Override
+    public MeteredWriteStream write(Buffer data) {
+        if (toClient) {
+            exchange.firstByte();
+            exchange.bytesOut(data.length());
+        } else {
+            exchange.bytesIn(data.length());
+        }
+        next.write(data);
+        return this;
+    }
+
+    @Override
+    public MeteredWriteStream setWriteQueueMaxSize(int maxSize) {
+        next.setWriteQueueMaxSize(maxSize);
+        return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+        return next.writeQueueFull();
+    }
+
+    @Override
+    public MeteredWriteStream drainHandler(Handler<Void> handler) {
+        next.drainHandler(handler);
+        return this;
+    }
+
+    @Override
+    public MeteredWriteStream exceptionHandler(Handler<Throwable> handler) {
+        next.exceptionHandler(handler);
+        return this;
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.net.NetClient;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of vert.x {@link NetClient}s keyed by upstream endpoint so that
+ * the gateway does not have to set up a new client for every accepted connection.
+ * <p/>
+ * Clients are also keyed by the vert.x context they were created on so the sockets
+ * they connect stay on the same event loop as the client socket being proxied.
+ * Clients that have no active connections for longer than the idle timeout are
+ * evicted, and endpoints which failed to connect are marked unhealthy for a while
+ * so the router can prefer other endpoints.
+ */
+public class NetClientPool {
+
+    private static final transient Logger LOG = LoggerFactory.getLogger(NetClientPool.class);
+
+    public static final int DEFAULT_MAX_CLIENTS = 256;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+    public static final long DEFAULT_UNHEALTHY_RETRY_DELAY = 5 * 1000;
+
+    private final Vertx vertx;
+    private final Map<Key, PooledClient> clients = new HashMap<Key, PooledClient>();
+    private final Map<String, Long> unhealthyEndpoints = new HashMap<String, Long>();
+
+    private int maxClients = DEFAULT_MAX_CLIENTS;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long unhealthyRetryDelay = DEFAULT_UNHEALTHY_RETRY_DELAY;
+    private long lastEviction = System.currentTimeMillis();
+
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+    final AtomicLong evictions = new AtomicLong();
+
+    public NetClientPool(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * Returns a client which can connect to the given endpoint. Every call must be
+     * matched by a call to {@link #release(PooledClient)} once the connection made
+     * with the client has been closed (or failed to open).
+     */
+    public synchronized PooledClient acquire(URI endpoint) {
+        long now = System.currentTimeMillis();
+        if (now - lastEviction > idleTimeout / 2) {
+            evictIdle(now);
+        }
+        Key key = new Key(vertx.currentContext(), endpointKey(endpoint));
+        PooledClient answer = clients.get(key);
+        if (answer != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            if (clients.size() >= maxClients) {
+                evictIdle(Long.MAX_VALUE);
+            }
+            answer = new PooledClient(key, createNetClient(), clients.size() < maxClients);
+            if (answer.pooled) {
+                clients.put(key, answer);
+            }
+        }
+        answer.activeConnections++;
+        answer.lastUsed = now;
+        return answer;
+    }
+
+    /**
+     * Returns the client back to the pool.
+     */
+    public synchronized void release(PooledClient client) {
+        client.activeConnections--;
+        client.lastUsed = System.currentTimeMillis();
+        if (!client.pooled && client.activeConnections <= 0) {
+            client.client.close();
+        }
+    }
+
+    /**
+     * Marks the endpoint as unhealthy so that it is avoided until the retry delay has passed.
+     */
+    public synchronized void markUnhealthy(URI endpoint) {
+        unhealthyEndpoints.put(endpointKey(endpoint), System.currentTimeMillis() + unhealthyRetryDelay);
+    }
+
+    /**
+     * Marks the endpoint as healthy again after a successful connect.
+     */
+    public synchronized void markHealthy(URI endpoint) {
+        unhealthyEndpoints.remove(endpointKey(endpoint));
+    }
+
+    public synchronized boolean isHealthy(URI endpoint) {
+        if (unhealthyEndpoints.isEmpty()) {
+            return true;
+        }
+        String key = endpointKey(endpoint);
+        Long until = unhealthyEndpoints.get(key);
+        if (until == null) {
+            return true;
+        }
+        if (until <= System.currentTimeMillis()) {
+            unhealthyEndpoints.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Closes all the pooled clients.
+     */
+    public synchronized void close() {
+        for (PooledClient client : new ArrayList<PooledClient>(clients.values())) {
+            client.client.close();
+        }
+        clients.clear();
+        unhealthyEndpoints.clear();
+    }
+
+    protected NetClient createNetClient() {
+        NetClient answer = vertx.createNetClient();
+        answer.setTCPKeepAlive(true);
+        answer.setTCPNoDelay(true);
+        return answer;
+    }
+
+    private void evictIdle(long now) {
+        lastEviction = System.currentTimeMillis();
+        Iterator<PooledClient> iterator = clients.values().iterator();
+        while (iterator.hasNext()) {
+            PooledClient client = iterator.next();
+            if (client.activeConnections <= 0 && (now == Long.MAX_VALUE || now - client.lastUsed > idleTimeout)) {
+                LOG.debug("Evicting idle client for {}", client.key.endpoint);
+                iterator.remove();
+                client.pooled = false;
+                client.client.close();
+                evictions.incrementAndGet();
+                if (now == Long.MAX_VALUE) {
+                    // we only need room for one more client
+                    return;
+                }
+            }
+        }
+    }
+
+    private static String endpointKey(URI endpoint) {
+        return endpoint.getHost() + ":" + endpoint.getPort();
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized int getSize() {
+        return clients.size();
+    }
+
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    public void setMaxClients(int maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getUnhealthyRetryDelay() {
+        return unhealthyRetryDelay;
+    }
+
+    public void setUnhealthyRetryDelay(long unhealthyRetryDelay) {
+        this.unhealthyRetryDelay = unhealthyRetryDelay;
+    }
+
+    /**
+     * A client handed out by the pool.
+     */
+    public static class PooledClient {
+        private final Key key;
+        private final NetClient client;
+        private boolean pooled;
+        private int activeConnections;
+        private long lastUsed;
+
+        PooledClient(Key key, NetClient client, boolean pooled) {
+            this.key = key;
+            this.client = client;
+            this.pooled = pooled;
+        }
+
+        public NetClient getClient() {
+            return client;
+        }
+
+        @Override
+        public String toString() {
+            return "PooledClient{" + key.endpoint + '}';
+        }
+    }
+
+    private static class Key {
+        private final Context context;
+        private final String endpoint;
+
+        Key(Context context, String endpoint) {
+            this.context = context;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return context == key.context && endpoint.equals(key.endpoint);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(context) + endpoint.hashCode();
+        }
+    }
+}
@@ -32,6 +32,9 @@ import java.security.cert.X509Certificate;
  */
 public class SslConfig {
 
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 20480;
+    public static final int DEFAULT_SESSION_TIMEOUT = 86400;
+
     private URL keyStoreURL;
     private String keyStorePassword;
     private KeyStore keyStore;
@@ -49,6 +52,8 @@ public class SslConfig {
     TrustManager[] trustManagers;
     KeyManager[] keyManagers;
     private String protocol = "TLS";
+    private int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+    private int sessionTimeout = DEFAULT_SESSION_TIMEOUT;
 
     String disabledCypherSuites;
     String enabledCipherSuites;
@@ -175,6 +180,28 @@ public class SslConfig {
         this.protocol = protocol;
     }
 
+    /**
+     * Returns the maximum number of TLS sessions cached so clients can resume them, or 0 for no limit
+     */
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+    /**
+     * Returns the number of seconds a cached TLS session can be resumed for, or 0 for no limit
+     */
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
     static class AliasFilteringKeyManager extends X509ExtendedKeyManager {
         private final String alias;
         private final X509ExtendedKeyManager next;
@@ -0,0 +1,142 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.detecting.protocol.ssl;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the {@link SSLEngine}s of the SSL connections from a single shared {@link SSLContext}
+ * so that all the connections share its session cache and clients can resume their TLS sessions
+ * rather than doing a full handshake every time they reconnect.
+ * <p/>
+ * The enabled cipher suites are worked out once rather than per connection. The factory also
+ * counts the full and resumed handshakes of the engines it created.
+ */
+public class SslEngineFactory {
+    private final SSLContext sslContext;
+    private final String[] cipherSuites;
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    /**
+     * Creates a factory using the key and trust stores and the session cache settings of the given
+     * configuration, or the default JVM SSL context if the configuration is null
+     */
+    public static SslEngineFactory create(SslConfig sslConfig) throws Exception {
+        if (sslConfig == null) {
+            return new SslEngineFactory(SSLContext.getDefault(), null, null);
+        }
+        SSLContext sslContext = SSLContext.getInstance(sslConfig.getProtocol());
+        sslContext.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
+        configureSessionContext(sslContext.getServerSessionContext(), sslConfig);
+        configureSessionContext(sslContext.getClientSessionContext(), sslConfig);
+        return new SslEngineFactory(sslContext, sslConfig.getDisabledCypherSuites(), sslConfig.getEnabledCipherSuites());
+    }
+
+    private static void configureSessionContext(SSLSessionContext sessionContext, SslConfig sslConfig) {
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(sslConfig.getSessionCacheSize());
+            sessionContext.setSessionTimeout(sslConfig.getSessionTimeout());
+        }
+    }
+
+    public SslEngineFactory(SSLContext sslContext, String disabledCypherSuites, String enabledCipherSuites) {
+        this.sslContext = sslContext;
+        this.cipherSuites = cipherSuites(sslContext.createSSLEngine(), disabledCypherSuites, enabledCipherSuites);
+    }
+
+    public SSLEngine createServerEngine(SslSocketWrapper.ClientAuth clientAuth) {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        switch (clientAuth) {
+            case WANT: engine.setWantClientAuth(true); break;
+            case NEED: engine.setNeedClientAuth(true); break;
+            case NONE: engine.setWantClientAuth(false); break;
+        }
+        engine.setEnabledCipherSuites(cipherSuites);
+        return engine;
+    }
+
+    public SSLEngine createClientEngine(String host, int port) {
+        SSLEngine engine = sslContext.createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+        engine.setEnabledCipherSuites(cipherSuites);
+        return engine;
+    }
+
+    /**
+     * Records a completed handshake; the session was resumed if it was created before the handshake started
+     */
+    void handshakeCompleted(SSLSession session, long handshakeStartTime) {
+        if (session != null && session.getCreationTime() < handshakeStartTime) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+    }
+
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    static String[] cipherSuites(SSLEngine engine, String disabledCypherSuites, String enabledCipherSuites) {
+        String[] suites;
+        if (enabledCipherSuites != null) {
+            suites = splitOnCommas(enabledCipherSuites);
+        } else {
+            suites = engine.getSupportedCipherSuites();
+        }
+        if (disabledCypherSuites == null) {
+            return suites;
+        }
+        String[] disabledList = splitOnCommas(disabledCypherSuites);
+        ArrayList<String> enabled = new ArrayList<String>();
+        for (String suite : suites) {
+            boolean add = true;
+            for (String disabled : disabledList) {
+                if (suite.contains(disabled)) {
+                    add = false;
+                    break;
+                }
+            }
+            if (add) {
+                enabled.add(suite);
+            }
+        }
+        return enabled.toArray(new String[enabled.size()]);
+    }
+
+    static String[] splitOnCommas(String value) {
+        ArrayList<String> rc = new ArrayList<String>();
+        for (String x : value.split(",")) {
+            rc.add(x.trim());
+        }
+        return rc.toArray(new String[rc.size()]);
+    }
+}
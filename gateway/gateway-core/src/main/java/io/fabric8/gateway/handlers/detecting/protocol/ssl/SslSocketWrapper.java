@@ -27,8 +27,8 @@ import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.FINISHED;
 import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
 
 /**
@@ -44,9 +44,36 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     final private SocketWrapper next;
 
     private SSLEngine engine;
+    private SslEngineFactory engineFactory;
+    private long handshakeStartTime;
     private Handler<Throwable> plainExceptionHandler;
     private boolean failed = false;
 
+    /**
+     * The buffers the engine wraps and unwraps into are only used for the duration of a single
+     * pump on the event loop thread so each thread reuses its own rather than allocating
+     * a new buffer for every read and write
+     */
+    private static final ThreadLocal<ByteBuffer[]> SCRATCH_BUFFERS = new ThreadLocal<ByteBuffer[]>() {
+        @Override
+        protected ByteBuffer[] initialValue() {
+            return new ByteBuffer[2];
+        }
+    };
+    private static final int READ_BUFFER = 0;
+    private static final int WRITE_BUFFER = 1;
+
+    private static ByteBuffer scratchBuffer(int index, int size) {
+        ByteBuffer[] buffers = SCRATCH_BUFFERS.get();
+        ByteBuffer answer = buffers[index];
+        if (answer == null || answer.capacity() < size) {
+            answer = ByteBuffer.allocate(size);
+            buffers[index] = answer;
+        }
+        answer.clear();
+        return answer;
+    }
+
     //////////////////////////////////////////////////////////////////////////
     //
     // ReadStream<SslSocketWrapper> interface impl.
@@ -81,8 +108,9 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
             }
 
             if( encryptedReadBuffer!=null && plainReadBuffer==null && !encryptedReadBufferUnderflow ) {
-                ByteBuffer input = ByteBuffer.wrap(encryptedReadBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+                ByteBuffer input = encryptedReadBuffer.getByteBuf().nioBuffer();
+                int inputStart = input.position();
+                ByteBuffer output = scratchBuffer(READ_BUFFER, engine.getSession().getApplicationBufferSize());
 
                 try {
                     boolean done = false;
@@ -90,6 +118,9 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                         done = true;
 
                         SSLEngineResult result = engine.unwrap(input, output);
+                        if( result.getHandshakeStatus() == FINISHED ) {
+                            handshakeFinished();
+                        }
                         switch( result.getStatus() ) {
                             case CLOSED:
                                 engine.closeInbound();
@@ -130,9 +161,9 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                     int len = input.remaining();
                     if( len > 0 ) {
                         // we need to compact the encryptedReadBuffer
-                        if( input.position()!=0  ) {
-                            encryptedReadBuffer = new Buffer(len);
-                            encryptedReadBuffer.appendBytes(input.array(), input.arrayOffset()+ input.position(), len);
+                        int consumed = input.position() - inputStart;
+                        if( consumed!=0  ) {
+                            encryptedReadBuffer = encryptedReadBuffer.getBuffer(consumed, encryptedReadBuffer.length());
                         }
                     } else {
                         // everything was consumed.
@@ -272,14 +303,18 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
             }
 
             if( plainWriteBuffer!=null ) {
-                ByteBuffer input = ByteBuffer.wrap(plainWriteBuffer.getBytes());
-                ByteBuffer output = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+                ByteBuffer input = plainWriteBuffer.getByteBuf().nioBuffer();
+                int inputStart = input.position();
+                ByteBuffer output = scratchBuffer(WRITE_BUFFER, engine.getSession().getPacketBufferSize());
 
                 try {
                     boolean done = false;
                     while( !done ) {
                         done = true;
                         SSLEngineResult result = engine.wrap(input, output);
+                        if( result.getHandshakeStatus() == FINISHED ) {
+                            handshakeFinished();
+                        }
                         switch( result.getStatus() ) {
                             case OK:
                                 switch(engine.getHandshakeStatus()) {
@@ -317,9 +352,9 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
                     int len = input.remaining();
                     if( len > 0 ) {
                         // we need to compact the plainWriteBuffer
-                        if( input.position()!=0  ) {
-                            plainWriteBuffer = new Buffer(len);
-                            plainWriteBuffer.appendBytes(input.array(), input.arrayOffset()+ input.position(), len);
+                        int consumed = input.position() - inputStart;
+                        if( consumed!=0  ) {
+                            plainWriteBuffer = plainWriteBuffer.getBuffer(consumed, plainWriteBuffer.length());
                         }
                     } else {
                         // everything was consumed.
@@ -396,53 +431,29 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
     }
 
     public void initClient(SSLContext sslContext, String host, int port, String disabledCypherSuites, String enabledCipherSuites) {
-        assert engine == null;
-        engine = sslContext.createSSLEngine(host, port);
-        engine.setUseClientMode(true);
-        initCipherSuites(disabledCypherSuites, enabledCipherSuites);
-        init();
+        initClient(new SslEngineFactory(sslContext, disabledCypherSuites, enabledCipherSuites), host, port);
     }
 
-    public void initServer(SSLContext sslContext, ClientAuth clientAuth, String disabledCypherSuites, String enabledCipherSuites) {
+    public void initClient(SslEngineFactory engineFactory, String host, int port) {
         assert engine == null;
-        engine = sslContext.createSSLEngine();
-        engine.setUseClientMode(false);
-        switch (clientAuth) {
-            case WANT: engine.setWantClientAuth(true); break;
-            case NEED: engine.setNeedClientAuth(true); break;
-            case NONE: engine.setWantClientAuth(false); break;
-        }
-        initCipherSuites(disabledCypherSuites, enabledCipherSuites);
+        this.engineFactory = engineFactory;
+        engine = engineFactory.createClientEngine(host, port);
         init();
     }
 
-    private void initCipherSuites(String disabledCypherSuites, String enabledCipherSuites) {
-        if (enabledCipherSuites != null) {
-            engine.setEnabledCipherSuites(splitOnCommas(enabledCipherSuites));
-        } else {
-            engine.setEnabledCipherSuites(engine.getSupportedCipherSuites());
-        }
+    public void initServer(SSLContext sslContext, ClientAuth clientAuth, String disabledCypherSuites, String enabledCipherSuites) {
+        initServer(new SslEngineFactory(sslContext, disabledCypherSuites, enabledCipherSuites), clientAuth);
+    }
 
-        if( disabledCypherSuites!=null ) {
-            String[] disabledList = splitOnCommas(disabledCypherSuites);
-            ArrayList<String> enabled = new ArrayList<String>();
-            for (String suite : engine.getEnabledCipherSuites()) {
-                boolean add = true;
-                for (String disabled : disabledList) {
-                    if( suite.contains(disabled) ) {
-                        add = false;
-                        break;
-                    }
-                }
-                if( add ) {
-                    enabled.add(suite);
-                }
-            }
-            engine.setEnabledCipherSuites(enabled.toArray(new String[enabled.size()]));
-        }
+    public void initServer(SslEngineFactory engineFactory, ClientAuth clientAuth) {
+        assert engine == null;
+        this.engineFactory = engineFactory;
+        engine = engineFactory.createServerEngine(clientAuth);
+        init();
     }
 
     private void init() {
+        handshakeStartTime = System.currentTimeMillis();
         this.next.readStream().dataHandler(new Handler<Buffer>() {
             @Override
             public void handle(Buffer buffer) {
@@ -469,14 +480,6 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         });
     }
 
-    static private String[] splitOnCommas(String value) {
-        ArrayList<String> rc = new ArrayList<String>();
-        for( String x : value.split(",") ) {
-            rc.add(x.trim());
-        }
-        return rc.toArray(new String[rc.size()]);
-    }
-
     public void handshake() {
         if( failed )
             return;
@@ -524,6 +527,14 @@ public class SslSocketWrapper extends SocketWrapper implements ReadStream<SslSoc
         }
     }
 
+    private void handshakeFinished() {
+        if( engineFactory!=null ) {
+            engineFactory.handshakeCompleted(engine.getSession(), handshakeStartTime);
+        }
+        // any renegotiation is timed from when it finishes the previous handshake
+        handshakeStartTime = System.currentTimeMillis();
+    }
+
     private void onFailure(Throwable error) {
         failed = true;
         Handler<Throwable> handler = plainExceptionHandler;
@@ -0,0 +1,86 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+/**
+ * The options used to create the HTTP clients which proxy requests to the mapped services.
+ */
+public class HttpClientOptions {
+    public static final boolean DEFAULT_KEEP_ALIVE = true;
+    public static final int DEFAULT_MAX_POOL_SIZE = 10;
+    public static final boolean DEFAULT_PIPELINING = false;
+
+    private final boolean keepAlive;
+    private final int maxPoolSize;
+    private final boolean pipelining;
+
+    public HttpClientOptions() {
+        this(DEFAULT_KEEP_ALIVE, DEFAULT_MAX_POOL_SIZE, DEFAULT_PIPELINING);
+    }
+
+    public HttpClientOptions(boolean keepAlive, int maxPoolSize, boolean pipelining) {
+        this.keepAlive = keepAlive;
+        this.maxPoolSize = maxPoolSize;
+        this.pipelining = pipelining;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        HttpClientOptions that = (HttpClientOptions) o;
+        return keepAlive == that.keepAlive && maxPoolSize == that.maxPoolSize && pipelining == that.pipelining;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = keepAlive ? 1 : 0;
+        result = 31 * result + maxPoolSize;
+        result = 31 * result + (pipelining ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientOptions{" +
+                "keepAlive=" + keepAlive +
+                ", maxPoolSize=" + maxPoolSize +
+                ", pipelining=" + pipelining +
+                '}';
+    }
+
+    /**
+     * Returns whether connections to the service are kept open and reused for subsequent requests
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Returns the maximum number of connections kept open to each service
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * Returns whether requests are pipelined over kept alive connections
+     */
+    public boolean isPipelining() {
+        return pipelining;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A cache of vert.x {@link HttpClient}s per upstream host so that proxied requests
+ * reuse kept alive connections rather than opening a new connection per request.
+ * <p/>
+ * Clients are also keyed by the vert.x context they are used from since a vert.x
+ * client is bound to the event loop it was created on.
+ */
+public class HttpClientPool {
+    private static final transient Logger LOG = LoggerFactory.getLogger(HttpClientPool.class);
+
+    private final Vertx vertx;
+    private final Map<Key, HttpClient> clients = new HashMap<Key, HttpClient>();
+
+    public HttpClientPool(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * Returns the client to use for the host and port of the given URL
+     */
+    public synchronized HttpClient getClient(URL url, HttpClientOptions options) {
+        Key key = new Key(vertx.currentContext(), hostAndPort(url), options);
+        HttpClient answer = clients.get(key);
+        if (answer == null) {
+            answer = vertx.createHttpClient();
+            answer.setHost(url.getHost());
+            answer.setPort(url.getPort());
+            answer.setKeepAlive(options.isKeepAlive());
+            answer.setMaxPoolSize(options.getMaxPoolSize());
+            answer.setPipelining(options.isPipelining());
+            clients.put(key, answer);
+        }
+        return answer;
+    }
+
+    /**
+     * Closes and removes the clients of any hosts which are not in the given set of host:port values
+     */
+    public synchronized void retainAll(Set<String> hostAndPorts) {
+        Iterator<Map.Entry<Key, HttpClient>> iterator = clients.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, HttpClient> entry = iterator.next();
+            if (!hostAndPorts.contains(entry.getKey().hostAndPort)) {
+                LOG.debug("Closing client for {} as it is no longer mapped", entry.getKey().hostAndPort);
+                iterator.remove();
+                entry.getValue().close();
+            }
+        }
+    }
+
+    /**
+     * Closes all the clients
+     */
+    public synchronized void close() {
+        for (HttpClient client : new ArrayList<HttpClient>(clients.values())) {
+            client.close();
+        }
+        clients.clear();
+    }
+
+    public synchronized int size() {
+        return clients.size();
+    }
+
+    public static String hostAndPort(URL url) {
+        return url.getHost() + ":" + url.getPort();
+    }
+
+    private static class Key {
+        private final Context context;
+        private final String hostAndPort;
+        private final HttpClientOptions options;
+
+        Key(Context context, String hostAndPort, HttpClientOptions options) {
+            this.context = context;
+            this.hostAndPort = hostAndPort;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return context == key.context && hostAndPort.equals(key.hostAndPort) && options.equals(key.options);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(context);
+            result = 31 * result + hostAndPort.hashCode();
+            result = 31 * result + options.hashCode();
+            return result;
+        }
+    }
+}
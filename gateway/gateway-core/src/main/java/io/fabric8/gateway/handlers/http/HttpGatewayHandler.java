@@ -31,6 +31,10 @@ import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.http.HttpServerResponse;
 
 import io.fabric8.gateway.CallDetailRecord;
+import io.fabric8.gateway.metrics.GatewayMetrics;
+import io.fabric8.gateway.metrics.RouteMetrics;
+import io.fabric8.gateway.support.PathTrie;
+import io.fabric8.gateway.support.Paths;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -42,6 +46,8 @@ import java.net.URL;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -58,10 +64,21 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
     private final ObjectMapper mapper = new ObjectMapper();
 
     private boolean addMissingTrailingSlashes = true;
+    private volatile MappingIndex mappingIndex;
+    private final HttpClientPool clientPool;
+    private volatile GatewayMetrics metrics = new GatewayMetrics();
 
     public HttpGatewayHandler(Vertx vertx, HttpGateway httpGateway) {
         this.vertx = vertx;
         this.httpGateway = httpGateway;
+        this.clientPool = new HttpClientPool(vertx);
+    }
+
+    /**
+     * Closes the HTTP clients kept open to the mapped services
+     */
+    public void destroy() {
+        clientPool.close();
     }
 
     @Override
@@ -137,11 +154,14 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         String reverseServiceUrl = null;
 
         MappedServices mappedServices = null;
+        String mappedPath = null;
         URL clientURL = null;
-        Set<Map.Entry<String, MappedServices>> entries = mappingRules.entrySet();
-        for (Map.Entry<String, MappedServices> entry : entries) {
-            String path = entry.getKey();
-            mappedServices = entry.getValue();
+        List<String> paths = getMappingIndex(mappingRules).trie.findMatches(uri);
+        for (String path : paths) {
+            mappedServices = mappingRules.get(path);
+            if (mappedServices == null) {
+                continue;
+            }
 
             String pathPrefix = path;
             boolean uriMatches = uri.startsWith(pathPrefix);
@@ -162,12 +182,13 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                     // lets create a client for this request...
                     try {
                         clientURL = new URL(proxyServiceUrl);
-                        client = createClient(clientURL);
+                        client = createClient(clientURL, mappedServices);
                         prefix = clientURL.getPath();
                         reverseServiceUrl = request.absoluteURI().resolve(pathPrefix).toString();
                         if (reverseServiceUrl.endsWith("/")) {
                             reverseServiceUrl = reverseServiceUrl.substring(0, reverseServiceUrl.length() - 1);
                         }
+                        mappedPath = path;
                         break;
                     } catch (MalformedURLException e) {
                         LOG.warn("Failed to parse URL: " + proxyServiceUrl + ". " + e, e);
@@ -187,23 +208,25 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
             }
 
             LOG.info("Proxying request {} to service path: {} on service: {} reverseServiceUrl: {}", uri, servicePath, proxyServiceUrl, reverseServiceUrl);
-            final HttpClient finalClient = client;
+            final RouteMetrics.Exchange exchange = metrics.getRoute(mappedPath).start();
             Handler<HttpClientResponse> responseHandler = new Handler<HttpClientResponse>() {
                 public void handle(HttpClientResponse clientResponse) {
                     LOG.debug("Proxying response: {}", clientResponse.statusCode());
+                    exchange.firstByte();
                     request.response().setStatusCode(clientResponse.statusCode());
                     request.response().headers().set(clientResponse.headers());
                     applyChunkedEncoding(request.response());
                     clientResponse.dataHandler(new Handler<Buffer>() {
                         public void handle(Buffer data) {
                             LOG.debug("Proxying response body: {}", data);
+                            exchange.bytesOut(data.length());
                             request.response().write(data);
                         }
                     });
                     clientResponse.endHandler(new VoidHandler() {
                         public void handle() {
                             request.response().end();
-                            finalClient.close();
+                            exchange.complete();
                         }
                     });
                 }
@@ -212,12 +235,25 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
                 ProxyMappingDetails proxyMappingDetails = new ProxyMappingDetails(proxyServiceUrl, reverseServiceUrl, servicePath);
                 responseHandler = mappedServices.wrapResponseHandlerInPolicies(request, responseHandler, proxyMappingDetails);
             }
-            final HttpClientRequest clientRequest = client.request(request.method(), servicePath, responseHandler);
+            final HttpClientRequest clientRequest;
+            try {
+                clientRequest = client.request(request.method(), servicePath, responseHandler);
+            } catch (RuntimeException e) {
+                exchange.fail();
+                throw e;
+            }
             clientRequest.headers().set(request.headers());
             clientRequest.setChunked(true);
+            clientRequest.exceptionHandler(new Handler<Throwable>() {
+                public void handle(Throwable e) {
+                    LOG.warn("Failed to proxy request " + request.uri() + ": " + e, e);
+                    exchange.fail();
+                }
+            });
             request.dataHandler(new Handler<Buffer>() {
                 public void handle(Buffer data) {
                     LOG.debug("Proxying request body: {}", data);
+                    exchange.bytesIn(data.length());
                     clientRequest.write(data);
                 }
             });
@@ -236,6 +272,20 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         }
     }
 
+    /**
+     * Returns the trie of the mapped paths, rebuilding it if the mapping rules have changed since it was built
+     */
+    protected MappingIndex getMappingIndex(Map<String, MappedServices> mappingRules) {
+        MappingIndex answer = mappingIndex;
+        if (answer == null || answer.mappingRules != mappingRules || answer.trie.size() != mappingRules.size()) {
+            answer = new MappingIndex(mappingRules);
+            mappingIndex = answer;
+            // lets close the clients of any services which are no longer mapped
+            clientPool.retainAll(answer.hostAndPorts);
+        }
+        return answer;
+    }
+
     protected boolean isMappingIndexRequest(HttpServerRequest request) {
         if (httpGateway == null || !httpGateway.isEnableIndex()) {
             return false;
@@ -244,13 +294,9 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         return uri == null || uri.length() == 0 || uri.equals("/");
     }
 
-    protected HttpClient createClient(URL url) throws MalformedURLException {
-        // lets create a client
-        HttpClient client = vertx.createHttpClient();
-        client.setHost(url.getHost());
-        client.setPort(url.getPort());
-        return client;
-
+    protected HttpClient createClient(URL url, MappedServices mappedServices) throws MalformedURLException {
+        // lets reuse the client (and its kept alive connections) for the host
+        return clientPool.getClient(url, mappedServices.getClientOptions());
     }
 
     /**
@@ -277,6 +323,40 @@ public class HttpGatewayHandler implements Handler<HttpServerRequest> {
         this.addMissingTrailingSlashes = addMissingTrailingSlashes;
     }
 
+    /**
+     * Returns the latency and traffic metrics of each mapped path
+     */
+    public GatewayMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(GatewayMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * The mapped paths of a set of mapping rules indexed by path segment so the longest matching prefix is found first
+     */
+    protected static class MappingIndex {
+        private final Map<String, MappedServices> mappingRules;
+        private final PathTrie<String> trie = new PathTrie<String>();
+        private final Set<String> hostAndPorts = new HashSet<>();
+
+        MappingIndex(Map<String, MappedServices> mappingRules) {
+            this.mappingRules = mappingRules;
+            for (Map.Entry<String, MappedServices> entry : mappingRules.entrySet()) {
+                trie.put(entry.getKey(), entry.getKey());
+                for (String serviceUrl : entry.getValue().getServiceUrls()) {
+                    try {
+                        hostAndPorts.add(HttpClientPool.hostAndPort(new URL(serviceUrl)));
+                    } catch (MalformedURLException e) {
+                        // ignore as it will never be proxied to
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Set chunkedEncoding header based on HTTP specs
      */
@@ -33,12 +33,18 @@ public class MappedServices {
     private final ServiceDetails serviceDetails;
     private final LoadBalancer loadBalancer;
     private final boolean reverseHeaders;
+    private final HttpClientOptions clientOptions;
     private List<String> serviceUrls = new CopyOnWriteArrayList<String>();
 
     public MappedServices(String service, ServiceDetails serviceDetails, LoadBalancer loadBalancer, boolean reverseHeaders) {
+        this(service, serviceDetails, loadBalancer, reverseHeaders, new HttpClientOptions());
+    }
+
+    public MappedServices(String service, ServiceDetails serviceDetails, LoadBalancer loadBalancer, boolean reverseHeaders, HttpClientOptions clientOptions) {
         this.serviceDetails = serviceDetails;
         this.loadBalancer = loadBalancer;
         this.reverseHeaders = reverseHeaders;
+        this.clientOptions = clientOptions;
         serviceUrls.add(service);
     }
 
@@ -90,6 +96,13 @@ public class MappedServices {
         return reverseHeaders;
     }
 
+    /**
+     * Returns the options of the HTTP clients used to proxy requests to the services
+     */
+    public HttpClientOptions getClientOptions() {
+        return clientOptions;
+    }
+
     public ServiceDetails getServiceDetails() {
         return serviceDetails;
     }
@@ -0,0 +1,69 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link RouteMetrics} of a gateway keyed by route name
+ */
+public class GatewayMetrics {
+    private final ConcurrentMap<String, RouteMetrics> routes = new ConcurrentHashMap<String, RouteMetrics>();
+
+    /**
+     * Returns the metrics of the given route, creating them if required
+     */
+    public RouteMetrics getRoute(String name) {
+        if (name == null) {
+            name = "";
+        }
+        RouteMetrics answer = routes.get(name);
+        if (answer == null) {
+            RouteMetrics value = new RouteMetrics(name);
+            answer = routes.putIfAbsent(name, value);
+            if (answer == null) {
+                answer = value;
+            }
+        }
+        return answer;
+    }
+
+    public Collection<RouteMetrics> getRoutes() {
+        return Collections.unmodifiableCollection(routes.values());
+    }
+
+    /**
+     * Returns the statistics of each route sorted by route name
+     */
+    public Map<String, Map<String, Object>> getStatistics() {
+        Map<String, Map<String, Object>> answer = new TreeMap<String, Map<String, Object>>();
+        for (RouteMetrics route : routes.values()) {
+            answer.put(route.getName(), route.getStatistics());
+        }
+        return answer;
+    }
+
+    public void reset() {
+        for (RouteMetrics route : routes.values()) {
+            route.reset();
+        }
+    }
+}
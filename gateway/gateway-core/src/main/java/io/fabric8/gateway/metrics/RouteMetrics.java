@@ -0,0 +1,208 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.metrics;
+
+import io.fabric8.common.util.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of a single route of a gateway, such as a mapped path of the HTTP gateway
+ * or a virtual host of the detecting gateway.
+ * <p/>
+ * Latencies are recorded in microseconds.
+ */
+public class RouteMetrics {
+    private final String name;
+    private final LatencyHistogram connectTime = new LatencyHistogram();
+    private final LatencyHistogram firstByteTime = new LatencyHistogram();
+    private final LatencyHistogram totalTime = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    public RouteMetrics(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteMetrics{" +
+                "name='" + name + '\'' +
+                ", requests=" + requests +
+                ", activeConnections=" + activeConnections +
+                '}';
+    }
+
+    /**
+     * Starts timing a new request or connection on this route
+     */
+    public Exchange start() {
+        requests.incrementAndGet();
+        activeConnections.incrementAndGet();
+        return new Exchange();
+    }
+
+    /**
+     * Returns the current values of the metrics keyed by attribute name
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> answer = new LinkedHashMap<String, Object>();
+        answer.put("requests", requests.get());
+        answer.put("failures", failures.get());
+        answer.put("activeConnections", activeConnections.get());
+        answer.put("bytesIn", bytesIn.get());
+        answer.put("bytesOut", bytesOut.get());
+        addHistogram(answer, "connectTime", connectTime);
+        addHistogram(answer, "firstByteTime", firstByteTime);
+        addHistogram(answer, "totalTime", totalTime);
+        return answer;
+    }
+
+    private static void addHistogram(Map<String, Object> answer, String prefix, LatencyHistogram histogram) {
+        answer.put(prefix + "Count", histogram.getCount());
+        answer.put(prefix + "MeanMicros", histogram.getMean());
+        answer.put(prefix + "P50Micros", histogram.getValueAtPercentile(50));
+        answer.put(prefix + "P95Micros", histogram.getValueAtPercentile(95));
+        answer.put(prefix + "P99Micros", histogram.getValueAtPercentile(99));
+        answer.put(prefix + "MaxMicros", histogram.getMax());
+    }
+
+    /**
+     * Resets the counters and histograms; the active connections gauge is left as is
+     */
+    public void reset() {
+        connectTime.reset();
+        firstByteTime.reset();
+        totalTime.reset();
+        requests.set(0);
+        failures.set(0);
+        bytesIn.set(0);
+        bytesOut.set(0);
+    }
+
+    // Properties
+    //-------------------------------------------------------------------------
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getConnectTime() {
+        return connectTime;
+    }
+
+    public LatencyHistogram getFirstByteTime() {
+        return firstByteTime;
+    }
+
+    public LatencyHistogram getTotalTime() {
+        return totalTime;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Times a single request or connection; each phase is recorded at most once
+     */
+    public final class Exchange {
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean connected = new AtomicBoolean();
+        private final AtomicBoolean firstByte = new AtomicBoolean();
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        /**
+         * Records the time taken to connect to the upstream service
+         */
+        public void connected() {
+            if (connected.compareAndSet(false, true)) {
+                connectTime.record(elapsedMicros());
+            }
+        }
+
+        /**
+         * Records the time until the first byte was received from the upstream service
+         */
+        public void firstByte() {
+            if (firstByte.compareAndSet(false, true)) {
+                firstByteTime.record(elapsedMicros());
+            }
+        }
+
+        /**
+         * Adds the number of bytes sent from the client to the upstream service
+         */
+        public void bytesIn(long count) {
+            bytesIn.addAndGet(count);
+        }
+
+        /**
+         * Adds the number of bytes sent from the upstream service back to the client
+         */
+        public void bytesOut(long count) {
+            bytesOut.addAndGet(count);
+        }
+
+        /**
+         * Records the total time of a successful request or connection
+         */
+        public void complete() {
+            if (completed.compareAndSet(false, true)) {
+                totalTime.record(elapsedMicros());
+                activeConnections.decrementAndGet();
+            }
+        }
+
+        /**
+         * Records that the request or connection failed
+         */
+        public void fail() {
+            if (completed.compareAndSet(false, true)) {
+                failures.incrementAndGet();
+                activeConnections.decrementAndGet();
+            }
+        }
+
+        private long elapsedMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        }
+    }
+}
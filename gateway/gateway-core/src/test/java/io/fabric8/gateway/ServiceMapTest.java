@@ -0,0 +1,155 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway;
+
+import io.fabric8.gateway.handlers.detecting.DetectingGateway;
+import io.fabric8.gateway.handlers.loadbalancer.ConnectionParameters;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ServiceMapTest {
+
+    private final ServiceMap serviceMap = new ServiceMap();
+
+    @Test
+    public void testSnapshotsArePublishedOnChanges() {
+        assertTrue(serviceMap.getServices("broker").isEmpty());
+        // looking up an unknown path does not create it
+        assertTrue(serviceMap.getPaths().isEmpty());
+
+        ServiceDTO first = createService("broker", "c1", "tcp://c1:61616");
+        serviceMap.serviceUpdated("broker", first);
+        List<ServiceDetails> before = serviceMap.getServices("broker");
+        assertEquals(Collections.<ServiceDetails>singletonList(first), before);
+        assertSame(before, serviceMap.getServices("broker"));
+
+        ServiceDTO second = createService("broker", "c2", "tcp://c2:61616");
+        serviceMap.serviceUpdated("broker", second);
+        List<ServiceDetails> after = serviceMap.getServices("broker");
+        assertEquals(new HashSet<ServiceDetails>(Arrays.<ServiceDetails>asList(first, second)), new HashSet<ServiceDetails>(after));
+        // a snapshot already handed out never changes
+        assertEquals(Collections.<ServiceDetails>singletonList(first), before);
+        try {
+            after.add(first);
+            fail("Snapshots must be immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        serviceMap.serviceRemoved("broker", first);
+        assertEquals(Collections.<ServiceDetails>singletonList(second), serviceMap.getServices("broker"));
+        assertEquals(Collections.<ServiceDetails>singletonList(second), serviceMap.getServices("broker", new String[]{"tcp"}));
+
+        // a service without URLs is removed
+        serviceMap.serviceUpdated("broker", createService("broker", "c2"));
+        assertTrue(serviceMap.getServices("broker").isEmpty());
+        assertTrue(serviceMap.getServices("broker", new String[]{"tcp"}).isEmpty());
+    }
+
+    @Test
+    public void testSchemesAreMerged() {
+        ServiceDTO tcp = createService("broker", "c1", "tcp://c1:61616");
+        ServiceDTO both = createService("broker", "c2", "tcp://c2:61616", "amqp://c2:5672");
+        ServiceDTO amqp = createService("broker", "c3", "amqp://c3:5672");
+        serviceMap.serviceUpdated("broker", tcp);
+        serviceMap.serviceUpdated("broker", both);
+        serviceMap.serviceUpdated("broker", amqp);
+
+        assertEquals(new HashSet<ServiceDetails>(Arrays.<ServiceDetails>asList(tcp, both)),
+                new HashSet<ServiceDetails>(serviceMap.getServices("broker", new String[]{"tcp"})));
+        assertEquals(new HashSet<ServiceDetails>(Arrays.<ServiceDetails>asList(both, amqp)),
+                new HashSet<ServiceDetails>(serviceMap.getServices("broker", new String[]{"amqp"})));
+
+        // services exposing several of the schemes are only listed once
+        List<ServiceDetails> merged = serviceMap.getServices("broker", new String[]{"tcp", "amqp"});
+        assertEquals(3, merged.size());
+        assertEquals(new HashSet<ServiceDetails>(Arrays.<ServiceDetails>asList(tcp, both, amqp)), new HashSet<ServiceDetails>(merged));
+        assertTrue(serviceMap.getServices("broker", new String[]{"mqtt", "stomp"}).isEmpty());
+    }
+
+    @Test
+    public void testMergedSchemesAreCachedByContent() {
+        serviceMap.serviceUpdated("broker", createService("broker", "c1", "tcp://c1:61616", "amqp://c1:5672"));
+
+        String[] schemes = {"tcp", "amqp"};
+        List<ServiceDetails> merged = serviceMap.getServices("broker", schemes);
+        // a new array with the same schemes finds the cached list
+        assertSame(merged, serviceMap.getServices("broker", new String[]{"tcp", "amqp"}));
+        // changing the array of the caller does not corrupt the cache
+        schemes[1] = "mqtt";
+        assertSame(merged, serviceMap.getServices("broker", new String[]{"tcp", "amqp"}));
+
+        // many distinct combinations are still answered once the cache is full
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, serviceMap.getServices("broker", new String[]{"tcp", "scheme" + i}).size());
+        }
+        assertSame(merged, serviceMap.getServices("broker", new String[]{"tcp", "amqp"}));
+    }
+
+    @Test
+    public void testFallbackToTheDefaultVirtualHost() {
+        ServiceDTO defaultBroker = createService("broker", "c1", "tcp://c1:61616");
+        ServiceDTO mqttOnly = createService("mqtt-host", "c2", "mqtt://c2:1883");
+        serviceMap.serviceUpdated("broker", defaultBroker);
+        serviceMap.serviceUpdated("mqtt-host", mqttOnly);
+
+        DetectingGateway gateway = new DetectingGateway();
+        gateway.setServiceMap(serviceMap);
+        gateway.setDefaultVirtualHost("broker");
+
+        ConnectionParameters params = createParameters("mqtt-host", "mqtt");
+        assertEquals(Collections.<ServiceDetails>singletonList(mqttOnly), gateway.findServices(params));
+        assertEquals("mqtt-host", params.protocolVirtualHost);
+
+        // the virtual host only has services of other schemes, so the default virtual host is used
+        params = createParameters("mqtt-host", "tcp");
+        assertEquals(Collections.<ServiceDetails>singletonList(defaultBroker), gateway.findServices(params));
+        assertEquals("broker", params.protocolVirtualHost);
+
+        params = createParameters(null, "tcp");
+        assertEquals(Collections.<ServiceDetails>singletonList(defaultBroker), gateway.findServices(params));
+        assertEquals("broker", params.protocolVirtualHost);
+
+        gateway.setDefaultVirtualHost(null);
+        assertNull(gateway.findServices(createParameters(null, "tcp")));
+        assertTrue(gateway.findServices(createParameters("mqtt-host", "tcp")).isEmpty());
+    }
+
+    private static ConnectionParameters createParameters(String virtualHost, String... schemes) {
+        ConnectionParameters params = new ConnectionParameters();
+        params.protocolVirtualHost = virtualHost;
+        params.protocolSchemes = schemes;
+        return params;
+    }
+
+    private static ServiceDTO createService(String id, String container, String... urls) {
+        ServiceDTO service = new ServiceDTO();
+        service.setId(id);
+        service.setContainer(container);
+        service.setServices(Arrays.asList(urls));
+        return service;
+    }
+}
@@ -205,6 +205,8 @@ public class DetectingGatewayTest {
 
         assertEquals(1, gateway.getSuccessfulConnectionAttempts());
         assertEquals(1, gateway.getConnectedClients().length);
+        assertEquals(1, gateway.getClientPoolMisses());
+        assertEquals(1, gateway.getClientPoolSize());
         assertConnectedToBroker(0);
         connection.kill();
     }
@@ -271,6 +273,7 @@ public class DetectingGatewayTest {
 
         assertEquals(1, gateway.getSuccessfulConnectionAttempts());
         assertEquals(1, gateway.getConnectedClients().length);
+        assertEquals(1, gateway.getSslFullHandshakes() + gateway.getSslResumedHandshakes());
 
         assertConnectedToBroker(0);
         Thread.sleep(6000);
@@ -0,0 +1,131 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HttpClientPoolTest {
+
+    private final HttpClientOptions options = new HttpClientOptions();
+    private final List<HttpClient> created = new ArrayList<HttpClient>();
+    private final Set<HttpClient> closed = new HashSet<HttpClient>();
+    private HttpClientPool pool;
+
+    @Before
+    public void setUp() {
+        // vert.x is only asked for its current context and new clients
+        Vertx vertx = (Vertx) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Vertx.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("createHttpClient")) {
+                    HttpClient client = createClient();
+                    created.add(client);
+                    return client;
+                }
+                return null;
+            }
+        });
+        pool = new HttpClientPool(vertx);
+    }
+
+    @Test
+    public void testClientsReusedPerHostAndPort() throws Exception {
+        HttpClient foo = pool.getClient(new URL("http://foo:8080/a"), options);
+        assertSame(foo, pool.getClient(new URL("http://foo:8080/b?c=d"), options));
+        HttpClient otherPort = pool.getClient(new URL("http://foo:8081/a"), options);
+        HttpClient bar = pool.getClient(new URL("http://bar:8080/a"), options);
+        assertNotSame(foo, otherPort);
+        assertNotSame(foo, bar);
+        assertEquals(3, pool.size());
+        assertEquals(3, created.size());
+
+        // different options need a differently configured client
+        assertNotSame(foo, pool.getClient(new URL("http://foo:8080/a"), new HttpClientOptions(false, 1, false)));
+        assertEquals(4, pool.size());
+    }
+
+    @Test
+    public void testRetainAllClosesVanishedHosts() throws Exception {
+        HttpClient foo = pool.getClient(new URL("http://foo:8080/a"), options);
+        HttpClient bar = pool.getClient(new URL("http://bar:8080/a"), options);
+        HttpClient barOtherPort = pool.getClient(new URL("http://bar:8081/a"), options);
+
+        pool.retainAll(new HashSet<String>(Arrays.asList("foo:8080", "bar:8081")));
+        assertEquals(2, pool.size());
+        assertTrue(closed.contains(bar));
+        assertFalse(closed.contains(foo));
+        assertFalse(closed.contains(barOtherPort));
+        assertSame(foo, pool.getClient(new URL("http://foo:8080/b"), options));
+        assertSame(barOtherPort, pool.getClient(new URL("http://bar:8081/b"), options));
+
+        // a host mapped again gets a new client
+        HttpClient newBar = pool.getClient(new URL("http://bar:8080/b"), options);
+        assertNotSame(bar, newBar);
+        assertFalse(closed.contains(newBar));
+    }
+
+    @Test
+    public void testCloseClosesAllClients() throws Exception {
+        pool.getClient(new URL("http://foo:8080/a"), options);
+        pool.getClient(new URL("http://bar:8080/a"), options);
+        pool.getClient(new URL("http://bar:8080/a"), new HttpClientOptions(false, 1, false));
+
+        pool.close();
+        assertEquals(0, pool.size());
+        assertEquals(3, created.size());
+        assertEquals(new HashSet<HttpClient>(created), closed);
+    }
+
+    private HttpClient createClient() {
+        return (HttpClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpClient.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("equals")) {
+                    return proxy == args[0];
+                } else if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (name.equals("toString")) {
+                    return "HttpClient@" + System.identityHashCode(proxy);
+                } else if (name.equals("close")) {
+                    closed.add((HttpClient) proxy);
+                    return null;
+                }
+                // the setters are fluent
+                return method.getReturnType().isInstance(proxy) ? proxy : null;
+            }
+        });
+    }
+}
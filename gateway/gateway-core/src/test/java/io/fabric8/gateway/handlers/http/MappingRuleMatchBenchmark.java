@@ -0,0 +1,99 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.handlers.http;
+
+import io.fabric8.gateway.support.PathTrie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares finding the mapped path of a request by looping over all the mapped paths
+ * (as the gateway used to) against looking it up in a {@link PathTrie}.
+ * <p/>
+ * Run from the IDE or via the main method with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappingRuleMatchBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int rules;
+
+    Map<String, String> mappedPaths;
+    PathTrie<String> trie;
+    String[] requests;
+    int counter;
+
+    @Setup
+    public void setup() {
+        mappedPaths = new LinkedHashMap<String, String>();
+        trie = new PathTrie<String>();
+        for (int i = 0; i < rules; i++) {
+            String path = "/api/service" + i + "/1.0/";
+            mappedPaths.put(path, "http://localhost:" + (8000 + i) + "/service" + i);
+            trie.put(path, path);
+        }
+        requests = new String[16];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = "/api/service" + ((i * 7919) % rules) + "/1.0/customers/" + i + "?expand=true";
+        }
+    }
+
+    @Benchmark
+    public String loop() {
+        String uri = requests[counter++ & 15];
+        for (Map.Entry<String, String> entry : mappedPaths.entrySet()) {
+            if (uri.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public String trie() {
+        String uri = requests[counter++ & 15];
+        for (String path : trie.findMatches(uri)) {
+            if (uri.startsWith(path)) {
+                return mappedPaths.get(path);
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(MappingRuleMatchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -20,6 +20,7 @@ import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.loadbalancer.RandomLoadBalancer;
 import io.fabric8.gateway.loadbalancer.RoundRobinLoadBalancer;
 import io.fabric8.gateway.loadbalancer.StickyLoadBalancer;
+import io.fabric8.gateway.loadbalancer.StripedStickyLoadBalancer;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -28,6 +29,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -85,8 +87,93 @@ public class LoadBalancerTest {
     @Test
     public void testStickyLoadBalancer() throws Exception {
         assertLoadBalancerWorksOnEmptyOrSingletonServices(new StickyLoadBalancer());
+        assertStickyLoadBalancer(new StickyLoadBalancer());
+    }
+
+    @Test
+    public void testStripedStickyLoadBalancer() throws Exception {
+        assertLoadBalancerWorksOnEmptyOrSingletonServices(new StripedStickyLoadBalancer());
+        assertStickyLoadBalancer(new StripedStickyLoadBalancer());
+    }
+
+    @Test
+    public void testStripedStickyLoadBalancerKeepsTheFirstBinding() throws Exception {
+        final String other = services.get(1);
+        final LoadBalancer[] holder = new LoadBalancer[1];
+        LoadBalancer firstRequestLoadBalancer = new LoadBalancer() {
+            boolean nested;
+
+            @Override
+            public <T> T choose(List<T> list, ClientRequestFacade requestFacade) {
+                if (!nested) {
+                    // another request of the same client is bound while this one is choosing
+                    nested = true;
+                    assertEquals(other, holder[0].choose(list, requestFacade));
+                    return list.get(0);
+                }
+                return list.get(1);
+            }
+        };
+        StripedStickyLoadBalancer loadBalancer = new StripedStickyLoadBalancer(100, 4, firstRequestLoadBalancer);
+        holder[0] = loadBalancer;
+        assertEquals(other, loadBalancer.choose(services, clientRequestFacade));
+        assertEquals(other, loadBalancer.choose(services, clientRequestFacade));
+        assertEquals(1, loadBalancer.size());
+    }
+
+    @Test
+    public void testStripedStickyLoadBalancerConcurrentFirstRequests() throws Exception {
+        final StripedStickyLoadBalancer loadBalancer = new StripedStickyLoadBalancer(100, 4, new RandomLoadBalancer());
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> list = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        results.add(loadBalancer.choose(services, clientRequestFacade));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            thread.start();
+            list.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : list) {
+            thread.join();
+        }
+        assertEquals(threads, results.size());
+        assertEquals("All the requests of a client should get the same service: " + results, 1, asSet(results).size());
+    }
+
+    @Test
+    public void testStripedStickyLoadBalancerCacheSize() throws Exception {
+        StripedStickyLoadBalancer loadBalancer = new StripedStickyLoadBalancer(5, 16, new RoundRobinLoadBalancer());
+        assertEquals(4, loadBalancer.getStripeCount());
+        for (int i = 0; i < 100; i++) {
+            clientRequestKey = "client:" + i;
+            loadBalancer.choose(services, clientRequestFacade);
+            assertTrue("Should not hold more than 5 clients but was " + loadBalancer.size(), loadBalancer.size() <= 5);
+        }
+
+        loadBalancer = new StripedStickyLoadBalancer(1, 16, new RoundRobinLoadBalancer());
+        assertEquals(1, loadBalancer.getStripeCount());
+        clientRequestKey = "client:a";
+        String first = loadBalancer.choose(services, clientRequestFacade);
+        assertEquals(first, loadBalancer.choose(services, clientRequestFacade));
+        clientRequestKey = "client:b";
+        loadBalancer.choose(services, clientRequestFacade);
+        assertEquals(1, loadBalancer.size());
+
+        assertEquals(16, new StripedStickyLoadBalancer(1000, 16, new RoundRobinLoadBalancer()).getStripeCount());
+    }
 
-        LoadBalancer loadBalancer = new StickyLoadBalancer();
+    protected void assertStickyLoadBalancer(LoadBalancer loadBalancer) {
         Set<String> allRequests = new HashSet<String>();
         int numberOfClients = 10;
         for (int i = 0; i < numberOfClients; i++) {
@@ -0,0 +1,99 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the sticky load balancers when many threads (such as the
+ * gateway event loops) choose services for different clients at the same time.
+ * <p/>
+ * Run from the IDE or via the main method with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Threads(8)
+@Fork(1)
+public class StickyLoadBalancerBenchmark {
+
+    @Param({"sticky", "stripedsticky"})
+    String type;
+
+    LoadBalancer loadBalancer;
+    List<String> services;
+
+    @State(Scope.Thread)
+    public static class Client {
+        final ClientRequestFacade[] facades = new ClientRequestFacade[1024];
+        int counter;
+
+        @Setup
+        public void setup() {
+            String thread = Thread.currentThread().getName();
+            for (int i = 0; i < facades.length; i++) {
+                final String key = thread + ":client" + i;
+                facades[i] = new ClientRequestFacade() {
+                    @Override
+                    public String getClientRequestKey() {
+                        return key;
+                    }
+                };
+            }
+        }
+
+        ClientRequestFacade next() {
+            return facades[counter++ & (facades.length - 1)];
+        }
+    }
+
+    @Setup
+    public void setup() {
+        loadBalancer = LoadBalancers.createLoadBalancer(type, LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE);
+        services = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            services.add("tcp://broker" + i + ":61616");
+        }
+    }
+
+    @Benchmark
+    public String choose(Client client) {
+        return loadBalancer.choose(services, client.next());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(StickyLoadBalancerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.metrics;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class RouteMetricsTest {
+
+    @Test
+    public void testRouteMetrics() throws Exception {
+        GatewayMetrics metrics = new GatewayMetrics();
+        RouteMetrics.Exchange exchange = metrics.getRoute("/api/").start();
+        assertEquals(1, metrics.getRoute("/api/").getActiveConnections());
+        exchange.bytesIn(10);
+        exchange.firstByte();
+        exchange.bytesOut(20);
+        exchange.complete();
+        exchange.fail();
+
+        RouteMetrics.Exchange failed = metrics.getRoute("/other/").start();
+        failed.fail();
+
+        Map<String, Object> statistics = metrics.getStatistics().get("/api/");
+        assertEquals(1L, statistics.get("requests"));
+        assertEquals(0L, statistics.get("failures"));
+        assertEquals(0, statistics.get("activeConnections"));
+        assertEquals(10L, statistics.get("bytesIn"));
+        assertEquals(20L, statistics.get("bytesOut"));
+        assertEquals(1L, statistics.get("firstByteTimeCount"));
+        assertEquals(1L, statistics.get("totalTimeCount"));
+        assertEquals(0L, statistics.get("connectTimeCount"));
+        assertEquals(1L, metrics.getStatistics().get("/other/").get("failures"));
+    }
+}
@@ -18,6 +18,7 @@ package io.fabric8.gateway.fabric.support.http;
 import io.fabric8.common.util.Strings;
 import io.fabric8.zookeeper.internal.SimplePathTemplate;
 import io.fabric8.gateway.ServiceDetails;
+import io.fabric8.gateway.handlers.http.HttpClientOptions;
 import io.fabric8.gateway.handlers.http.HttpMappingRule;
 import io.fabric8.gateway.handlers.http.MappedServices;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
@@ -48,17 +49,23 @@ public class HttpMappingRuleBase implements HttpMappingRule {
     private final String enabledVersion;
     private final LoadBalancer loadBalancer;
     private final boolean reverseHeaders;
+    private final HttpClientOptions clientOptions;
 
     private Map<String, MappedServices> mappingRules = new ConcurrentHashMap<String, MappedServices>();
 
     private Set<Runnable> changeListeners = new CopyOnWriteArraySet<Runnable>();
 
     public HttpMappingRuleBase(SimplePathTemplate uriTemplate, String gatewayVersion, String enabledVersion, LoadBalancer loadBalancer, boolean reverseHeaders) {
+        this(uriTemplate, gatewayVersion, enabledVersion, loadBalancer, reverseHeaders, new HttpClientOptions());
+    }
+
+    public HttpMappingRuleBase(SimplePathTemplate uriTemplate, String gatewayVersion, String enabledVersion, LoadBalancer loadBalancer, boolean reverseHeaders, HttpClientOptions clientOptions) {
         this.uriTemplate = uriTemplate;
         this.gatewayVersion = gatewayVersion;
         this.enabledVersion = enabledVersion;
         this.loadBalancer = loadBalancer;
         this.reverseHeaders = reverseHeaders;
+        this.clientOptions = clientOptions;
     }
 
     /**
@@ -84,6 +91,7 @@ public class HttpMappingRuleBase implements HttpMappingRule {
                 ", loadBalancer=" + loadBalancer +
                 ", enabledVersion='" + enabledVersion + '\'' +
                 ", reverseHeaders=" + reverseHeaders +
+                ", clientOptions=" + clientOptions +
                 ", gatewayVersion='" + gatewayVersion + '\'' +
                 '}';
     }
@@ -143,7 +151,7 @@ public class HttpMappingRuleBase implements HttpMappingRule {
                         }
                     }
                 } else {
-                    MappedServices mappedServices = new MappedServices(service, serviceDetails, loadBalancer, reverseHeaders);
+                    MappedServices mappedServices = new MappedServices(service, serviceDetails, loadBalancer, reverseHeaders, clientOptions);
                     MappedServices oldRule = mappingRules.put(fullPath, mappedServices);
                     if (oldRule != null) {
                         mappedServices.getServiceUrls().addAll(oldRule.getServiceUrls());
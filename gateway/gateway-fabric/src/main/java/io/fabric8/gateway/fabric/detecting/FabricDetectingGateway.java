@@ -24,18 +24,22 @@ import io.fabric8.common.util.ShutdownTracker.ShutdownException;
 import io.fabric8.common.util.Strings;
 import io.fabric8.gateway.ServiceMap;
 import io.fabric8.gateway.fabric.http.FabricHTTPGateway;
+import io.fabric8.gateway.fabric.jmx.MeteredGateway;
 import io.fabric8.gateway.fabric.support.vertx.VertxService;
 import io.fabric8.gateway.handlers.detecting.DetectingGateway;
+import io.fabric8.gateway.handlers.detecting.NetClientPool;
 import io.fabric8.gateway.handlers.detecting.Protocol;
 import io.fabric8.gateway.handlers.detecting.protocol.amqp.AmqpProtocol;
 import io.fabric8.gateway.handlers.detecting.protocol.http.HttpProtocol;
 import io.fabric8.gateway.handlers.detecting.protocol.mqtt.MqttProtocol;
 import io.fabric8.gateway.handlers.detecting.protocol.openwire.OpenwireProtocol;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslConfig;
+import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslEngineFactory;
 import io.fabric8.gateway.handlers.detecting.protocol.ssl.SslProtocol;
 import io.fabric8.gateway.handlers.detecting.protocol.stomp.StompProtocol;
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.loadbalancer.LoadBalancers;
+import io.fabric8.gateway.metrics.GatewayMetrics;
 import io.fabric8.internal.Objects;
 
 import org.apache.curator.framework.CuratorFramework;
@@ -46,7 +50,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
-import javax.net.ssl.SSLContext;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Map;
@@ -57,8 +60,8 @@ import java.util.Map;
 @Component(name = FabricDetectingGateway.COMPONENT_NAME, immediate = true, metatype = true, policy = ConfigurationPolicy.REQUIRE,
         label = "Fabric8 Detecting Gateway",
         description = "Provides a discovery and load balancing gateway between clients using various messaging protocols and the available message brokers in the fabric")
-@Service(FabricDetectingGatewayService.class)
-public class FabricDetectingGateway extends AbstractComponent implements FabricDetectingGatewayService {
+@Service({ FabricDetectingGatewayService.class, MeteredGateway.class })
+public class FabricDetectingGateway extends AbstractComponent implements FabricDetectingGatewayService, MeteredGateway {
     private static final transient Logger LOG = LoggerFactory.getLogger(FabricDetectingGateway.class);
     public static final String COMPONENT_NAME = "io.fabric8.gateway.detecting";
 
@@ -123,7 +126,8 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             options = {
                     @PropertyOption(name = LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
                     @PropertyOption(name = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
-                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky"),
+                    @PropertyOption(name = LoadBalancers.STRIPED_STICKY_LOAD_BALANCER, value = "Sticky (striped cache)")
             },
             label = "Load Balancer", description = "The kind of load balancing strategy to use when multiple endpoints can service the client conneciton")
     private String loadBalancerType;
@@ -132,6 +136,18 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             label = "Sticky Load Balancer Cache Size", description = "The number of unique client keys to cache for the sticky load balancer (using an LRU caching algorithm)")
     private int stickyLoadBalancerCacheSize = LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE;
 
+    @Property(name = "maxPooledClients", intValue = NetClientPool.DEFAULT_MAX_CLIENTS,
+            label = "Max Pooled Clients", description = "The maximum number of upstream clients kept in the pool for reuse across client connections")
+    private int maxPooledClients = NetClientPool.DEFAULT_MAX_CLIENTS;
+
+    @Property(name = "pooledClientIdleTimeout", longValue = NetClientPool.DEFAULT_IDLE_TIMEOUT,
+            label = "Pooled Client Idle Timeout", description = "The number of milliseconds a pooled upstream client with no connections is kept before it is evicted")
+    private long pooledClientIdleTimeout = NetClientPool.DEFAULT_IDLE_TIMEOUT;
+
+    @Property(name = "metricsReportPeriod", intValue = MeteredGateway.DEFAULT_METRICS_REPORT_PERIOD,
+            label = "Metrics Report Period", description = "The number of seconds between storing the per virtual host latency metrics in insight (if available). Use 0 to disable")
+    private int metricsReportPeriod = MeteredGateway.DEFAULT_METRICS_REPORT_PERIOD;
+
     @Property(name = "sslProtocol", value="TLS",
             label = "SSL Protocol", description = "Example: SSL, TLS, TLSv1, TLSv2 etc.")
     private String sslProtocol;
@@ -174,9 +190,18 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             label = "SSL Cipher Suites Disabled", description = "Comma separated list of cipher suites to disable on the SSL sessions.")
     String disabledCypherSuites;
 
+    @Property(name = "sslSessionCacheSize", intValue = SslConfig.DEFAULT_SESSION_CACHE_SIZE,
+            label = "SSL Session Cache Size", description = "The maximum number of SSL sessions cached so reconnecting clients can resume them without a full handshake. Use 0 for no limit")
+    private int sslSessionCacheSize = SslConfig.DEFAULT_SESSION_CACHE_SIZE;
+
+    @Property(name = "sslSessionTimeout", intValue = SslConfig.DEFAULT_SESSION_TIMEOUT,
+            label = "SSL Session Timeout", description = "The number of seconds a cached SSL session can be resumed for. Use 0 for no limit")
+    private int sslSessionTimeout = SslConfig.DEFAULT_SESSION_TIMEOUT;
+
     private DetectingGateway detectingGateway;
     private GatewayServiceTreeCache cache;
     private ServiceMap serviceMap = new ServiceMap();
+    private final GatewayMetrics metrics = new GatewayMetrics();
     private volatile ShutdownTracker shutdownTacker;
 
     @Activate
@@ -248,6 +273,9 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
         gateway.setShutdownTacker(shutdownTacker);
         gateway.setServiceLoadBalancer(serviceLoadBalancer);
         gateway.setDefaultVirtualHost(defaultVirtualHost);
+        gateway.setMaxPooledClients(maxPooledClients);
+        gateway.setPooledClientIdleTimeout(pooledClientIdleTimeout);
+        gateway.setMetrics(metrics);
 
         ArrayList<Protocol> protocols = new ArrayList<Protocol>();
         if( isStompEnabled() ) {
@@ -300,11 +328,12 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
             if( Strings.isNotBlank(disabledCypherSuites) ) {
                 sslConfig.setDisabledCypherSuites(disabledCypherSuites);
             }
+            sslConfig.setSessionCacheSize(sslSessionCacheSize);
+            sslConfig.setSessionTimeout(sslSessionTimeout);
             gateway.setSslConfig(sslConfig);
-            //validating configuration
+            //validating configuration and creating the SSL context shared by all the connections
             try {
-                SSLContext sslContext = SSLContext.getInstance(sslConfig.getProtocol());
-                sslContext.init(sslConfig.getKeyManagers(), sslConfig.getTrustManagers(), null);
+                gateway.setSslEngineFactory(SslEngineFactory.create(sslConfig));
             } catch (Exception e) {
                 throw new ComponentException(e);
             }
@@ -428,6 +457,31 @@ public class FabricDetectingGateway extends AbstractComponent implements FabricD
         }
     }
 
+    @Override
+    public GatewayMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String getMetricsType() {
+        return "gateway-detecting";
+    }
+
+    @Override
+    public String getMetricsObjectName() {
+        return "io.fabric8.gateway:type=DetectingGateway";
+    }
+
+    @Override
+    public int getMetricsReportPeriod() {
+        return metricsReportPeriod;
+    }
+
+    @Override
+    public String getContainerName() {
+        return fabricService.getCurrentContainerName();
+    }
+
     public boolean isSslEnabled() {
         return sslEnabled;
     }
@@ -24,15 +24,19 @@ import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.common.util.ShutdownTracker;
 
 import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.MBeanServer;
 
 import io.fabric8.gateway.CallDetailRecord;
 import io.fabric8.gateway.fabric.detecting.FabricDetectingGatewayService;
+import io.fabric8.gateway.fabric.jmx.MeteredGateway;
+import io.fabric8.gateway.metrics.GatewayMetrics;
 
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.felix.scr.annotations.Activate;
@@ -65,8 +69,8 @@ import org.vertx.java.core.Vertx;
 @Component(name = "io.fabric8.gateway.http", immediate = true, metatype = true, policy = ConfigurationPolicy.REQUIRE,
         label = "Fabric8 HTTP Gateway",
         description = "Provides a discovery and load balancing HTTP gateway (or reverse proxy) between HTTP clients and HTTP servers such as web applications, REST APIs and web applications")
-@Service(FabricHTTPGateway.class)
-public final class FabricHTTPGateway extends AbstractComponent implements HttpGateway {
+@Service({ FabricHTTPGateway.class, MeteredGateway.class })
+public final class FabricHTTPGateway extends AbstractComponent implements HttpGateway, MeteredGateway {
     private static final transient Logger LOG = LoggerFactory.getLogger(FabricHTTPGateway.class);
 
     @Property(name = "host", label = "Host name", description = "The host name used when listening for HTTP traffic")
@@ -87,6 +91,9 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     @Property(name = "addMissingTrailingSlashes", label = "Adds slashes at the end of proxied urls", description = "Adds slashes at the end of proxied urls in case they don't already end with a slash character")
     private boolean addMissingTrailingSlashes = true;
 
+    @Property(name = "metricsReportPeriod", intValue = MeteredGateway.DEFAULT_METRICS_REPORT_PERIOD, label = "Metrics report period", description = "The number of seconds between storing the per path latency metrics in insight (if available). Use 0 to disable")
+    private int metricsReportPeriod = MeteredGateway.DEFAULT_METRICS_REPORT_PERIOD;
+
 
     @Reference
     private Configurer configurer;
@@ -104,10 +111,24 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     
     private HttpGatewayServer server;
     private HttpGatewayHandler handler;
+    private final GatewayMetrics metrics = new GatewayMetrics();
     private DetectingGatewayWebSocketHandler websocketHandler = new DetectingGatewayWebSocketHandler();
 
     private Set<HttpMappingRule> mappingRuleConfigurations = new CopyOnWriteArraySet<HttpMappingRule>();
 
+    /**
+     * The mapped services are rebuilt copy-on-write whenever a mapping rule changes
+     * so that request routing can reuse the same snapshot (and the index built from it)
+     */
+    private final AtomicLong mappingGeneration = new AtomicLong();
+    private volatile MappedServicesSnapshot mappedServices;
+    private final Runnable mappingChangeListener = new Runnable() {
+        @Override
+        public void run() {
+            mappingGeneration.incrementAndGet();
+        }
+    };
+
     ShutdownTracker shutdownTracker = new ShutdownTracker();
     private FabricHTTPGatewayInfo fabricHTTPGatewayInfoMBean;
     
@@ -137,6 +158,7 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         Vertx vertx = getVertx();
         handler = new HttpGatewayHandler(vertx, this);
         handler.setAddMissingTrailingSlashes(addMissingTrailingSlashes);
+        handler.setMetrics(metrics);
         websocketHandler.setPathPrefix(websocketGatewayPrefix);
         server = new HttpGatewayServer(vertx, handler, enableWebSocketGateway ? websocketHandler : null, port);
         server.init();
@@ -146,6 +168,9 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         if (server != null) {
             server.destroy();
         }
+        if (handler != null) {
+            handler.destroy();
+        }
     }
     
     @Override
@@ -160,23 +185,35 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
     @Override
     public void addMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
         assertValid();
-        mappingRuleConfigurations.add(mappingRuleConfiguration);
+        if (mappingRuleConfigurations.add(mappingRuleConfiguration)) {
+            mappingRuleConfiguration.addChangeListener(mappingChangeListener);
+        }
+        mappingGeneration.incrementAndGet();
     }
 
     @Override
     public void removeMappingRuleConfiguration(HttpMappingRule mappingRuleConfiguration) {
         assertValid();
-        mappingRuleConfigurations.remove(mappingRuleConfiguration);
+        if (mappingRuleConfigurations.remove(mappingRuleConfiguration)) {
+            mappingRuleConfiguration.removeChangeListener(mappingChangeListener);
+        }
+        mappingGeneration.incrementAndGet();
     }
 
     @Override
     public Map<String, MappedServices> getMappedServices() {
         assertValid();
-        Map<String, MappedServices> answer = new HashMap<String, MappedServices>();
-        for (HttpMappingRule mappingRuleConfiguration : mappingRuleConfigurations) {
-            mappingRuleConfiguration.appendMappedServices(answer);
+        long generation = mappingGeneration.get();
+        MappedServicesSnapshot snapshot = mappedServices;
+        if (snapshot == null || snapshot.generation != generation) {
+            Map<String, MappedServices> answer = new HashMap<String, MappedServices>();
+            for (HttpMappingRule mappingRuleConfiguration : mappingRuleConfigurations) {
+                mappingRuleConfiguration.appendMappedServices(answer);
+            }
+            snapshot = new MappedServicesSnapshot(generation, Collections.unmodifiableMap(answer));
+            mappedServices = snapshot;
         }
-        return answer;
+        return snapshot.mappedServices;
     }
 
     @Override
@@ -211,6 +248,34 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         return null;
     }
 
+    /**
+     * Returns the latency and traffic metrics of each mapped path
+     */
+    @Override
+    public GatewayMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String getMetricsType() {
+        return "gateway-http";
+    }
+
+    @Override
+    public String getMetricsObjectName() {
+        return FabricHTTPGatewayInfo.OBJECT_NAME;
+    }
+
+    @Override
+    public int getMetricsReportPeriod() {
+        return metricsReportPeriod;
+    }
+
+    @Override
+    public String getContainerName() {
+        return fabricService.get().getCurrentContainerName();
+    }
+
     int getPort() {
         return port;
     }
@@ -271,4 +336,14 @@ public final class FabricHTTPGateway extends AbstractComponent implements HttpGa
         fabricHTTPGatewayInfoMBean.unregisterMBeanServer(mbeanServer.get());
     }
 
+
+    private static class MappedServicesSnapshot {
+        private final long generation;
+        private final Map<String, MappedServices> mappedServices;
+
+        MappedServicesSnapshot(long generation, Map<String, MappedServices> mappedServices) {
+            this.generation = generation;
+            this.mappedServices = mappedServices;
+        }
+    }
 }
@@ -23,6 +23,8 @@ import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import javax.management.StandardMBean;
 
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +34,8 @@ public class FabricHTTPGatewayInfo implements FabricGatewayInfoMBean {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(FabricHTTPGatewayInfo.class);
 
+    public static final String OBJECT_NAME = "io.fabric8.gateway-fabric:service=FabricHTTPGatewayInfo";
+
     private final FabricHTTPGateway fabricHTTPGateway;
     private ObjectName objectName;
     private long numberOfInvocations = 0l;
@@ -119,17 +123,23 @@ public class FabricHTTPGatewayInfo implements FabricGatewayInfoMBean {
     	return averageCallTimeNanos;
     }
     
+    @Override
+    public Map<String, Map<String, Object>> getRouteMetrics() {
+        return getFabricHTTPGateway().getMetrics().getStatistics();
+    }
+
     @Override
     public void resetStatistics() {
     	averageCallTimeNanos = 0l;
     	numberOfInvocations = 0l;
     	lastCallDate = null;
     	lastError = null;
+    	getFabricHTTPGateway().getMetrics().reset();
     }
    
     public ObjectName getObjectName() throws MalformedObjectNameException {
         if (objectName == null) {
-            objectName = new ObjectName("io.fabric8.gateway-fabric:service=FabricHTTPGatewayInfo");
+            objectName = new ObjectName(OBJECT_NAME);
         }
         return objectName;
     }
@@ -19,6 +19,7 @@ import io.fabric8.api.FabricService;
 import io.fabric8.api.scr.AbstractComponent;
 import io.fabric8.api.scr.Configurer;
 import io.fabric8.api.scr.ValidatingReference;
+import io.fabric8.gateway.handlers.http.HttpClientOptions;
 import io.fabric8.gateway.handlers.http.HttpMappingRule;
 import io.fabric8.internal.Objects;
 import io.fabric8.zookeeper.ZkPath;
@@ -85,7 +86,8 @@ public final class HttpMappingRuleConfiguration extends AbstractComponent {
             options = {
                     @PropertyOption(name = LoadBalancers.RANDOM_LOAD_BALANCER, value = "Random"),
                     @PropertyOption(name = LoadBalancers.ROUND_ROBIN_LOAD_BALANCER, value = "Round Robin"),
-                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky")
+                    @PropertyOption(name = LoadBalancers.STICKY_LOAD_BALANCER, value = "Sticky"),
+                    @PropertyOption(name = LoadBalancers.STRIPED_STICKY_LOAD_BALANCER, value = "Sticky (striped cache)")
             },
             label = "Load Balancer", description = "The kind of load balancing strategy used")
     private String loadBalancerType;
@@ -94,6 +96,18 @@ public final class HttpMappingRuleConfiguration extends AbstractComponent {
             label = "Sticky Load Balancer Cache Size", description = "The number of unique client keys to cache for the sticky load balancer (using an LRU caching algorithm)")
     private int stickyLoadBalancerCacheSize = LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE;
 
+    @Property(name = "keepAlive", boolValue = HttpClientOptions.DEFAULT_KEEP_ALIVE,
+            label = "Keep Alive", description = "If enabled then connections to the services are kept open and reused for subsequent proxied requests")
+    private boolean keepAlive = HttpClientOptions.DEFAULT_KEEP_ALIVE;
+
+    @Property(name = "maxPoolSize", intValue = HttpClientOptions.DEFAULT_MAX_POOL_SIZE,
+            label = "Max Pool Size", description = "The maximum number of connections kept open to each service")
+    private int maxPoolSize = HttpClientOptions.DEFAULT_MAX_POOL_SIZE;
+
+    @Property(name = "pipelining", boolValue = HttpClientOptions.DEFAULT_PIPELINING,
+            label = "Pipelining", description = "If enabled then proxied requests are pipelined over the kept alive connections to the services")
+    private boolean pipelining = HttpClientOptions.DEFAULT_PIPELINING;
+
     @Property(name = "immediateUpdate", boolValue = false,
             label = "Immediate Update", description = "Monitors ZooKeeper registry to immediately reflects updates. Keep this disabled if you are using roll up updates.")
     private boolean immediateUpdate = false;
@@ -180,7 +194,8 @@ public final class HttpMappingRuleConfiguration extends AbstractComponent {
         httpMappingRuleBase = new HttpMappingRuleBase(
                 new SimplePathTemplate(uriTemplate),
                 gateway.get().getGatewayVersion(),
-                enabledVersion, loadBalancer, reverseHeaders);
+                enabledVersion, loadBalancer, reverseHeaders,
+                new HttpClientOptions(keepAlive, maxPoolSize, pipelining));
 
         mappingTree = new HttpMappingZooKeeperTreeCache(curator.get(), httpMappingRuleBase, zooKeeperPath);
         mappingTree.init();
@@ -15,6 +15,8 @@
  */
 package io.fabric8.gateway.fabric.jmx;
 
+import java.util.Map;
+
 /**
  * An MBean to retrieve usage for the http gateway
  */
@@ -30,5 +32,6 @@ public interface FabricGatewayInfoMBean {
     String getLastError();
     String getLastCallDate();
     long getAvarageCallTimeNanos();
+    Map<String, Map<String, Object>> getRouteMetrics();
     void resetStatistics();
 }
@@ -0,0 +1,175 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.fabric.jmx;
+
+import io.fabric8.api.scr.AbstractComponent;
+import io.fabric8.api.scr.ValidatingReference;
+import io.fabric8.gateway.metrics.RouteMetrics;
+import io.fabric8.insight.metrics.model.MBeanAttrResult;
+import io.fabric8.insight.metrics.model.MBeanAttrs;
+import io.fabric8.insight.metrics.model.MBeanAttrsResult;
+import io.fabric8.insight.metrics.model.MetricsStorageService;
+import io.fabric8.insight.metrics.model.Query;
+import io.fabric8.insight.metrics.model.QueryResult;
+import io.fabric8.insight.metrics.model.Request;
+import io.fabric8.insight.metrics.model.Result;
+import io.fabric8.insight.metrics.model.Server;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically stores the metrics of the {@link MeteredGateway}s in the insight {@link MetricsStorageService}
+ * in the same shape as the MBean attribute queries of the insight metrics collector, so they can be rendered
+ * and searched like any other metrics.
+ * <p>
+ * This component is the only class of the bundle referring to insight: it is only activated once a
+ * {@link MetricsStorageService} is available, so the gateways work without insight being installed.
+ */
+@Component(name = "io.fabric8.gateway.metrics.reporter", label = "Fabric8 Gateway Metrics Reporter", immediate = true, metatype = false)
+public final class GatewayMetricsReporter extends AbstractComponent {
+    private static final transient Logger LOG = LoggerFactory.getLogger(GatewayMetricsReporter.class);
+
+    @Reference(referenceInterface = MetricsStorageService.class)
+    private final ValidatingReference<MetricsStorageService> storageService = new ValidatingReference<MetricsStorageService>();
+    @Reference(referenceInterface = MeteredGateway.class, bind = "bindGateway", unbind = "unbindGateway", cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    private final Set<MeteredGateway> gateways = new HashSet<MeteredGateway>();
+
+    private ScheduledExecutorService executor;
+
+    @Activate
+    synchronized void activate() {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "GatewayMetricsReporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (MeteredGateway gateway : gateways) {
+            schedule(gateway);
+        }
+        activateComponent();
+    }
+
+    @Deactivate
+    synchronized void deactivate() {
+        deactivateComponent();
+        executor.shutdownNow();
+        executor = null;
+    }
+
+    synchronized void bindGateway(MeteredGateway gateway) {
+        if (gateways.add(gateway) && executor != null) {
+            schedule(gateway);
+        }
+    }
+
+    synchronized void unbindGateway(MeteredGateway gateway) {
+        gateways.remove(gateway);
+    }
+
+    void bindStorageService(MetricsStorageService storageService) {
+        this.storageService.bind(storageService);
+    }
+
+    void unbindStorageService(MetricsStorageService storageService) {
+        this.storageService.unbind(storageService);
+    }
+
+    /**
+     * Schedules the next report of the gateway, reading its period each time so configuration changes apply
+     */
+    private void schedule(final MeteredGateway gateway) {
+        int period = gateway.getMetricsReportPeriod();
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isBound(gateway)) {
+                        return;
+                    }
+                    if (gateway.getMetricsReportPeriod() > 0) {
+                        report(gateway);
+                    }
+                    synchronized (GatewayMetricsReporter.this) {
+                        if (executor != null && gateways.contains(gateway)) {
+                            schedule(gateway);
+                        }
+                    }
+                }
+            }, period > 0 ? period : MeteredGateway.DEFAULT_METRICS_REPORT_PERIOD, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // deactivated
+        }
+    }
+
+    private synchronized boolean isBound(MeteredGateway gateway) {
+        return executor != null && gateways.contains(gateway);
+    }
+
+    private void report(MeteredGateway gateway) {
+        try {
+            QueryResult result = createQueryResult(gateway, new Date());
+            if (!result.getResults().isEmpty()) {
+                storageService.get().store(gateway.getMetricsType(), result.getTimestamp().getTime(), result);
+            }
+        } catch (Throwable e) {
+            LOG.warn("Failed to store the " + gateway.getMetricsType() + " metrics: " + e, e);
+        }
+    }
+
+    /**
+     * Creates a query result holding the statistics of each route as the attributes of an object name
+     * made from the gateway object name and the route name
+     */
+    static QueryResult createQueryResult(MeteredGateway gateway, Date timestamp) throws MalformedObjectNameException {
+        Set<Request> requests = new HashSet<Request>();
+        Map<String, Result<?>> results = new HashMap<String, Result<?>>();
+        for (RouteMetrics route : gateway.getMetrics().getRoutes()) {
+            Map<String, Object> statistics = route.getStatistics();
+            String routeObjectName = gateway.getMetricsObjectName() + ",route=" + ObjectName.quote(route.getName());
+            MBeanAttrs request = new MBeanAttrs(route.getName(), routeObjectName, new ArrayList<String>(statistics.keySet()));
+            requests.add(request);
+            MBeanAttrResult attrs = new MBeanAttrResult(new ObjectName(routeObjectName), statistics);
+            results.put(route.getName(), new MBeanAttrsResult(request, Collections.singletonList(attrs)));
+        }
+        int period = gateway.getMetricsReportPeriod();
+        Query query = new Query(gateway.getMetricsType(), requests, null, null, null, period, period);
+        return new QueryResult(new Server(gateway.getContainerName()), query, timestamp, results);
+    }
+}
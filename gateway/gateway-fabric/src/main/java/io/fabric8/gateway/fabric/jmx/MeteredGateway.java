@@ -0,0 +1,46 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.fabric.jmx;
+
+import io.fabric8.gateway.metrics.GatewayMetrics;
+
+/**
+ * A gateway keeping {@link GatewayMetrics}, which the {@link GatewayMetricsReporter} stores in insight when it is
+ * installed. This interface does not refer to insight, so gateways can be used without it.
+ */
+public interface MeteredGateway {
+
+    int DEFAULT_METRICS_REPORT_PERIOD = 60;
+
+    /**
+     * Returns the type of the metrics, such as <code>gateway-http</code>
+     */
+    String getMetricsType();
+
+    /**
+     * Returns the object name of the gateway MBean which the route names are added to
+     */
+    String getMetricsObjectName();
+
+    GatewayMetrics getMetrics();
+
+    /**
+     * Returns the number of seconds between reports, zero or less to disable them
+     */
+    int getMetricsReportPeriod();
+
+    String getContainerName();
+}
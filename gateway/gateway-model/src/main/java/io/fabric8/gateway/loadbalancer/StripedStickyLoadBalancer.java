@@ -0,0 +1,167 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.loadbalancer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sticky load balancer like {@link StickyLoadBalancer} which splits its LRU cache of client keys into a number of
+ * independently locked stripes so that concurrent requests from different clients
+ * rarely contend on the same lock.
+ * <p/>
+ * Each stripe evicts its own least recently used entries so the overall cache is only
+ * approximately LRU.
+ */
+public class StripedStickyLoadBalancer implements LoadBalancer {
+    public static final int DEFAULT_STRIPES = 16;
+
+    private final LoadBalancer firstRequestLoadBalancer;
+    private final int maximumCacheSize;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public StripedStickyLoadBalancer() {
+        this(LoadBalancers.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE);
+    }
+
+    public StripedStickyLoadBalancer(int maximumCacheSize) {
+        this(maximumCacheSize, DEFAULT_STRIPES, new RoundRobinLoadBalancer());
+    }
+
+    public StripedStickyLoadBalancer(int maximumCacheSize, int stripeCount, LoadBalancer firstRequestLoadBalancer) {
+        this.firstRequestLoadBalancer = firstRequestLoadBalancer;
+        this.maximumCacheSize = maximumCacheSize;
+        // no more stripes than entries so the stripes never hold more than the maximum cache size
+        int cacheSize = Math.max(1, maximumCacheSize);
+        int size = 1;
+        while (size < stripeCount && size * 2 <= cacheSize) {
+            size <<= 1;
+        }
+        this.stripes = new Stripe[size];
+        this.stripeMask = size - 1;
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(cacheSize / size + (i < cacheSize % size ? 1 : 0));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StripedStickyLoadBalancer{" +
+                "maximumCacheSize=" + maximumCacheSize +
+                ", stripes=" + stripes.length +
+                '}';
+    }
+
+    @Override
+    public <T> T choose(List<T> services, ClientRequestFacade requestFacade) {
+        String clientKey = requestFacade.getClientRequestKey();
+        Stripe stripe = stripeFor(clientKey);
+        Binding binding;
+        synchronized (stripe) {
+            binding = stripe.get(clientKey);
+        }
+        if (binding != null) {
+            T answer = (T) binding.service;
+            // the service is usually still at the same index so we can avoid scanning the list
+            int index = binding.index;
+            if (index >= 0 && index < services.size() && answer.equals(services.get(index))) {
+                return answer;
+            }
+            index = services.indexOf(answer);
+            if (index >= 0) {
+                synchronized (stripe) {
+                    stripe.put(clientKey, new Binding(answer, index));
+                }
+                return answer;
+            }
+        }
+        T answer = firstRequestLoadBalancer.choose(services, requestFacade);
+        if (answer != null) {
+            int index = services.indexOf(answer);
+            synchronized (stripe) {
+                // another request of the same client may have been bound in the meantime
+                Binding current = stripe.get(clientKey);
+                if (current != null && current != binding && services.contains(current.service)) {
+                    return (T) current.service;
+                }
+                stripe.put(clientKey, new Binding(answer, index));
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Clears the cache of request client IDs to the bound service
+     */
+    public void flush() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * @return the number of client keys currently bound
+     */
+    int size() {
+        int answer = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                answer += stripe.size();
+            }
+        }
+        return answer;
+    }
+
+    private Stripe stripeFor(String clientKey) {
+        int h = clientKey != null ? clientKey.hashCode() : 0;
+        // spread the bits so keys with similar hash codes end up in different stripes
+        h ^= (h >>> 16);
+        h ^= (h >>> 7);
+        return stripes[h & stripeMask];
+    }
+
+    private static final class Binding {
+        private final Object service;
+        private final int index;
+
+        Binding(Object service, int index) {
+            this.service = service;
+            this.index = index;
+        }
+    }
+
+    private static final class Stripe extends LinkedHashMap<String, Binding> {
+        private final int maximumSize;
+
+        Stripe(int maximumSize) {
+            super(16, .75F, true);
+            this.maximumSize = maximumSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Binding> eldest) {
+            return size() > maximumSize;
+        }
+    }
+}
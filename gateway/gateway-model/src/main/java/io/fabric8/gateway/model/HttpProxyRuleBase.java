@@ -15,23 +15,40 @@
  */
 package io.fabric8.gateway.model;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents a collection of HTTP proxy mapping rules.
  * <p/>
  * These can be created via a Java DSL and XML DSL (JAXB) or loaded from a database.
+ * <p/>
+ * Rules are added, replaced and removed through the DSL or the map returned by {@link #getMappingRules()},
+ * each of which increments the {@link #getModificationCount()} so that indexes of the rules know when to
+ * rebuild.
  */
 public class HttpProxyRuleBase {
-    private Map<String, HttpProxyRule> mappingRules = new HashMap<String, HttpProxyRule>();
+    private Map<String, HttpProxyRule> mappingRules = new RuleMap(new HashMap<String, HttpProxyRule>());
+    private volatile int modificationCount;
 
     public Map<String, HttpProxyRule> getMappingRules() {
         return mappingRules;
     }
 
     public void setMappingRules(Map<String, HttpProxyRule> mappingRules) {
-        this.mappingRules = mappingRules;
+        this.mappingRules = new RuleMap(mappingRules);
+        modified();
+    }
+
+    /**
+     * Returns the number of times the rules have been added to, replaced or removed
+     */
+    public int getModificationCount() {
+        return modificationCount;
     }
 
     /**
@@ -45,4 +62,122 @@ public class HttpProxyRuleBase {
         }
         return answer;
     }
+
+    private void modified() {
+        modificationCount++;
+    }
+
+    /**
+     * A view of the rules which counts the modifications
+     */
+    private class RuleMap extends AbstractMap<String, HttpProxyRule> {
+        private final Map<String, HttpProxyRule> rules;
+        private final Set<Entry<String, HttpProxyRule>> entrySet = new AbstractSet<Entry<String, HttpProxyRule>>() {
+            @Override
+            public Iterator<Entry<String, HttpProxyRule>> iterator() {
+                final Iterator<Entry<String, HttpProxyRule>> iterator = rules.entrySet().iterator();
+                return new Iterator<Entry<String, HttpProxyRule>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, HttpProxyRule> next() {
+                        return new RuleEntry(iterator.next());
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                        modified();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return rules.size();
+            }
+        };
+
+        RuleMap(Map<String, HttpProxyRule> rules) {
+            this.rules = rules;
+        }
+
+        @Override
+        public Set<Entry<String, HttpProxyRule>> entrySet() {
+            return entrySet;
+        }
+
+        @Override
+        public int size() {
+            return rules.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return rules.containsKey(key);
+        }
+
+        @Override
+        public HttpProxyRule get(Object key) {
+            return rules.get(key);
+        }
+
+        @Override
+        public HttpProxyRule put(String key, HttpProxyRule value) {
+            HttpProxyRule answer = rules.put(key, value);
+            modified();
+            return answer;
+        }
+
+        @Override
+        public HttpProxyRule remove(Object key) {
+            HttpProxyRule answer = rules.remove(key);
+            modified();
+            return answer;
+        }
+
+        @Override
+        public void clear() {
+            rules.clear();
+            modified();
+        }
+    }
+
+    private class RuleEntry implements Map.Entry<String, HttpProxyRule> {
+        private final Map.Entry<String, HttpProxyRule> entry;
+
+        RuleEntry(Map.Entry<String, HttpProxyRule> entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public String getKey() {
+            return entry.getKey();
+        }
+
+        @Override
+        public HttpProxyRule getValue() {
+            return entry.getValue();
+        }
+
+        @Override
+        public HttpProxyRule setValue(HttpProxyRule value) {
+            HttpProxyRule answer = entry.setValue(value);
+            modified();
+            return answer;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return entry.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return entry.hashCode();
+        }
+    }
 }
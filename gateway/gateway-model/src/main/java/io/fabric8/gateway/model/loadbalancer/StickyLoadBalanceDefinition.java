@@ -17,12 +17,14 @@ package io.fabric8.gateway.model.loadbalancer;
 
 import io.fabric8.gateway.loadbalancer.LoadBalancer;
 import io.fabric8.gateway.loadbalancer.StickyLoadBalancer;
+import io.fabric8.gateway.loadbalancer.StripedStickyLoadBalancer;
 import io.fabric8.gateway.support.Constants;
 
 /**
  */
 public class StickyLoadBalanceDefinition extends LoadBalancerDefinition {
     private int cacheSize = Constants.STICKY_LOAD_BALANCER_DEFAULT_CACHE_SIZE;
+    private boolean striped;
 
     public int getCacheSize() {
         return cacheSize;
@@ -32,8 +34,23 @@ public class StickyLoadBalanceDefinition extends LoadBalancerDefinition {
         this.cacheSize = cacheSize;
     }
 
+    /**
+     * Returns whether the cache of client keys is split into independently locked stripes
+     * which scales better when many threads choose services concurrently
+     */
+    public boolean isStriped() {
+        return striped;
+    }
+
+    public void setStriped(boolean striped) {
+        this.striped = striped;
+    }
+
     @Override
     protected LoadBalancer createLoadBalancer() {
+        if (striped) {
+            return new StripedStickyLoadBalancer(cacheSize);
+        }
         return new StickyLoadBalancer(cacheSize);
     }
 }
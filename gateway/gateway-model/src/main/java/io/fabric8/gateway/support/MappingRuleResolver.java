@@ -23,12 +23,12 @@ import io.fabric8.gateway.model.HttpProxyRuleBase;
  */
 public class MappingRuleResolver {
     private HttpProxyRuleBase mappingRules = new HttpProxyRuleBase();
+    private volatile RuleIndex index;
 
     public MappingResult findMappingRule(String requestURI) {
         String[] paths = Paths.splitPaths(requestURI);
         MappingResult answer = null;
-        // TODO we could build a path based tree to do more efficient matching?
-        for (HttpProxyRule mappingRule : mappingRules.getMappingRules().values()) {
+        for (HttpProxyRule mappingRule : getIndex().trie.findMatches(paths)) {
             answer = mappingRule.matches(paths);
             if (answer != null) {
                 break;
@@ -43,6 +43,54 @@ public class MappingRuleResolver {
 
     public void setMappingRules(HttpProxyRuleBase mappingRules) {
         this.mappingRules = mappingRules;
+        this.index = null;
     }
 
+    /**
+     * Returns the trie of rules indexed by the literal prefix of their URI templates,
+     * rebuilding it if the rules have been replaced or modified since it was built
+     */
+    protected RuleIndex getIndex() {
+        HttpProxyRuleBase ruleBase = mappingRules;
+        // read before the rules so that a concurrent change rebuilds the index again
+        int modificationCount = ruleBase.getModificationCount();
+        RuleIndex answer = index;
+        if (answer == null || answer.ruleBase != ruleBase || answer.modificationCount != modificationCount) {
+            answer = new RuleIndex(ruleBase, modificationCount);
+            index = answer;
+        }
+        return answer;
+    }
+
+    protected static class RuleIndex {
+        private final HttpProxyRuleBase ruleBase;
+        private final int modificationCount;
+        private final PathTrie<HttpProxyRule> trie = new PathTrie<HttpProxyRule>();
+
+        RuleIndex(HttpProxyRuleBase ruleBase, int modificationCount) {
+            this.ruleBase = ruleBase;
+            this.modificationCount = modificationCount;
+            for (HttpProxyRule rule : ruleBase.getMappingRules().values()) {
+                trie.put(literalPrefix(rule), rule);
+            }
+        }
+
+        /**
+         * Returns the path segments of the rule's URI template before the first wildcard
+         */
+        private static String[] literalPrefix(HttpProxyRule rule) {
+            String[] paths = rule.getUriTemplate() != null
+                    ? Paths.splitPaths(rule.getUriTemplate().getUriTemplate()) : Paths.EMPTY_ARRAY;
+            int length = 0;
+            while (length < paths.length && !paths[length].startsWith("{")) {
+                length++;
+            }
+            if (length == paths.length) {
+                return paths;
+            }
+            String[] answer = new String[length];
+            System.arraycopy(paths, 0, answer, 0, length);
+            return answer;
+        }
+    }
 }
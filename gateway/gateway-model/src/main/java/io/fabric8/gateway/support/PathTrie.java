@@ -0,0 +1,130 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A trie of values indexed by their path segments (as split by {@link Paths#splitPaths(String)})
+ * used to find the values bound to the longest matching path prefix of a request URI
+ * without having to compare the request against every mapped path.
+ * <p/>
+ * A trie is populated via {@link #put(String[], Object)} and then treated as immutable; when
+ * the mappings change a new trie is built and published in place of the old one.
+ */
+public class PathTrie<T> {
+    private final Node<T> root = new Node<T>();
+    private int size;
+
+    /**
+     * Binds the value to the given path segments
+     */
+    public PathTrie<T> put(String[] segments, T value) {
+        Node<T> node = root;
+        for (String segment : segments) {
+            node = node.child(segment);
+        }
+        node.values.add(value);
+        size++;
+        return this;
+    }
+
+    /**
+     * Binds the value to the given path
+     */
+    public PathTrie<T> put(String path, T value) {
+        return put(Paths.splitPaths(path), value);
+    }
+
+    /**
+     * Returns all the values bound to a prefix of the given path segments with the
+     * values bound to the longest prefix first
+     */
+    public List<T> findMatches(String[] segments) {
+        List<Node<T>> nodes = null;
+        Node<T> node = root;
+        int i = 0;
+        while (node != null) {
+            if (!node.values.isEmpty()) {
+                if (nodes == null) {
+                    nodes = new ArrayList<Node<T>>();
+                }
+                nodes.add(node);
+            }
+            if (i >= segments.length || node.children == null) {
+                break;
+            }
+            node = node.children.get(segments[i++]);
+        }
+        if (nodes == null) {
+            return Collections.emptyList();
+        }
+        if (nodes.size() == 1) {
+            return Collections.unmodifiableList(nodes.get(0).values);
+        }
+        List<T> answer = new ArrayList<T>();
+        for (int j = nodes.size() - 1; j >= 0; j--) {
+            answer.addAll(nodes.get(j).values);
+        }
+        return answer;
+    }
+
+    /**
+     * Returns all the values bound to a prefix of the given path with the values
+     * bound to the longest prefix first
+     */
+    public List<T> findMatches(String path) {
+        return findMatches(Paths.splitPaths(path));
+    }
+
+    /**
+     * Returns the first value bound to the longest prefix of the given path or null if there is no match
+     */
+    public T findLongestMatch(String path) {
+        List<T> matches = findMatches(path);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "PathTrie{size=" + size + "}";
+    }
+
+    private static class Node<T> {
+        private final List<T> values = new ArrayList<T>(1);
+        private Map<String, Node<T>> children;
+
+        Node<T> child(String segment) {
+            if (children == null) {
+                children = new HashMap<String, Node<T>>();
+            }
+            Node<T> answer = children.get(segment);
+            if (answer == null) {
+                answer = new Node<T>();
+                children.put(segment, answer);
+            }
+            return answer;
+        }
+    }
+}
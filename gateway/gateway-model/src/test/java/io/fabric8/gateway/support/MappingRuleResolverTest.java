@@ -16,6 +16,7 @@
 package io.fabric8.gateway.support;
 
 import io.fabric8.gateway.loadbalancer.ClientRequestFacade;
+import io.fabric8.gateway.model.HttpProxyRule;
 import io.fabric8.gateway.model.HttpProxyRuleBase;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -23,6 +24,7 @@ import org.slf4j.LoggerFactory;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 /**
  */
@@ -44,11 +46,47 @@ public class MappingRuleResolverTest extends MappingRuleTestSupport {
         assertRuleMatch("/customers/c123/address/abc", "http://another.com/addresses/abc/customerThingy/c123");
     }
 
+    @Test
+    public void testOverlappingTemplates() throws Exception {
+        // the rule with the longest literal prefix wins whatever the order of the rules
+        assertRuleMatch("/foo/bar/baz", "http://bar.com/baz");
+        assertRuleMatch("/foo/baz", "http://foo.com/cheese/baz");
+        assertRuleMatch("/foo/other/bar", "http://foo.com/cheese/other/bar");
+    }
+
+    @Test
+    public void testRuleChangesAfterLookup() throws Exception {
+        assertRuleMatch("/foo/bar/baz", "http://bar.com/baz");
+        HttpProxyRuleBase ruleBase = getResolver().getMappingRules();
+
+        // one rule removed and another added keeps the number of rules
+        ruleBase.getMappingRules().remove("/foo/bar/{y}");
+        ruleBase.rule("/cheese/{z}").to("http://cheese.com/{z}");
+        assertRuleMatch("/foo/bar/baz", "http://foo.com/cheese/bar/baz");
+        assertRuleMatch("/cheese/edam", "http://cheese.com/edam");
+
+        // a rule replaced under the same template
+        ruleBase.getMappingRules().put("/cheese/{z}", new HttpProxyRule("/cheese/{z}").to("http://wine.com/{z}"));
+        assertRuleMatch("/cheese/edam", "http://wine.com/edam");
+
+        // and removed through the views of the rules
+        ruleBase.getMappingRules().keySet().remove("/cheese/{z}");
+        assertNull(getResolver().findMappingRule("/cheese/edam"));
+
+        // all the rules replaced
+        HttpProxyRuleBase other = new HttpProxyRuleBase();
+        other.rule("/foo/{path}").to("http://other.com/{path}");
+        getResolver().setMappingRules(other);
+        assertRuleMatch("/foo/bar/baz", "http://other.com/bar/baz");
+        assertNull(getResolver().findMappingRule("/members"));
+    }
+
     @Override
     protected void loadMappingRules(HttpProxyRuleBase ruleBase) {
         ruleBase.rule("/members").to("http://foo.com/rest/members");
         ruleBase.rule("/members/{id}").to("http://foo.com/rest/members/{id}");
         ruleBase.rule("/foo/{path}").to("http://foo.com/cheese/{path}");
+        ruleBase.rule("/foo/bar/{y}").to("http://bar.com/{y}");
         ruleBase.rule("/customers/{customerId}/address/{addressId}").to("http://another.com/addresses/{addressId}/customerThingy/{customerId}");
     }
 
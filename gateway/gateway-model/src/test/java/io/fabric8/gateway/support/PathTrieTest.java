@@ -0,0 +1,55 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.support;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ */
+public class PathTrieTest {
+
+    @Test
+    public void testLongestPrefixMatch() throws Exception {
+        PathTrie<String> trie = new PathTrie<String>();
+        trie.put("/", "root");
+        trie.put("/cxf/", "cxf");
+        trie.put("/cxf/crm", "crm");
+        trie.put("/fabric/hawtio/", "hawtio");
+
+        assertEquals(4, trie.size());
+        assertEquals("crm", trie.findLongestMatch("/cxf/crm/customers/123"));
+        assertEquals("crm", trie.findLongestMatch("/cxf/crm?wsdl"));
+        assertEquals("cxf", trie.findLongestMatch("/cxf/crmx"));
+        assertEquals("hawtio", trie.findLongestMatch("/fabric/hawtio"));
+        assertEquals("root", trie.findLongestMatch("/fabric/other"));
+        assertEquals(Arrays.asList("crm", "cxf", "root"), trie.findMatches("/cxf/crm/customers"));
+    }
+
+    @Test
+    public void testNoMatch() throws Exception {
+        PathTrie<String> trie = new PathTrie<String>();
+        trie.put("/cxf/crm", "crm");
+
+        assertNull(trie.findLongestMatch("/cxf"));
+        assertEquals(Collections.<String>emptyList(), trie.findMatches("/other/crm"));
+    }
+}
@@ -93,6 +93,11 @@ public class ProxyDetails {
         return stringProxyURL;
     }
 
+    /**
+     * Creates a client for the request. The {@link ProxyServlet} only calls this method if a sub class
+     * overrides it, otherwise it uses its shared client with pooled connections from
+     * {@link ProxyServlet#getHttpClient()}.
+     */
     public HttpClient createHttpClient(HttpMethod httpMethodProxyRequest) {
         HttpClient client = new HttpClient();
         return client;
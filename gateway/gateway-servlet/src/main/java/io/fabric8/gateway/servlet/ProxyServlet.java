@@ -15,7 +15,6 @@
  */
 package io.fabric8.gateway.servlet;
 
-import io.fabric8.common.util.IOHelpers;
 import io.fabric8.gateway.model.HttpProxyRule;
 import io.fabric8.gateway.model.HttpProxyRuleBase;
 import io.fabric8.gateway.servlet.support.NonBindingSocketFactory;
@@ -28,20 +27,22 @@ import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.OptionsMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.PutMethod;
 import org.apache.commons.httpclient.methods.RequestEntity;
-import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.ByteArrayPartSource;
 import org.apache.commons.httpclient.methods.multipart.FilePart;
 import org.apache.commons.httpclient.methods.multipart.MultipartRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.httpclient.methods.multipart.StringPart;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.protocol.Protocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,7 +52,6 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -60,6 +60,8 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Based on code from http://edwardstx.net/2010/06/http-proxy-servlet/
@@ -97,8 +99,29 @@ public abstract class ProxyServlet extends HttpServlet {
      */
     private static final File FILE_UPLOAD_TEMP_DIRECTORY = new File(System.getProperty("java.io.tmpdir"));
 
+    /**
+     * Init parameter for the maximum number of pooled connections to each proxied host
+     */
+    public static final String MAX_CONNECTIONS_PER_HOST = "maxConnectionsPerHost";
+    /**
+     * Init parameter for the maximum number of pooled connections to all the proxied hosts
+     */
+    public static final String MAX_TOTAL_CONNECTIONS = "maxTotalConnections";
+    /**
+     * Init parameter for the size of the buffer used to copy request and response bodies
+     */
+    public static final String BUFFER_SIZE = "bufferSize";
+
+    private static final ConcurrentMap<Class<?>, Boolean> CUSTOM_CLIENT_DETAILS = new ConcurrentHashMap<Class<?>, Boolean>();
+
     private HttpMappingRuleResolver resolver = new HttpMappingRuleResolver();
 
+    private MultiThreadedHttpConnectionManager connectionManager;
+    private HttpClient httpClient;
+    private int maxConnectionsPerHost = 20;
+    private int maxTotalConnections = 200;
+    private int bufferSize = 8 * 1024;
+
     /**
      * The maximum size for uploaded files in bytes. Default value is 5MB.
      */
@@ -116,6 +139,39 @@ public abstract class ProxyServlet extends HttpServlet {
         resolver.setMappingRules(ruleBase);
         Protocol.registerProtocol("http", new Protocol("http", new NonBindingSocketFactory(), 80));
         Protocol.registerProtocol("https", new Protocol("https", new NonBindingSocketFactory(), 443));
+
+        maxConnectionsPerHost = getIntInitParameter(config, MAX_CONNECTIONS_PER_HOST, maxConnectionsPerHost);
+        maxTotalConnections = getIntInitParameter(config, MAX_TOTAL_CONNECTIONS, maxTotalConnections);
+        bufferSize = getIntInitParameter(config, BUFFER_SIZE, bufferSize);
+
+        // lets share the pooled connections to the proxied hosts across all requests
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+        params.setMaxTotalConnections(maxTotalConnections);
+        httpClient = new HttpClient(connectionManager);
+    }
+
+    @Override
+    public void destroy() {
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+            connectionManager = null;
+        }
+        httpClient = null;
+        super.destroy();
+    }
+
+    private static int getIntInitParameter(ServletConfig config, String name, int defaultValue) throws ServletException {
+        String value = config.getInitParameter(name);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ServletException("Invalid value for init parameter " + name + ": " + value, e);
+        }
     }
 
     /**
@@ -355,8 +411,8 @@ public abstract class ProxyServlet extends HttpServlet {
         if (contentType != null) {
             contentType = contentType.toLowerCase();
             if (contentType.contains("json") || contentType.contains("xml") || contentType.contains("application") || contentType.contains("text")) {
-                String body = IOHelpers.readFully(httpServletRequest.getReader());
-                entity = new StringRequestEntity(body, contentType, httpServletRequest.getCharacterEncoding());
+                // lets stream the body rather than reading it into memory first
+                entity = new InputStreamRequestEntity(httpServletRequest.getInputStream(), httpServletRequest.getContentLength(), httpServletRequest.getContentType());
                 entityEnclosingMethod.setRequestEntity(entity);
             }
         }
@@ -391,11 +447,21 @@ public abstract class ProxyServlet extends HttpServlet {
         httpMethodProxyRequest.setDoAuthentication(false);
         httpMethodProxyRequest.setFollowRedirects(false);
 
-        // Create a default HttpClient
-        HttpClient httpClient = proxyDetails.createHttpClient(httpMethodProxyRequest);
+        try {
+            doExecuteProxyRequest(proxyDetails, httpMethodProxyRequest, httpServletRequest, httpServletResponse);
+        } finally {
+            // lets return the connection to the pool
+            httpMethodProxyRequest.releaseConnection();
+        }
+    }
 
+    private void doExecuteProxyRequest(
+            ProxyDetails proxyDetails, HttpMethod httpMethodProxyRequest,
+            HttpServletRequest httpServletRequest,
+            HttpServletResponse httpServletResponse)
+            throws IOException, ServletException {
         // Execute the request
-        int intProxyResponseCode = httpClient.executeMethod(httpMethodProxyRequest);
+        int intProxyResponseCode = getHttpClient(proxyDetails, httpMethodProxyRequest).executeMethod(httpMethodProxyRequest);
 
         // Check if the proxy response is a redirect
         // The following code is adapted from org.tigris.noodle.filters.CheckForRedirect
@@ -462,11 +528,13 @@ public abstract class ProxyServlet extends HttpServlet {
         if (!noData) {
             // Send the content to the client
             InputStream inputStreamProxyResponse = httpMethodProxyRequest.getResponseBodyAsStream();
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStreamProxyResponse);
-            OutputStream outputStreamClientResponse = httpServletResponse.getOutputStream();
-            int intNextByte;
-            while ((intNextByte = bufferedInputStream.read()) != -1) {
-                outputStreamClientResponse.write(intNextByte);
+            if (inputStreamProxyResponse != null) {
+                OutputStream outputStreamClientResponse = httpServletResponse.getOutputStream();
+                byte[] buffer = new byte[bufferSize];
+                int count;
+                while ((count = inputStreamProxyResponse.read(buffer)) != -1) {
+                    outputStreamClientResponse.write(buffer, 0, count);
+                }
             }
         }
     }
@@ -480,6 +548,31 @@ public abstract class ProxyServlet extends HttpServlet {
         return resolver;
     }
 
+    /**
+     * Returns the client shared by all requests which pools the connections to the proxied hosts
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Returns the client of the proxy details if they override {@link ProxyDetails#createHttpClient(HttpMethod)},
+     * otherwise the shared client
+     */
+    private HttpClient getHttpClient(ProxyDetails proxyDetails, HttpMethod httpMethodProxyRequest) {
+        Class<?> detailsClass = proxyDetails.getClass();
+        Boolean customClient = CUSTOM_CLIENT_DETAILS.get(detailsClass);
+        if (customClient == null) {
+            try {
+                customClient = detailsClass.getMethod("createHttpClient", HttpMethod.class).getDeclaringClass() != ProxyDetails.class;
+            } catch (NoSuchMethodException e) {
+                customClient = Boolean.FALSE;
+            }
+            CUSTOM_CLIENT_DETAILS.put(detailsClass, customClient);
+        }
+        return customClient ? proxyDetails.createHttpClient(httpMethodProxyRequest) : getHttpClient();
+    }
+
     /**
      * Retrieves all of the headers from the servlet request and sets them on
      * the proxy request
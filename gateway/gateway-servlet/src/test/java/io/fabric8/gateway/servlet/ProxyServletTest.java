@@ -0,0 +1,306 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.gateway.servlet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.fabric8.gateway.model.HttpProxyRuleBase;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProxyServletTest {
+
+    private static final byte[] DATA = createData(256 * 1024);
+
+    private HttpServer upstream;
+    private Set<Integer> upstreamClientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    private TestProxyServlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                upstreamClientPorts.add(exchange.getRemoteAddress().getPort());
+                byte[] body = "POST".equals(exchange.getRequestMethod()) ? readFully(exchange.getRequestBody()) : DATA;
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        upstream.start();
+
+        servlet = new TestProxyServlet(upstream.getAddress().getPort());
+        Map<String, String> initParameters = new HashMap<String, String>();
+        initParameters.put(ProxyServlet.MAX_CONNECTIONS_PER_HOST, "2");
+        initParameters.put(ProxyServlet.BUFFER_SIZE, "1024");
+        servlet.init(createConfig(initParameters));
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+        upstream.stop(0);
+    }
+
+    @Test
+    public void testRequestsShareThePooledConnections() throws Exception {
+        HttpClient httpClient = servlet.getHttpClient();
+        assertTrue(httpClient.getHttpConnectionManager() instanceof MultiThreadedHttpConnectionManager);
+        MultiThreadedHttpConnectionManager connectionManager = (MultiThreadedHttpConnectionManager) httpClient.getHttpConnectionManager();
+        assertEquals(2, connectionManager.getParams().getDefaultMaxConnectionsPerHost());
+
+        for (int i = 0; i < 3; i++) {
+            TestResponse response = new TestResponse();
+            servlet.doGet(createRequest("GET", "/proxy/data", null, null), response.proxy());
+            assertEquals(200, response.status);
+            assertArrayEquals(DATA, response.body.toByteArray());
+        }
+        // every request returned its connection to the pool, so the next one reused it
+        assertEquals(1, connectionManager.getConnectionsInPool());
+        assertEquals(1, upstreamClientPorts.size());
+    }
+
+    @Test
+    public void testRequestBodyIsStreamed() throws Exception {
+        TestResponse response = new TestResponse();
+        // the request only offers its input stream, reading the body as characters would fail
+        servlet.doPost(createRequest("POST", "/proxy/echo", "application/octet-stream", DATA), response.proxy());
+        assertEquals(200, response.status);
+        assertArrayEquals(DATA, response.body.toByteArray());
+    }
+
+    @Test
+    public void testOverriddenCreateHttpClientIsUsed() throws Exception {
+        servlet.customClients = true;
+        TestResponse response = new TestResponse();
+        servlet.doGet(createRequest("GET", "/proxy/data", null, null), response.proxy());
+        assertArrayEquals(DATA, response.body.toByteArray());
+        assertEquals(1, servlet.createdClients);
+    }
+
+    @Test
+    public void testDestroyShutsThePoolDown() throws Exception {
+        MultiThreadedHttpConnectionManager connectionManager = (MultiThreadedHttpConnectionManager) servlet.getHttpClient().getHttpConnectionManager();
+        servlet.doGet(createRequest("GET", "/proxy/data", null, null), new TestResponse().proxy());
+        assertEquals(1, connectionManager.getConnectionsInPool());
+
+        servlet.destroy();
+        assertNull(servlet.getHttpClient());
+        HostConfiguration hostConfiguration = new HostConfiguration();
+        hostConfiguration.setHost("localhost", upstream.getAddress().getPort());
+        try {
+            connectionManager.getConnectionWithTimeout(hostConfiguration, 1000);
+            fail("The connection manager should have been shut down");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static class TestProxyServlet extends ProxyServlet {
+        private final int port;
+        private volatile boolean customClients;
+        private volatile int createdClients;
+
+        TestProxyServlet(int port) {
+            this.port = port;
+        }
+
+        @Override
+        protected void loadRuleBase(ServletConfig config, HttpProxyRuleBase ruleBase) throws ServletException {
+            ruleBase.rule("/proxy/{path}").to("http://localhost:" + port + "/{path}");
+        }
+
+        @Override
+        protected ProxyDetails createProxyDetails(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) {
+            ProxyDetails details = super.createProxyDetails(httpServletRequest, httpServletResponse);
+            if (!customClients) {
+                return details;
+            }
+            return new ProxyDetails(details.isValid(), details.getStringProxyURL(), details.getProxyRule()) {
+                @Override
+                public HttpClient createHttpClient(HttpMethod httpMethodProxyRequest) {
+                    createdClients++;
+                    return super.createHttpClient(httpMethodProxyRequest);
+                }
+            };
+        }
+    }
+
+    private static class TestResponse implements InvocationHandler {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private int status;
+
+        HttpServletResponse proxy() {
+            return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletResponse.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("setStatus")) {
+                status = (Integer) args[0];
+            } else if (name.equals("sendError")) {
+                status = (Integer) args[0];
+            } else if (name.equals("getOutputStream")) {
+                return new ServletOutputStream() {
+                    @Override
+                    public void write(int b) {
+                        body.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        body.write(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                    }
+                };
+            } else if (!name.startsWith("set") && !name.startsWith("add")) {
+                throw new UnsupportedOperationException(name);
+            }
+            return null;
+        }
+    }
+
+    private static HttpServletRequest createRequest(final String method, final String uri, final String contentType, final byte[] body) {
+        return (HttpServletRequest) Proxy.newProxyInstance(ProxyServletTest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+                String name = m.getName();
+                if (name.equals("getMethod")) {
+                    return method;
+                } else if (name.equals("getRequestURI")) {
+                    return uri;
+                } else if (name.equals("getContextPath")) {
+                    return "";
+                } else if (name.equals("getHeaderNames")) {
+                    return Collections.enumeration(Collections.<String>emptyList());
+                } else if (name.equals("getHeader") || name.equals("getCharacterEncoding")) {
+                    return null;
+                } else if (name.equals("getContentType")) {
+                    return contentType;
+                } else if (name.equals("getContentLength")) {
+                    return body != null ? body.length : -1;
+                } else if (name.equals("getParameterMap")) {
+                    return Collections.emptyMap();
+                } else if (name.equals("getInputStream")) {
+                    final InputStream in = new ByteArrayInputStream(body != null ? body : new byte[0]);
+                    return new ServletInputStream() {
+                        @Override
+                        public int read() throws IOException {
+                            return in.read();
+                        }
+
+                        @Override
+                        public int read(byte[] b, int off, int len) throws IOException {
+                            return in.read(b, off, len);
+                        }
+
+                        @Override
+                        public boolean isFinished() {
+                            return false;
+                        }
+
+                        @Override
+                        public boolean isReady() {
+                            return true;
+                        }
+
+                        @Override
+                        public void setReadListener(ReadListener readListener) {
+                        }
+                    };
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    private static ServletConfig createConfig(final Map<String, String> initParameters) {
+        return (ServletConfig) Proxy.newProxyInstance(ProxyServletTest.class.getClassLoader(), new Class<?>[]{ServletConfig.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getInitParameter")) {
+                    return initParameters.get(args[0]);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private static byte[] createData(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
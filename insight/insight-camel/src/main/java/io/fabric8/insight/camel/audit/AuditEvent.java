@@ -0,0 +1,194 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.audit;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.MessageHistory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of an exchange taken on the exchange thread when an audit event is raised, so the
+ * event can be rendered and stored later on by another thread.
+ * <p/>
+ * Headers, properties and bodies are copied deeply, as the exchange keeps changing them while the event
+ * waits in the queue: maps and collections are copied into new ones and the other values, which the templates
+ * render as strings, are captured as strings. The getters mirror the exchange properties used by the audit
+ * templates.
+ */
+public final class AuditEvent {
+    private static final int MAX_COPY_ATTEMPTS = 3;
+
+    private final String event;
+    private final Date timestamp;
+    private final String exchangeId;
+    private final String fromRouteId;
+    private final String contextId;
+    private final String fromEndpoint;
+    private final String pattern;
+    private final Map<String, Object> properties;
+    private final String exception;
+    private final AuditMessage in;
+    private final AuditMessage out;
+
+    public AuditEvent(String event, Date timestamp, Exchange exchange) {
+        this.event = event;
+        this.timestamp = timestamp;
+        this.exchangeId = exchange.getExchangeId();
+        this.fromRouteId = exchange.getFromRouteId();
+        this.contextId = exchange.getContext() != null ? exchange.getContext().getName() : null;
+        this.fromEndpoint = String.valueOf(exchange.getFromEndpoint());
+        this.pattern = String.valueOf(exchange.getPattern());
+        this.properties = copy(exchange.getProperties());
+        this.exception = exchange.getException() != null ? exchange.getException().toString() : null;
+        this.in = new AuditMessage(exchange.getIn());
+        this.out = exchange.hasOut() ? new AuditMessage(exchange.getOut()) : null;
+    }
+
+    private static Map<String, Object> copy(Map<String, Object> map) {
+        if (map == null || map.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(copyMap(map));
+    }
+
+    private static Map<String, Object> copyMap(Map<?, ?> map) {
+        Map<String, Object> copy = new LinkedHashMap<String, Object>();
+        for (Map.Entry<?, ?> entry : snapshot(map.entrySet())) {
+            copy.put(String.valueOf(entry.getKey()), snapshot(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Takes a copy of a value which does not change with the exchange, keeping the structure of maps and
+     * collections and the values the templates render specially
+     */
+    static Object snapshot(Object value) {
+        if (value == null || value instanceof String || value instanceof MessageHistory) {
+            return value;
+        } else if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        } else if (value instanceof Map) {
+            return copyMap((Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            List<Object> copy = new ArrayList<Object>();
+            for (Object o : snapshot((Collection<?>) value)) {
+                copy.add(snapshot(o));
+            }
+            return copy;
+        }
+        return value.toString();
+    }
+
+    /**
+     * Copies the collection, locking it in case it is a synchronized collection, and trying again if it is
+     * modified by another thread of the exchange meanwhile
+     */
+    private static <T> List<T> snapshot(Collection<T> collection) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                synchronized (collection) {
+                    return new ArrayList<T>(collection);
+                }
+            } catch (ConcurrentModificationException e) {
+                if (attempt >= MAX_COPY_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    public String getExchangeId() {
+        return exchangeId;
+    }
+
+    public String getFromRouteId() {
+        return fromRouteId;
+    }
+
+    public String getContextId() {
+        return contextId;
+    }
+
+    public String getFromEndpoint() {
+        return fromEndpoint;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    public String getException() {
+        return exception;
+    }
+
+    public AuditMessage getIn() {
+        return in;
+    }
+
+    public boolean hasOut() {
+        return out != null;
+    }
+
+    public AuditMessage getOut() {
+        return out;
+    }
+
+    public static final class AuditMessage {
+        private final String messageId;
+        private final Map<String, Object> headers;
+        private final Object body;
+
+        AuditMessage(Message message) {
+            this.messageId = message.getMessageId();
+            this.headers = copy(message.getHeaders());
+            this.body = snapshot(message.getBody());
+        }
+
+        public String getMessageId() {
+            return messageId;
+        }
+
+        public Map<String, Object> getHeaders() {
+            return headers;
+        }
+
+        public Object getBody() {
+            return body;
+        }
+    }
+}
@@ -34,14 +34,31 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.EventObject;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Audits the exchanges of the managed camel contexts.
+ * <p/>
+ * The exchange thread only takes an {@link AuditEvent} snapshot of the exchange and puts it in a bounded
+ * queue; a background thread renders the queued events to JSON and stores them in batches. Only one in
+ * every <code>sampleRate</code> exchanges is audited (all of its events are), and events which do not fit
+ * in the queue of <code>queueSize</code> events are dropped and counted. The bound is kept apart from the
+ * queue so that it can be changed while events are queued.
+ * <p/>
+ * The background thread is started by the first audited event, and no more events are audited once the
+ * auditor is stopped, until it is explicitly started again.
  */
 @ManagedResource(description = "Auditor")
 public class Auditor extends SwitchableContainerStrategy implements EventNotifier, AuditorMBean {
@@ -63,6 +80,24 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
     private Map<URL, String> sources = new ConcurrentHashMap<URL, String>();
     private URL defaultTemplateUrl = getClass().getResource("default.mvel");
 
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private volatile int sampleRate = 1;
+    private volatile int queueSize = DEFAULT_QUEUE_SIZE;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private final BlockingQueue<AuditEvent> queue = new LinkedBlockingQueue<AuditEvent>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopped;
+    private volatile Thread thread;
+
+    private final AtomicLong queuedEvents = new AtomicLong();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong sampledOutEvents = new AtomicLong();
+    private final AtomicLong storedEvents = new AtomicLong();
+    private final AtomicLong failedEvents = new AtomicLong();
+
     public Auditor() {
         this(null);
     }
@@ -99,45 +134,179 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
         this.type = type;
     }
 
+    /**
+     * Applies the queue and sampling settings present in the configuration, so that the values set
+     * through JMX are kept when other settings change
+     */
+    @Override
+    public void update(Map<String, String> properties) {
+        super.update(properties);
+        if (properties != null) {
+            if (properties.containsKey("queueSize")) {
+                setQueueSize(intValue(properties.get("queueSize"), queueSize));
+            }
+            if (properties.containsKey("batchSize")) {
+                setBatchSize(intValue(properties.get("batchSize"), batchSize));
+            }
+            if (properties.containsKey("sampleRate")) {
+                setSampleRate(intValue(properties.get("sampleRate"), sampleRate));
+            }
+        }
+    }
+
+    private static int intValue(String value, int defaultValue) {
+        if (value != null && !value.trim().isEmpty()) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Ignoring invalid auditor setting: " + value);
+            }
+        }
+        return defaultValue;
+    }
+
     @Override
     public void notify(EventObject eventObject) throws Exception {
         if (eventObject instanceof AbstractExchangeEvent) {
             AbstractExchangeEvent aee = (AbstractExchangeEvent) eventObject;
-            if (isEnabled(aee.getExchange())) {
+            Exchange exchange = aee.getExchange();
+            if (!stopped && isEnabled(exchange)) {
+                if (!isSampled(exchange)) {
+                    sampledOutEvents.incrementAndGet();
+                    return;
+                }
                 if (aee instanceof ExchangeSendingEvent) {
-                    aee.getExchange().getIn().setHeader("AuditCallId", aee.getExchange().getContext().getUuidGenerator().generateUuid());
+                    exchange.getIn().setHeader("AuditCallId", exchange.getContext().getUuidGenerator().generateUuid());
+                }
+                AuditEvent event;
+                try {
+                    event = new AuditEvent(getEventType(aee), new Date(), exchange);
+                } catch (RuntimeException e) {
+                    failedEvents.incrementAndGet();
+                    LOGGER.debug("Error auditing exchange " + exchange.getExchangeId(), e);
+                    return;
+                }
+                startThread();
+                if (queueDepth.incrementAndGet() <= queueSize) {
+                    queue.offer(event);
+                    queuedEvents.incrementAndGet();
+                } else {
+                    queueDepth.decrementAndGet();
+                    if (droppedEvents.incrementAndGet() % 1000 == 1) {
+                        LOGGER.warn("Audit queue is full, dropped {} events so far", droppedEvents.get());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Picks the same exchanges for all their events
+     */
+    private boolean isSampled(Exchange exchange) {
+        int rate = sampleRate;
+        return rate <= 1 || (exchange.getExchangeId().hashCode() & Integer.MAX_VALUE) % rate == 0;
+    }
+
+    private static String getEventType(AbstractExchangeEvent event) {
+        String eventType = event.getClass().getSimpleName();
+        eventType = eventType.substring("Exchange".length());
+        return eventType.substring(0, eventType.length() - "Event".length());
+    }
+
+    /**
+     * Starts auditing again after {@link #stop()}
+     */
+    public void start() {
+        stopped = false;
+        startThread();
+    }
+
+    /**
+     * Starts the thread which stores the audit events if it is not already running
+     */
+    private void startThread() {
+        if (!stopped && running.compareAndSet(false, true)) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    processEvents();
                 }
-                String json = toJson(aee);
-                if (getStorage() != null) {
-                    getStorage().store(type, System.currentTimeMillis(), json);
+            }, "InsightCamelAuditor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+        if (running.compareAndSet(true, false)) {
+            Thread t = thread;
+            if (t != null) {
+                t.interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    private void processEvents() {
+        List<AuditEvent> batch = new ArrayList<AuditEvent>();
+        while (running.get()) {
+            try {
+                AuditEvent first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    queueDepth.addAndGet(-batch.size());
+                    store(batch);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable e) {
+                LOGGER.warn("Error storing audit events", e);
+            } finally {
+                batch.clear();
             }
         }
     }
 
-    protected String toJson(AbstractExchangeEvent event) {
+    private void store(List<AuditEvent> batch) {
+        StorageService storageService = getStorage();
+        if (storageService == null) {
+            failedEvents.addAndGet(batch.size());
+            return;
+        }
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(Auditor.class.getClassLoader());
-            String eventType = event.getClass().getSimpleName();
-            eventType = eventType.substring("Exchange".length());
-            eventType = eventType.substring(0, eventType.length() - "Event".length());
-
-            CompiledTemplate template = getTemplate(eventType, event.getExchange());
-            Map<String, Object> vars = new HashMap<String, Object>();
-            vars.put("event", eventType);
-            vars.put("host", System.getProperty("runtime.id"));
-            vars.put("timestamp", new Date());
-            vars.put("exchange", event.getExchange());
-
-            return TemplateRuntime.execute(template, context, vars).toString();
+            for (AuditEvent event : batch) {
+                try {
+                    storageService.store(type, event.getTimestamp().getTime(), toJson(event));
+                    storedEvents.incrementAndGet();
+                } catch (Exception e) {
+                    failedEvents.incrementAndGet();
+                    LOGGER.debug("Error storing audit event of exchange " + event.getExchangeId(), e);
+                }
+            }
         } finally {
             Thread.currentThread().setContextClassLoader(cl);
         }
     }
 
-    private CompiledTemplate getTemplate(String event, Exchange exchange) {
-        String source = getTemplateSource(event, exchange);
+    protected String toJson(AuditEvent event) {
+        CompiledTemplate template = getTemplate(event.getEvent());
+        Map<String, Object> vars = new HashMap<String, Object>();
+        vars.put("event", event.getEvent());
+        vars.put("host", System.getProperty("runtime.id"));
+        vars.put("timestamp", event.getTimestamp());
+        vars.put("exchange", event);
+
+        return TemplateRuntime.execute(template, context, vars).toString();
+    }
+
+    private CompiledTemplate getTemplate(String event) {
+        String source = getTemplateSource(event);
         CompiledTemplate template = templates.get(source);
         if (template == null) {
             template = TemplateCompiler.compileTemplate(source, context);
@@ -146,9 +315,9 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
         return template;
     }
 
-    private String getTemplateSource(String event, Exchange exchange) {
+    private String getTemplateSource(String event) {
         String source = null;
-        URL url = getTemplateUrl(event, exchange);
+        URL url = getTemplateUrl(event);
         if (url != null) {
             try {
                 source = loadSource(url);
@@ -166,7 +335,7 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
         return source;
     }
 
-    private URL getTemplateUrl(String event, Exchange exchange) {
+    private URL getTemplateUrl(String event) {
         return null;
     }
 
@@ -179,6 +348,79 @@ public class Auditor extends SwitchableContainerStrategy implements EventNotifie
         return source;
     }
 
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = Math.max(1, sampleRate);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Changes the bound of the queue. Events queued beyond a smaller bound are still stored, new events
+     * are dropped until the queue is back within the bound.
+     */
+    @Override
+    public void setQueueSize(int queueSize) {
+        this.queueSize = Math.max(1, queueSize);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    @Override
+    public long getQueuedEvents() {
+        return queuedEvents.get();
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    @Override
+    public long getSampledOutEvents() {
+        return sampledOutEvents.get();
+    }
+
+    @Override
+    public long getStoredEvents() {
+        return storedEvents.get();
+    }
+
+    @Override
+    public long getFailedEvents() {
+        return failedEvents.get();
+    }
+
+    @Override
+    public void resetStatistics() {
+        queuedEvents.set(0);
+        droppedEvents.set(0);
+        sampledOutEvents.set(0);
+        storedEvents.set(0);
+        failedEvents.set(0);
+    }
+
     @Override
     public boolean isEnabled(EventObject eventObject) {
         return true;
@@ -21,4 +21,39 @@ import io.fabric8.insight.camel.base.SwitchableContainerStrategyMBean;
  *
  */
 public interface AuditorMBean extends SwitchableContainerStrategyMBean {
+
+    int getSampleRate();
+
+    /**
+     * Audits one in every sampleRate exchanges
+     */
+    void setSampleRate(int sampleRate);
+
+    int getBatchSize();
+
+    void setBatchSize(int batchSize);
+
+    int getQueueSize();
+
+    void setQueueSize(int queueSize);
+
+    int getQueueDepth();
+
+    long getQueuedEvents();
+
+    /**
+     * @return the number of events dropped because the queue was full
+     */
+    long getDroppedEvents();
+
+    /**
+     * @return the number of events of exchanges which were not sampled
+     */
+    long getSampledOutEvents();
+
+    long getStoredEvents();
+
+    long getFailedEvents();
+
+    void resetStatistics();
 }
@@ -108,6 +108,7 @@ public class InsightCamel {
         for (ServiceRegistration sr : commandRegistrations) {
             sr.unregister();
         }
+        ((Auditor) strategies.get(AUDITOR)).stop();
         if (mbeanServer != null) {
             for (ContainerStrategy strategy : strategies.values()) {
                 try {
@@ -29,11 +29,16 @@ import org.apache.camel.spi.ProcessorFactory;
 import org.apache.camel.spi.RouteContext;
 import org.apache.camel.util.StringHelper;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  *
@@ -41,7 +46,9 @@ import java.util.concurrent.ConcurrentHashMap;
 @ManagedResource(description = "Profiler")
 public class Profiler extends SwitchableContainerStrategy implements ProfilerMBean {
 
-    private final Map<ProcessorDefinition<?>, Stats> statistics = new LinkedHashMap<ProcessorDefinition<?>, Stats>();
+    private static final double[] PERCENTILES = {50, 95, 99};
+
+    private final ConcurrentMap<ProcessorDefinition<?>, Stats> statistics = new ConcurrentHashMap<ProcessorDefinition<?>, Stats>();
     private final Map<String, ExchangeData> exchanges = new ConcurrentHashMap<String, ExchangeData>();
 
     public Profiler() {
@@ -89,21 +96,17 @@ public class Profiler extends SwitchableContainerStrategy implements ProfilerMBe
     }
 
     public String dumpStatsAsXml(String routeId) {
-        Set<RouteDefinition> routes = new HashSet<RouteDefinition>();
-        for (ProcessorDefinition<?> definition : statistics.keySet()) {
-            RouteDefinition route = ProcessorDefinitionHelper.getRoute(definition);
-            routes.add(route);
-        }
+        List<Stats> sorted = sortedStats();
         StringBuilder sb = new StringBuilder();
         sb.append("<profiling>");
-        for (RouteDefinition route : routes) {
+        for (RouteDefinition route : routes(sorted)) {
             if (routeId == null || routeId.equals(route.getId())) {
                 sb.append("<route");
                 if (route.getId() != null) {
-                    sb.append(" id=\"").append(route.getId()).append("\"");
+                    sb.append(" id=\"").append(StringHelper.xmlEncode(route.getId())).append("\"");
                 }
                 sb.append(">");
-                appendStats(sb, route);
+                appendStats(sb, sorted, route);
                 sb.append("</route>");
             }
         }
@@ -115,40 +118,158 @@ public class Profiler extends SwitchableContainerStrategy implements ProfilerMBe
         return dumpStatsAsXml(null);
     }
 
-    protected void appendStats(StringBuilder sb, ProcessorDefinition<?> definition) {
+    protected void appendStats(StringBuilder sb, List<Stats> sorted, ProcessorDefinition<?> definition) {
         Stats stats = statistics.get(definition);
         if (stats != null) {
             sb.append("<processor");
             if (definition.getId() != null) {
-                sb.append(" id=\"").append(definition.getId()).append("\"");
+                sb.append(" id=\"").append(StringHelper.xmlEncode(definition.getId())).append("\"");
             }
             sb.append(" definition=\"").append(StringHelper.xmlEncode(definition.toString())).append("\"");
             if (definition.getLabel() != null) {
-                sb.append(" label=\"").append(definition.getLabel()).append("\"");
+                sb.append(" label=\"").append(StringHelper.xmlEncode(definition.getLabel())).append("\"");
             }
             sb.append(" count=\"").append(stats.getCount()).append("\"");
             sb.append(" self=\"").append(stats.getSelf()).append("\"");
             sb.append(" total=\"").append(stats.getTotal()).append("\"");
+            for (double percentile : PERCENTILES) {
+                sb.append(" selfP").append((int) percentile).append("=\"").append(stats.getSelfPercentile(percentile)).append("\"");
+            }
+            for (double percentile : PERCENTILES) {
+                sb.append(" totalP").append((int) percentile).append("=\"").append(stats.getTotalPercentile(percentile)).append("\"");
+            }
             sb.append(">");
-            for (ProcessorDefinition<?> child : statistics.keySet()) {
-                if (child.getParent() == definition) {
-                    appendStats(sb, child);
+            for (Stats child : sorted) {
+                if (child.definition.getParent() == definition) {
+                    appendStats(sb, sorted, child.definition);
                 }
             }
             sb.append("</processor>");
         }
     }
 
+    public String dumpStatsAsJson(String routeId) {
+        List<Stats> sorted = sortedStats();
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"routes\":[");
+        boolean first = true;
+        for (RouteDefinition route : routes(sorted)) {
+            if (routeId == null || routeId.equals(route.getId())) {
+                if (!first) {
+                    sb.append(",");
+                }
+                first = false;
+                sb.append("{\"id\":");
+                appendJsonString(sb, route.getId());
+                sb.append(",\"processors\":[");
+                appendJsonStats(sb, sorted, route);
+                sb.append("]}");
+            }
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    public String dumpAllStatsAsJson() {
+        return dumpStatsAsJson(null);
+    }
+
+    /**
+     * Appends the stats of the children of the given definition
+     */
+    protected void appendJsonStats(StringBuilder sb, List<Stats> sorted, ProcessorDefinition<?> parent) {
+        boolean first = true;
+        for (Stats stats : sorted) {
+            ProcessorDefinition<?> definition = stats.definition;
+            if (definition.getParent() != parent) {
+                continue;
+            }
+            if (!first) {
+                sb.append(",");
+            }
+            first = false;
+            sb.append("{\"id\":");
+            appendJsonString(sb, definition.getId());
+            sb.append(",\"definition\":");
+            appendJsonString(sb, definition.toString());
+            sb.append(",\"label\":");
+            appendJsonString(sb, definition.getLabel());
+            sb.append(",\"count\":").append(stats.getCount());
+            sb.append(",\"self\":").append(stats.getSelf());
+            sb.append(",\"total\":").append(stats.getTotal());
+            for (double percentile : PERCENTILES) {
+                sb.append(",\"selfP").append((int) percentile).append("\":").append(stats.getSelfPercentile(percentile));
+            }
+            for (double percentile : PERCENTILES) {
+                sb.append(",\"totalP").append((int) percentile).append("\":").append(stats.getTotalPercentile(percentile));
+            }
+            sb.append(",\"processors\":[");
+            appendJsonStats(sb, sorted, definition);
+            sb.append("]}");
+        }
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Returns the stats in the order their processors were created
+     */
+    private List<Stats> sortedStats() {
+        List<Stats> answer = new ArrayList<Stats>(statistics.values());
+        Collections.sort(answer, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats s1, Stats s2) {
+                return s1.sequence < s2.sequence ? -1 : (s1.sequence == s2.sequence ? 0 : 1);
+            }
+        });
+        return answer;
+    }
+
+    private static Set<RouteDefinition> routes(List<Stats> sorted) {
+        Set<RouteDefinition> routes = new LinkedHashSet<RouteDefinition>();
+        for (Stats stats : sorted) {
+            RouteDefinition route = ProcessorDefinitionHelper.getRoute(stats.definition);
+            if (route != null) {
+                routes.add(route);
+            }
+        }
+        return routes;
+    }
+
     public Stats getStats(ProcessorDefinition<?> definition) {
         if (definition != null) {
-            synchronized (statistics) {
-                Stats stats = statistics.get(definition);
+            Stats stats = statistics.get(definition);
+            if (stats == null) {
+                Stats value = new Stats(definition, getStats(definition.getParent()));
+                stats = statistics.putIfAbsent(definition, value);
                 if (stats == null) {
-                    stats = new Stats(definition, getStats(definition.getParent()));
-                    statistics.put(definition, stats);
+                    stats = value;
                 }
-                return stats;
             }
+            return stats;
         }
         return null;
     }
@@ -159,8 +280,15 @@ public class Profiler extends SwitchableContainerStrategy implements ProfilerMBe
         }
     }
 
+    /**
+     * @return the stats of each processor in the order the processors were created
+     */
     public Map<ProcessorDefinition<?>, Stats> getStatistics() {
-        return statistics;
+        Map<ProcessorDefinition<?>, Stats> answer = new LinkedHashMap<ProcessorDefinition<?>, Stats>();
+        for (Stats stats : sortedStats()) {
+            answer.put(stats.definition, stats);
+        }
+        return answer;
     }
 
 }
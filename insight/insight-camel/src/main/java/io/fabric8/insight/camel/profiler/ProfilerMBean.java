@@ -26,4 +26,12 @@ public interface ProfilerMBean extends SwitchableContainerStrategyMBean {
 
     String dumpStatsAsXml(String routeId);
 
+    String dumpAllStatsAsJson();
+
+    /**
+     * @return the statistics of the route (or all routes if null) as JSON, with the self and total
+     * time 50th, 95th and 99th percentiles of each processor in nanoseconds
+     */
+    String dumpStatsAsJson(String routeId);
+
 }
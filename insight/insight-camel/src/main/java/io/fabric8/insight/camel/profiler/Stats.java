@@ -15,29 +15,33 @@
  */
 package io.fabric8.insight.camel.profiler;
 
+import io.fabric8.common.util.LatencyHistogram;
 import org.apache.camel.model.ProcessorDefinition;
 
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * The profiling statistics of a processor: the number of exchanges it processed along with the sum and
+ * the distribution of the time spent in the processor itself (self) and in the processor and its children
+ * (total), in nanoseconds. Updates are lock free and striped so route threads do not contend.
  */
 public class Stats {
-    final AtomicLong count = new AtomicLong();
-    final AtomicLong self = new AtomicLong();
-    final AtomicLong total = new AtomicLong();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    final LatencyHistogram selfHistogram = new LatencyHistogram();
+    final LatencyHistogram totalHistogram = new LatencyHistogram();
     final Stats parent;
     final ProcessorDefinition definition;
+    final long sequence = SEQUENCE.incrementAndGet();
 
     public Stats(ProcessorDefinition definition, Stats parent) {
         this.definition = definition;
         this.parent = parent;
     }
 
-    public synchronized void addTime(long self, long total) {
-        this.count.incrementAndGet();
-        this.self.addAndGet(self);
-        this.total.addAndGet(total);
+    public void addTime(long self, long total) {
+        this.selfHistogram.record(self);
+        this.totalHistogram.record(total);
     }
 
     public Stats getParent() {
@@ -45,21 +49,34 @@ public class Stats {
     }
 
     public long getCount() {
-        return count.get();
+        return selfHistogram.getCount();
     }
 
     public long getSelf() {
-        return self.get();
+        return selfHistogram.getTotal();
     }
 
     public long getTotal() {
-        return total.get();
+        return totalHistogram.getTotal();
+    }
+
+    /**
+     * @return the self time in nanoseconds below which the given percentage of the exchanges fall
+     */
+    public long getSelfPercentile(double percentile) {
+        return selfHistogram.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return the total time in nanoseconds below which the given percentage of the exchanges fall
+     */
+    public long getTotalPercentile(double percentile) {
+        return totalHistogram.getValueAtPercentile(percentile);
     }
 
     public void reset() {
-        count.set(0);
-        self.set(0);
-        total.set(0);
+        selfHistogram.reset();
+        totalHistogram.reset();
     }
 
     public String toString() {
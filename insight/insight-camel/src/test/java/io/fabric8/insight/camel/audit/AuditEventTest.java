@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.audit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AuditEventTest {
+
+    @Test
+    public void testBodyKeepsItsStructure() throws Exception {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("name", "test");
+        body.put("values", Arrays.asList(1, 2));
+        Exchange exchange = createExchange();
+        exchange.getIn().setBody(body);
+
+        AuditEvent event = new AuditEvent("Created", new Date(), exchange);
+        body.put("other", "value");
+
+        assertTrue(event.getIn().getBody() instanceof Map);
+        assertEquals("{\"name\":\"test\",\"values\":[\"1\",\"2\"]}", ScriptUtils.toJson(event.getIn().getBody()));
+    }
+
+    @Test
+    public void testPropertiesAreCopiedDeeply() throws Exception {
+        List<Object> history = new LinkedList<Object>();
+        history.add("from");
+        Exchange exchange = createExchange();
+        exchange.setProperty(Exchange.MESSAGE_HISTORY, history);
+        exchange.getIn().setHeader("count", 1);
+
+        AuditEvent event = new AuditEvent("Created", new Date(), exchange);
+        // the exchange goes on while the event waits in the queue
+        history.add("to");
+        exchange.getIn().setHeader("count", 2);
+
+        assertEquals(Arrays.asList("from"), event.getProperties().get(Exchange.MESSAGE_HISTORY));
+        assertEquals("1", event.getIn().getHeaders().get("count"));
+        assertEquals("[\"from\"]", ScriptUtils.toJson(event.getProperties().get(Exchange.MESSAGE_HISTORY)));
+    }
+
+    static Exchange createExchange() throws Exception {
+        CamelContext context = new DefaultCamelContext();
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setBody("body");
+        return exchange;
+    }
+}
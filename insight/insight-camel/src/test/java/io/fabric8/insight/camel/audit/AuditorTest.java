@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.audit;
+
+import io.fabric8.api.scr.ValidatingReference;
+import io.fabric8.insight.storage.StorageService;
+import org.apache.camel.management.event.ExchangeCreatedEvent;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AuditorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ValidatingReference<StorageService> storage = new ValidatingReference<StorageService>();
+    private final Auditor auditor = new Auditor(storage);
+
+    @After
+    public void cleanup() {
+        release.countDown();
+        auditor.stop();
+    }
+
+    @Test
+    public void testUpdateKeepsJmxSettings() {
+        auditor.setQueueSize(5);
+        auditor.setSampleRate(3);
+
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("batchSize", "10");
+        auditor.update(properties);
+        assertEquals(5, auditor.getQueueSize());
+        assertEquals(3, auditor.getSampleRate());
+        assertEquals(10, auditor.getBatchSize());
+
+        properties.put("queueSize", "7");
+        auditor.update(properties);
+        assertEquals(7, auditor.getQueueSize());
+        assertEquals(3, auditor.getSampleRate());
+    }
+
+    @Test
+    public void testQueueIsBounded() throws Exception {
+        storage.bind(new StorageService() {
+            @Override
+            public void store(String type, long timestamp, String jsonData) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        auditor.setBatchSize(1);
+        auditor.setQueueSize(2);
+
+        // the storage is stuck on the first event, which leaves room for two more
+        for (int i = 0; i < 10; i++) {
+            auditor.notify(new ExchangeCreatedEvent(AuditEventTest.createExchange()));
+        }
+        assertEquals(10, auditor.getQueuedEvents() + auditor.getDroppedEvents());
+        assertTrue(auditor.getDroppedEvents() >= 7);
+
+        // a larger queue takes new events without losing the queued ones
+        auditor.setQueueSize(10);
+        auditor.notify(new ExchangeCreatedEvent(AuditEventTest.createExchange()));
+        long queued = auditor.getQueuedEvents();
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (auditor.getStoredEvents() < queued && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(queued, auditor.getStoredEvents());
+        assertEquals(0, auditor.getQueueDepth());
+    }
+
+    @Test
+    public void testNoAuditAfterStop() throws Exception {
+        auditor.stop();
+        auditor.notify(new ExchangeCreatedEvent(AuditEventTest.createExchange()));
+        assertEquals(0, auditor.getQueuedEvents());
+        assertEquals(0, auditor.getQueueDepth());
+
+        auditor.start();
+        auditor.notify(new ExchangeCreatedEvent(AuditEventTest.createExchange()));
+        assertEquals(1, auditor.getQueuedEvents());
+    }
+}
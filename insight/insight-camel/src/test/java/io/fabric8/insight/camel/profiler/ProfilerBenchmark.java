@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.profiler;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead the {@link Profiler} adds to each exchange sent through a small route, with
+ * several threads sending so contention on the shared per processor statistics shows up. Compare the
+ * <code>enabled=true</code> runs against the <code>enabled=false</code> ones.
+ * <p/>
+ * Run from the IDE or via the main method with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(4)
+@Fork(1)
+public class ProfilerBenchmark {
+
+    @Param({"false", "true"})
+    boolean enabled;
+
+    private CamelContext context;
+    private ProducerTemplate template;
+    private Profiler profiler;
+
+    @Setup
+    public void setup() throws Exception {
+        profiler = new Profiler();
+        if (enabled) {
+            profiler.enable();
+        }
+        context = new DefaultCamelContext();
+        profiler.manage(context);
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() throws Exception {
+                Processor processor = new Processor() {
+                    @Override
+                    public void process(Exchange exchange) throws Exception {
+                        exchange.getIn().setHeader("length", exchange.getIn().getBody(String.class).length());
+                    }
+                };
+                from("direct:start")
+                        .process(processor)
+                        .choice()
+                            .when(header("length").isGreaterThan(3))
+                                .setHeader("size", constant("large"))
+                            .otherwise()
+                                .setHeader("size", constant("small"))
+                        .end()
+                        .process(processor)
+                        .to("log:profiler?level=TRACE");
+            }
+        });
+        context.start();
+        template = context.createProducerTemplate();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        template.stop();
+        context.stop();
+    }
+
+    @Benchmark
+    public Object sendBody() {
+        return template.requestBody("direct:start", "hello");
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ProfilerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
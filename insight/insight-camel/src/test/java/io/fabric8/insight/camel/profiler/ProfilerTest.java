@@ -0,0 +1,94 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.camel.profiler;
+
+import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.model.ToDefinition;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProfilerTest {
+
+    private static final String ROUTE_ID = "route \"<1>\" & \\";
+    private static final String PROCESSOR_ID = "to \"1\"\n\t<2>";
+
+    private Profiler profiler;
+    private Stats stats;
+
+    @Before
+    public void setUp() {
+        RouteDefinition route = new RouteDefinition();
+        route.setId(ROUTE_ID);
+        ToDefinition to = new ToDefinition("log:test?level=INFO&showAll=true");
+        to.setId(PROCESSOR_ID);
+        route.addOutput(to);
+
+        profiler = new Profiler();
+        stats = profiler.getStats(to);
+        for (int i = 1; i <= 100; i++) {
+            stats.addTime(i, 1000 * i);
+        }
+    }
+
+    @Test
+    public void testDumpStatsAsJson() {
+        String json = profiler.dumpStatsAsJson(null);
+        assertTrue(json, json.startsWith("{\"routes\":[{\"id\":\"route \\\"<1>\\\" & \\\\\",\"processors\":[{\"id\":"));
+        assertTrue(json, json.contains("{\"id\":\"to \\\"1\\\"\\n\\t<2>\",\"definition\":"));
+        assertTrue(json, json.contains(",\"label\":\"log:test?level=INFO&showAll=true\",\"count\":100,\"self\":5050,\"total\":5050000,"));
+        assertTrue(json, json.contains(",\"selfP50\":" + stats.getSelfPercentile(50) + ",\"selfP95\":" + stats.getSelfPercentile(95)
+                + ",\"selfP99\":" + stats.getSelfPercentile(99) + ",\"totalP50\":" + stats.getTotalPercentile(50)
+                + ",\"totalP95\":" + stats.getTotalPercentile(95) + ",\"totalP99\":" + stats.getTotalPercentile(99) + ","));
+        assertEquals("{\"routes\":[]}", profiler.dumpStatsAsJson("other"));
+    }
+
+    @Test
+    public void testDumpStatsAsXml() throws Exception {
+        String xml = profiler.dumpStatsAsXml(ROUTE_ID);
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+        Element route = (Element) document.getDocumentElement().getElementsByTagName("route").item(0);
+        assertEquals(ROUTE_ID, route.getAttribute("id"));
+
+        Element processor = (Element) route.getElementsByTagName("processor").item(1);
+        assertEquals(PROCESSOR_ID.replace('\n', ' ').replace('\t', ' '), processor.getAttribute("id"));
+        assertEquals("log:test?level=INFO&showAll=true", processor.getAttribute("label"));
+        assertEquals("100", processor.getAttribute("count"));
+        assertEquals("5050", processor.getAttribute("self"));
+        assertEquals("5050000", processor.getAttribute("total"));
+        assertPercentile(50, Long.parseLong(processor.getAttribute("selfP50")));
+        assertPercentile(95, Long.parseLong(processor.getAttribute("selfP95")));
+        assertPercentile(99, Long.parseLong(processor.getAttribute("selfP99")));
+        assertPercentile(50 * 1000, Long.parseLong(processor.getAttribute("totalP50")));
+        assertPercentile(95 * 1000, Long.parseLong(processor.getAttribute("totalP95")));
+        assertPercentile(99 * 1000, Long.parseLong(processor.getAttribute("totalP99")));
+    }
+
+    /**
+     * The histograms report values within about 3% of the recorded ones
+     */
+    private static void assertPercentile(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual, actual >= expected && actual <= expected * 1.04);
+    }
+}
@@ -19,6 +19,7 @@ import io.fabric8.insight.metrics.model.MetricsStorageService;
 import io.fabric8.insight.metrics.model.QueryResult;
 import io.fabric8.insight.metrics.mvel.MetricsStorageServiceImpl;
 import io.fabric8.insight.storage.StorageService;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.template.put.PutIndexTemplateRequest;
 import org.elasticsearch.action.admin.indices.template.put.PutIndexTemplateRequestBuilder;
@@ -35,27 +36,93 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-public abstract class AbstractElasticsearchStorage implements StorageService, MetricsStorageService, Runnable {
+/**
+ * Stores documents in Elasticsearch through a bounded queue which a single thread drains into bulk requests
+ * of up to <code>ingest.maxBatchSize</code> documents, waiting up to <code>ingest.lingerMillis</code> for a batch
+ * to fill up. Up to <code>ingest.maxInFlight</code> bulk requests are sent concurrently; once they are all
+ * outstanding the queue backs up and the <code>ingest.overflowPolicy</code> decides what happens to new documents:
+ * <ul>
+ *     <li>DROP, the default, drops them</li>
+ *     <li>SAMPLE keeps one in every <code>ingest.sampleRate</code> documents while the queue is more than three
+ *     quarters full and drops the rest, so a slow cluster still gets an even spread of the data</li>
+ *     <li>BLOCK waits up to <code>ingest.blockTimeoutMillis</code> for space in the queue before dropping them</li>
+ * </ul>
+ * The queue holds up to <code>ingest.queueSize</code> documents and dropped documents are counted in the
+ * statistics.
+ * <p>
+ * Log appenders and auditors store their events from the threads they observe, so BLOCK is only meant for
+ * senders which can afford to wait. The threads of the storage itself never wait, as anything they log may
+ * come back to this queue.
+ */
+public abstract class AbstractElasticsearchStorage implements StorageService, MetricsStorageService, ElasticsearchIngest, Runnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractElasticsearchStorage.class);
 
     private static final SimpleDateFormat indexFormat = new SimpleDateFormat("yyyy.MM.dd");
 
+    // set on the threads sending or completing bulk requests, which must never wait for the queue
+    private static final ThreadLocal<Boolean> INGEST_THREAD = new ThreadLocal<Boolean>();
+
+    public enum OverflowPolicy {
+        DROP, SAMPLE, BLOCK
+    }
+
+    public static final String QUEUE_SIZE = "ingest.queueSize";
+    public static final String MAX_BATCH_SIZE = "ingest.maxBatchSize";
+    public static final String LINGER_MILLIS = "ingest.lingerMillis";
+    public static final String MAX_IN_FLIGHT = "ingest.maxInFlight";
+    public static final String OVERFLOW_POLICY = "ingest.overflowPolicy";
+    public static final String BLOCK_TIMEOUT_MILLIS = "ingest.blockTimeoutMillis";
+    public static final String SAMPLE_RATE = "ingest.sampleRate";
+
+    private int queueSize = 10000;
+
     private int max = 1000;
 
+    private long lingerMillis = 100;
+
+    private int maxInFlight = 2;
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    private long blockTimeoutMillis = 1000;
+
+    private int sampleRate = 10;
+
     protected Thread thread;
 
     protected volatile boolean running;
 
-    private BlockingQueue<ActionRequest> queue = new LinkedBlockingQueue<ActionRequest>();
+    private volatile BlockingQueue<Pending> queue = new ArrayBlockingQueue<Pending>(queueSize);
+
+    private volatile Semaphore inFlight = new Semaphore(maxInFlight);
 
     private MetricsStorageService metricsStorage = new MetricsStorageServiceImpl(this);
 
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong bulkFailures = new AtomicLong();
+    private final AtomicLong bulkTimeTotal = new AtomicLong();
+    private final AtomicLong bulkTimeMax = new AtomicLong();
+    private final AtomicLong latencyTotal = new AtomicLong();
+    private final AtomicLong latencyMax = new AtomicLong();
+
     protected void putInsightTemplate(String indexTemplateLocation) {
         IndicesAdminClient indicesAdminClient = getNode().client().admin().indices();
 
@@ -74,6 +141,53 @@ public abstract class AbstractElasticsearchStorage implements StorageService, Me
         indicesAdminClient.putTemplate(putInsightTemplateRequest).actionGet();
     }
 
+    /**
+     * Configures the ingest queue from the <code>ingest.*</code> properties of the component configuration,
+     * keeping the defaults for any missing properties. Must be called before the storage is started.
+     */
+    protected void configure(Map<String, ?> configuration) {
+        if (configuration != null) {
+            queueSize = intValue(configuration, QUEUE_SIZE, queueSize);
+            max = Math.max(1, intValue(configuration, MAX_BATCH_SIZE, max));
+            lingerMillis = intValue(configuration, LINGER_MILLIS, (int) lingerMillis);
+            maxInFlight = Math.max(1, intValue(configuration, MAX_IN_FLIGHT, maxInFlight));
+            blockTimeoutMillis = intValue(configuration, BLOCK_TIMEOUT_MILLIS, (int) blockTimeoutMillis);
+            sampleRate = Math.max(1, intValue(configuration, SAMPLE_RATE, sampleRate));
+            Object policy = configuration.get(OVERFLOW_POLICY);
+            if (policy != null) {
+                overflowPolicy = OverflowPolicy.valueOf(policy.toString().trim().toUpperCase());
+            }
+        }
+        queue = new ArrayBlockingQueue<Pending>(Math.max(1, queueSize));
+        inFlight = new Semaphore(maxInFlight);
+    }
+
+    private static int intValue(Map<String, ?> configuration, String key, int defaultValue) {
+        Object value = configuration.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value != null && !value.toString().trim().isEmpty()) {
+            return Integer.parseInt(value.toString().trim());
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Starts the thread which sends the queued documents
+     */
+    protected void start(String threadName) {
+        running = true;
+        thread = new Thread(this, threadName);
+        thread.start();
+    }
+
+    protected void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
     @Override
     public void store(String type, long timestamp, QueryResult queryResult) {
         metricsStorage.store(type, timestamp, queryResult);
@@ -88,36 +202,230 @@ public abstract class AbstractElasticsearchStorage implements StorageService, Me
                 .type(type)
                 .source(jsonData)
                 .create(true);
-        queue.add(ir);
+        enqueue(ir);
+    }
+
+    private void enqueue(ActionRequest request) {
+        BlockingQueue<Pending> q = queue;
+        Pending pending = new Pending(request, System.nanoTime());
+        boolean added;
+        switch (overflowPolicy) {
+            case SAMPLE:
+                if (q.remainingCapacity() < queueSize / 4 && sampleCounter.incrementAndGet() % sampleRate != 0) {
+                    added = false;
+                } else {
+                    added = q.offer(pending);
+                }
+                break;
+            case BLOCK:
+                if (isIngestThread()) {
+                    added = q.offer(pending);
+                    break;
+                }
+                try {
+                    added = q.offer(pending, blockTimeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    added = false;
+                }
+                break;
+            default:
+                added = q.offer(pending);
+        }
+        if (added) {
+            accepted.incrementAndGet();
+        } else if (dropped.incrementAndGet() % 1000 == 1) {
+            // the warning itself may be stored by a log appender, which must not wait either
+            boolean nested = enterIngest();
+            try {
+                LOGGER.warn("Elasticsearch ingest queue is full, dropped {} documents so far", dropped.get());
+            } finally {
+                exitIngest(nested);
+            }
+        }
+    }
+
+    static boolean isIngestThread() {
+        return INGEST_THREAD.get() != null;
+    }
+
+    /**
+     * Marks the current thread as a thread of the storage
+     *
+     * @return whether it was already marked, to be given back to {@link #exitIngest(boolean)}
+     */
+    static boolean enterIngest() {
+        boolean nested = isIngestThread();
+        INGEST_THREAD.set(Boolean.TRUE);
+        return nested;
+    }
+
+    static void exitIngest(boolean nested) {
+        if (!nested) {
+            INGEST_THREAD.remove();
+        }
     }
 
     public void run() {
+        enterIngest();
+        List<Pending> batch = new ArrayList<Pending>(max);
         while (running) {
             try {
-                ActionRequest req = queue.take();
-                // Send data
-                BulkRequest bulk = new BulkRequest();
-                int nb = 0;
-                while (req != null && (nb == 0 || nb < max)) {
-                    bulk.add(req);
-                    nb++;
-                    req = queue.poll();
-                }
-                if (bulk.numberOfActions() > 0) {
-                    BulkResponse rep = getNode().client().bulk(bulk).actionGet();
-                    for (BulkItemResponse bir : rep.getItems()) {
-                        if (bir.isFailed()) {
-                            LOGGER.warn("Error executing request: {}", bir.getFailureMessage());
+                BlockingQueue<Pending> q = queue;
+                Pending first = q.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (batch.size() < max) {
+                    if (q.drainTo(batch, max - batch.size()) == 0) {
+                        long remaining = deadline - System.nanoTime();
+                        Pending next = remaining > 0 ? q.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
                         }
+                        batch.add(next);
                     }
                 }
+                send(batch);
+            } catch (InterruptedException e) {
+                if (running) {
+                    LOGGER.warn("Interrupted while sending requests", e);
+                }
             } catch (Exception e) {
                 if (running) {
                     LOGGER.warn("Error while sending requests", e);
                 }
+            } finally {
+                batch.clear();
             }
         }
     }
 
+    private void send(List<Pending> batch) throws InterruptedException {
+        final Semaphore permits = inFlight;
+        permits.acquire();
+        final BulkRequest bulk = new BulkRequest();
+        final long oldest = batch.get(0).enqueued;
+        for (Pending pending : batch) {
+            bulk.add(pending.request);
+        }
+        final int size = batch.size();
+        final long start = System.nanoTime();
+        try {
+            getNode().client().bulk(bulk, new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    boolean nested = enterIngest();
+                    try {
+                        int failures = 0;
+                        for (BulkItemResponse bir : response.getItems()) {
+                            if (bir.isFailed()) {
+                                failures++;
+                                LOGGER.warn("Error executing request: {}", bir.getFailureMessage());
+                            }
+                        }
+                        indexed.addAndGet(size - failures);
+                        failed.addAndGet(failures);
+                        completed(start, oldest);
+                    } finally {
+                        permits.release();
+                        exitIngest(nested);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    boolean nested = enterIngest();
+                    try {
+                        bulkFailures.incrementAndGet();
+                        failed.addAndGet(size);
+                        completed(start, oldest);
+                        if (running) {
+                            LOGGER.warn("Error while sending requests", e);
+                        }
+                    } finally {
+                        permits.release();
+                        exitIngest(nested);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            bulkFailures.incrementAndGet();
+            failed.addAndGet(size);
+            throw e;
+        }
+    }
+
+    private void completed(long start, long oldest) {
+        long now = System.nanoTime();
+        long bulkTime = TimeUnit.NANOSECONDS.toMillis(now - start);
+        long latency = TimeUnit.NANOSECONDS.toMillis(now - oldest);
+        bulkRequests.incrementAndGet();
+        bulkTimeTotal.addAndGet(bulkTime);
+        updateMax(bulkTimeMax, bulkTime);
+        latencyTotal.addAndGet(latency);
+        updateMax(latencyMax, latency);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    @Override
+    public String getIngestName() {
+        return thread != null ? thread.getName() : getClass().getSimpleName();
+    }
+
+    @Override
+    public Map<String, Object> getIngestStatistics() {
+        Map<String, Object> answer = new LinkedHashMap<String, Object>();
+        long requests = bulkRequests.get();
+        answer.put("queueDepth", queue.size());
+        answer.put("queueCapacity", queueSize);
+        answer.put("overflowPolicy", overflowPolicy.name());
+        answer.put("inFlight", maxInFlight - inFlight.availablePermits());
+        answer.put("accepted", accepted.get());
+        answer.put("dropped", dropped.get());
+        answer.put("indexed", indexed.get());
+        answer.put("failed", failed.get());
+        answer.put("bulkRequests", requests);
+        answer.put("bulkFailures", bulkFailures.get());
+        answer.put("bulkTimeMeanMillis", requests > 0 ? bulkTimeTotal.get() / requests : 0L);
+        answer.put("bulkTimeMaxMillis", bulkTimeMax.get());
+        answer.put("latencyMeanMillis", requests > 0 ? latencyTotal.get() / requests : 0L);
+        answer.put("latencyMaxMillis", latencyMax.get());
+        return answer;
+    }
+
+    @Override
+    public void resetIngestStatistics() {
+        accepted.set(0);
+        dropped.set(0);
+        indexed.set(0);
+        failed.set(0);
+        bulkRequests.set(0);
+        bulkFailures.set(0);
+        bulkTimeTotal.set(0);
+        bulkTimeMax.set(0);
+        latencyTotal.set(0);
+        latencyMax.set(0);
+    }
+
     public abstract Node getNode();
+
+    /**
+     * A queued request along with the time it was queued at
+     */
+    private static class Pending {
+        private final ActionRequest request;
+        private final long enqueued;
+
+        Pending(ActionRequest request, long enqueued) {
+            this.request = request;
+            this.enqueued = enqueued;
+        }
+    }
 }
@@ -28,7 +28,9 @@ import javax.management.ObjectName;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 @Component(immediate = true)
 @Service({ElasticsearchMBean.class})
@@ -40,6 +42,9 @@ public class Elasticsearch implements ElasticsearchMBean {
     @Reference(name = "node", policy = ReferencePolicy.DYNAMIC, referenceInterface = org.elasticsearch.node.Node.class, cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE)
     private final Map<String, Set<Node>> nodesClusterMap = new ConcurrentHashMap<String, Set<Node>>();
 
+    @Reference(name = "ingest", policy = ReferencePolicy.DYNAMIC, referenceInterface = ElasticsearchIngest.class, cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE)
+    private final Set<ElasticsearchIngest> ingests = new CopyOnWriteArraySet<ElasticsearchIngest>();
+
     @Activate
     void activate(Map<String, ?> configuration) throws Exception {
         JMXUtils.registerMBean(this, mbeanServer, new ObjectName("io.fabric8.insight:type=Elasticsearch"));
@@ -86,6 +91,30 @@ public class Elasticsearch implements ElasticsearchMBean {
         return null;
     }
 
+    @Override
+    public Map<String, Map<String, Object>> getIngestStatistics() {
+        Map<String, Map<String, Object>> answer = new TreeMap<String, Map<String, Object>>();
+        for (ElasticsearchIngest ingest : ingests) {
+            answer.put(ingest.getIngestName(), ingest.getIngestStatistics());
+        }
+        return answer;
+    }
+
+    @Override
+    public void resetIngestStatistics() {
+        for (ElasticsearchIngest ingest : ingests) {
+            ingest.resetIngestStatistics();
+        }
+    }
+
+    public void bindIngest(ElasticsearchIngest ingest) {
+        ingests.add(ingest);
+    }
+
+    public void unbindIngest(ElasticsearchIngest ingest) {
+        ingests.remove(ingest);
+    }
+
     public void bindNode(Node node) {
         String clusterName = node.settings().get("cluster.name");
         Set<Node> nodeSet = nodesClusterMap.get(clusterName);
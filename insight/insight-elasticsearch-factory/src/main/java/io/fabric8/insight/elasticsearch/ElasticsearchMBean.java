@@ -19,6 +19,8 @@ import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
 import org.elasticsearch.action.admin.cluster.node.info.NodeInfo;
 import org.elasticsearch.action.admin.cluster.node.info.NodesInfoResponse;
 
+import java.util.Map;
+
 public interface ElasticsearchMBean {
 
     String getRestUrl(String clusterName);
@@ -27,4 +29,11 @@ public interface ElasticsearchMBean {
 
     ClusterHealthResponse getClusterHealth(String clusterName);
 
+    /**
+     * @return the queue depth, latency and rejection statistics of each storage keyed by its name
+     */
+    Map<String, Map<String, Object>> getIngestStatistics();
+
+    void resetIngestStatistics();
+
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.elasticsearch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.node.Node;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AbstractElasticsearchStorageTest {
+
+    private static class QueueOnlyStorage extends AbstractElasticsearchStorage {
+        @Override
+        public Node getNode() {
+            return null;
+        }
+    }
+
+    @Test
+    public void testDropIsTheDefault() {
+        QueueOnlyStorage storage = createStorage(4, null);
+        storeAll(storage, 10);
+
+        Map<String, Object> statistics = storage.getIngestStatistics();
+        assertEquals("DROP", statistics.get("overflowPolicy"));
+        assertEquals(4, statistics.get("queueDepth"));
+        assertEquals(4L, statistics.get("accepted"));
+        assertEquals(6L, statistics.get("dropped"));
+
+        storage.resetIngestStatistics();
+        assertEquals(0L, storage.getIngestStatistics().get("dropped"));
+    }
+
+    @Test
+    public void testSample() {
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put(AbstractElasticsearchStorage.SAMPLE_RATE, 5);
+        QueueOnlyStorage storage = createStorage(100, AbstractElasticsearchStorage.OverflowPolicy.SAMPLE, configuration);
+        storeAll(storage, 75);
+        assertEquals(75L, storage.getIngestStatistics().get("accepted"));
+
+        // once the queue is three quarters full only one in five documents is kept
+        storeAll(storage, 100);
+        Map<String, Object> statistics = storage.getIngestStatistics();
+        assertEquals(95L, statistics.get("accepted"));
+        assertEquals(80L, statistics.get("dropped"));
+    }
+
+    @Test
+    public void testBlockTimesOut() {
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put(AbstractElasticsearchStorage.BLOCK_TIMEOUT_MILLIS, "50");
+        QueueOnlyStorage storage = createStorage(1, AbstractElasticsearchStorage.OverflowPolicy.BLOCK, configuration);
+        storeAll(storage, 1);
+
+        long start = System.nanoTime();
+        storeAll(storage, 1);
+        assertTrue(System.nanoTime() - start >= 40 * 1000000L);
+        assertEquals(1L, storage.getIngestStatistics().get("dropped"));
+    }
+
+    @Test
+    public void testBlockNeverWaitsOnIngestThreads() {
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put(AbstractElasticsearchStorage.BLOCK_TIMEOUT_MILLIS, "60000");
+        QueueOnlyStorage storage = createStorage(1, AbstractElasticsearchStorage.OverflowPolicy.BLOCK, configuration);
+        storeAll(storage, 1);
+
+        boolean nested = AbstractElasticsearchStorage.enterIngest();
+        try {
+            long start = System.nanoTime();
+            storeAll(storage, 3);
+            assertTrue(System.nanoTime() - start < 10000 * 1000000L);
+        } finally {
+            AbstractElasticsearchStorage.exitIngest(nested);
+        }
+        assertEquals(3L, storage.getIngestStatistics().get("dropped"));
+        assertFalse(AbstractElasticsearchStorage.isIngestThread());
+    }
+
+    private QueueOnlyStorage createStorage(int queueSize, AbstractElasticsearchStorage.OverflowPolicy policy) {
+        return createStorage(queueSize, policy, new HashMap<String, Object>());
+    }
+
+    private QueueOnlyStorage createStorage(int queueSize, AbstractElasticsearchStorage.OverflowPolicy policy, Map<String, Object> configuration) {
+        configuration.put(AbstractElasticsearchStorage.QUEUE_SIZE, queueSize);
+        if (policy != null) {
+            configuration.put(AbstractElasticsearchStorage.OVERFLOW_POLICY, policy.name().toLowerCase());
+        }
+        QueueOnlyStorage storage = new QueueOnlyStorage();
+        storage.configure(configuration);
+        return storage;
+    }
+
+    private void storeAll(QueueOnlyStorage storage, int count) {
+        for (int i = 0; i < count; i++) {
+            storage.store("test", System.currentTimeMillis(), "{\"value\":" + i + "}");
+        }
+    }
+}
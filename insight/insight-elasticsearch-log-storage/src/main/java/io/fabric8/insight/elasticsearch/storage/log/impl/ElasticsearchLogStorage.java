@@ -17,12 +17,15 @@ package io.fabric8.insight.elasticsearch.storage.log.impl;
 
 import io.fabric8.api.scr.ValidatingReference;
 import io.fabric8.insight.elasticsearch.AbstractElasticsearchStorage;
+import io.fabric8.insight.elasticsearch.ElasticsearchIngest;
 import io.fabric8.insight.storage.StorageService;
 import org.apache.felix.scr.annotations.*;
 import org.elasticsearch.node.Node;
 
+import java.util.Map;
+
 @Component(immediate = true, name = "io.fabric8.insight.log.elasticsearch")
-@Service({StorageService.class})
+@Service({StorageService.class, ElasticsearchIngest.class})
 public class ElasticsearchLogStorage extends AbstractElasticsearchStorage {
 
     private static final String INDEX_TEMPLATE_LOCATION = "indexTemplateLocation";
@@ -34,19 +37,15 @@ public class ElasticsearchLogStorage extends AbstractElasticsearchStorage {
     private String indexTemplateLocation = "profile:elasticsearch-index-template.json";
 
     @Activate
-    public void activate() {
-        running = true;
+    public void activate(Map<String, ?> configuration) {
+        configure(configuration);
         putInsightTemplate(indexTemplateLocation);
-        thread = new Thread(this, "ElasticStorage");
-        thread.start();
+        start("ElasticStorage");
     }
 
     @Deactivate
     public void deactivate() {
-        running = false;
-        if (thread != null) {
-            thread.interrupt();
-        }
+        stop();
     }
 
     private void bindNode(Node node) {
@@ -25,6 +25,7 @@ import java.util.Set;
 public class LogFilter {
     private int count;
     private String[] levels;
+    private String[] loggers;
     private String matchesText;
     private Long beforeTimestamp;
     private Long afterTimestamp;
@@ -35,6 +36,7 @@ public class LogFilter {
                 "count=" + count +
                 ", afterTimestamp=" + afterTimestamp +
                 ", matchesText='" + matchesText + '\'' +
+                ", loggers=" + (loggers != null ? Arrays.asList(loggers) : null) +
                 '}';
     }
 
@@ -65,6 +67,17 @@ public class LogFilter {
         this.levels = levels;
     }
 
+    /**
+     * Returns the names or name prefixes of the loggers of the events to match
+     */
+    public String[] getLoggers() {
+        return loggers;
+    }
+
+    public void setLoggers(String[] loggers) {
+        this.loggers = loggers;
+    }
+
     public String getMatchesText() {
         return matchesText;
     }
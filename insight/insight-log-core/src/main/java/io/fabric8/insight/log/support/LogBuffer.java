@@ -0,0 +1,500 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.support;
+
+import io.fabric8.insight.log.LogEvent;
+import io.fabric8.insight.log.LogFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size buffer of the most recent log events with in memory indexes to query them.
+ * <p/>
+ * Logging threads add events to a lock free ring buffer: adding an event claims a sequence number and
+ * stores a small record in its slot, older events being overwritten. The indexes, by level, logger,
+ * timestamp and the words of the text of the events, are only updated by queries, which catch up with
+ * the events added since the previous query, so querying never blocks logging.
+ */
+public class LogBuffer<T> {
+    private static final int BLOCK_SHIFT = 8;
+
+    /**
+     * Converts the buffered events into {@link LogEvent}s
+     */
+    public interface Converter<T> {
+        LogEvent toLogEvent(T event);
+    }
+
+    private final int size;
+    private final Converter<T> converter;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReferenceArray<Record<T>> records;
+
+    // The indexes, guarded by this
+    private long indexed;
+    private volatile long floor;
+    private long lastCompaction;
+    private final Map<String, IntList> levels = new HashMap<String, IntList>();
+    private final Map<String, IntList> loggers = new HashMap<String, IntList>();
+    private final TreeMap<String, IntList> tokens = new TreeMap<String, IntList>();
+    private final IntList unindexed = new IntList();
+    private final long[] blockIds;
+    private final long[] blockMin;
+    private final long[] blockMax;
+
+    public LogBuffer(int size, Converter<T> converter) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The size must be greater than 0");
+        }
+        this.size = size;
+        this.converter = converter;
+        this.records = new AtomicReferenceArray<Record<T>>(size);
+        int blocks = (size >> BLOCK_SHIFT) + 2;
+        this.blockIds = new long[blocks];
+        this.blockMin = new long[blocks];
+        this.blockMax = new long[blocks];
+        Arrays.fill(blockIds, -1);
+    }
+
+    public void add(long timestamp, String level, String logger, T event) {
+        if (null == event) {
+            throw new NullPointerException("Attempted to add null object to buffer");
+        }
+        long seq = sequence.getAndIncrement();
+        records.set(slot(seq), new Record<T>(seq, timestamp, level, logger, event));
+    }
+
+    public int size() {
+        long end = sequence.get();
+        return (int) (end - floorOf(end));
+    }
+
+    public int getMaxSize() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        floor = sequence.get();
+    }
+
+    /**
+     * @return whether the token is in the index, which does not catch up with the added events
+     */
+    synchronized boolean isIndexed(String token) {
+        return tokens.containsKey(token);
+    }
+
+    /**
+     * Returns the events matching the levels, loggers and timestamps of the given filter, oldest first.
+     * <p/>
+     * The text of the filter is only used to rule out the events which cannot match it, so the caller
+     * still has to check the text of the returned events.
+     */
+    public synchronized Matches<T> query(LogFilter filter) {
+        long end = sequence.get();
+        long oldest = floorOf(end);
+        catchUp(oldest, end);
+        Matches<T> answer = new Matches<T>();
+        int n = (int) (indexed - oldest);
+
+        Set<String> wantedLevels = filter != null ? filter.getLevelsSet() : null;
+        String[] wantedLoggers = filter != null ? filter.getLoggers() : null;
+        Long after = filter != null ? filter.getAfterTimestamp() : null;
+        Long before = filter != null ? filter.getBeforeTimestamp() : null;
+        String text = filter != null ? filter.getMatchesText() : null;
+        if (wantedLoggers != null && wantedLoggers.length == 0) {
+            wantedLoggers = null;
+        }
+
+        BitSet candidates = null;
+        if (wantedLevels != null && !wantedLevels.isEmpty()) {
+            BitSet bits = new BitSet(n);
+            for (String level : wantedLevels) {
+                mark(levels.get(level), oldest, n, bits);
+            }
+            candidates = and(candidates, bits);
+        }
+        if (wantedLoggers != null) {
+            BitSet bits = new BitSet(n);
+            for (Map.Entry<String, IntList> entry : loggers.entrySet()) {
+                if (startsWith(entry.getKey(), wantedLoggers)) {
+                    mark(entry.getValue(), oldest, n, bits);
+                }
+            }
+            candidates = and(candidates, bits);
+        }
+        if (text != null && text.length() > 0) {
+            BitSet bits = textCandidates(text, oldest, n);
+            if (bits != null) {
+                candidates = and(candidates, bits);
+            }
+        }
+        if (after != null || before != null) {
+            BitSet bits = new BitSet(n);
+            for (int i = 0; i < blockIds.length; i++) {
+                long block = blockIds[i];
+                if (block < 0 || (after != null && blockMax[i] <= after) || (before != null && blockMin[i] >= before)) {
+                    continue;
+                }
+                long from = Math.max(oldest, block << BLOCK_SHIFT);
+                long to = Math.min(indexed, (block + 1) << BLOCK_SHIFT);
+                if (from < to) {
+                    bits.set((int) (from - oldest), (int) (to - oldest));
+                }
+            }
+            candidates = and(candidates, bits);
+        }
+
+        // Collect the candidates and the events not indexed yet
+        for (int i = candidates == null ? 0 : candidates.nextSetBit(0); i >= 0 && i < n;
+             i = candidates == null ? i + 1 : candidates.nextSetBit(i + 1)) {
+            collect(answer, oldest + i, wantedLevels, wantedLoggers, after, before);
+        }
+        for (long seq = indexed; seq < end; seq++) {
+            collect(answer, seq, wantedLevels, wantedLoggers, after, before);
+        }
+
+        // The time range of the whole buffer
+        for (int i = 0; i < blockIds.length; i++) {
+            long block = blockIds[i];
+            if (block < 0 || ((block + 1) << BLOCK_SHIFT) <= oldest) {
+                continue;
+            }
+            if ((block << BLOCK_SHIFT) < oldest) {
+                for (long seq = oldest; seq < Math.min(indexed, (block + 1) << BLOCK_SHIFT); seq++) {
+                    Record<T> record = records.get(slot(seq));
+                    if (record != null && record.seq == seq) {
+                        answer.range(record.timestamp, record.timestamp);
+                    }
+                }
+            } else {
+                answer.range(blockMin[i], blockMax[i]);
+            }
+        }
+        for (long seq = indexed; seq < end; seq++) {
+            Record<T> record = records.get(slot(seq));
+            if (record != null && record.seq == seq) {
+                answer.range(record.timestamp, record.timestamp);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * Returns the events which may contain the text, or null if they cannot be narrowed down.
+     * <p/>
+     * Any event containing the text has a token for each word of the text: a word in the middle of the
+     * text is a whole token, the last word the start of a token and the first word the end of one, unless
+     * the text starts or ends with a separator. Tokens ending with a word can only be found by scanning all
+     * the tokens, so that is only done when the text has no other word to look up.
+     */
+    private BitSet textCandidates(String text, long oldest, int n) {
+        List<String> words = tokenize(text);
+        if (words.isEmpty()) {
+            return null;
+        }
+        boolean openStart = Character.isLetterOrDigit(text.charAt(0));
+        boolean openEnd = Character.isLetterOrDigit(text.charAt(text.length() - 1));
+        BitSet answer = null;
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            if (i == 0 && openStart) {
+                continue;
+            }
+            BitSet bits = new BitSet(n);
+            if (i == words.size() - 1 && openEnd) {
+                for (IntList list : tokens.subMap(word, word + Character.MAX_VALUE).values()) {
+                    mark(list, oldest, n, bits);
+                }
+            } else {
+                mark(tokens.get(word), oldest, n, bits);
+            }
+            mark(unindexed, oldest, n, bits);
+            answer = and(answer, bits);
+        }
+        if (answer == null) {
+            // a single word which may be anywhere in a token
+            String word = words.get(0);
+            boolean suffix = !openEnd;
+            answer = new BitSet(n);
+            for (Map.Entry<String, IntList> entry : tokens.entrySet()) {
+                String token = entry.getKey();
+                if (suffix ? token.endsWith(word) : token.contains(word)) {
+                    mark(entry.getValue(), oldest, n, answer);
+                }
+            }
+            mark(unindexed, oldest, n, answer);
+        }
+        return answer;
+    }
+
+    private void collect(Matches<T> answer, long seq, Set<String> wantedLevels, String[] wantedLoggers, Long after, Long before) {
+        Record<T> record = records.get(slot(seq));
+        if (record == null || record.seq != seq) {
+            return;
+        }
+        if (wantedLevels != null && !wantedLevels.isEmpty() && (record.level == null || !wantedLevels.contains(record.level))) {
+            return;
+        }
+        if (wantedLoggers != null && (record.logger == null || !startsWith(record.logger, wantedLoggers))) {
+            return;
+        }
+        if ((after != null && record.timestamp <= after) || (before != null && record.timestamp >= before)) {
+            return;
+        }
+        answer.events.add(record.event);
+    }
+
+    private void catchUp(long oldest, long end) {
+        if (indexed < oldest) {
+            indexed = oldest;
+        }
+        while (indexed < end) {
+            Record<T> record = records.get(slot(indexed));
+            if (record == null || record.seq < indexed) {
+                // Not stored yet, the remaining events are scanned by the query
+                break;
+            }
+            if (record.seq == indexed) {
+                index(record);
+            }
+            indexed++;
+        }
+        if (indexed - lastCompaction >= size) {
+            compact(oldest);
+            lastCompaction = indexed;
+        }
+    }
+
+    private void index(Record<T> record) {
+        int seq = (int) record.seq;
+        if (record.level != null) {
+            list(levels, record.level).add(seq);
+        }
+        if (record.logger != null) {
+            list(loggers, record.logger).add(seq);
+        }
+        try {
+            LogEvent event = converter.toLogEvent(record.event);
+            Set<String> words = new HashSet<String>();
+            words.addAll(tokenize(event.getClassName()));
+            words.addAll(tokenize(event.getMessage()));
+            words.addAll(tokenize(event.getLogger()));
+            words.addAll(tokenize(event.getThread()));
+            if (event.getException() != null) {
+                for (String line : event.getException()) {
+                    words.addAll(tokenize(line));
+                }
+            }
+            if (event.getProperties() != null) {
+                words.addAll(tokenize(event.getProperties().toString()));
+            }
+            for (String word : words) {
+                list(tokens, word).add(seq);
+            }
+        } catch (RuntimeException e) {
+            unindexed.add(seq);
+        }
+        long block = record.seq >> BLOCK_SHIFT;
+        int i = (int) (block % blockIds.length);
+        if (blockIds[i] != block) {
+            blockIds[i] = block;
+            blockMin[i] = record.timestamp;
+            blockMax[i] = record.timestamp;
+        } else {
+            blockMin[i] = Math.min(blockMin[i], record.timestamp);
+            blockMax[i] = Math.max(blockMax[i], record.timestamp);
+        }
+    }
+
+    /**
+     * Drops the overwritten events from the indexes
+     */
+    private void compact(long oldest) {
+        compact(levels, oldest);
+        compact(loggers, oldest);
+        compact(tokens, oldest);
+        unindexed.removeBefore((int) oldest);
+    }
+
+    private static void compact(Map<String, IntList> index, long oldest) {
+        for (Iterator<IntList> iter = index.values().iterator(); iter.hasNext(); ) {
+            IntList list = iter.next();
+            list.removeBefore((int) oldest);
+            if (list.size == 0) {
+                iter.remove();
+            }
+        }
+    }
+
+    private long floorOf(long end) {
+        return Math.max(floor, end - size);
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % size);
+    }
+
+    private static IntList list(Map<String, IntList> index, String key) {
+        IntList list = index.get(key);
+        if (list == null) {
+            list = new IntList();
+            index.put(key, list);
+        }
+        return list;
+    }
+
+    /**
+     * Sets the positions relative to the oldest event of the sequences in the given list
+     */
+    private static void mark(IntList list, long oldest, int n, BitSet bits) {
+        if (list != null) {
+            int base = (int) oldest;
+            for (int i = 0; i < list.size; i++) {
+                int position = list.values[i] - base;
+                if (position >= 0 && position < n) {
+                    bits.set(position);
+                }
+            }
+        }
+    }
+
+    private static BitSet and(BitSet candidates, BitSet bits) {
+        if (candidates == null) {
+            return bits;
+        }
+        candidates.and(bits);
+        return candidates;
+    }
+
+    private static boolean startsWith(String logger, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (logger.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the text into its runs of letters and digits
+     */
+    static List<String> tokenize(String text) {
+        List<String> answer = new ArrayList<String>();
+        if (text != null) {
+            int start = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+                if (word && start < 0) {
+                    start = i;
+                } else if (!word && start >= 0) {
+                    answer.add(text.substring(start, i));
+                    start = -1;
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * The events returned by a query
+     */
+    public static class Matches<T> {
+        private final List<T> events = new ArrayList<T>();
+        private Long fromTimestamp;
+        private Long toTimestamp;
+
+        void range(long from, long to) {
+            if (fromTimestamp == null || from < fromTimestamp) {
+                fromTimestamp = from;
+            }
+            if (toTimestamp == null || to > toTimestamp) {
+                toTimestamp = to;
+            }
+        }
+
+        public List<T> getEvents() {
+            return events;
+        }
+
+        /**
+         * @return the timestamp of the oldest event in the buffer, or null if it is empty
+         */
+        public Long getFromTimestamp() {
+            return fromTimestamp;
+        }
+
+        /**
+         * @return the timestamp of the most recent event in the buffer, or null if it is empty
+         */
+        public Long getToTimestamp() {
+            return toTimestamp;
+        }
+    }
+
+    static final class Record<T> {
+        final long seq;
+        final long timestamp;
+        final String level;
+        final String logger;
+        final T event;
+
+        Record(long seq, long timestamp, String level, String logger, T event) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.level = level;
+            this.logger = logger;
+            this.event = event;
+        }
+    }
+
+    /**
+     * A growable list of the (truncated) sequences of the events, in ascending order
+     */
+    static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void removeBefore(int oldest) {
+            int i = 0;
+            while (i < size && values[i] - oldest < 0) {
+                i++;
+            }
+            if (i > 0) {
+                System.arraycopy(values, i, values, 0, size - i);
+                size -= i;
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.log.support;
+
+import io.fabric8.common.util.Strings;
+import io.fabric8.insight.log.LogEvent;
+import io.fabric8.insight.log.LogFilter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogBufferTest {
+
+    private static final LogBuffer.Converter<LogEvent> CONVERTER = new LogBuffer.Converter<LogEvent>() {
+        @Override
+        public LogEvent toLogEvent(LogEvent event) {
+            return event;
+        }
+    };
+
+    @Test
+    public void testWraparoundOverwritesOldestEvents() {
+        LogBuffer<LogEvent> buffer = new LogBuffer<LogEvent>(3, CONVERTER);
+        for (int i = 0; i < 5; i++) {
+            add(buffer, i, "INFO", "test", "message" + i);
+        }
+        assertEquals(3, buffer.size());
+        assertEquals(3, buffer.getMaxSize());
+        LogBuffer.Matches<LogEvent> matches = buffer.query(null);
+        assertEquals(Arrays.asList("message2", "message3", "message4"), messages(matches.getEvents()));
+        assertEquals(Long.valueOf(2), matches.getFromTimestamp());
+        assertEquals(Long.valueOf(4), matches.getToTimestamp());
+
+        // Overwrite the events already indexed
+        add(buffer, 5, "INFO", "test", "message5");
+        assertEquals(Arrays.asList("message3", "message4", "message5"), messages(buffer.query(null).getEvents()));
+        assertEquals(0, buffer.query(filter("message2")).getEvents().size());
+    }
+
+    @Test
+    public void testClear() {
+        LogBuffer<LogEvent> buffer = new LogBuffer<LogEvent>(10, CONVERTER);
+        add(buffer, 1, "INFO", "test", "before clear");
+        buffer.query(null);
+        add(buffer, 2, "INFO", "test", "also before clear");
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        LogBuffer.Matches<LogEvent> matches = buffer.query(null);
+        assertEquals(0, matches.getEvents().size());
+        assertNull(matches.getFromTimestamp());
+        assertNull(matches.getToTimestamp());
+
+        add(buffer, 3, "INFO", "test", "after clear");
+        assertEquals(Arrays.asList("after clear"), messages(buffer.query(null).getEvents()));
+        assertEquals(Arrays.asList("after clear"), messages(buffer.query(filter("clear")).getEvents()));
+    }
+
+    @Test
+    public void testCompactionDropsOverwrittenEvents() {
+        LogBuffer<LogEvent> buffer = new LogBuffer<LogEvent>(4, CONVERTER);
+        for (int i = 0; i < 4; i++) {
+            add(buffer, i, "INFO", "test", "alpha" + i);
+        }
+        buffer.query(null);
+        assertTrue(buffer.isIndexed("alpha0"));
+
+        for (int i = 0; i < 4; i++) {
+            add(buffer, 4 + i, "INFO", "test", "beta" + i);
+        }
+        buffer.query(null);
+        for (int i = 0; i < 4; i++) {
+            assertFalse(buffer.isIndexed("alpha" + i));
+            assertTrue(buffer.isIndexed("beta" + i));
+        }
+        assertEquals(4, buffer.query(null).getEvents().size());
+    }
+
+    @Test
+    public void testTextMatchesLikeContains() {
+        String[] texts = {"The quick brown fox", "jumps over the lazy dog.", "quickly brown-fox", "a fox, quick",
+                "Dog days", "unquickened", "foxtrot", "brown"};
+        String[] queries = {"quick", "qui", "ick", "uic", "brown fox", "own fo", "fox ", " lazy", "dog.", "-fox",
+                "jumps over the", "Dog", "o", "zzz", "thread", "Main", "fabric8.Log", ", ", "."};
+        LogBuffer<LogEvent> buffer = new LogBuffer<LogEvent>(100, CONVERTER);
+        List<LogEvent> all = new ArrayList<LogEvent>();
+        for (int i = 0; i < texts.length; i++) {
+            all.add(add(buffer, i, "INFO", "io.fabric8.LogBuffer", texts[i]));
+            if (i == texts.length / 2) {
+                // Half of the events are indexed, the others are scanned by the queries
+                buffer.query(null);
+            }
+        }
+        for (String query : queries) {
+            List<LogEvent> expected = new ArrayList<LogEvent>();
+            for (LogEvent event : all) {
+                if (contains(query, event)) {
+                    expected.add(event);
+                }
+            }
+            List<LogEvent> actual = new ArrayList<LogEvent>();
+            for (LogEvent event : buffer.query(filter(query)).getEvents()) {
+                if (contains(query, event)) {
+                    actual.add(event);
+                }
+            }
+            assertEquals("Matching " + query, messages(expected), messages(actual));
+        }
+
+        // The whole words are narrowed down by the index
+        assertEquals(Arrays.asList("jumps over the lazy dog."), messages(buffer.query(filter("over the")).getEvents()));
+    }
+
+    @Test
+    public void testTimeWindowAcrossBlocks() {
+        LogBuffer<LogEvent> buffer = new LogBuffer<LogEvent>(600, CONVERTER);
+        for (int i = 0; i < 700; i++) {
+            add(buffer, i, "INFO", "test", "message" + i);
+            if (i == 300) {
+                buffer.query(null);
+            }
+        }
+        // The oldest 100 events were overwritten, the window spans three blocks of 256 events
+        LogFilter filter = new LogFilter();
+        filter.setAfterTimestamp(50L);
+        filter.setBeforeTimestamp(550L);
+        LogBuffer.Matches<LogEvent> matches = buffer.query(filter);
+        List<LogEvent> events = matches.getEvents();
+        assertEquals(450, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(100 + i, events.get(i).getTimestamp().getTime());
+        }
+        assertEquals(Long.valueOf(100), matches.getFromTimestamp());
+        assertEquals(Long.valueOf(699), matches.getToTimestamp());
+
+        filter.setAfterTimestamp(255L);
+        filter.setBeforeTimestamp(257L);
+        assertEquals(Arrays.asList("message256"), messages(buffer.query(filter).getEvents()));
+    }
+
+    @Test
+    public void testLevelsAndLoggers() {
+        LogBuffer<LogEvent> buffer = new LogBuffer<LogEvent>(10, CONVERTER);
+        add(buffer, 1, "INFO", "io.fabric8.a", "one");
+        add(buffer, 2, "WARN", "io.fabric8.b", "two");
+        add(buffer, 3, "ERROR", "org.apache", "three");
+        LogFilter filter = new LogFilter();
+        filter.setLevels(new String[]{"WARN", "ERROR"});
+        assertEquals(Arrays.asList("two", "three"), messages(buffer.query(filter).getEvents()));
+        filter.setLoggers(new String[]{"io.fabric8"});
+        assertEquals(Arrays.asList("two"), messages(buffer.query(filter).getEvents()));
+    }
+
+    @Test
+    public void testConcurrentAddWhileQuerying() throws Exception {
+        final int threads = 4;
+        final int count = 20000;
+        final LogBuffer<LogEvent> buffer = new LogBuffer<LogEvent>(1000, CONVERTER);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int t = 0; t < threads; t++) {
+            final String logger = "thread" + t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < count; i++) {
+                            add(buffer, i, "INFO", logger, logger + " message " + i);
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        LogFilter filter = filter("thread1");
+        while (done.getCount() > 0) {
+            assertOrdered(buffer.query(null).getEvents(), buffer.getMaxSize());
+            assertOrdered(buffer.query(filter).getEvents(), buffer.getMaxSize());
+        }
+        assertNull(failure.get());
+        assertEquals(1000, buffer.size());
+        assertEquals(1000, buffer.query(null).getEvents().size());
+    }
+
+    /**
+     * The events of each thread are returned in the order they were added
+     */
+    private static void assertOrdered(List<LogEvent> events, int maxSize) {
+        assertTrue(events.size() <= maxSize);
+        long[] last = {-1, -1, -1, -1};
+        for (LogEvent event : events) {
+            int thread = event.getLogger().charAt(6) - '0';
+            long timestamp = event.getTimestamp().getTime();
+            assertTrue(timestamp > last[thread]);
+            last[thread] = timestamp;
+        }
+    }
+
+    private static LogEvent add(LogBuffer<LogEvent> buffer, long timestamp, String level, String logger, String message) {
+        LogEvent event = new LogEvent();
+        event.setTimestamp(new Date(timestamp));
+        event.setLevel(level);
+        event.setLogger(logger);
+        event.setThread("main");
+        event.setMessage(message);
+        buffer.add(timestamp, level, logger, event);
+        return event;
+    }
+
+    private static LogFilter filter(String text) {
+        LogFilter filter = new LogFilter();
+        filter.setMatchesText(text);
+        return filter;
+    }
+
+    private static boolean contains(String text, LogEvent event) {
+        return Strings.contains(text, event.getClassName(), event.getMessage(), event.getLogger(), event.getThread());
+    }
+
+    private static List<String> messages(List<LogEvent> events) {
+        List<String> answer = new ArrayList<String>();
+        for (LogEvent event : events) {
+            answer.add(event.getMessage());
+        }
+        return answer;
+    }
+}
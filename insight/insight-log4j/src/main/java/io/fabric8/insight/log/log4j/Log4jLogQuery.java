@@ -31,6 +31,7 @@ import io.fabric8.insight.log.LogEvent;
 import io.fabric8.insight.log.LogFilter;
 import io.fabric8.insight.log.LogResults;
 import io.fabric8.insight.log.support.LogQuerySupport;
+import io.fabric8.insight.log.support.LogBuffer;
 import io.fabric8.insight.log.support.LruList;
 import io.fabric8.insight.log.support.Predicate;
 import org.ops4j.util.property.PropertiesPropertyResolver;
@@ -48,7 +49,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.ConfigurationPolicy;
@@ -66,7 +66,7 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
     private static final transient Logger LOG = LoggerFactory.getLogger(Log4jLogQuery.class);
 
     private int size = 1000;
-    private LruList<LoggingEvent> events;
+    private volatile LogBuffer<LoggingEvent> events;
     private boolean addMavenCoordinates = true;
     private AetherBasedResolver resolver;
     private Properties properties = new Properties();
@@ -118,7 +118,7 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
     }
 
     public LogResults getLogResults(int maxCount) throws IOException {
-        return filterLogResults(null, maxCount);
+        return filterLogResults(getLogBuffer().query(null), null, maxCount);
     }
 
     public LogResults queryLogResults(LogFilter filter) {
@@ -127,51 +127,20 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
         if (filter != null) {
             maxCount = filter.getCount();
         }
-        return filterLogResults(predicate, maxCount);
+        return filterLogResults(getLogBuffer().query(filter), predicate, maxCount);
     }
 
+    /**
+     * Creates the predicate matching the text of the filter; the levels, loggers and timestamps
+     * are matched by the indexes of the {@link LogBuffer}
+     */
     private Predicate<LogEvent> createPredicate(LogFilter filter) {
         if (filter == null) {
             return null;
         }
-        final List<Predicate<LogEvent>> predicates = new ArrayList<Predicate<LogEvent>>();
-
-        final Set<String> levels = filter.getLevelsSet();
-        if (levels.size() > 0) {
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    String level = event.getLevel();
-                    return level != null && levels.contains(level.toString());
-                }
-            });
-        }
-        final Long before = filter.getBeforeTimestamp();
-        if (before != null) {
-            final Date date = new Date(before);
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    Date time = event.getTimestamp();
-                    return time != null && time.before(date);
-                }
-            });
-        }
-        final Long after = filter.getAfterTimestamp();
-        if (after != null) {
-            final Date date = new Date(after);
-            predicates.add(new Predicate<LogEvent>() {
-                @Override
-                public boolean matches(LogEvent event) {
-                    Date time = event.getTimestamp();
-                    return time != null && time.after(date);
-                }
-            });
-        }
-
         final String matchesText = filter.getMatchesText();
         if (matchesText != null && matchesText.length() > 0) {
-            predicates.add(new Predicate<LogEvent>() {
+            return new Predicate<LogEvent>() {
                 @Override
                 public boolean matches(LogEvent event) {
                     if (contains(matchesText, event.getClassName(), event.getMessage(), event.getLogger(), event.getThread())) {
@@ -187,48 +156,16 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
                     }
                     return false;
                 }
-            });
-        }
-
-        if (predicates.size() == 0) {
-            return null;
-        } else if (predicates.size() == 1) {
-            return predicates.get(0);
-        } else {
-            return new Predicate<LogEvent>() {
-                @Override
-                public String toString() {
-                    return "AndPredicate" + predicates;
-                }
-
-                @Override
-                public boolean matches(LogEvent event) {
-                    for (Predicate<LogEvent> predicate : predicates) {
-                        if (!predicate.matches(event)) {
-                            return false;
-                        }
-                    }
-                    return true;
-                }
             };
         }
+        return null;
     }
 
-    protected LogResults filterLogResults(Predicate<LogEvent> predicate, int maxCount) {
+    protected LogResults filterLogResults(LogBuffer.Matches<LoggingEvent> matches, Predicate<LogEvent> predicate, int maxCount) {
         int matched = 0;
-        long from = Long.MAX_VALUE;
-        long to = Long.MIN_VALUE;
         List<LogEvent> list = new ArrayList<LogEvent>();
-        Iterable<LoggingEvent> elements = getEvents().getElements();
-        for (LoggingEvent element : elements) {
+        for (LoggingEvent element : matches.getEvents()) {
             LogEvent logEvent = toLogEvent(element);
-            long timestamp = element.getTimeStamp();
-            if (timestamp > to) {
-                to = timestamp;
-            }
-            if (timestamp < from) {
-                from = timestamp;
-            }
             if (logEvent != null) {
                 if (predicate == null || predicate.matches(logEvent)) {
                     list.add(logEvent);
@@ -241,15 +178,11 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
         }
         LogResults results = new LogResults();
         results.setEvents(list);
-        if (from < Long.MAX_VALUE) {
-            results.setFromTimestamp(from);
-        }
-        if (to > Long.MIN_VALUE) {
-            results.setToTimestamp(to);
-        }
+        results.setFromTimestamp(matches.getFromTimestamp());
+        results.setToTimestamp(matches.getToTimestamp());
         if (LOG.isDebugEnabled()) {
             LOG.debug("Requested " + maxCount + " logging items. returning "
-                    + results.getEvents().size() + " event(s) from a possible " + getEvents().size());
+                    + results.getEvents().size() + " event(s) from a possible " + getLogBuffer().size());
 
         }
         return results;
@@ -358,15 +291,62 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
 
     // Properties
     //-------------------------------------------------------------------------
+    public LogBuffer<LoggingEvent> getLogBuffer() {
+        LogBuffer<LoggingEvent> answer = events;
+        if (answer == null) {
+            synchronized (this) {
+                answer = events;
+                if (answer == null) {
+                    answer = createLogBuffer();
+                    events = answer;
+                }
+            }
+        }
+        return answer;
+    }
+
+    public void setLogBuffer(LogBuffer<LoggingEvent> events) {
+        this.events = events;
+    }
+
+    /**
+     * @return a copy of the buffered events
+     * @deprecated use {@link #getLogBuffer()}, changes to the returned list are not reflected in the buffer
+     */
+    @Deprecated
     public LruList<LoggingEvent> getEvents() {
-        if (events == null) {
-            events = new LruList<LoggingEvent>(LoggingEvent.class, getSize());
+        LruList<LoggingEvent> answer = new LruList<LoggingEvent>(LoggingEvent.class, getLogBuffer().getMaxSize());
+        for (LoggingEvent event : getLogBuffer().query(null).getEvents()) {
+            answer.add(event);
         }
-        return events;
+        return answer;
     }
 
+    /**
+     * Replaces the buffered events with the given ones
+     * @deprecated use {@link #setLogBuffer(LogBuffer)}
+     */
+    @Deprecated
     public void setEvents(LruList<LoggingEvent> events) {
-        this.events = events;
+        LogBuffer<LoggingEvent> buffer = createLogBuffer();
+        for (LoggingEvent event : events.getElements()) {
+            addEvent(buffer, event);
+        }
+        this.events = buffer;
+    }
+
+    private LogBuffer<LoggingEvent> createLogBuffer() {
+        return new LogBuffer<LoggingEvent>(getSize(), new LogBuffer.Converter<LoggingEvent>() {
+            @Override
+            public LogEvent toLogEvent(LoggingEvent event) {
+                return Log4jLogQuery.this.toLogEvent(event);
+            }
+        });
+    }
+
+    private static void addEvent(LogBuffer<LoggingEvent> buffer, LoggingEvent event) {
+        Level level = event.getLevel();
+        buffer.add(event.getTimeStamp(), level != null ? level.toString() : null, event.getLoggerName(), event);
     }
 
     public int getSize() {
@@ -414,6 +394,6 @@ public class Log4jLogQuery extends LogQuerySupport implements Log4jLogQueryMBean
         if (addMavenCoordinates) {
             appendMavenCoordinates(record);
         }
-		getEvents().add(record);
+		addEvent(getLogBuffer(), record);
 	}
 }
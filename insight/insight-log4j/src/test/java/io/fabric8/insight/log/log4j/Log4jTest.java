@@ -80,6 +80,23 @@ public class Log4jTest {
         assertMatches(logEvents, messagePredicate("ERROR", error2));
         assertNotMatches(logEvents, messagePredicate("INFO", info1));
         assertNotMatches(logEvents, messagePredicate("INFO", info2));
+
+        // test a text filter
+        filter = new LogFilter();
+        filter.setMatchesText("Two mess");
+        logEvents = assertNotEmpty(mBean.queryLogResults(filter));
+        assertMatches(logEvents, messagePredicate("INFO", info2));
+        assertMatches(logEvents, messagePredicate("ERROR", error2));
+        assertNotMatches(logEvents, messagePredicate("INFO", info1));
+        assertNotMatches(logEvents, messagePredicate("ERROR", error1));
+
+        // test a logger filter
+        filter = new LogFilter();
+        filter.setLoggers(new String[] {"io.fabric8.insight.log"});
+        logEvents = assertNotEmpty(mBean.queryLogResults(filter));
+        assertMatches(logEvents, messagePredicate("INFO", info1));
+        filter.setLoggers(new String[] {"org.apache.camel"});
+        assertNotMatches(mBean.queryLogResults(filter).getEvents(), messagePredicate("INFO", info1));
     }
 
     public static Predicate<LogEvent> messagePredicate(final String level, final String message) {
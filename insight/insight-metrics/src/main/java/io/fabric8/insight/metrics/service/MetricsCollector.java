@@ -26,7 +26,7 @@ import io.fabric8.groups.GroupListener;
 import io.fabric8.groups.NodeState;
 import io.fabric8.groups.internal.TrackingZooKeeperGroup;
 import io.fabric8.insight.metrics.model.*;
-import io.fabric8.insight.metrics.service.support.JmxUtils;
+import io.fabric8.insight.metrics.service.support.CollectionPlanner;
 import org.apache.felix.scr.annotations.*;
 import org.apache.karaf.jaas.boot.principal.RolePrincipal;
 import org.osgi.framework.BundleContext;
@@ -40,7 +40,6 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URL;
 import java.net.UnknownHostException;
-import java.security.PrivilegedAction;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -73,6 +72,11 @@ public class MetricsCollector implements MetricsCollectorMBean {
     public static final String LOCK_GLOBAL = "global";
     public static final String LOCK_HOST = "host";
 
+    /**
+     * How often the queries which are due are collected, in milliseconds
+     */
+    private static final long TICK = 1000;
+
     private static final transient Logger LOG = LoggerFactory.getLogger(MetricsCollector.class);
 
     private ObjectName objectName;
@@ -81,6 +85,9 @@ public class MetricsCollector implements MetricsCollectorMBean {
     private FabricService fabricService;
 
     private ScheduledThreadPoolExecutor executor;
+    private ExecutorService collectExecutor;
+    private CollectionPlanner planner;
+    private volatile long lastTickTime;
     private Map<Query, QueryState> queries = new ConcurrentHashMap<Query, QueryState>();
 
     @Reference
@@ -95,7 +102,7 @@ public class MetricsCollector implements MetricsCollectorMBean {
     private BundleContext bundleContext;
 
     static class QueryState {
-        ScheduledFuture<?> future;
+        long nextRun;
         Server server;
         Query query;
         QueryResult lastResult;
@@ -104,8 +111,31 @@ public class MetricsCollector implements MetricsCollectorMBean {
         Map metadata;
         Group<QueryNodeState> lock;
 
+        volatile long collections;
+        volatile long failures;
+        volatile long lastTime;
+        volatile long maxTime;
+        volatile long totalTime;
+
+        void collected(long time, boolean failed) {
+            collections++;
+            if (failed) {
+                failures++;
+            }
+            lastTime = time;
+            maxTime = Math.max(maxTime, time);
+            totalTime += time;
+        }
+
+        void resetStatistics() {
+            collections = 0;
+            failures = 0;
+            lastTime = 0;
+            maxTime = 0;
+            totalTime = 0;
+        }
+
         public void close() {
-            future.cancel(false);
             if (lock != null) {
                 try {
                     lock.close();
@@ -123,12 +153,24 @@ public class MetricsCollector implements MetricsCollectorMBean {
         this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
         this.executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
 
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new RolePrincipal("admin"));
+        // the JMX calls run on their own pool: the collection waits for them from a thread of the scheduler
+        this.collectExecutor = Executors.newFixedThreadPool(threadPoolSize);
+        this.planner = new CollectionPlanner(mbeanServer, collectExecutor, subject);
+
         this.executor.scheduleWithFixedDelay(new Runnable() {
             @Override
             public void run() {
                 process();
             }
         }, 1, defaultDelay, TimeUnit.SECONDS);
+        this.executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                collect();
+            }
+        }, TICK, TICK, TimeUnit.MILLISECONDS);
 
         JMXUtils.registerMBean(this, mbeanServer, new ObjectName("io.fabric8.insight:type=MetricsCollector"));
     }
@@ -150,6 +192,7 @@ public class MetricsCollector implements MetricsCollectorMBean {
         } catch (InterruptedException e) {
             // Ignore
         }
+        collectExecutor.shutdownNow();
         for (QueryState q : queries.values()) {
             q.close();
         }
@@ -198,6 +241,39 @@ public class MetricsCollector implements MetricsCollectorMBean {
         return MetricsJSON.toJson(meta);
     }
 
+    @Override
+    public String getCollectionStatistics() {
+        Map<String, Object> stats = new TreeMap<String, Object>();
+        for (QueryState state : queries.values()) {
+            Map<String, Object> query = new LinkedHashMap<String, Object>();
+            long collections = state.collections;
+            query.put("collections", collections);
+            query.put("failures", state.failures);
+            query.put("lastCollectionTimeMicros", TimeUnit.NANOSECONDS.toMicros(state.lastTime));
+            query.put("maxCollectionTimeMicros", TimeUnit.NANOSECONDS.toMicros(state.maxTime));
+            query.put("averageCollectionTimeMicros", collections > 0 ? TimeUnit.NANOSECONDS.toMicros(state.totalTime / collections) : 0);
+            stats.put(state.query.getName(), query);
+        }
+        Map<String, Object> tick = new LinkedHashMap<String, Object>();
+        CollectionPlanner planner = this.planner;
+        if (planner != null) {
+            tick.put("requests", planner.getLastRequests());
+            tick.put("jmxCalls", planner.getLastCalls());
+        }
+        tick.put("timeMicros", TimeUnit.NANOSECONDS.toMicros(lastTickTime));
+        Map<String, Object> answer = new LinkedHashMap<String, Object>();
+        answer.put("queries", stats);
+        answer.put("lastTick", tick);
+        return MetricsJSON.toJson(answer);
+    }
+
+    @Override
+    public void resetCollectionStatistics() {
+        for (QueryState state : queries.values()) {
+            state.resetStatistics();
+        }
+    }
+
     public void process() {
         try {
             Container container = MetricsCollector.this.fabricService.getCurrentContainer();
@@ -244,12 +320,7 @@ public class MetricsCollector implements MetricsCollectorMBean {
                         state.lock.start();
                     }
 
-                    long delay = q.getPeriod() > 0 ? q.getPeriod() : defaultDelay;
-                    state.future = this.executor.scheduleAtFixedRate(
-                            new Task(state, storage),
-                            Math.round(Math.random() * 1000) + 1,
-                            delay * 1000,
-                            TimeUnit.MILLISECONDS);
+                    state.nextRun = System.currentTimeMillis() + Math.round(Math.random() * 1000) + 1;
                     queries.put(q, state);
                 }
             }
@@ -320,69 +391,87 @@ public class MetricsCollector implements MetricsCollectorMBean {
         }
     }
 
-    class Task implements Runnable {
-
-        private final QueryState query;
-
-        public Task(QueryState query, ValidatingReference<MetricsStorageService> storage) {
-            this.query = query;
-        }
-
-        @Override
-        public void run() {
-            try {
-                final MetricsStorageService svc = storage.get();
-                // Abort if required services aren't available
-                if (mbeanServer == null || svc == null) {
-                    return;
+    /**
+     * Collects all the queries which are due with a single plan of JMX calls and sends their results
+     */
+    protected void collect() {
+        try {
+            final MetricsStorageService svc = storage.getOptional();
+            // Abort if required services aren't available
+            if (mbeanServer == null || svc == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            Map<Query, QueryState> due = new LinkedHashMap<Query, QueryState>();
+            for (QueryState state : queries.values()) {
+                if (state.nextRun > now) {
+                    continue;
+                }
+                long delay = TimeUnit.SECONDS.toMillis(state.query.getPeriod() > 0 ? state.query.getPeriod() : defaultDelay);
+                state.nextRun += delay;
+                if (state.nextRun <= now) {
+                    // We fell behind, skip the missed runs
+                    state.nextRun = now + delay;
                 }
                 // If there's a lock, check we are the master
-                if (query.lock != null && !query.lock.isMaster()) {
-                    return;
+                if (state.lock != null && !state.lock.isMaster()) {
+                    continue;
                 }
+                due.put(state.query, state);
+            }
+            if (due.isEmpty()) {
+                return;
+            }
 
-                Subject subject = new Subject();
-                subject.getPrincipals().add(new RolePrincipal("admin"));
-
-                QueryResult qrs = Subject.doAs(subject, new PrivilegedAction<QueryResult>() {
-                    @Override
-                    public QueryResult run() {
-                        try {
-                            return JmxUtils.execute(query.server, query.query, mbeanServer);
-                        } catch (Throwable e) {
-                            LOG.error("Error retrieving metrics for " + query.query.getMetadata(), e);
-                        }
-                        return null;
-                    }
-                });
-
-                if (qrs != null) {
-                    boolean forceSend = query.query.getMinPeriod() == query.query.getPeriod() ||
-                            qrs.getTimestamp().getTime() - query.lastSent >= TimeUnit.SECONDS.toMillis(query.query.getMinPeriod());
-                    if (!forceSend && query.lastResult != null) {
-                        if (qrs.getResults().equals(query.lastResult.getResults())) {
-                            query.lastResult = qrs;
-                            query.lastResultSent = false;
-                        }
-                        if (!query.lastResultSent) {
-                            renderAndSend(svc, query.lastResult);
-                        }
-                    }
-                    query.lastResult = qrs;
-                    query.lastResultSent = true;
-                    query.lastSent = qrs.getTimestamp().getTime();
-                    renderAndSend(svc, qrs);
+            long start = System.nanoTime();
+            Map<Query, CollectionPlanner.QueryCollection> collections = planner.collect(due.keySet());
+            lastTickTime = System.nanoTime() - start;
+
+            Date timestamp = new Date();
+            for (Map.Entry<Query, CollectionPlanner.QueryCollection> entry : collections.entrySet()) {
+                QueryState state = due.get(entry.getKey());
+                CollectionPlanner.QueryCollection collection = entry.getValue();
+                state.collected(collection.getTime(), collection.getError() != null);
+                if (collection.getError() != null) {
+                    LOG.error("Error retrieving metrics for " + state.query.getMetadata(), collection.getError());
+                    continue;
+                }
+                try {
+                    send(svc, state, new QueryResult(state.server, state.query, timestamp, collection.getResults()));
+                } catch (Throwable e) {
+                    LOG.error("Error sending metrics", e);
                 }
-            } catch (Throwable e) {
-                LOG.error("Error sending metrics", e);
             }
+        } catch (RejectedExecutionException e) {
+            // Ignore, the thread pool has been shut down
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            LOG.error("Error collecting metrics", e);
         }
+    }
 
-        private void renderAndSend(MetricsStorageService svc, QueryResult qrs) throws Exception {
-            long timestamp = qrs.getTimestamp().getTime();
-            svc.store(type, timestamp, qrs);
+    private void send(MetricsStorageService svc, QueryState query, QueryResult qrs) throws Exception {
+        boolean forceSend = query.query.getMinPeriod() == query.query.getPeriod() ||
+                qrs.getTimestamp().getTime() - query.lastSent >= TimeUnit.SECONDS.toMillis(query.query.getMinPeriod());
+        if (!forceSend && query.lastResult != null) {
+            if (qrs.getResults().equals(query.lastResult.getResults())) {
+                query.lastResult = qrs;
+                query.lastResultSent = false;
+            }
+            if (!query.lastResultSent) {
+                renderAndSend(svc, query.lastResult);
+            }
         }
+        query.lastResult = qrs;
+        query.lastResultSent = true;
+        query.lastSent = qrs.getTimestamp().getTime();
+        renderAndSend(svc, qrs);
+    }
 
+    private void renderAndSend(MetricsStorageService svc, QueryResult qrs) throws Exception {
+        long timestamp = qrs.getTimestamp().getTime();
+        svc.store(type, timestamp, qrs);
     }
 
 }
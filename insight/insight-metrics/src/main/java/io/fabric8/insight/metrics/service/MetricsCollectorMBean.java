@@ -18,4 +18,12 @@ package io.fabric8.insight.metrics.service;
 public interface MetricsCollectorMBean {
 
     String getMetrics();
+
+    /**
+     * @return the collection statistics of each query and of the last collection tick as JSON, with
+     * the time spent in the JMX calls each query used
+     */
+    String getCollectionStatistics();
+
+    void resetCollectionStatistics();
 }
@@ -0,0 +1,339 @@
+/**
+ *  Copyright 2005-2016 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+package io.fabric8.insight.metrics.service.support;
+
+import io.fabric8.insight.metrics.model.MBeanAttrResult;
+import io.fabric8.insight.metrics.model.MBeanAttrs;
+import io.fabric8.insight.metrics.model.MBeanAttrsResult;
+import io.fabric8.insight.metrics.model.MBeanOperResult;
+import io.fabric8.insight.metrics.model.MBeanOpers;
+import io.fabric8.insight.metrics.model.MBeanOpersResult;
+import io.fabric8.insight.metrics.model.Query;
+import io.fabric8.insight.metrics.model.Request;
+import io.fabric8.insight.metrics.model.Result;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.security.auth.Subject;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Collects the results of a set of queries due at the same time with as few JMX calls as possible.
+ * <p/>
+ * The object name patterns of all the attribute requests are resolved once, the attributes wanted from
+ * each matching mbean are merged so each mbean is read with a single {@link MBeanServerConnection#getAttributes}
+ * call, and identical operation requests are invoked once. The calls are run in parallel on the given executor
+ * and their results are then fanned back out to the requests of each query.
+ * <p/>
+ * The calling thread runs the calls no pool thread has started yet, so a collection always completes, even when
+ * it is run from a thread of the executor itself or when the executor is busy with other tasks.
+ */
+public class CollectionPlanner {
+
+    private final MBeanServerConnection mbs;
+    private final ExecutorService executor;
+    private final Subject subject;
+
+    private volatile int lastRequests;
+    private volatile int lastCalls;
+
+    /**
+     * @param executor the executor running the calls in parallel, or null to run them in the calling thread
+     * @param subject the subject the JMX calls are run as, or null to run them in the executor's context
+     */
+    public CollectionPlanner(MBeanServerConnection mbs, ExecutorService executor, Subject subject) {
+        this.mbs = mbs;
+        this.executor = executor;
+        this.subject = subject;
+    }
+
+    /**
+     * Collects the given queries, returning the outcome of each query in the same order
+     */
+    public Map<Query, QueryCollection> collect(Collection<Query> queries) throws InterruptedException {
+        // Resolve the mbeans of each object name pattern and merge the attributes wanted from each mbean
+        Map<String, Object> patterns = new HashMap<String, Object>();
+        Map<ObjectName, Set<String>> attributes = new LinkedHashMap<ObjectName, Set<String>>();
+        Set<MBeanOpers> operations = new LinkedHashSet<MBeanOpers>();
+        int requests = 0;
+        for (Query query : queries) {
+            for (Request request : query.getRequests()) {
+                requests++;
+                if (request instanceof MBeanAttrs) {
+                    MBeanAttrs attrs = (MBeanAttrs) request;
+                    Object mbeans = resolve(patterns, attrs.getObj());
+                    if (mbeans instanceof Set) {
+                        for (ObjectName mbean : (Set<ObjectName>) mbeans) {
+                            Set<String> names = attributes.get(mbean);
+                            if (names == null) {
+                                names = new LinkedHashSet<String>();
+                                attributes.put(mbean, names);
+                            }
+                            names.addAll(attrs.getAttrs());
+                        }
+                    }
+                } else if (request instanceof MBeanOpers) {
+                    operations.add((MBeanOpers) request);
+                }
+            }
+        }
+
+        // Run the calls in parallel
+        List<Call> calls = new ArrayList<Call>();
+        Map<ObjectName, Call> attributeCalls = new HashMap<ObjectName, Call>();
+        for (Map.Entry<ObjectName, Set<String>> entry : attributes.entrySet()) {
+            Call call = new AttributesCall(entry.getKey(), entry.getValue());
+            attributeCalls.put(entry.getKey(), call);
+            calls.add(call);
+        }
+        Map<MBeanOpers, Call> operationCalls = new HashMap<MBeanOpers, Call>();
+        for (MBeanOpers operation : operations) {
+            Call call = new OperationCall(operation);
+            operationCalls.put(operation, call);
+            calls.add(call);
+        }
+        List<FutureTask<Object>> futures = new ArrayList<FutureTask<Object>>(calls.size());
+        for (Call call : calls) {
+            FutureTask<Object> future = new FutureTask<Object>(call);
+            futures.add(future);
+            // the first call is kept for the calling thread
+            if (executor != null && futures.size() > 1) {
+                try {
+                    executor.execute(future);
+                } catch (RejectedExecutionException e) {
+                    // run by the calling thread below
+                }
+            }
+        }
+        for (FutureTask<Object> future : futures) {
+            // does nothing if a pool thread already started it
+            future.run();
+        }
+        for (int i = 0; i < calls.size(); i++) {
+            Call call = calls.get(i);
+            try {
+                call.result = futures.get(i).get();
+            } catch (ExecutionException e) {
+                call.error = e.getCause();
+            }
+        }
+        lastRequests = requests;
+        lastCalls = patterns.size() + calls.size();
+
+        // Fan the results back out to the queries
+        Map<Query, QueryCollection> answer = new LinkedHashMap<Query, QueryCollection>();
+        for (Query query : queries) {
+            QueryCollection collection = new QueryCollection();
+            Map<String, Result<?>> results = new HashMap<String, Result<?>>();
+            for (Request request : query.getRequests()) {
+                if (request instanceof MBeanAttrs) {
+                    MBeanAttrs attrs = (MBeanAttrs) request;
+                    Object mbeans = patterns.get(attrs.getObj());
+                    if (mbeans instanceof Throwable) {
+                        collection.fail((Throwable) mbeans);
+                        continue;
+                    }
+                    List<MBeanAttrResult> mbeanResults = new ArrayList<MBeanAttrResult>();
+                    for (ObjectName mbean : (Set<ObjectName>) mbeans) {
+                        Call call = attributeCalls.get(mbean);
+                        collection.add(call);
+                        if (call.error == null) {
+                            Map<String, Object> all = (Map<String, Object>) call.result;
+                            Map<String, Object> values = new HashMap<String, Object>();
+                            for (String attr : attrs.getAttrs()) {
+                                if (all.containsKey(attr)) {
+                                    values.put(attr, all.get(attr));
+                                }
+                            }
+                            mbeanResults.add(new MBeanAttrResult(mbean, values));
+                        }
+                    }
+                    results.put(request.getName(), new MBeanAttrsResult(attrs, mbeanResults));
+                } else if (request instanceof MBeanOpers) {
+                    Call call = operationCalls.get(request);
+                    collection.add(call);
+                    if (call.error == null) {
+                        results.put(request.getName(), new MBeanOpersResult((MBeanOpers) request, (List<MBeanOperResult>) call.result));
+                    }
+                } else {
+                    collection.fail(new IllegalArgumentException("Unsupported request " + request));
+                }
+            }
+            if (collection.error == null) {
+                collection.results = results;
+            }
+            answer.put(query, collection);
+        }
+        return answer;
+    }
+
+    /**
+     * @return the number of requests of the queries of the last collection
+     */
+    public int getLastRequests() {
+        return lastRequests;
+    }
+
+    /**
+     * @return the number of JMX calls the last collection was performed with
+     */
+    public int getLastCalls() {
+        return lastCalls;
+    }
+
+    private Object resolve(Map<String, Object> patterns, String obj) {
+        Object mbeans = patterns.get(obj);
+        if (mbeans == null) {
+            try {
+                final ObjectName pattern = new ObjectName(obj);
+                mbeans = run(new PrivilegedExceptionAction<Object>() {
+                    @Override
+                    public Object run() throws Exception {
+                        return mbs.queryNames(pattern, null);
+                    }
+                });
+            } catch (Throwable t) {
+                mbeans = t;
+            }
+            patterns.put(obj, mbeans);
+        }
+        return mbeans;
+    }
+
+    private Object run(PrivilegedExceptionAction<Object> action) throws Exception {
+        if (subject == null) {
+            return action.run();
+        }
+        try {
+            return Subject.doAs(subject, action);
+        } catch (PrivilegedActionException e) {
+            throw e.getException();
+        }
+    }
+
+    /**
+     * The outcome of the collection of one query
+     */
+    public static class QueryCollection {
+        private Map<String, Result<?>> results;
+        private Throwable error;
+        private long time;
+        private final Set<Call> calls = Collections.newSetFromMap(new HashMap<Call, Boolean>());
+
+        void add(Call call) {
+            if (calls.add(call)) {
+                time += call.time;
+                if (call.error != null) {
+                    fail(call.error);
+                }
+            }
+        }
+
+        void fail(Throwable t) {
+            if (error == null) {
+                error = t;
+            }
+        }
+
+        /**
+         * @return the results of the requests of the query, or null if the collection failed
+         */
+        public Map<String, Result<?>> getResults() {
+            return results;
+        }
+
+        /**
+         * @return the first error the collection of the query failed with
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * @return the time spent in the JMX calls the query used, in nanoseconds. Calls shared with other
+         * queries are accounted to each of them.
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+
+    abstract class Call implements Callable<Object>, PrivilegedExceptionAction<Object> {
+        volatile Object result;
+        volatile Throwable error;
+        volatile long time;
+
+        @Override
+        public Object call() throws Exception {
+            long start = System.nanoTime();
+            try {
+                return CollectionPlanner.this.run(this);
+            } finally {
+                time = System.nanoTime() - start;
+            }
+        }
+    }
+
+    class AttributesCall extends Call {
+        private final ObjectName mbean;
+        private final String[] attrs;
+
+        AttributesCall(ObjectName mbean, Set<String> attrs) {
+            this.mbean = mbean;
+            this.attrs = attrs.toArray(new String[attrs.size()]);
+        }
+
+        @Override
+        public Object run() throws Exception {
+            AttributeList al = mbs.getAttributes(mbean, attrs);
+            Map<String, Object> values = new HashMap<String, Object>();
+            for (Attribute attribute : al.asList()) {
+                values.put(attribute.getName(), JmxUtils.getJmxValue(attribute.getValue()));
+            }
+            return values;
+        }
+    }
+
+    class OperationCall extends Call {
+        private final MBeanOpers request;
+
+        OperationCall(MBeanOpers request) {
+            this.request = request;
+        }
+
+        @Override
+        public Object run() throws Exception {
+            return JmxUtils.execute(null, request, mbs).getResults();
+        }
+    }
+}
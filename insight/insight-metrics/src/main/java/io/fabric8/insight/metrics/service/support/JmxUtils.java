@@ -76,7 +76,7 @@ public class JmxUtils {
         return new MBeanAttrsResult(request, results);
     }
 
-    private static Object getJmxValue(Object value) {
+    static Object getJmxValue(Object value) {
         if (value instanceof CompositeDataSupport) {
             CompositeDataSupport cds = (CompositeDataSupport) value;
             Map<String, Object> map = new HashMap<String, Object>();
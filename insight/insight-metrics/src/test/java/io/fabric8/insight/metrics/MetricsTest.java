@@ -20,6 +20,9 @@ import io.fabric8.insight.metrics.model.MBeanAttrs;
 import io.fabric8.insight.metrics.model.MBeanOpers;
 import io.fabric8.insight.metrics.model.Query;
 import io.fabric8.insight.metrics.model.Request;
+import io.fabric8.insight.metrics.model.MBeanAttrResult;
+import io.fabric8.insight.metrics.model.MBeanAttrsResult;
+import io.fabric8.insight.metrics.service.support.CollectionPlanner;
 import io.fabric8.insight.metrics.service.support.JmxUtils;
 import io.fabric8.insight.metrics.mvel.Renderer;
 import io.fabric8.insight.metrics.model.QueryResult;
@@ -29,10 +32,18 @@ import org.junit.Test;
 import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class MetricsTest {
 
@@ -55,4 +66,66 @@ public class MetricsTest {
         assertEquals("local", map.get("host"));
         assertNotNull(map.get("@timestamp"));
     }
+
+    @Test
+    public void testCollectionPlanner() throws Exception {
+        Query q1 = new Query("q1", new HashSet<Request>(Arrays.<Request>asList(
+                new MBeanAttrs("threads", "java.lang:type=Threading", Arrays.asList("ThreadCount")),
+                new MBeanAttrs("memory", "java.lang:type=Memory", Arrays.asList("HeapMemoryUsage"))
+        )), null, null, null, 0, 0);
+        Query q2 = new Query("q2", new HashSet<Request>(Arrays.<Request>asList(
+                new MBeanAttrs("threads", "java.lang:type=Threading", Arrays.asList("ThreadCount", "DaemonThreadCount"))
+        )), null, null, null, 0, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CollectionPlanner planner = new CollectionPlanner(ManagementFactory.getPlatformMBeanServer(), executor, null);
+            Map<Query, CollectionPlanner.QueryCollection> collections = planner.collect(Arrays.asList(q1, q2));
+
+            assertEquals(3, planner.getLastRequests());
+            // two object name patterns resolved and two mbeans read
+            assertEquals(4, planner.getLastCalls());
+
+            CollectionPlanner.QueryCollection c1 = collections.get(q1);
+            assertNull(c1.getError());
+            List<?> threads = ((MBeanAttrsResult) c1.getResults().get("threads")).getResults();
+            assertEquals(1, threads.size());
+            assertEquals(Arrays.asList("ThreadCount"), Arrays.asList(((MBeanAttrResult) threads.get(0)).getAttrs().keySet().toArray()));
+            assertNotNull(c1.getResults().get("memory"));
+
+            CollectionPlanner.QueryCollection c2 = collections.get(q2);
+            assertNull(c2.getError());
+            threads = ((MBeanAttrsResult) c2.getResults().get("threads")).getResults();
+            assertEquals(2, ((MBeanAttrResult) threads.get(0)).getAttrs().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCollectionPlannerOnSingleThreadPool() throws Exception {
+        final Query query = new Query("q", new HashSet<Request>(Arrays.<Request>asList(
+                new MBeanAttrs("threads", "java.lang:type=Threading", Arrays.asList("ThreadCount")),
+                new MBeanAttrs("memory", "java.lang:type=Memory", Arrays.asList("HeapMemoryUsage")),
+                new MBeanAttrs("runtime", "java.lang:type=Runtime", Arrays.asList("Uptime"))
+        )), null, null, null, 0, 0);
+
+        // as with a threadPoolSize of 1: the collection runs on the only thread of the pool it submits to
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+        try {
+            final CollectionPlanner planner = new CollectionPlanner(ManagementFactory.getPlatformMBeanServer(), executor, null);
+            ScheduledFuture<Map<Query, CollectionPlanner.QueryCollection>> future = executor.schedule(new Callable<Map<Query, CollectionPlanner.QueryCollection>>() {
+                @Override
+                public Map<Query, CollectionPlanner.QueryCollection> call() throws Exception {
+                    return planner.collect(Arrays.asList(query));
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+
+            CollectionPlanner.QueryCollection collection = future.get(10, TimeUnit.SECONDS).get(query);
+            assertNull(collection.getError());
+            assertEquals(3, collection.getResults().size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }